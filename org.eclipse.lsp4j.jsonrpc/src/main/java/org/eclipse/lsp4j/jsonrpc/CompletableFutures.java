@@ -9,7 +9,9 @@ package org.eclipse.lsp4j.jsonrpc;
 
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 
 public final class CompletableFutures {
@@ -17,36 +19,109 @@ public final class CompletableFutures {
 	
 	/**
 	 * A utility method to create a {@link CompletableFuture} with cancellation support.
+	 * If the future is cancelled before the computation has started, the function is not called.
 	 * 
 	 * @param code a function that accepts a {@link CancelChecker} and returns the to be computed value
 	 * @return a future
 	 */
 	public static <R> CompletableFuture<R> computeAsync(Function<CancelChecker, R> code) {
-		CompletableFuture<CancelChecker> start = new CompletableFuture<>();
-		CompletableFuture<R> result = start.thenApplyAsync(code);
-		CancelChecker cancelIndicator = () -> {
-			if (result.isCancelled()) 
-				throw new CancellationException();
-		};
-		start.complete(cancelIndicator);
-		return result;
+		Computation<R> computation = new Computation<>(code, false);
+		CompletableFuture.runAsync(computation);
+		return computation.result;
 	}
 	
 	/**
 	 * A utility method to create a {@link CompletableFuture} with cancellation support.
+	 * If the future is cancelled before the computation has started, the function is not called.
 	 * 
 	 * @param code a function that accepts a {@link CancelIndicator} and returns the to be computed value
 	 * @return a future
 	 */
 	public static <R> CompletableFuture<R> computeAsync(Executor executor, Function<CancelChecker, R> code) {
-		CompletableFuture<CancelChecker> start = new CompletableFuture<>();
-		CompletableFuture<R> result = start.thenApplyAsync(code, executor);
-		CancelChecker cancelIndicator = () -> {
+		return computeAsync(executor, code, false);
+	}
+	
+	/**
+	 * A utility method to create a {@link CompletableFuture} with cancellation support.
+	 * If the future is cancelled before the computation has started, the function is not called.
+	 * 
+	 * @param code a function that accepts a {@link CancelIndicator} and returns the to be computed value
+	 * @param interruptOnCancel whether the thread running the function is interrupted when the future is
+	 *     cancelled, so blocking operations such as I/O or lock acquisition are aborted
+	 * @return a future
+	 */
+	public static <R> CompletableFuture<R> computeAsync(Executor executor, Function<CancelChecker, R> code, boolean interruptOnCancel) {
+		Computation<R> computation = new Computation<>(code, interruptOnCancel);
+		try {
+			executor.execute(computation);
+		} catch (RejectedExecutionException e) {
+			computation.result.completeExceptionally(e);
+		}
+		return computation.result;
+	}
+	
+	/**
+	 * A task that computes the value of a future, unless the future has been cancelled before the
+	 * task is run.
+	 */
+	private static class Computation<R> implements Runnable, CancelChecker {
+		
+		final Function<CancelChecker, R> code;
+		final boolean interruptOnCancel;
+		final CompletableFuture<R> result = new CompletableFuture<R>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				boolean cancelled = super.cancel(mayInterruptIfRunning);
+				if (cancelled && interruptOnCancel)
+					interrupt();
+				return cancelled;
+			}
+		};
+		
+		// Guarded by this
+		private Thread runner;
+		
+		Computation(Function<CancelChecker, R> code, boolean interruptOnCancel) {
+			this.code = code;
+			this.interruptOnCancel = interruptOnCancel;
+		}
+		
+		@Override
+		public void checkCanceled() {
 			if (result.isCancelled()) 
 				throw new CancellationException();
-		};
-		start.complete(cancelIndicator);
-		return result;
+		}
+		
+		@Override
+		public void run() {
+			if (result.isDone())
+				return;
+			if (interruptOnCancel) {
+				synchronized (this) {
+					runner = Thread.currentThread();
+				}
+			}
+			try {
+				result.complete(code.apply(this));
+			} catch (Throwable t) {
+				result.completeExceptionally(t instanceof CompletionException ? t : new CompletionException(t));
+			} finally {
+				if (interruptOnCancel) {
+					synchronized (this) {
+						runner = null;
+					}
+					// Clear the interrupt status if this task has been interrupted, so it does not affect the next task of the thread
+					if (result.isCancelled())
+						Thread.interrupted();
+				}
+			}
+		}
+		
+		private synchronized void interrupt() {
+			if (runner != null)
+				runner.interrupt();
+		}
+		
 	}
 	
 }
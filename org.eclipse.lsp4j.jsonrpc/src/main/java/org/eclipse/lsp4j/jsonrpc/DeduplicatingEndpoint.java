@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An endpoint that lets identical requests share one computation of the delegate endpoint, usually a
+ * {@link org.eclipse.lsp4j.jsonrpc.services.GenericEndpoint}. A request is identical to an earlier one if
+ * it has the same method and equal parameters, and the earlier request has not been answered yet. Each
+ * request gets its own future, which is completed with the result of the shared computation. The shared
+ * computation is only cancelled when the futures of all requests sharing it have been cancelled.
+ *
+ * <p>Only requests of the configured methods are deduplicated; they must not have side effects, since
+ * the duplicates are not passed to the delegate. Notifications are always passed to the delegate.</p>
+ */
+public class DeduplicatingEndpoint implements Endpoint {
+
+	private final Endpoint delegate;
+	private final Set<String> methods;
+
+	private final Map<RequestKey, SharedRequest> inFlightRequests = new ConcurrentHashMap<>();
+	private final AtomicLong deduplicatedCount = new AtomicLong();
+
+	/**
+	 * @param delegate - the endpoint that computes the results
+	 * @param methods - the methods of the requests to deduplicate
+	 */
+	public DeduplicatingEndpoint(Endpoint delegate, Collection<String> methods) {
+		if (delegate == null)
+			throw new NullPointerException("delegate");
+		if (methods == null)
+			throw new NullPointerException("methods");
+		this.delegate = delegate;
+		this.methods = new HashSet<>(methods);
+	}
+
+	@Override
+	public CompletableFuture<?> request(String method, Object parameter) {
+		if (!methods.contains(method))
+			return delegate.request(method, parameter);
+		RequestKey key = new RequestKey(method, parameter);
+		while (true) {
+			SharedRequest sharedRequest = inFlightRequests.get(key);
+			if (sharedRequest != null) {
+				CompletableFuture<Object> result = sharedRequest.subscribe();
+				if (result != null) {
+					deduplicatedCount.incrementAndGet();
+					return result;
+				}
+				// The shared request has just been completed or cancelled
+				inFlightRequests.remove(key, sharedRequest);
+			} else {
+				sharedRequest = new SharedRequest(key);
+				CompletableFuture<Object> result = sharedRequest.subscribe();
+				if (inFlightRequests.putIfAbsent(key, sharedRequest) == null) {
+					sharedRequest.start();
+					return result;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void notify(String method, Object parameter) {
+		delegate.notify(method, parameter);
+	}
+
+	/**
+	 * The number of requests that have been answered by the computation of an identical request.
+	 */
+	public long getDeduplicatedCount() {
+		return deduplicatedCount.get();
+	}
+
+	/**
+	 * The number of computations of deduplicated methods that are in progress.
+	 */
+	public int getInFlightCount() {
+		return inFlightRequests.size();
+	}
+
+	private static final class RequestKey {
+
+		final String method;
+		final Object parameter;
+		final int hashCode;
+
+		RequestKey(String method, Object parameter) {
+			this.method = method;
+			this.parameter = parameter;
+			this.hashCode = 31 * method.hashCode() + Objects.hashCode(parameter);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RequestKey))
+				return false;
+			RequestKey other = (RequestKey) obj;
+			return hashCode == other.hashCode && method.equals(other.method) && Objects.equals(parameter, other.parameter);
+		}
+
+	}
+
+	/**
+	 * The computation of a request and the futures of all requests that share it.
+	 */
+	private class SharedRequest {
+
+		final RequestKey key;
+		private final List<CompletableFuture<Object>> subscribers = new ArrayList<>();
+		private int activeSubscribers;
+		private CompletableFuture<?> computation;
+		private boolean closed;
+
+		SharedRequest(RequestKey key) {
+			this.key = key;
+		}
+
+		/**
+		 * @return a future for the result of this request, or {@code null} if the request is already closed
+		 */
+		synchronized CompletableFuture<Object> subscribe() {
+			if (closed)
+				return null;
+			CompletableFuture<Object> subscriber = new CompletableFuture<Object>() {
+				@Override
+				public boolean cancel(boolean mayInterruptIfRunning) {
+					boolean result = super.cancel(mayInterruptIfRunning);
+					if (result)
+						unsubscribe();
+					return result;
+				}
+			};
+			subscribers.add(subscriber);
+			activeSubscribers++;
+			return subscriber;
+		}
+
+		void start() {
+			CompletableFuture<?> computation;
+			try {
+				computation = delegate.request(key.method, key.parameter);
+			} catch (RuntimeException e) {
+				complete(null, e);
+				throw e;
+			}
+			boolean cancelled;
+			synchronized (this) {
+				this.computation = computation;
+				cancelled = closed;
+			}
+			if (cancelled)
+				computation.cancel(true);
+			else
+				computation.whenComplete(this::complete);
+		}
+
+		private void unsubscribe() {
+			CompletableFuture<?> computation;
+			synchronized (this) {
+				if (closed || --activeSubscribers > 0)
+					return;
+				closed = true;
+				computation = this.computation;
+			}
+			inFlightRequests.remove(key, this);
+			if (computation != null)
+				computation.cancel(true);
+		}
+
+		private void complete(Object result, Throwable throwable) {
+			List<CompletableFuture<Object>> subscribers;
+			synchronized (this) {
+				closed = true;
+				subscribers = new ArrayList<>(this.subscribers);
+			}
+			inFlightRequests.remove(key, this);
+			for (CompletableFuture<Object> subscriber : subscribers) {
+				if (throwable != null)
+					subscriber.completeExceptionally(throwable);
+				else
+					subscriber.complete(result);
+			}
+		}
+
+	}
+
+}
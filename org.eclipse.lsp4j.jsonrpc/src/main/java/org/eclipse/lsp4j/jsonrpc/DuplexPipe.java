@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.lsp4j.jsonrpc.json.MemoryPipe;
+
+/**
+ * Two {@link MemoryPipe}s that connect the streams of a client launcher and a server launcher in the
+ * same JVM, e.g.
+ *
+ * <pre>
+ * DuplexPipe pipe = new DuplexPipe();
+ * Launcher.createLauncher(client, MyServer.class, pipe.getClientInput(), pipe.getClientOutput());
+ * Launcher.createLauncher(server, MyClient.class, pipe.getServerInput(), pipe.getServerOutput());
+ * </pre>
+ *
+ * Unlike {@link java.io.PipedInputStream}, the pipes use large ring buffers and wake up a waiting
+ * side immediately, so they are suited for embedded deployments and not only for tests. Use an
+ * {@link InProcessConnection} to skip the JSON serialization as well.
+ */
+public class DuplexPipe implements Closeable {
+
+	private final MemoryPipe clientToServer;
+	private final MemoryPipe serverToClient;
+
+	public DuplexPipe() {
+		this(MemoryPipe.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize - the buffer size of each direction
+	 */
+	public DuplexPipe(int bufferSize) {
+		this.clientToServer = new MemoryPipe(bufferSize);
+		this.serverToClient = new MemoryPipe(bufferSize);
+	}
+
+	public InputStream getClientInput() {
+		return serverToClient.getInputStream();
+	}
+
+	public OutputStream getClientOutput() {
+		return clientToServer.getOutputStream();
+	}
+
+	public InputStream getServerInput() {
+		return clientToServer.getInputStream();
+	}
+
+	public OutputStream getServerOutput() {
+		return serverToClient.getOutputStream();
+	}
+
+	/**
+	 * Close the output streams of both sides. The input streams report the end of the stream as soon as
+	 * the bytes written before have been read.
+	 */
+	@Override
+	public void close() {
+		clientToServer.close();
+		serverToClient.close();
+	}
+
+}
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A timer for large numbers of timeouts that are usually cancelled before they expire, such as the
+ * timeouts of pending requests. Scheduling and cancelling a timeout only enqueues it; a single worker
+ * thread sorts the timeouts into the buckets of a wheel and advances the wheel by one bucket per tick.
+ * A timeout therefore expires up to one tick later than requested.
+ *
+ * <p>Expired tasks are run on the worker thread, so they should complete quickly and must not block.</p>
+ */
+public class HashedWheelTimer implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(HashedWheelTimer.class.getName());
+
+	public static final long DEFAULT_TICK_MILLIS = 100;
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private static final int STATE_PENDING = 0;
+	private static final int STATE_CANCELLED = 1;
+	private static final int STATE_EXPIRED = 2;
+
+	/**
+	 * Holder of the timer shared by all endpoints that do not configure their own, created on first use.
+	 */
+	private static class SharedTimer {
+		static final HashedWheelTimer INSTANCE = new HashedWheelTimer();
+	}
+
+	/**
+	 * The timer shared by all request timeouts that are not configured with a dedicated timer.
+	 */
+	public static HashedWheelTimer getShared() {
+		return SharedTimer.INSTANCE;
+	}
+
+	/**
+	 * A scheduled task that can be cancelled until it is run.
+	 */
+	public final class Timeout {
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+		// The following fields are only accessed by the worker thread
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout previous;
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancel this timeout so its task is not run.
+		 *
+		 * @return {@code true} if the timeout was pending, {@code false} if it was already cancelled or expired
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED))
+				return false;
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == STATE_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == STATE_EXPIRED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(STATE_PENDING, STATE_EXPIRED))
+				return;
+			pendingCount.decrementAndGet();
+			try {
+				task.run();
+			} catch (Throwable t) {
+				LOG.log(Level.WARNING, "A timer task threw an exception.", t);
+			}
+		}
+
+	}
+
+	/**
+	 * A doubly linked list of timeouts, only accessed by the worker thread.
+	 */
+	private static class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.previous = tail;
+				tail = timeout;
+			}
+		}
+
+		void remove(Timeout timeout) {
+			if (timeout.previous != null)
+				timeout.previous.next = timeout.next;
+			else
+				head = timeout.next;
+			if (timeout.next != null)
+				timeout.next.previous = timeout.previous;
+			else
+				tail = timeout.previous;
+			timeout.previous = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		/**
+		 * Run the tasks whose round has come and whose deadline has passed.
+		 */
+		void expireTimeouts(long deadline) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+					remove(timeout);
+					timeout.expire();
+				} else if (timeout.isCancelled()) {
+					remove(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+
+	}
+
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final long startTime;
+
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicLong pendingCount = new AtomicLong();
+
+	private Thread worker;
+	private volatile boolean closed;
+
+	public HashedWheelTimer() {
+		this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param tickDuration - the time between two ticks, which is the precision of this timer
+	 * @param unit - the unit of the tick duration
+	 * @param wheelSize - the number of buckets of the wheel; it is rounded up to a power of two
+	 */
+	public HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0)
+			throw new IllegalArgumentException("The tick duration must be positive.");
+		if (wheelSize <= 0 || wheelSize > 1 << 30)
+			throw new IllegalArgumentException("Invalid wheel size: " + wheelSize);
+		this.tickDuration = unit.toNanos(tickDuration);
+		int size = Integer.highestOneBit(wheelSize);
+		if (size < wheelSize)
+			size <<= 1;
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Run the given task once the delay has passed, unless the returned timeout is cancelled before.
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		if (task == null)
+			throw new NullPointerException("task");
+		if (closed)
+			throw new IllegalStateException("The timer has been closed.");
+		long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0));
+		if (deadline < 0)
+			// Overflow due to a very long delay
+			deadline = Long.MAX_VALUE;
+		Timeout timeout = new Timeout(task, deadline);
+		pendingCount.incrementAndGet();
+		newTimeouts.add(timeout);
+		startWorker();
+		return timeout;
+	}
+
+	/**
+	 * The number of timeouts that are neither expired nor cancelled.
+	 */
+	public long getPendingCount() {
+		return pendingCount.get();
+	}
+
+	private synchronized void startWorker() {
+		if (worker == null && !closed) {
+			worker = new Thread(this::run, "lsp4j-timer");
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	private void run() {
+		long tick = (System.nanoTime() - startTime) / tickDuration;
+		while (!closed) {
+			long deadline = waitForNextTick(tick);
+			if (deadline < 0)
+				break;
+			processCancelledTimeouts();
+			transferNewTimeouts(tick);
+			wheel[(int) (tick & mask)].expireTimeouts(deadline);
+			tick++;
+		}
+	}
+
+	/**
+	 * Sleep until the end of the given tick.
+	 *
+	 * @return the elapsed time since the start of this timer, or -1 if the timer has been closed
+	 */
+	private long waitForNextTick(long tick) {
+		long deadline = tickDuration * (tick + 1);
+		while (true) {
+			long currentTime = System.nanoTime() - startTime;
+			long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - currentTime + 999999);
+			if (sleepMillis <= 0)
+				return currentTime;
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				if (closed)
+					return -1;
+			}
+		}
+	}
+
+	private void transferNewTimeouts(long tick) {
+		// Limit the number of transfers per tick, so a flood of new timeouts cannot stall the wheel
+		for (int i = 0; i < 100000; i++) {
+			Timeout timeout = newTimeouts.poll();
+			if (timeout == null)
+				return;
+			if (timeout.isCancelled())
+				continue;
+			long expirationTick = timeout.deadline / tickDuration;
+			timeout.remainingRounds = (expirationTick - tick) / wheel.length;
+			// Timeouts whose deadline has already passed are put into the current bucket
+			long bucketTick = Math.max(expirationTick, tick);
+			wheel[(int) (bucketTick & mask)].add(timeout);
+		}
+	}
+
+	private void processCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			pendingCount.decrementAndGet();
+			if (timeout.bucket != null)
+				timeout.bucket.remove(timeout);
+		}
+	}
+
+	/**
+	 * Stop the worker thread. Pending timeouts are discarded without running their tasks.
+	 */
+	@Override
+	public void close() {
+		Thread worker;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			worker = this.worker;
+		}
+		if (worker != null)
+			worker.interrupt();
+		newTimeouts.clear();
+		cancelledTimeouts.clear();
+		pendingCount.set(0);
+	}
+
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.io.Closeable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.json.InvalidMessageException;
+import org.eclipse.lsp4j.jsonrpc.json.MessageConstants;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+
+/**
+ * Connects two launchers in the same JVM by passing {@link Message} objects from one side to the
+ * other, without serializing them to JSON. Each end is both the message producer and the outgoing
+ * message consumer of one launcher, see {@link Launcher.Builder#setInProcessEnd(End)}. Messages are
+ * consumed by the listening thread of the receiving end one after another, like messages read from a
+ * stream.
+ *
+ * <p>Since both sides see the same objects, a side that modifies the parameters or the result of a
+ * message after sending it affects the other side. Use {@link CopyPolicy#SERIALIZE} to rule this out.</p>
+ */
+public class InProcessConnection implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(InProcessConnection.class.getName());
+
+	/**
+	 * Determines how messages are passed from one end to the other.
+	 */
+	public static enum CopyPolicy {
+		/**
+		 * Pass the message objects as they are.
+		 */
+		NONE,
+		/**
+		 * Serialize each message when it is sent and parse it when it is received, so the receiving side
+		 * gets its own copy with the same types as if it was received from a stream.
+		 */
+		SERIALIZE
+	}
+
+	/**
+	 * Marks the end of the messages in a queue.
+	 */
+	private static final Object CLOSED = new Object();
+
+	private final CopyPolicy copyPolicy;
+	private final End clientEnd;
+	private final End serverEnd;
+
+	public InProcessConnection() {
+		this(CopyPolicy.NONE);
+	}
+
+	public InProcessConnection(CopyPolicy copyPolicy) {
+		if (copyPolicy == null)
+			throw new NullPointerException("copyPolicy");
+		this.copyPolicy = copyPolicy;
+		this.clientEnd = new End();
+		this.serverEnd = new End();
+		clientEnd.peer = serverEnd;
+		serverEnd.peer = clientEnd;
+	}
+
+	public CopyPolicy getCopyPolicy() {
+		return copyPolicy;
+	}
+
+	/**
+	 * The end for the launcher of the client side.
+	 */
+	public End getClientEnd() {
+		return clientEnd;
+	}
+
+	/**
+	 * The end for the launcher of the server side.
+	 */
+	public End getServerEnd() {
+		return serverEnd;
+	}
+
+	/**
+	 * Close both ends of this connection.
+	 */
+	@Override
+	public void close() {
+		clientEnd.close();
+	}
+
+	/**
+	 * One end of an in-process connection. Messages passed to {@link #consume(Message)} are sent to the
+	 * other end, and {@link #listen(MessageConsumer)} forwards the messages received from the other end.
+	 */
+	public class End implements MessageProducer, MessageConsumer, Closeable, MessageConstants {
+
+		private final BlockingQueue<Object> incoming = new LinkedBlockingQueue<>();
+
+		private End peer;
+		private MessageJsonHandler jsonHandler;
+		private volatile boolean closed;
+
+		public InProcessConnection getConnection() {
+			return InProcessConnection.this;
+		}
+
+		/**
+		 * Set the handler used to serialize and parse messages with {@link CopyPolicy#SERIALIZE}.
+		 */
+		public void setJsonHandler(MessageJsonHandler jsonHandler) {
+			this.jsonHandler = jsonHandler;
+		}
+
+		/**
+		 * Send a message to the other end.
+		 */
+		@Override
+		public void consume(Message message) {
+			if (closed)
+				throw new IllegalStateException("The in-process connection is closed.");
+			if (message.getJsonrpc() == null)
+				message.setJsonrpc(JSONRPC_VERSION);
+			if (copyPolicy == CopyPolicy.SERIALIZE)
+				peer.incoming.add(getJsonHandler().serialize(message));
+			else
+				peer.incoming.add(message);
+		}
+
+		@Override
+		public void listen(MessageConsumer callback) {
+			try {
+				while (true) {
+					Object element = incoming.take();
+					if (element == CLOSED)
+						return;
+					try {
+						Message message;
+						if (element instanceof String)
+							message = getJsonHandler().parseMessage((String) element);
+						else
+							message = (Message) element;
+						callback.consume(message);
+					} catch (InvalidMessageException e) {
+						LOG.log(Level.SEVERE, e.getMessage(), e);
+					}
+				}
+			} catch (InterruptedException e) {
+				// The listening thread has been interrupted
+			}
+		}
+
+		private MessageJsonHandler getJsonHandler() {
+			if (jsonHandler == null)
+				throw new IllegalStateException("A JSON handler is required to copy messages.");
+			return jsonHandler;
+		}
+
+		/**
+		 * Close this end and the other end of the connection. Messages that have already been sent are
+		 * still forwarded by the listening threads.
+		 */
+		@Override
+		public void close() {
+			synchronized (InProcessConnection.this) {
+				if (closed)
+					return;
+				closed = true;
+				peer.closed = true;
+			}
+			incoming.add(CLOSED);
+			peer.incoming.add(CLOSED);
+		}
+
+	}
+
+}
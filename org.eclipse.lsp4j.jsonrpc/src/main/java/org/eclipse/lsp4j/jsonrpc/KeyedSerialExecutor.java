@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An executor that runs the tasks submitted with the same key one after another in submission order,
+ * while tasks with different keys run in parallel on a shared executor. Each key with queued tasks
+ * occupies at most one thread of the shared executor; keys without queued tasks use no resources.
+ */
+public class KeyedSerialExecutor {
+
+	private static final Logger LOG = Logger.getLogger(KeyedSerialExecutor.class.getName());
+
+	/**
+	 * The number of tasks a key runs before it yields its thread to other keys.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private final Executor executor;
+	private final int batchSize;
+	private final Map<Object, SerialQueue> queues = new ConcurrentHashMap<>();
+
+	public KeyedSerialExecutor(Executor executor) {
+		this(executor, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param executor - the executor that runs the tasks of all keys
+	 * @param batchSize - the number of tasks a key runs in a row before it is rescheduled on the executor,
+	 * 		so a busy key cannot starve the other keys of a bounded executor
+	 */
+	public KeyedSerialExecutor(Executor executor, int batchSize) {
+		if (executor == null)
+			throw new NullPointerException("executor");
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("The batch size must be positive.");
+		this.executor = executor;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Run the task after all tasks submitted earlier with the same key have completed.
+	 *
+	 * @throws RejectedExecutionException if the shared executor rejects the task
+	 */
+	public void execute(Object key, Runnable task) {
+		if (key == null)
+			throw new NullPointerException("key");
+		if (task == null)
+			throw new NullPointerException("task");
+		SerialQueue[] created = new SerialQueue[1];
+		// The queue of a key is created and removed atomically with the check whether it is empty,
+		// so a task is never added to a queue that has already stopped
+		queues.compute(key, (k, queue) -> {
+			if (queue == null) {
+				queue = new SerialQueue(k);
+				created[0] = queue;
+			}
+			queue.tasks.add(task);
+			return queue;
+		});
+		if (created[0] != null) {
+			try {
+				executor.execute(created[0]);
+			} catch (RejectedExecutionException e) {
+				queues.remove(key, created[0]);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * The number of keys that currently have queued or running tasks.
+	 */
+	public int getActiveKeyCount() {
+		return queues.size();
+	}
+
+	private class SerialQueue implements Runnable {
+
+		final Object key;
+		final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+		SerialQueue(Object key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			if (runTasks(batchSize))
+				return;
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				// Keep the order of the remaining tasks by running them on this thread
+				LOG.log(Level.WARNING, "The executor rejected a queue of ordered tasks, running them in the current thread.", e);
+				runTasks(Integer.MAX_VALUE);
+			}
+		}
+
+		/**
+		 * @return {@code true} if the queue has become empty and has been removed
+		 */
+		private boolean runTasks(int maxCount) {
+			for (int i = 0; i < maxCount; i++) {
+				Runnable task = tasks.poll();
+				if (task == null) {
+					if (stopIfEmpty())
+						return true;
+					continue;
+				}
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					LOG.log(Level.SEVERE, e.getMessage(), e);
+				}
+			}
+			return stopIfEmpty();
+		}
+
+		private boolean stopIfEmpty() {
+			boolean[] stopped = new boolean[1];
+			queues.computeIfPresent(key, (k, queue) -> {
+				if (queue == this && tasks.isEmpty()) {
+					stopped[0] = true;
+					return null;
+				}
+				return queue;
+			});
+			return stopped[0];
+		}
+
+	}
+
+}
@@ -15,22 +15,38 @@ import java.net.SocketAddress;
 import java.nio.channels.Channels;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import org.eclipse.lsp4j.jsonrpc.json.AsyncMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.ByteArrayPool;
+import org.eclipse.lsp4j.jsonrpc.json.ChannelConnection;
+import org.eclipse.lsp4j.jsonrpc.json.ChannelEventLoop;
+import org.eclipse.lsp4j.jsonrpc.json.ConcurrentMessageDispatcher;
 import org.eclipse.lsp4j.jsonrpc.json.ConcurrentMessageProcessor;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethodProvider;
 import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
 import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
 import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
 import org.eclipse.lsp4j.jsonrpc.validation.ReflectiveMessageValidator;
 
+import com.google.common.util.concurrent.ForwardingFuture;
+
 public interface Launcher<T> {
 	
 	/**
@@ -56,20 +72,14 @@ public interface Launcher<T> {
 	 * @return
 	 */
 	static <T> Launcher<T> createLauncher(Object localService, Class<T> remoteInterface, InputStream in, OutputStream out, boolean validate, PrintWriter trace) {
-		Function<MessageConsumer, MessageConsumer> wrapper = consumer -> {
-			MessageConsumer result = consumer;
-			if (trace != null) {
-				result = message -> {
-					trace.println(message);
-					consumer.consume(message);
-				};
-			}
-			if (validate) {
-				result = new ReflectiveMessageValidator(result);
-			}
-			return result;
-		};
-		return createIoLauncher(localService, remoteInterface, in, out, Executors.newCachedThreadPool(), wrapper);
+		return new Builder<T>()
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.setInput(in)
+				.setOutput(out)
+				.validateMessages(validate)
+				.traceMessages(trace)
+				.create();
 	}
 	
 	/**
@@ -101,45 +111,666 @@ public interface Launcher<T> {
 		return createIoLauncher(localService, remoteInterface, Channels.newInputStream(socketChannel), Channels.newOutputStream(socketChannel), executorService, wrapper);
 	}
 	
+	/**
+	 * Create a new Launcher for the first connection to a Unix domain socket with the given path. The
+	 * socket file is created by this method, replacing a stale socket file, and deleted once the
+	 * connection has been accepted. Requires Java 16 or later.
+	 * 
+	 * @see UnixDomainSockets
+	 */
+	static <T> Launcher<T> createUnixSocketLauncher(Object localService, Class<T> remoteInterface, Path socketPath, ExecutorService executorService, Function<MessageConsumer, MessageConsumer> wrapper) throws IOException {
+		SocketChannel socketChannel;
+		try (ServerSocketChannel serverSocket = UnixDomainSockets.bind(socketPath)) {
+			try {
+				socketChannel = serverSocket.accept();
+			} finally {
+				Files.deleteIfExists(socketPath);
+			}
+		}
+		return createChannelLauncher(localService, remoteInterface, socketChannel, executorService, wrapper);
+	}
+	
+	/**
+	 * Create a new Launcher connected to the Unix domain socket with the given path. Requires Java 16
+	 * or later.
+	 * 
+	 * @see UnixDomainSockets
+	 */
+	static <T> Launcher<T> createUnixSocketClientLauncher(Object localService, Class<T> remoteInterface, Path socketPath, ExecutorService executorService, Function<MessageConsumer, MessageConsumer> wrapper) throws IOException {
+		SocketChannel socketChannel = UnixDomainSockets.connect(socketPath);
+		return createChannelLauncher(localService, remoteInterface, socketChannel, executorService, wrapper);
+	}
+	
+	static <T> Launcher<T> createChannelLauncher(Object localService, Class<T> remoteInterface, SocketChannel channel, ExecutorService executorService, Function<MessageConsumer, MessageConsumer> wrapper) {
+		return new Builder<T>()
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.setChannel(channel)
+				.setExecutorService(executorService)
+				.wrapMessages(wrapper)
+				.create();
+	}
+	
+	/**
+	 * Create a new Launcher for one end of an in-process connection. Messages are passed as objects
+	 * to the launcher at the other end of the connection instead of being serialized.
+	 * 
+	 * @see InProcessConnection
+	 */
+	static <T> Launcher<T> createInProcessLauncher(Object localService, Class<T> remoteInterface, InProcessConnection.End end, ExecutorService executorService, Function<MessageConsumer, MessageConsumer> wrapper) {
+		return new Builder<T>()
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.setInProcessEnd(end)
+				.setExecutorService(executorService)
+				.wrapMessages(wrapper)
+				.create();
+	}
+	
 	static <T> Launcher<T> createIoLauncher(Object localService, Class<T> remoteInterface, InputStream in, OutputStream out, ExecutorService executorService, Function<MessageConsumer, MessageConsumer> wrapper) {
-		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<String, JsonRpcMethod>();
-		supportedMethods.putAll(ServiceEndpoints.getSupportedMethods(remoteInterface));
+		return new Builder<T>()
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.setInput(in)
+				.setOutput(out)
+				.setExecutorService(executorService)
+				.wrapMessages(wrapper)
+				.create();
+	}
+	
+	/**
+	 * The launcher builder wires up all components for JSON-RPC communication. It offers all options
+	 * of the static factory methods in {@link Launcher} plus additional configuration of the message
+	 * processing.
+	 */
+	public static class Builder<T> {
 		
-		if (localService instanceof JsonRpcMethodProvider) {
-			JsonRpcMethodProvider rpcMethodProvider = (JsonRpcMethodProvider) localService;
-			supportedMethods.putAll(rpcMethodProvider.supportedMethods());
-		} else {
-			supportedMethods.putAll(ServiceEndpoints.getSupportedMethods(localService.getClass()));
+		private Object localService;
+		private Class<T> remoteInterface;
+		private InputStream input;
+		private OutputStream output;
+		private SocketChannel channel;
+		private ChannelEventLoop eventLoop;
+		private InProcessConnection.End inProcessEnd;
+		private ExecutorService executorService;
+		private boolean virtualThreads;
+		private MessageJsonHandler sharedJsonHandler;
+		private Function<MessageConsumer, MessageConsumer> messageWrapper;
+		private boolean validateMessages;
+		private PrintWriter messageTracer;
+		private int outgoingQueueCapacity;
+		private AsyncMessageConsumer.OverflowPolicy outgoingOverflowPolicy;
+		private ExecutorService writerExecutorService;
+		private long maxFlushDelay;
+		private int flushThreshold;
+		private long requestTimeout;
+		private Map<String, Long> methodRequestTimeouts;
+		private boolean cancelOnRequestTimeout;
+		private HashedWheelTimer timer;
+		private boolean concurrentDispatch;
+		private Function<Message, Object> dispatchOrderingKey;
+		private Function<Message, Object> supersedingDocumentKey;
+		private BiFunction<NotificationMessage, NotificationMessage, NotificationMessage> notificationCoalescer;
+		private Collection<String> deduplicatedRequests;
+		private RequestAdmissionControl admissionControl;
+		private boolean lazyParams;
+		private ByteArrayPool bufferPool;
+		
+		public Builder<T> setLocalService(Object localService) {
+			this.localService = localService;
+			return this;
 		}
 		
-		MessageJsonHandler jsonHandler = new MessageJsonHandler(supportedMethods);
-		MessageConsumer outGoingMessageStream = new StreamMessageConsumer(out, jsonHandler);
-		outGoingMessageStream = wrapper.apply(outGoingMessageStream);
-		RemoteEndpoint serverEndpoint = new RemoteEndpoint(outGoingMessageStream, ServiceEndpoints.toEndpoint(localService));
-		jsonHandler.setMethodProvider(serverEndpoint);
-		// wrap incoming message stream
-		MessageConsumer messageConsumer = wrapper.apply(serverEndpoint);
-		StreamMessageProducer reader = new StreamMessageProducer(in, jsonHandler);
+		public Builder<T> setRemoteInterface(Class<T> remoteInterface) {
+			this.remoteInterface = remoteInterface;
+			return this;
+		}
 		
-		T remoteProxy = ServiceEndpoints.toServiceObject(serverEndpoint, remoteInterface);
+		public Builder<T> setInput(InputStream input) {
+			this.input = input;
+			return this;
+		}
 		
-		return new Launcher<T> () {
-
-			@Override
-			public Future<?> startListening() {
-				return ConcurrentMessageProcessor.startProcessing(reader, messageConsumer, executorService);
+		public Builder<T> setOutput(OutputStream output) {
+			this.output = output;
+			return this;
+		}
+		
+		/**
+		 * Use a socket channel multiplexed by the given event loop instead of an input and an output
+		 * stream. Incoming messages are then read by the selector thread of the event loop and consumed on
+		 * its dispatch executor, so no reader thread is needed for this connection. The future returned by
+		 * {@link Launcher#startListening()} is then a {@link CompletableFuture} that is completed when the
+		 * connection is closed.
+		 */
+		public Builder<T> setChannel(SocketChannel channel, ChannelEventLoop eventLoop) {
+			if (eventLoop == null)
+				throw new NullPointerException("eventLoop");
+			this.channel = channel;
+			this.eventLoop = eventLoop;
+			return this;
+		}
+		
+		/**
+		 * Use a socket channel instead of an input and an output stream. The channel is read by a
+		 * dedicated event loop that dispatches incoming messages on the executor service of this launcher
+		 * and is closed together with the channel.
+		 * 
+		 * @see #setChannel(SocketChannel, ChannelEventLoop)
+		 */
+		public Builder<T> setChannel(SocketChannel channel) {
+			this.channel = channel;
+			this.eventLoop = null;
+			return this;
+		}
+		
+		/**
+		 * Connect the launcher to an end of an in-process connection instead of an input and an output
+		 * stream. Messages are then passed as objects to the launcher at the other end; they are only
+		 * serialized if the connection uses {@link InProcessConnection.CopyPolicy#SERIALIZE}.
+		 */
+		public Builder<T> setInProcessEnd(InProcessConnection.End inProcessEnd) {
+			this.inProcessEnd = inProcessEnd;
+			return this;
+		}
+		
+		/**
+		 * Set the executor service on which the message reader and, if enabled, the writer of outgoing
+		 * messages are run. The default is a cached thread pool.
+		 */
+		public Builder<T> setExecutorService(ExecutorService executorService) {
+			this.executorService = executorService;
+			return this;
+		}
+		
+		/**
+		 * Run the message reader, the writer of outgoing messages and, with concurrent dispatch, the
+		 * local service methods on virtual threads, so handlers that block do not hold a platform thread.
+		 * This only applies if no executor service is set. On JDKs without virtual threads the default
+		 * cached thread pool is used.
+		 * 
+		 * @see VirtualThreads
+		 */
+		public Builder<T> setVirtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+			return this;
+		}
+		
+		/**
+		 * Derive the JSON handler of the launcher from the given handler, sharing its Gson instance and its
+		 * supported methods. The handler must have been created for the same local service class and remote
+		 * interface. This avoids the configuration cost when many launchers are created for the same services.
+		 */
+		public Builder<T> setMessageJsonHandler(MessageJsonHandler sharedJsonHandler) {
+			this.sharedJsonHandler = sharedJsonHandler;
+			return this;
+		}
+		
+		/**
+		 * Set a function that wraps the incoming and the outgoing message consumers.
+		 */
+		public Builder<T> wrapMessages(Function<MessageConsumer, MessageConsumer> wrapper) {
+			this.messageWrapper = wrapper;
+			return this;
+		}
+		
+		public Builder<T> validateMessages(boolean validate) {
+			this.validateMessages = validate;
+			return this;
+		}
+		
+		public Builder<T> traceMessages(PrintWriter tracer) {
+			this.messageTracer = tracer;
+			return this;
+		}
+		
+		/**
+		 * Send outgoing messages through a bounded queue that is drained by a dedicated writer thread, so
+		 * threads that send requests, notifications or responses do not block while the output stream is
+		 * written. By default outgoing messages are written synchronously by the sending thread.
+		 * 
+		 * @param capacity - the maximal number of queued messages
+		 * @param overflowPolicy - what happens to a message sent while the queue is full
+		 */
+		public Builder<T> setOutgoingMessageQueue(int capacity, AsyncMessageConsumer.OverflowPolicy overflowPolicy) {
+			this.outgoingQueueCapacity = capacity;
+			this.outgoingOverflowPolicy = overflowPolicy;
+			return this;
+		}
+		
+		/**
+		 * Set the executor service that runs the writer thread of the outgoing message queue. The writer
+		 * occupies one of its threads as long as the launcher is listening, so this should not be a bounded
+		 * pool shared by many launchers. By default the writer runs on the executor service of the launcher.
+		 * 
+		 * @see #setOutgoingMessageQueue(int, AsyncMessageConsumer.OverflowPolicy)
+		 */
+		public Builder<T> setWriterExecutorService(ExecutorService writerExecutorService) {
+			this.writerExecutorService = writerExecutorService;
+			return this;
+		}
+		
+		/**
+		 * Coalesce the output of messages that are sent in quick succession, so they are written and
+		 * flushed together. No message is held back longer than {@code maxDelay}.
+		 * 
+		 * @see StreamMessageConsumer#setFlushCoalescing(long, TimeUnit, int, java.util.concurrent.ScheduledExecutorService)
+		 */
+		public Builder<T> setFlushCoalescing(long maxDelay, TimeUnit unit, int flushThreshold) {
+			this.maxFlushDelay = unit.toNanos(maxDelay);
+			this.flushThreshold = flushThreshold;
+			return this;
+		}
+		
+		/**
+		 * Let requests sent to the remote endpoint fail with a {@link java.util.concurrent.TimeoutException}
+		 * if no response is received in time. By default requests wait for their response indefinitely.
+		 * 
+		 * @see RemoteEndpoint#setRequestTimeout(long, TimeUnit)
+		 */
+		public Builder<T> setRequestTimeout(long timeout, TimeUnit unit) {
+			this.requestTimeout = unit.toNanos(timeout);
+			return this;
+		}
+		
+		/**
+		 * Set the request timeout for a specific method, overriding the default request timeout.
+		 * 
+		 * @see RemoteEndpoint#setRequestTimeout(String, long, TimeUnit)
+		 */
+		public Builder<T> setRequestTimeout(String method, long timeout, TimeUnit unit) {
+			if (methodRequestTimeouts == null)
+				methodRequestTimeouts = new LinkedHashMap<>();
+			methodRequestTimeouts.put(method, unit.toNanos(timeout));
+			return this;
+		}
+		
+		/**
+		 * Send a {@code $/cancelRequest} notification for requests that have timed out.
+		 */
+		public Builder<T> setCancelOnRequestTimeout(boolean cancelOnRequestTimeout) {
+			this.cancelOnRequestTimeout = cancelOnRequestTimeout;
+			return this;
+		}
+		
+		/**
+		 * Set the timer that tracks request timeouts. By default a timer shared by all launchers is used.
+		 */
+		public Builder<T> setTimer(HashedWheelTimer timer) {
+			this.timer = timer;
+			return this;
+		}
+		
+		/**
+		 * Dispatch incoming requests and notifications on the executor service instead of the thread that
+		 * reads the messages, so a local service method that does work before returning its future does not
+		 * delay reading later messages. Notifications are still applied one after another in the order they
+		 * are received, and a request starts only after all notifications received before it have been
+		 * applied; requests run concurrently with each other. Disabled by default.
+		 * 
+		 * @see ConcurrentMessageDispatcher
+		 */
+		public Builder<T> setConcurrentDispatch(boolean concurrentDispatch) {
+			this.concurrentDispatch = concurrentDispatch;
+			return this;
+		}
+		
+		/**
+		 * Enable concurrent dispatch with per-key ordering: incoming requests and notifications for which the
+		 * given function returns a key, e.g. the URI of the document they refer to, are applied one after
+		 * another per key in the order they are received, and in parallel with the messages of other keys.
+		 * Messages without a key are dispatched as described in {@link #setConcurrentDispatch(boolean)}, and a
+		 * request with a key is applied only after the notifications without a key received before it.
+		 * 
+		 * @see ConcurrentMessageDispatcher#ConcurrentMessageDispatcher(MessageConsumer, java.util.concurrent.Executor, Function)
+		 */
+		public Builder<T> setDispatchOrderingKey(Function<Message, Object> orderingKey) {
+			this.dispatchOrderingKey = orderingKey;
+			this.concurrentDispatch = orderingKey != null || concurrentDispatch;
+			return this;
+		}
+		
+		/**
+		 * Enable concurrent dispatch and merge incoming notifications that are waiting to be dispatched,
+		 * e.g. consecutive changes of the same document when the local service falls behind. The given function
+		 * merges a queued notification with the next notification of the same ordering key into one with the
+		 * same effect, or returns {@code null} if they cannot be merged.
+		 * 
+		 * @see ConcurrentMessageDispatcher#setNotificationCoalescer(BiFunction)
+		 */
+		public Builder<T> setNotificationCoalescer(BiFunction<NotificationMessage, NotificationMessage, NotificationMessage> coalescer) {
+			this.notificationCoalescer = coalescer;
+			this.concurrentDispatch = coalescer != null || concurrentDispatch;
+			return this;
+		}
+		
+		/**
+		 * Cancel incoming requests that are superseded before they are answered, i.e. requests of methods
+		 * marked as {@linkplain org.eclipse.lsp4j.jsonrpc.services.JsonRequest#supersedable() supersedable} in the
+		 * local service, when a newer request of the same method or a notification marked with
+		 * {@link org.eclipse.lsp4j.jsonrpc.services.JsonNotification#supersedesRequests() supersedesRequests} is
+		 * received for the same document. Disabled by default.
+		 * 
+		 * @param documentKey - returns the document a request or notification refers to, or {@code null}
+		 * @see RemoteEndpoint#setSupersedingPolicy(Function, java.util.Set, java.util.Set)
+		 */
+		public Builder<T> setCancelSupersededRequests(Function<Message, Object> documentKey) {
+			this.supersedingDocumentKey = documentKey;
+			return this;
+		}
+		
+		/**
+		 * Let incoming requests of the given methods share the computation of an identical request that is
+		 * still in progress, i.e. a request of the same method with equal parameters. The requests must not
+		 * have side effects. By default every request is passed to the local service.
+		 * 
+		 * @see DeduplicatingEndpoint
+		 */
+		public Builder<T> setDeduplicatedRequests(Collection<String> methods) {
+			this.deduplicatedRequests = methods;
+			return this;
+		}
+		
+		/**
+		 * Limit the number of incoming requests that are processed by the local service at the same time.
+		 * Requests that exceed the limits of the given admission control are rejected with an error response
+		 * instead of occupying a thread of the executor service. By default all requests are admitted.
+		 * 
+		 * @see RequestAdmissionControl
+		 */
+		public Builder<T> setRequestAdmission(RequestAdmissionControl admissionControl) {
+			this.admissionControl = admissionControl;
+			return this;
+		}
+		
+		/**
+		 * Keep the parameters of incoming requests and notifications as raw JSON until the local service is
+		 * invoked, so they are converted by the thread that dispatches the message, and not at all for
+		 * requests that are rejected or cancelled before. Ordering keys, notification coalescers and message
+		 * validation that inspect the parameters convert them when they are read. Disabled by default.
+		 * 
+		 * @see MessageJsonHandler#setLazyParams(boolean)
+		 */
+		public Builder<T> setLazyParams(boolean lazyParams) {
+			this.lazyParams = lazyParams;
+			return this;
+		}
+		
+		/**
+		 * Set the pool that provides the arrays for the contents of incoming messages, e.g. to share it
+		 * between launchers or to read its hit and miss counts. It is used when reading from an input stream
+		 * or from a channel without an event loop; an event loop passed to
+		 * {@link #setChannel(SocketChannel, ChannelEventLoop)} uses its own pool. By default each launcher
+		 * creates its own pool.
+		 */
+		public Builder<T> setBufferPool(ByteArrayPool bufferPool) {
+			this.bufferPool = bufferPool;
+			return this;
+		}
+		
+		public Launcher<T> create() {
+			if (localService == null)
+				throw new IllegalStateException("Local service must be configured.");
+			if (remoteInterface == null)
+				throw new IllegalStateException("Remote interface must be configured.");
+			if (channel == null && inProcessEnd == null) {
+				if (input == null)
+					throw new IllegalStateException("Input stream must be configured.");
+				if (output == null)
+					throw new IllegalStateException("Output stream must be configured.");
 			}
-
-			@Override
-			public T getRemoteProxy() {
-				return remoteProxy;
+			ExecutorService executorService = this.executorService != null ? this.executorService
+					: virtualThreads ? VirtualThreads.newExecutorService() : Executors.newCachedThreadPool();
+			Function<MessageConsumer, MessageConsumer> wrapper = getMessageWrapper();
+			
+			MessageJsonHandler jsonHandler = null;
+			if (inProcessEnd == null || inProcessEnd.getConnection().getCopyPolicy() == InProcessConnection.CopyPolicy.SERIALIZE) {
+				if (sharedJsonHandler != null)
+					jsonHandler = new MessageJsonHandler(sharedJsonHandler);
+				else
+					jsonHandler = new MessageJsonHandler(getSupportedMethods(localService, remoteInterface));
+				jsonHandler.setLazyParams(lazyParams);
+			}
+			ChannelConnection connection = null;
+			ChannelEventLoop ownEventLoop = null;
+			if (channel != null) {
+				try {
+					if (eventLoop == null) {
+						ownEventLoop = bufferPool != null ? new ChannelEventLoop(executorService, bufferPool)
+								: new ChannelEventLoop(executorService);
+						ownEventLoop.start();
+						connection = ownEventLoop.connect(channel, jsonHandler);
+					} else {
+						connection = eventLoop.connect(channel, jsonHandler);
+					}
+				} catch (IOException e) {
+					if (ownEventLoop != null)
+						ownEventLoop.close();
+					throw new RuntimeException(e);
+				}
+			}
+			MessageConsumer outGoingMessageStream;
+			if (inProcessEnd != null) {
+				inProcessEnd.setJsonHandler(jsonHandler);
+				outGoingMessageStream = inProcessEnd;
+			} else {
+				StreamMessageConsumer streamMessageConsumer = connection != null ? connection.getMessageConsumer() : new StreamMessageConsumer(output, jsonHandler);
+				if (maxFlushDelay > 0)
+					streamMessageConsumer.setFlushCoalescing(maxFlushDelay, TimeUnit.NANOSECONDS, flushThreshold, null);
+				outGoingMessageStream = streamMessageConsumer;
+			}
+			AsyncMessageConsumer outgoingQueue = null;
+			if (outgoingQueueCapacity > 0) {
+				outgoingQueue = new AsyncMessageConsumer(outGoingMessageStream, outgoingQueueCapacity, outgoingOverflowPolicy);
+				outGoingMessageStream = outgoingQueue;
+			}
+			outGoingMessageStream = wrapper.apply(outGoingMessageStream);
+			Endpoint localEndpoint = ServiceEndpoints.toEndpoint(localService);
+			if (admissionControl != null)
+				localEndpoint = admissionControl.wrap(localEndpoint);
+			if (deduplicatedRequests != null && !deduplicatedRequests.isEmpty())
+				localEndpoint = new DeduplicatingEndpoint(localEndpoint, deduplicatedRequests);
+			RemoteEndpoint serverEndpoint = new RemoteEndpoint(outGoingMessageStream, localEndpoint);
+			serverEndpoint.setRequestTimeout(requestTimeout, TimeUnit.NANOSECONDS);
+			if (methodRequestTimeouts != null) {
+				for (Map.Entry<String, Long> entry : methodRequestTimeouts.entrySet()) {
+					serverEndpoint.setRequestTimeout(entry.getKey(), entry.getValue(), TimeUnit.NANOSECONDS);
+				}
+			}
+			serverEndpoint.setCancelOnRequestTimeout(cancelOnRequestTimeout);
+			serverEndpoint.setTimer(timer);
+			serverEndpoint.setTimeoutExecutor(executorService);
+			if (supersedingDocumentKey != null) {
+				Class<?> localServiceClass = localService.getClass();
+				serverEndpoint.setSupersedingPolicy(supersedingDocumentKey,
+						ServiceEndpoints.getSupersedableRequests(localServiceClass),
+						ServiceEndpoints.getSupersedingNotifications(localServiceClass));
 			}
+			if (jsonHandler != null)
+				jsonHandler.setMethodProvider(serverEndpoint);
+			// wrap incoming message stream
+			MessageConsumer wrappedEndpoint = wrapper.apply(serverEndpoint);
+			ConcurrentMessageDispatcher dispatcher = null;
+			if (concurrentDispatch) {
+				dispatcher = new ConcurrentMessageDispatcher(wrappedEndpoint, executorService, dispatchOrderingKey);
+				dispatcher.setNotificationCoalescer(notificationCoalescer);
+				MessageConsumer responseStream = outGoingMessageStream;
+				dispatcher.setResponseConsumer(response -> {
+					// The endpoint never sees a request that is answered by the dispatcher
+					if (response instanceof ResponseMessage)
+						serverEndpoint.discardArrival(((ResponseMessage) response).getId());
+					responseStream.consume(response);
+				});
+			}
+			MessageConsumer dispatchingConsumer = dispatcher != null ? dispatcher : wrappedEndpoint;
+			MessageConsumer messageConsumer;
+			if (dispatcher != null && supersedingDocumentKey != null) {
+				// Requests may be dispatched out of order, so record the order in which they are received
+				messageConsumer = message -> {
+					serverEndpoint.recordArrival(message);
+					dispatchingConsumer.consume(message);
+				};
+			} else {
+				messageConsumer = dispatchingConsumer;
+			}
+			MessageProducer reader;
+			if (inProcessEnd != null)
+				reader = inProcessEnd;
+			else if (connection != null)
+				reader = connection;
+			else
+				reader = bufferPool != null ? new StreamMessageProducer(input, jsonHandler, bufferPool)
+						: new StreamMessageProducer(input, jsonHandler);
+			
+			T remoteProxy = ServiceEndpoints.toServiceObject(serverEndpoint, remoteInterface);
+			AsyncMessageConsumer writer = outgoingQueue;
+			ExecutorService writerExecutorService = this.writerExecutorService != null ? this.writerExecutorService : executorService;
+			ConcurrentMessageDispatcher messageDispatcher = dispatcher;
+			ChannelEventLoop launcherEventLoop = ownEventLoop;
 			
-		};
+			return new Launcher<T> () {
+
+				@Override
+				public Future<?> startListening() {
+					if (writer != null)
+						writer.start(writerExecutorService);
+					if (reader instanceof ChannelConnection)
+						return startListening((ChannelConnection) reader);
+					Future<?> result = ConcurrentMessageProcessor.startProcessing(reader, messageConsumer, executorService);
+					if (writer == null)
+						return result;
+					return new ForwardingFuture<Object>() {
+						
+						@SuppressWarnings("unchecked")
+						@Override
+						protected Future<Object> delegate() {
+							return (Future<Object>) result;
+						}
+						
+						@Override
+						public boolean cancel(boolean mayInterruptIfRunning) {
+							writer.close();
+							return super.cancel(mayInterruptIfRunning);
+						}
+					};
+				}
+
+				/**
+				 * Listen to a channel connection. The result is completed as soon as the connection is closed.
+				 */
+				private CompletableFuture<Void> startListening(ChannelConnection connection) {
+					CompletableFuture<Void> result = new CompletableFuture<Void>() {
+						@Override
+						public boolean cancel(boolean mayInterruptIfRunning) {
+							connection.close();
+							return super.cancel(mayInterruptIfRunning);
+						}
+					};
+					connection.getClosedFuture().thenRun(() -> {
+						if (writer != null)
+							writer.close();
+						if (launcherEventLoop != null)
+							launcherEventLoop.close();
+						result.complete(null);
+					});
+					connection.listen(messageConsumer);
+					return result;
+				}
+
+				@Override
+				public T getRemoteProxy() {
+					return remoteProxy;
+				}
+				
+				@Override
+				public RemoteEndpoint getRemoteEndpoint() {
+					return serverEndpoint;
+				}
+				
+				@Override
+				public AsyncMessageConsumer getOutgoingMessageQueue() {
+					return writer;
+				}
+				
+				@Override
+				public ConcurrentMessageDispatcher getMessageDispatcher() {
+					return messageDispatcher;
+				}
+				
+			};
+		}
+		
+		/**
+		 * Collect the JSON-RPC methods of the given local service and remote interface.
+		 */
+		public static Map<String, JsonRpcMethod> getSupportedMethods(Object localService, Class<?> remoteInterface) {
+			Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<String, JsonRpcMethod>();
+			supportedMethods.putAll(ServiceEndpoints.getSupportedMethods(remoteInterface));
+			
+			if (localService instanceof JsonRpcMethodProvider) {
+				JsonRpcMethodProvider rpcMethodProvider = (JsonRpcMethodProvider) localService;
+				supportedMethods.putAll(rpcMethodProvider.supportedMethods());
+			} else {
+				supportedMethods.putAll(ServiceEndpoints.getSupportedMethods(localService.getClass()));
+			}
+			return supportedMethods;
+		}
+		
+		protected Function<MessageConsumer, MessageConsumer> getMessageWrapper() {
+			return consumer -> {
+				MessageConsumer result = consumer;
+				if (messageWrapper != null) {
+					result = messageWrapper.apply(result);
+				}
+				if (messageTracer != null) {
+					MessageConsumer traced = result;
+					result = message -> {
+						messageTracer.println(message);
+						traced.consume(message);
+					};
+				}
+				if (validateMessages) {
+					result = new ReflectiveMessageValidator(result);
+				}
+				return result;
+			};
+		}
+		
 	}
 	
 	Future<?> startListening();
 	
 	T getRemoteProxy();
 	
+	/**
+	 * The endpoint that sends messages to and receives messages from the remote side. It provides
+	 * e.g. the number of requests that have timed out. Launchers created by a {@link Builder} always
+	 * provide their endpoint; other implementations return {@code null} unless they override this method.
+	 */
+	default RemoteEndpoint getRemoteEndpoint() {
+		return null;
+	}
+	
+	/**
+	 * The queue of outgoing messages, or {@code null} if outgoing messages are written by the sending
+	 * thread. It provides e.g. the number of dropped messages. Implementations that are not created by a
+	 * {@link Builder} return {@code null} unless they override this method.
+	 * 
+	 * @see Builder#setOutgoingMessageQueue(int, AsyncMessageConsumer.OverflowPolicy)
+	 */
+	default AsyncMessageConsumer getOutgoingMessageQueue() {
+		return null;
+	}
+	
+	/**
+	 * The dispatcher of incoming messages, or {@code null} if incoming messages are dispatched by the
+	 * thread that reads them. It provides e.g. the number of coalesced notifications. Implementations
+	 * that are not created by a {@link Builder} return {@code null} unless they override this method.
+	 * 
+	 * @see Builder#setConcurrentDispatch(boolean)
+	 */
+	default ConcurrentMessageDispatcher getMessageDispatcher() {
+		return null;
+	}
+	
 }
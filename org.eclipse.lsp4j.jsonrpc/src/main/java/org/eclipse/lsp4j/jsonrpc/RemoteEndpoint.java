@@ -8,12 +8,23 @@
 package org.eclipse.lsp4j.jsonrpc;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -22,7 +33,9 @@ import java.util.logging.Logger;
 import org.eclipse.lsp4j.jsonrpc.json.MessageConstants;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
 import org.eclipse.lsp4j.jsonrpc.json.MethodProvider;
+import org.eclipse.lsp4j.jsonrpc.messages.BatchMessage;
 import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
+import org.eclipse.lsp4j.jsonrpc.messages.InvalidMessage;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
 import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
@@ -57,16 +70,95 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 	private final Function<Throwable, ResponseError> exceptionHandler;
 	
 	private final AtomicInteger nextRequestId = new AtomicInteger();
-	private final Map<String, PendingRequestInfo> sentRequestMap = new LinkedHashMap<>();
-	private final Map<String, CompletableFuture<?>> receivedRequestMap = new LinkedHashMap<>();
+	
+	/**
+	 * Requests sent to the remote endpoint that have not been answered yet. The identifiers of sent
+	 * requests are generated by this endpoint, so they are always numeric. This map is accessed without
+	 * locking, including when responses are parsed, see {@link #resolveMethod(String)}.
+	 */
+	private final Map<Integer, PendingRequestInfo> sentRequestMap = new ConcurrentHashMap<>();
+	
+	/**
+	 * Requests received from the remote endpoint that are still being processed, keyed by the identifiers
+	 * chosen by the remote endpoint.
+	 */
+	private final Map<String, CompletableFuture<?>> receivedRequestMap = new ConcurrentHashMap<>();
 	
 	private static class PendingRequestInfo {
-		PendingRequestInfo(RequestMessage requestMessage2, Consumer<ResponseMessage> responseHandler2) {
-			this.requestMessage = requestMessage2;
-			this.responseHandler = responseHandler2;
+		PendingRequestInfo(int numericId, RequestMessage requestMessage, CompletableFuture<Object> result,
+				Consumer<ResponseMessage> responseHandler, long timeoutNanos) {
+			this.numericId = numericId;
+			this.requestMessage = requestMessage;
+			this.result = result;
+			this.responseHandler = responseHandler;
+			this.timeoutNanos = timeoutNanos;
+		}
+		final int numericId;
+		final RequestMessage requestMessage;
+		final CompletableFuture<Object> result;
+		final Consumer<ResponseMessage> responseHandler;
+		final long timeoutNanos;
+		volatile HashedWheelTimer.Timeout timeout;
+	}
+	
+	private HashedWheelTimer timer;
+	private Executor timeoutExecutor = ForkJoinPool.commonPool();
+	private volatile long defaultRequestTimeout;
+	private final Map<String, Long> methodRequestTimeouts = new ConcurrentHashMap<>();
+	private volatile boolean cancelOnRequestTimeout;
+	private final AtomicLong requestTimeoutCount = new AtomicLong();
+	
+	private volatile Function<Message, Object> documentKey;
+	private volatile Set<String> supersedableRequests = Collections.emptySet();
+	private volatile Set<String> supersedingNotifications = Collections.emptySet();
+	
+	/**
+	 * The latest received request per supersedable method and document.
+	 */
+	private final Map<SupersedingKey, ReceivedRequest> latestRequestMap = new ConcurrentHashMap<>();
+	private final AtomicLong supersededRequestCount = new AtomicLong();
+	
+	/**
+	 * Sequence numbers of supersedable requests in the order they have been received.
+	 */
+	private final AtomicLong arrivalCounter = new AtomicLong();
+	
+	/**
+	 * Sequence numbers recorded with {@link #recordArrival(Message)} for requests that have not been handled yet.
+	 */
+	private final Map<String, Long> arrivalSequences = new ConcurrentHashMap<>();
+	
+	private static final class ReceivedRequest {
+		final String id;
+		final long sequence;
+		
+		ReceivedRequest(String id, long sequence) {
+			this.id = id;
+			this.sequence = sequence;
+		}
+	}
+	
+	private static final class SupersedingKey {
+		final String method;
+		final Object document;
+		
+		SupersedingKey(String method, Object document) {
+			this.method = method;
+			this.document = document;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * method.hashCode() + document.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SupersedingKey))
+				return false;
+			SupersedingKey other = (SupersedingKey) obj;
+			return method.equals(other.method) && document.equals(other.document);
 		}
-		RequestMessage requestMessage;
-		Consumer<ResponseMessage> responseHandler;
 	}
 	
 	public RemoteEndpoint(MessageConsumer out, Endpoint localEndpoint, Function<Throwable, ResponseError> exceptionHandler) {
@@ -87,25 +179,181 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 
 	@Override
 	public void notify(String method, Object parameter) {
+		out.consume(createNotificationMessage(method, parameter));
+	}
+	
+	private static NotificationMessage createNotificationMessage(String method, Object parameter) {
 		NotificationMessage notificationMessage = new NotificationMessage();
 		notificationMessage.setJsonrpc(MessageConstants.JSONRPC_VERSION);
 		notificationMessage.setMethod(method);
 		notificationMessage.setParams(parameter);
-		out.consume(notificationMessage);
+		return notificationMessage;
+	}
+
+	/**
+	 * Set the time after which a request sent with {@link #request(String, Object)} fails with a
+	 * {@link TimeoutException} if no response has been received. A timeout of zero, the default, means
+	 * that requests wait for their response indefinitely.
+	 */
+	public void setRequestTimeout(long timeout, TimeUnit unit) {
+		this.defaultRequestTimeout = unit.toNanos(timeout);
+	}
+	
+	/**
+	 * Set the request timeout for a specific method, overriding the default set with
+	 * {@link #setRequestTimeout(long, TimeUnit)}. A timeout of zero disables timeouts for the method.
+	 */
+	public void setRequestTimeout(String method, long timeout, TimeUnit unit) {
+		methodRequestTimeouts.put(method, unit.toNanos(timeout));
+	}
+	
+	/**
+	 * The request timeout for the given method in nanoseconds, or zero if requests do not time out.
+	 */
+	public long getRequestTimeout(String method) {
+		Long timeout = methodRequestTimeouts.get(method);
+		return timeout != null ? timeout : defaultRequestTimeout;
+	}
+	
+	/**
+	 * Whether a {@code $/cancelRequest} notification is sent for a request that has timed out, so the
+	 * remote endpoint can stop working on it. Disabled by default.
+	 */
+	public void setCancelOnRequestTimeout(boolean cancelOnRequestTimeout) {
+		this.cancelOnRequestTimeout = cancelOnRequestTimeout;
+	}
+	
+	/**
+	 * Set the timer that tracks request timeouts. By default the {@linkplain HashedWheelTimer#getShared() shared timer}
+	 * is used.
+	 */
+	public void setTimer(HashedWheelTimer timer) {
+		this.timer = timer;
+	}
+	
+	/**
+	 * Set the executor that sends the {@code $/cancelRequest} notifications of requests that have timed out,
+	 * so the timer thread is never blocked by the outgoing message stream. By default the common fork-join
+	 * pool is used.
+	 * 
+	 * @see #setCancelOnRequestTimeout(boolean)
+	 */
+	public void setTimeoutExecutor(Executor timeoutExecutor) {
+		if (timeoutExecutor == null)
+			throw new NullPointerException("timeoutExecutor");
+		this.timeoutExecutor = timeoutExecutor;
+	}
+	
+	/**
+	 * The number of sent requests that have failed because no response was received in time.
+	 */
+	public long getRequestTimeoutCount() {
+		return requestTimeoutCount.get();
+	}
+
+	/**
+	 * Cancel received requests that have been superseded before they are answered. A pending request of
+	 * one of the given request methods is cancelled when a newer request of the same method is received
+	 * for the same document, or when one of the given notifications is received for that document. The
+	 * cancellation is handled like a {@code $/cancelRequest} notification for the superseded request, so
+	 * it is answered with a {@link ResponseErrorCode#RequestCancelled} error. Which request is newer is
+	 * decided by the order recorded with {@link #recordArrival(Message)}. By default no requests are cancelled.
+	 * 
+	 * @param documentKey - returns the document a request or notification refers to, or {@code null} if it
+	 * 		does not refer to a single document
+	 * @param supersedableRequests - the methods of requests that may be cancelled when superseded
+	 * @param supersedingNotifications - the methods of notifications that supersede all pending requests
+	 * 		for their document
+	 * 
+	 * @see org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints#getSupersedableRequests(Class)
+	 * @see org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints#getSupersedingNotifications(Class)
+	 */
+	public void setSupersedingPolicy(Function<Message, Object> documentKey, Set<String> supersedableRequests, Set<String> supersedingNotifications) {
+		this.supersedableRequests = supersedableRequests != null ? supersedableRequests : Collections.emptySet();
+		this.supersedingNotifications = supersedingNotifications != null ? supersedingNotifications : Collections.emptySet();
+		this.documentKey = documentKey;
+	}
+	
+	/**
+	 * Record the arrival of a received message before it is handed to another thread, so a request is only
+	 * superseded by requests that have been received after it, regardless of the order in which they are
+	 * dispatched. Must be called in the order the messages are received, by the thread that reads them.
+	 * Requests that have not been recorded are ordered by the time they are consumed.
+	 */
+	public void recordArrival(Message message) {
+		if (message instanceof RequestMessage) {
+			recordArrival((RequestMessage) message);
+		} else if (message instanceof BatchMessage) {
+			for (Message member : ((BatchMessage) message).getMessages()) {
+				if (member instanceof RequestMessage)
+					recordArrival((RequestMessage) member);
+			}
+		}
+	}
+	
+	private void recordArrival(RequestMessage requestMessage) {
+		if (requestMessage.getId() != null && supersedableRequests.contains(requestMessage.getMethod()))
+			arrivalSequences.put(requestMessage.getId(), arrivalCounter.incrementAndGet());
+	}
+	
+	/**
+	 * Forget the recorded arrival of a request that is answered without being handled by this endpoint.
+	 */
+	void discardArrival(String requestId) {
+		if (requestId != null)
+			arrivalSequences.remove(requestId);
+	}
+	
+	/**
+	 * The number of received requests that have been cancelled because they were superseded.
+	 */
+	public long getSupersededRequestCount() {
+		return supersededRequestCount.get();
 	}
 
 	@Override
 	public CompletableFuture<Object> request(String method, Object parameter) {
+		return request(method, parameter, getRequestTimeout(method), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Send a request with an individual timeout. If no response is received in time, the request is
+	 * removed from the pending requests and the returned future fails with a {@link TimeoutException}.
+	 * If the request cannot be sent, the returned future fails with the exception thrown by the outgoing
+	 * message consumer.
+	 * 
+	 * @param timeout - the timeout of this request, or zero to wait for the response indefinitely
+	 */
+	public CompletableFuture<Object> request(String method, Object parameter, long timeout, TimeUnit unit) {
+		PendingRequestInfo pendingRequestInfo = createRequest(method, parameter, unit.toNanos(timeout));
+		register(pendingRequestInfo);
+		try {
+			out.consume(pendingRequestInfo.requestMessage);
+		} catch (RuntimeException e) {
+			fail(pendingRequestInfo, e);
+		}
+		return pendingRequestInfo.result;
+	}
+	
+	/**
+	 * Create a request that is not pending yet. Cancelling its future cancels it on the remote endpoint only
+	 * if it has been sent and is still pending.
+	 */
+	private PendingRequestInfo createRequest(String method, Object parameter, long timeoutNanos) {
 		RequestMessage requestMessage = new RequestMessage();
-		final String id = String.valueOf(nextRequestId.incrementAndGet());
+		final int numericId = nextRequestId.incrementAndGet();
+		final String id = String.valueOf(numericId);
 		requestMessage.setId(id);
 		requestMessage.setMethod(method);
 		requestMessage.setParams(parameter);
 		final CompletableFuture<Object> result = new CompletableFuture<Object>() {
 			@Override
 			public boolean cancel(boolean mayInterruptIfRunning) {
-				sendCancelNotification(id);
-				return super.cancel(mayInterruptIfRunning);
+				// Cancel first, so a response to the cancel notification cannot complete this future
+				boolean result = super.cancel(mayInterruptIfRunning);
+				if (removePendingRequest(numericId) != null)
+					sendCancelNotification(id);
+				return result;
 			}
 		};
 		Consumer<ResponseMessage> responseHandler = (responseMessage) -> {
@@ -115,11 +363,145 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 				result.complete(responseMessage.getResult());
 			}
 		};
-		synchronized(sentRequestMap) {
-			sentRequestMap.put(id, new PendingRequestInfo(requestMessage, responseHandler));
+		return new PendingRequestInfo(numericId, requestMessage, result, responseHandler, timeoutNanos);
+	}
+	
+	/**
+	 * Add a request to the pending requests and start its timeout. Must be called before its message is sent,
+	 * so the response can be matched.
+	 */
+	private void register(PendingRequestInfo pendingRequestInfo) {
+		int numericId = pendingRequestInfo.numericId;
+		sentRequestMap.put(numericId, pendingRequestInfo);
+		long timeout = pendingRequestInfo.timeoutNanos;
+		if (timeout > 0) {
+			HashedWheelTimer timer = this.timer != null ? this.timer : HashedWheelTimer.getShared();
+			pendingRequestInfo.timeout = timer.schedule(() -> {
+				if (sentRequestMap.remove(numericId, pendingRequestInfo)) {
+					requestTimeoutCount.incrementAndGet();
+					RequestMessage requestMessage = pendingRequestInfo.requestMessage;
+					pendingRequestInfo.result.completeExceptionally(new TimeoutException("Request " + requestMessage.getMethod()
+							+ " (id " + requestMessage.getId() + ") timed out after " + TimeUnit.NANOSECONDS.toMillis(timeout) + " ms"));
+					if (cancelOnRequestTimeout)
+						sendTimeoutCancelNotification(requestMessage.getId());
+				}
+			}, timeout, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	/**
+	 * Send the cancel notification of a timed out request with the timeout executor, since writing it may block.
+	 */
+	private void sendTimeoutCancelNotification(String id) {
+		try {
+			timeoutExecutor.execute(() -> {
+				try {
+					sendCancelNotification(id);
+				} catch (RuntimeException e) {
+					LOG.log(Level.WARNING, "Failed to cancel timed out request " + id + ".", e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOG.log(Level.WARNING, "Failed to cancel timed out request " + id + ".", e);
 		}
-		out.consume(requestMessage);
-		return result;
+	}
+	
+	/**
+	 * Remove a request from the pending requests and stop its timeout.
+	 * 
+	 * @return the removed request, or {@code null} if it was not pending
+	 */
+	private PendingRequestInfo removePendingRequest(int numericId) {
+		PendingRequestInfo pendingRequestInfo = sentRequestMap.remove(numericId);
+		if (pendingRequestInfo != null && pendingRequestInfo.timeout != null)
+			pendingRequestInfo.timeout.cancel();
+		return pendingRequestInfo;
+	}
+	
+	/**
+	 * Fail a request whose message could not be sent.
+	 */
+	private void fail(PendingRequestInfo pendingRequestInfo, RuntimeException exception) {
+		removePendingRequest(pendingRequestInfo.numericId);
+		pendingRequestInfo.result.completeExceptionally(exception);
+	}
+	
+	/**
+	 * Create a batch of requests and notifications that are sent to the remote endpoint in one message.
+	 */
+	public Batch createBatch() {
+		return new Batch();
+	}
+	
+	/**
+	 * An {@link Endpoint} that collects requests and notifications until they are sent as one batch message
+	 * with {@link #send()}. The futures returned by {@link #request(String, Object)} complete when the
+	 * responses to the requests are received, which may be in any order. The requests become pending and
+	 * their timeouts start when the batch is sent; requests whose futures are cancelled before are left out.
+	 * The futures of requests in a batch that is never sent do not complete. A batch must not be used by
+	 * several threads at the same time.
+	 * 
+	 * @see org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints#toServiceObject(Endpoint, Class)
+	 */
+	public class Batch implements Endpoint {
+		
+		private final List<Message> messages = new ArrayList<>();
+		private final List<PendingRequestInfo> requests = new ArrayList<>();
+		
+		protected Batch() {
+		}
+		
+		@Override
+		public CompletableFuture<Object> request(String method, Object parameter) {
+			PendingRequestInfo pendingRequestInfo = createRequest(method, parameter, getRequestTimeout(method));
+			messages.add(pendingRequestInfo.requestMessage);
+			requests.add(pendingRequestInfo);
+			return pendingRequestInfo.result;
+		}
+		
+		@Override
+		public void notify(String method, Object parameter) {
+			messages.add(createNotificationMessage(method, parameter));
+		}
+		
+		/**
+		 * The number of requests and notifications that have been added since the batch was last sent.
+		 */
+		public int size() {
+			return messages.size();
+		}
+		
+		/**
+		 * Send the collected requests and notifications in one message. Nothing is sent if the batch is
+		 * empty. Afterwards the batch is empty and can be used again. If the message cannot be sent, the
+		 * futures of its requests fail with the thrown exception, which is rethrown.
+		 */
+		public void send() {
+			List<PendingRequestInfo> sentRequests = new ArrayList<>(requests.size());
+			for (PendingRequestInfo pendingRequestInfo : requests) {
+				if (pendingRequestInfo.result.isDone())
+					messages.remove(pendingRequestInfo.requestMessage);
+				else
+					sentRequests.add(pendingRequestInfo);
+			}
+			requests.clear();
+			if (messages.isEmpty())
+				return;
+			BatchMessage batchMessage = new BatchMessage(new ArrayList<>(messages));
+			messages.clear();
+			for (PendingRequestInfo pendingRequestInfo : sentRequests) {
+				register(pendingRequestInfo);
+			}
+			try {
+				out.consume(batchMessage);
+			} catch (RuntimeException e) {
+				for (PendingRequestInfo pendingRequestInfo : sentRequests) {
+					fail(pendingRequestInfo, e);
+				}
+				throw e;
+			}
+		}
+		
 	}
 
 	protected void sendCancelNotification(String id) {
@@ -139,14 +521,77 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 		} else if (message instanceof ResponseMessage) {
 			ResponseMessage responseMessage = (ResponseMessage) message;
 			handleResponse(responseMessage);
+		} else if (message instanceof BatchMessage) {
+			BatchMessage batchMessage = (BatchMessage) message;
+			handleBatch(batchMessage);
+		} else if (message instanceof InvalidMessage) {
+			out.consume(createErrorResponse((InvalidMessage) message));
 		}
 	}
+	
+	/**
+	 * Create the response to an invalid message. Its id is {@code null}, since the id of an invalid
+	 * message cannot be determined.
+	 */
+	private static ResponseMessage createErrorResponse(InvalidMessage invalidMessage) {
+		ResponseMessage responseMessage = new ResponseMessage();
+		responseMessage.setJsonrpc(MessageConstants.JSONRPC_VERSION);
+		String issue = invalidMessage.getIssue() != null ? invalidMessage.getIssue() : "Invalid request.";
+		responseMessage.setError(new ResponseError(ResponseErrorCode.InvalidRequest, issue, null));
+		return responseMessage;
+	}
 
-	protected void handleResponse(ResponseMessage responseMessage) {
-		PendingRequestInfo pendingRequestInfo;
-		synchronized (sentRequestMap) {
-			pendingRequestInfo = sentRequestMap.remove(responseMessage.getId());
+	/**
+	 * Handle the members of a batch in order. The responses to the requests and the error responses to the
+	 * invalid members of the batch are sent together as one batch message once all requests have been
+	 * answered, in the order of the members. If no response is sent for any of them, e.g. because the
+	 * exception handler returned {@code null} for all failed requests, nothing is sent.
+	 */
+	protected void handleBatch(BatchMessage batchMessage) {
+		int responseCount = 0;
+		for (Message member : batchMessage.getMessages()) {
+			if (member instanceof RequestMessage || member instanceof InvalidMessage)
+				responseCount++;
 		}
+		ResponseMessage[] responses = new ResponseMessage[responseCount];
+		AtomicInteger remaining = new AtomicInteger(responseCount);
+		int index = 0;
+		for (Message member : batchMessage.getMessages()) {
+			if (member instanceof RequestMessage) {
+				int responseIndex = index++;
+				AtomicBoolean answered = new AtomicBoolean();
+				handleRequest((RequestMessage) member, (responseMessage) -> {
+					if (!answered.compareAndSet(false, true))
+						return;
+					responses[responseIndex] = responseMessage;
+					if (remaining.decrementAndGet() == 0)
+						sendBatchResponse(responses);
+				});
+			} else if (member instanceof InvalidMessage) {
+				responses[index++] = createErrorResponse((InvalidMessage) member);
+				if (remaining.decrementAndGet() == 0)
+					sendBatchResponse(responses);
+			} else if (member instanceof BatchMessage) {
+				LOG.warning("Ignored a nested batch message.");
+			} else {
+				consume(member);
+			}
+		}
+	}
+	
+	private void sendBatchResponse(ResponseMessage[] responses) {
+		List<Message> messages = new ArrayList<>(responses.length);
+		for (ResponseMessage response : responses) {
+			if (response != null)
+				messages.add(response);
+		}
+		if (!messages.isEmpty())
+			out.consume(new BatchMessage(messages));
+	}
+
+	protected void handleResponse(ResponseMessage responseMessage) {
+		Integer numericId = parseRequestId(responseMessage.getId());
+		PendingRequestInfo pendingRequestInfo = numericId != null ? removePendingRequest(numericId) : null;
 		if (pendingRequestInfo == null) {
 			LOG.log(Level.WARNING, "Unmatched response message: " + responseMessage);
 		} else {
@@ -160,6 +605,8 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 
 	protected void handleNotification(NotificationMessage notificationMessage) {
 		if (!handleCancellation(notificationMessage)) {
+			if (supersedingNotifications.contains(notificationMessage.getMethod()))
+				cancelSupersededRequests(notificationMessage);
 			try {
 				localEndpoint.notify(notificationMessage.getMethod(), notificationMessage.getParams());
 			} catch (RuntimeException e) {
@@ -173,14 +620,9 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 			Object cancelParams = notificationMessage.getParams();
 			if (cancelParams != null) {
 				if (cancelParams instanceof CancelParams) {
-					synchronized (receivedRequestMap) {
-						String id = ((CancelParams) cancelParams).getId();
-						CompletableFuture<?> future = receivedRequestMap.get(id);
-						if (future != null)
-							future.cancel(true);
-						else
-							LOG.warning("Unmatched cancel notification for request id " + id);
-					}
+					String id = ((CancelParams) cancelParams).getId();
+					if (!cancelReceivedRequest(id))
+						LOG.warning("Unmatched cancel notification for request id " + id);
 					return true;
 				} else {
 					LOG.warning("Cancellation support disabled, since the '" + MessageJsonHandler.CANCEL_METHOD.getMethodName() + "' method has been registered explicitly.");
@@ -193,7 +635,71 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 		return false;
 	}
 	
+	/**
+	 * Cancel a request received from the remote endpoint that is still being processed.
+	 * 
+	 * @return {@code false} if no such request is being processed
+	 */
+	protected boolean cancelReceivedRequest(String id) {
+		CompletableFuture<?> future = id != null ? receivedRequestMap.get(id) : null;
+		if (future == null)
+			return false;
+		future.cancel(true);
+		return true;
+	}
+	
+	/**
+	 * Cancel the pending supersedable requests for the document of the given notification.
+	 */
+	protected void cancelSupersededRequests(NotificationMessage notificationMessage) {
+		Object document = getDocumentKey(notificationMessage);
+		if (document == null)
+			return;
+		for (String method : supersedableRequests) {
+			ReceivedRequest request = latestRequestMap.remove(new SupersedingKey(method, document));
+			if (request != null)
+				cancelSupersededRequest(request.id);
+		}
+	}
+	
+	private void cancelSupersededRequest(String id) {
+		CompletableFuture<?> future = receivedRequestMap.get(id);
+		if (future != null && future.cancel(true))
+			supersededRequestCount.incrementAndGet();
+	}
+	
+	private SupersedingKey getSupersedingKey(RequestMessage requestMessage) {
+		if (requestMessage.getId() == null || !supersedableRequests.contains(requestMessage.getMethod()))
+			return null;
+		Object document = getDocumentKey(requestMessage);
+		return document != null ? new SupersedingKey(requestMessage.getMethod(), document) : null;
+	}
+	
+	private Object getDocumentKey(Message message) {
+		Function<Message, Object> documentKey = this.documentKey;
+		if (documentKey == null)
+			return null;
+		try {
+			return documentKey.apply(message);
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Failed to determine the document of a message: " + message, e);
+			return null;
+		}
+	}
+	
 	protected void handleRequest(RequestMessage requestMessage) {
+		handleRequest(requestMessage, (responseMessage) -> {
+			if (responseMessage != null)
+				out.consume(responseMessage);
+		});
+	}
+	
+	/**
+	 * Pass a request to the local endpoint and its response to the given responder. The responder is called
+	 * with {@code null} if no response is sent, e.g. because the request has been cancelled.
+	 */
+	private void handleRequest(RequestMessage requestMessage, Consumer<ResponseMessage> responder) {
+		Long arrivalSequence = requestMessage.getId() != null ? arrivalSequences.remove(requestMessage.getId()) : null;
 		final ResponseMessage responseMessage = new ResponseMessage();
 		responseMessage.setId(requestMessage.getId());
 		responseMessage.setJsonrpc(MessageConstants.JSONRPC_VERSION);
@@ -204,37 +710,76 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 			ResponseError errorObject = exceptionHandler.apply(e);
 			if (errorObject != null) {
 				responseMessage.setError(errorObject);
-				out.consume(responseMessage);
+				responder.accept(responseMessage);
+			} else {
+				responder.accept(null);
 			}
 			return;
 		}
-		synchronized (receivedRequestMap) {
+		if (requestMessage.getId() != null)
 			receivedRequestMap.put(requestMessage.getId(), future);
+		SupersedingKey supersedingKey = getSupersedingKey(requestMessage);
+		ReceivedRequest receivedRequest = null;
+		if (supersedingKey != null) {
+			receivedRequest = new ReceivedRequest(requestMessage.getId(),
+					arrivalSequence != null ? arrivalSequence : arrivalCounter.incrementAndGet());
+			supersede(supersedingKey, receivedRequest);
 		}
-		future.thenAccept((result) -> {
-			responseMessage.setResult(result);
-			out.consume(responseMessage);
-		}).exceptionally((Throwable t) -> {
-			if (!(t instanceof CancellationException)) {
-				ResponseError errorObject = exceptionHandler.apply(t);
-				if (errorObject != null) {
-					responseMessage.setError(errorObject);
-					out.consume(responseMessage);
+		ReceivedRequest latestRequest = receivedRequest;
+		future.whenComplete((result, t) -> {
+			try {
+				if (t == null) {
+					responseMessage.setResult(result);
+					responder.accept(responseMessage);
+				} else {
+					Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+					ResponseError errorObject;
+					if (cause instanceof CancellationException)
+						errorObject = new ResponseError(ResponseErrorCode.RequestCancelled, "The request has been cancelled.", null);
+					else
+						errorObject = exceptionHandler.apply(t);
+					if (errorObject != null) {
+						responseMessage.setError(errorObject);
+						responder.accept(responseMessage);
+					} else {
+						responder.accept(null);
+					}
 				}
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "Failed to send the response to request " + requestMessage.getId() + ".", e);
+			} finally {
+				// Sending the response may fail, e.g. if the outgoing message queue is full
+				if (requestMessage.getId() != null)
+					receivedRequestMap.remove(requestMessage.getId(), future);
+				if (latestRequest != null)
+					latestRequestMap.remove(supersedingKey, latestRequest);
 			}
-			return null;
-		}).thenApply((obj) -> {
-			synchronized (receivedRequestMap) {
-				receivedRequestMap.remove(requestMessage.getId());
+		});
+	}
+	
+	/**
+	 * Make the given request the latest one for its method and document and cancel the one it supersedes.
+	 * A request that has been received before the current latest one is superseded itself.
+	 */
+	private void supersede(SupersedingKey supersedingKey, ReceivedRequest request) {
+		ReceivedRequest[] superseded = new ReceivedRequest[1];
+		latestRequestMap.compute(supersedingKey, (key, latest) -> {
+			if (latest != null && latest.sequence > request.sequence) {
+				superseded[0] = request;
+				return latest;
 			}
-			return null;
+			superseded[0] = latest;
+			return request;
 		});
+		if (superseded[0] != null)
+			cancelSupersededRequest(superseded[0].id);
 	}
 
 	@Override
 	public String resolveMethod(String requestId) {
-		synchronized (sentRequestMap) {
-			PendingRequestInfo requestInfo = sentRequestMap.get(requestId);
+		Integer numericId = parseRequestId(requestId);
+		if (numericId != null) {
+			PendingRequestInfo requestInfo = sentRequestMap.get(numericId);
 			if (requestInfo != null) {
 				return requestInfo.requestMessage.getMethod();
 			}
@@ -242,4 +787,32 @@ public class RemoteEndpoint implements Endpoint, MessageConsumer, MethodProvider
 		return null;
 	}
 	
+	/**
+	 * Parse the identifier of a request sent by this endpoint without throwing an exception.
+	 * 
+	 * @return the numeric identifier, or {@code null} if the given string cannot have been generated by this endpoint
+	 */
+	protected static Integer parseRequestId(String requestId) {
+		if (requestId == null)
+			return null;
+		int length = requestId.length();
+		if (length == 0 || length > 11)
+			return null;
+		int start = requestId.charAt(0) == '-' ? 1 : 0;
+		if (start == length || requestId.charAt(start) == '0' && length > start + 1)
+			return null;
+		long value = 0;
+		for (int i = start; i < length; i++) {
+			char c = requestId.charAt(i);
+			if (c < '0' || c > '9')
+				return null;
+			value = value * 10 + (c - '0');
+		}
+		if (start == 1)
+			value = -value;
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			return null;
+		return (int) value;
+	}
+	
 }
@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+
+/**
+ * Limits the number of incoming requests that are processed by local endpoints at the same time.
+ *
+ * <p>The global limit bounds the number of admitted requests, including those waiting in a queue. Methods
+ * with a {@linkplain #setMethodLimit(String, int, int) method limit} are isolated from each other: at most
+ * the given number of requests of such a method run at the same time, and further requests wait in a
+ * bounded queue of that method. A request that exceeds a limit is rejected immediately; its future fails
+ * with a {@link ResponseErrorException}, which is answered with an error response of the configured
+ * {@linkplain #setRejectionErrorCode(ResponseErrorCode) error code}. Notifications are not limited.</p>
+ *
+ * <p>An instance may be shared by several endpoints, e.g. to bound the number of requests processed by
+ * all connections of a server.</p>
+ */
+public class RequestAdmissionControl {
+
+	private final int maxInFlight;
+	private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+	private volatile ResponseErrorCode rejectionErrorCode = ResponseErrorCode.RequestFailed;
+
+	// Guarded by this
+	private int inFlight;
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong queuedCount = new AtomicLong();
+	private final AtomicLong queueWaitNanos = new AtomicLong();
+
+	/**
+	 * @param maxInFlight - the maximal number of admitted requests, running or queued
+	 */
+	public RequestAdmissionControl(int maxInFlight) {
+		if (maxInFlight <= 0)
+			throw new IllegalArgumentException("The maximal number of requests must be positive.");
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Limit the requests of the given method.
+	 *
+	 * @param method - the method name
+	 * @param maxConcurrent - the maximal number of requests of the method that run at the same time
+	 * @param maxQueued - the maximal number of requests of the method that wait for a running one to complete
+	 */
+	public RequestAdmissionControl setMethodLimit(String method, int maxConcurrent, int maxQueued) {
+		if (maxConcurrent <= 0 || maxQueued < 0)
+			throw new IllegalArgumentException("Invalid limits for method " + method);
+		bulkheads.put(method, new Bulkhead(maxConcurrent, maxQueued));
+		return this;
+	}
+
+	/**
+	 * Set the error code of the response to rejected requests, e.g.
+	 * {@link ResponseErrorCode#serverNotInitialized}. The default is {@link ResponseErrorCode#RequestFailed}.
+	 */
+	public RequestAdmissionControl setRejectionErrorCode(ResponseErrorCode rejectionErrorCode) {
+		if (rejectionErrorCode == null)
+			throw new NullPointerException("rejectionErrorCode");
+		this.rejectionErrorCode = rejectionErrorCode;
+		return this;
+	}
+
+	/**
+	 * Wrap an endpoint so its requests are subject to this admission control.
+	 */
+	public Endpoint wrap(Endpoint delegate) {
+		if (delegate == null)
+			throw new NullPointerException("delegate");
+		return new Endpoint() {
+
+			@Override
+			public CompletableFuture<?> request(String method, Object parameter) {
+				return submit(method, () -> delegate.request(method, parameter));
+			}
+
+			@Override
+			public void notify(String method, Object parameter) {
+				delegate.notify(method, parameter);
+			}
+
+		};
+	}
+
+	/**
+	 * Start the given request if the limits allow it, queue it, or reject it.
+	 */
+	public CompletableFuture<?> submit(String method, Supplier<CompletableFuture<?>> request) {
+		Bulkhead bulkhead = bulkheads.get(method);
+		QueuedRequest queued = null;
+		synchronized (this) {
+			if (inFlight >= maxInFlight)
+				return reject(method, "Too many requests in progress");
+			if (bulkhead != null) {
+				if (bulkhead.running >= bulkhead.maxConcurrent) {
+					if (bulkhead.queue.size() >= bulkhead.maxQueued)
+						return reject(method, "Too many requests of this method in progress");
+					queued = new QueuedRequest(bulkhead, request);
+					bulkhead.queue.add(queued);
+				} else {
+					bulkhead.running++;
+				}
+			}
+			inFlight++;
+		}
+		if (queued != null) {
+			queuedCount.incrementAndGet();
+			return queued.result;
+		}
+		return start(bulkhead, request);
+	}
+
+	private CompletableFuture<?> start(Bulkhead bulkhead, Supplier<CompletableFuture<?>> request) {
+		CompletableFuture<?> future;
+		try {
+			future = request.get();
+		} catch (RuntimeException | Error e) {
+			release(bulkhead);
+			throw e;
+		}
+		if (future == null)
+			release(bulkhead);
+		else
+			future.whenComplete((result, throwable) -> release(bulkhead));
+		return future;
+	}
+
+	private CompletableFuture<?> reject(String method, String reason) {
+		rejectedCount.incrementAndGet();
+		CompletableFuture<?> result = new CompletableFuture<>();
+		result.completeExceptionally(new ResponseErrorException(new ResponseError(rejectionErrorCode,
+				reason + ", rejected request " + method, null)));
+		return result;
+	}
+
+	private void release(Bulkhead bulkhead) {
+		QueuedRequest next = null;
+		synchronized (this) {
+			inFlight--;
+			if (bulkhead != null) {
+				// The queued request takes over the slot, it is already counted as in flight
+				next = bulkhead.queue.poll();
+				if (next == null)
+					bulkhead.running--;
+			}
+		}
+		if (next != null)
+			next.start();
+	}
+
+	/**
+	 * The number of admitted requests that have not been completed yet, including the queued ones.
+	 */
+	public synchronized int getInFlightCount() {
+		return inFlight;
+	}
+
+	/**
+	 * The number of requests that wait in the queue of their method.
+	 */
+	public synchronized int getQueueLength() {
+		int result = 0;
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			result += bulkhead.queue.size();
+		}
+		return result;
+	}
+
+	/**
+	 * The number of requests that have been rejected because a limit was exceeded.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * The number of requests that had to wait in the queue of their method.
+	 */
+	public long getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	/**
+	 * The total time in nanoseconds that requests have waited in a queue before they were started.
+	 */
+	public long getQueueWaitNanos() {
+		return queueWaitNanos.get();
+	}
+
+	private static class Bulkhead {
+
+		final int maxConcurrent;
+		final int maxQueued;
+		// Guarded by the admission control
+		final ArrayDeque<QueuedRequest> queue = new ArrayDeque<>();
+		int running;
+
+		Bulkhead(int maxConcurrent, int maxQueued) {
+			this.maxConcurrent = maxConcurrent;
+			this.maxQueued = maxQueued;
+		}
+
+	}
+
+	/**
+	 * A request that waits for a running request of the same method to complete.
+	 */
+	private class QueuedRequest {
+
+		final Bulkhead bulkhead;
+		final Supplier<CompletableFuture<?>> request;
+		final long queuedTime = System.nanoTime();
+		final CompletableFuture<Object> result = new CompletableFuture<Object>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				boolean cancelled = super.cancel(mayInterruptIfRunning);
+				if (cancelled)
+					cancelled();
+				return cancelled;
+			}
+		};
+		private CompletableFuture<?> computation;
+
+		QueuedRequest(Bulkhead bulkhead, Supplier<CompletableFuture<?>> request) {
+			this.bulkhead = bulkhead;
+			this.request = request;
+		}
+
+		void start() {
+			queueWaitNanos.addAndGet(System.nanoTime() - queuedTime);
+			if (result.isDone()) {
+				release(bulkhead);
+				return;
+			}
+			CompletableFuture<?> computation;
+			try {
+				computation = request.get();
+			} catch (RuntimeException | Error e) {
+				release(bulkhead);
+				result.completeExceptionally(e);
+				return;
+			}
+			if (computation == null) {
+				release(bulkhead);
+				result.complete(null);
+				return;
+			}
+			synchronized (this) {
+				this.computation = computation;
+			}
+			computation.whenComplete((value, throwable) -> {
+				release(bulkhead);
+				if (throwable != null)
+					result.completeExceptionally(throwable);
+				else
+					result.complete(value);
+			});
+			if (result.isCancelled())
+				computation.cancel(true);
+		}
+
+		private void cancelled() {
+			boolean removed;
+			synchronized (RequestAdmissionControl.this) {
+				removed = bulkhead.queue.remove(this);
+				if (removed)
+					inFlight--;
+			}
+			if (!removed) {
+				CompletableFuture<?> computation;
+				synchronized (this) {
+					computation = this.computation;
+				}
+				if (computation != null)
+					computation.cancel(true);
+			}
+		}
+
+	}
+
+}
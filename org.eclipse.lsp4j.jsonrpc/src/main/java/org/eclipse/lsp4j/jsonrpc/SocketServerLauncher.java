@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.json.ChannelEventLoop;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethodProvider;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+
+/**
+ * A server that keeps accepting socket connections and creates a {@link Launcher} for each of them,
+ * so a single process can serve many clients. All connections are multiplexed by one
+ * {@link ChannelEventLoop} and share one bounded executor for message dispatch as well as the Gson
+ * instance and the method table of a single {@link MessageJsonHandler}.
+ *
+ * <p>A new local service is obtained from the configured factory for each connection. Use a
+ * {@link SessionListener} to connect the local service to the remote proxy of its session.</p>
+ */
+public class SocketServerLauncher<T> implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(SocketServerLauncher.class.getName());
+
+	/**
+	 * Callbacks for the lifecycle of the sessions of a {@link SocketServerLauncher}. They are invoked on
+	 * the accept thread when a session starts or a connection is rejected, and on an arbitrary thread
+	 * when a session is closed.
+	 */
+	public static interface SessionListener<T> {
+
+		/**
+		 * Called after a session has been created and before it starts listening for incoming messages.
+		 */
+		default void sessionStarted(Session<T> session) {}
+
+		/**
+		 * Called after the connection of a session has been closed by either side.
+		 */
+		default void sessionClosed(Session<T> session) {}
+
+		/**
+		 * Called when a connection is closed right away because the maximal number of sessions is reached.
+		 */
+		default void connectionRejected(SocketChannel channel) {}
+
+	}
+
+	/**
+	 * A connection to a single client.
+	 */
+	public static class Session<T> {
+
+		private final Object localService;
+		private final Launcher<T> launcher;
+		private final SocketAddress remoteAddress;
+		private CompletableFuture<?> future;
+
+		Session(Object localService, Launcher<T> launcher, SocketAddress remoteAddress) {
+			this.localService = localService;
+			this.launcher = launcher;
+			this.remoteAddress = remoteAddress;
+		}
+
+		public Object getLocalService() {
+			return localService;
+		}
+
+		public T getRemoteProxy() {
+			return launcher.getRemoteProxy();
+		}
+
+		public SocketAddress getRemoteAddress() {
+			return remoteAddress;
+		}
+
+		/**
+		 * Close the connection of this session.
+		 */
+		public void close() {
+			if (future != null)
+				future.cancel(true);
+		}
+
+	}
+
+	public static class Builder<T> {
+
+		private Supplier<?> localServiceFactory;
+		private Class<T> remoteInterface;
+		private SocketAddress socketAddress;
+		private ExecutorService executorService;
+		private int maxSessions = DEFAULT_MAX_SESSIONS;
+		private SessionListener<T> sessionListener;
+		private Consumer<Launcher.Builder<T>> launcherConfiguration;
+
+		/**
+		 * Set the factory that creates the local service for each new connection.
+		 */
+		public Builder<T> setLocalServiceFactory(Supplier<?> localServiceFactory) {
+			this.localServiceFactory = localServiceFactory;
+			return this;
+		}
+
+		public Builder<T> setRemoteInterface(Class<T> remoteInterface) {
+			this.remoteInterface = remoteInterface;
+			return this;
+		}
+
+		/**
+		 * Set the address to listen on. This may be the address of a Unix domain socket obtained with
+		 * {@link UnixDomainSockets#getAddress(java.nio.file.Path)}; its socket file is created when the
+		 * server is created, replacing a stale socket file, and deleted when the server is closed.
+		 */
+		public Builder<T> setSocketAddress(SocketAddress socketAddress) {
+			this.socketAddress = socketAddress;
+			return this;
+		}
+
+		/**
+		 * Set the executor service on which incoming messages of all connections are dispatched. The
+		 * default is a fixed thread pool with one thread per available processor, which is shut down
+		 * when the server is closed. An executor service set here is not shut down by the server.
+		 */
+		public Builder<T> setExecutorService(ExecutorService executorService) {
+			this.executorService = executorService;
+			return this;
+		}
+
+		/**
+		 * Set the maximal number of concurrent sessions. Connections accepted while this number is
+		 * reached are closed immediately.
+		 */
+		public Builder<T> setMaxSessions(int maxSessions) {
+			this.maxSessions = maxSessions;
+			return this;
+		}
+
+		public Builder<T> setSessionListener(SessionListener<T> sessionListener) {
+			this.sessionListener = sessionListener;
+			return this;
+		}
+
+		/**
+		 * Apply additional configuration, e.g. message tracing or validation, to the launcher builder of
+		 * each connection. The local service, the remote interface, the channel, the executor services and
+		 * the JSON handler are set by the server. The writers of
+		 * {@linkplain Launcher.Builder#setOutgoingMessageQueue(int, org.eclipse.lsp4j.jsonrpc.json.AsyncMessageConsumer.OverflowPolicy)
+		 * outgoing message queues} run on dedicated threads, virtual ones if supported, so they do not occupy
+		 * the bounded executor service of the server.
+		 */
+		public Builder<T> configureLaunchers(Consumer<Launcher.Builder<T>> launcherConfiguration) {
+			this.launcherConfiguration = launcherConfiguration;
+			return this;
+		}
+
+		/**
+		 * Bind the server socket and create the server. Call {@link SocketServerLauncher#start()} to
+		 * start accepting connections.
+		 */
+		public SocketServerLauncher<T> create() throws IOException {
+			if (localServiceFactory == null)
+				throw new IllegalStateException("Local service factory must be configured.");
+			if (remoteInterface == null)
+				throw new IllegalStateException("Remote interface must be configured.");
+			if (socketAddress == null)
+				throw new IllegalStateException("Socket address must be configured.");
+			if (maxSessions <= 0)
+				throw new IllegalStateException("The maximal number of sessions must be positive.");
+			SessionListener<T> sessionListener = this.sessionListener != null ? this.sessionListener : new SessionListener<T>() {};
+			if (UnixDomainSockets.isUnixAddress(socketAddress))
+				UnixDomainSockets.deleteStaleSocketFile(UnixDomainSockets.getPath(socketAddress));
+			ServerSocketChannel serverChannel = UnixDomainSockets.openServerSocketChannel(socketAddress);
+			ExecutorService executorService = this.executorService != null ? this.executorService
+					: Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			try {
+				serverChannel.bind(socketAddress);
+				return new SocketServerLauncher<T>(this, serverChannel, executorService, sessionListener);
+			} catch (IOException | RuntimeException e) {
+				serverChannel.close();
+				if (executorService != this.executorService)
+					executorService.shutdown();
+				throw e;
+			}
+		}
+
+	}
+
+	public static final int DEFAULT_MAX_SESSIONS = 64;
+
+	private final Supplier<?> localServiceFactory;
+	private final Class<T> remoteInterface;
+	private final int maxSessions;
+	private final SessionListener<T> sessionListener;
+	private final Consumer<Launcher.Builder<T>> launcherConfiguration;
+
+	private final ServerSocketChannel serverChannel;
+	private final Path socketPath;
+	private final ExecutorService executorService;
+	private final boolean ownsExecutorService;
+	private final ExecutorService writerExecutorService = VirtualThreads.newExecutorService();
+	private final ChannelEventLoop eventLoop;
+
+	/**
+	 * JSON handlers shared by all sessions whose local services have the same class.
+	 */
+	private final Map<Class<?>, MessageJsonHandler> jsonHandlers = new ConcurrentHashMap<>();
+
+	private final Set<Session<T>> sessions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+	private Thread acceptThread;
+	private volatile boolean keepRunning;
+
+	protected SocketServerLauncher(Builder<T> builder, ServerSocketChannel serverChannel, ExecutorService executorService,
+			SessionListener<T> sessionListener) throws IOException {
+		this.localServiceFactory = builder.localServiceFactory;
+		this.remoteInterface = builder.remoteInterface;
+		this.maxSessions = builder.maxSessions;
+		this.launcherConfiguration = builder.launcherConfiguration;
+		this.sessionListener = sessionListener;
+		this.serverChannel = serverChannel;
+		this.socketPath = UnixDomainSockets.isUnixAddress(builder.socketAddress) ? UnixDomainSockets.getPath(builder.socketAddress) : null;
+		this.executorService = executorService;
+		this.ownsExecutorService = executorService != builder.executorService;
+		this.eventLoop = new ChannelEventLoop(executorService);
+	}
+
+	/**
+	 * Start accepting connections on a dedicated thread.
+	 */
+	public synchronized void start() {
+		if (acceptThread != null)
+			throw new IllegalStateException("The server is already running.");
+		keepRunning = true;
+		eventLoop.start();
+		acceptThread = new Thread(this::acceptConnections, "lsp4j-accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	protected void acceptConnections() {
+		while (keepRunning) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				if (sessions.size() >= maxSessions) {
+					LOG.warning("Maximal number of sessions reached, rejecting connection from " + channel.getRemoteAddress());
+					channel.close();
+					sessionListener.connectionRejected(channel);
+				} else {
+					try {
+						startSession(channel);
+					} catch (IOException | RuntimeException e) {
+						// The channel is not owned by a session, so it would never be closed otherwise
+						channel.close();
+						throw e;
+					}
+				}
+			} catch (AsynchronousCloseException e) {
+				// The server has been closed
+				keepRunning = false;
+			} catch (IOException | RuntimeException e) {
+				LOG.log(Level.SEVERE, e.getMessage(), e);
+			}
+		}
+	}
+
+	protected void startSession(SocketChannel channel) throws IOException {
+		Object localService = localServiceFactory.get();
+		Launcher.Builder<T> launcherBuilder = new Launcher.Builder<T>();
+		if (launcherConfiguration != null)
+			launcherConfiguration.accept(launcherBuilder);
+		Launcher<T> launcher = launcherBuilder
+				.setLocalService(localService)
+				.setRemoteInterface(remoteInterface)
+				.setChannel(channel, eventLoop)
+				.setExecutorService(executorService)
+				.setWriterExecutorService(writerExecutorService)
+				.setMessageJsonHandler(getJsonHandler(localService))
+				.create();
+		Session<T> session = new Session<T>(localService, launcher, channel.getRemoteAddress());
+		sessions.add(session);
+		try {
+			sessionListener.sessionStarted(session);
+			session.future = (CompletableFuture<?>) launcher.startListening();
+		} catch (RuntimeException e) {
+			sessions.remove(session);
+			throw e;
+		}
+		session.future.whenComplete((result, throwable) -> {
+			if (sessions.remove(session))
+				sessionListener.sessionClosed(session);
+		});
+	}
+
+	private MessageJsonHandler getJsonHandler(Object localService) {
+		if (localService instanceof JsonRpcMethodProvider)
+			// The supported methods may differ between instances
+			return new MessageJsonHandler(Launcher.Builder.getSupportedMethods(localService, remoteInterface));
+		return jsonHandlers.computeIfAbsent(localService.getClass(),
+				c -> new MessageJsonHandler(Launcher.Builder.getSupportedMethods(localService, remoteInterface)));
+	}
+
+	public SocketAddress getLocalAddress() throws IOException {
+		return serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * The currently open sessions.
+	 */
+	public Collection<Session<T>> getSessions() {
+		return Collections.unmodifiableCollection(new ArrayList<>(sessions));
+	}
+
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Stop accepting connections and close all sessions. The socket file of a Unix domain socket is
+	 * deleted. The executor service is shut down only if it has been created by the server.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		keepRunning = false;
+		serverChannel.close();
+		if (socketPath != null)
+			Files.deleteIfExists(socketPath);
+		for (Session<T> session : getSessions()) {
+			session.close();
+		}
+		eventLoop.close();
+		writerExecutorService.shutdown();
+		if (ownsExecutorService)
+			executorService.shutdown();
+		acceptThread = null;
+	}
+
+}
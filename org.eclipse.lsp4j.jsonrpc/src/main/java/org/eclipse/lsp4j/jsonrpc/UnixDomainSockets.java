@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Access to Unix domain sockets, which are supported by Java 16 and later. The API is accessed
+ * reflectively, so this class can be loaded on older Java versions; use {@link #isSupported()} to
+ * check whether Unix domain sockets are available.
+ *
+ * <p>Unix domain socket channels are selectable like TCP socket channels, so they can be used with
+ * {@link Launcher.Builder#setChannel(SocketChannel)} or a {@link SocketServerLauncher}.</p>
+ */
+public final class UnixDomainSockets {
+	private UnixDomainSockets() {}
+
+	private static final Class<?> ADDRESS_CLASS;
+	private static final Method ADDRESS_OF;
+	private static final Method ADDRESS_GET_PATH;
+	private static final ProtocolFamily UNIX_FAMILY;
+	private static final Method OPEN_SERVER_CHANNEL;
+	private static final Method OPEN_CHANNEL;
+
+	static {
+		Class<?> addressClass = null;
+		Method addressOf = null;
+		Method addressGetPath = null;
+		ProtocolFamily unixFamily = null;
+		Method openServerChannel = null;
+		Method openChannel = null;
+		try {
+			addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+			addressOf = addressClass.getMethod("of", Path.class);
+			addressGetPath = addressClass.getMethod("getPath");
+			unixFamily = StandardProtocolFamily.valueOf("UNIX");
+			openServerChannel = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+			openChannel = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalArgumentException e) {
+			addressClass = null;
+		}
+		ADDRESS_CLASS = addressClass;
+		ADDRESS_OF = addressOf;
+		ADDRESS_GET_PATH = addressGetPath;
+		UNIX_FAMILY = unixFamily;
+		OPEN_SERVER_CHANNEL = openServerChannel;
+		OPEN_CHANNEL = openChannel;
+	}
+
+	/**
+	 * Whether the running Java version supports Unix domain sockets.
+	 */
+	public static boolean isSupported() {
+		return ADDRESS_CLASS != null;
+	}
+
+	/**
+	 * Create the address of a Unix domain socket with the given path.
+	 *
+	 * @throws UnsupportedOperationException if Unix domain sockets are not supported
+	 */
+	public static SocketAddress getAddress(Path path) {
+		checkSupported();
+		try {
+			return (SocketAddress) invoke(ADDRESS_OF, null, path);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * The path of the given Unix domain socket address.
+	 *
+	 * @throws IllegalArgumentException if the address does not denote a Unix domain socket
+	 */
+	public static Path getPath(SocketAddress address) {
+		if (!isUnixAddress(address))
+			throw new IllegalArgumentException("Not a Unix domain socket address: " + address);
+		try {
+			return (Path) invoke(ADDRESS_GET_PATH, address, null);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Whether the given address denotes a Unix domain socket.
+	 */
+	public static boolean isUnixAddress(SocketAddress address) {
+		return ADDRESS_CLASS != null && ADDRESS_CLASS.isInstance(address);
+	}
+
+	/**
+	 * Open an unbound server socket channel of the protocol family that matches the given address.
+	 */
+	public static ServerSocketChannel openServerSocketChannel(SocketAddress address) throws IOException {
+		if (isUnixAddress(address))
+			return (ServerSocketChannel) invoke(OPEN_SERVER_CHANNEL, null, UNIX_FAMILY);
+		return ServerSocketChannel.open();
+	}
+
+	/**
+	 * Open a socket channel of the protocol family that matches the given address and connect it.
+	 */
+	public static SocketChannel openSocketChannel(SocketAddress address) throws IOException {
+		if (!isUnixAddress(address))
+			return SocketChannel.open(address);
+		SocketChannel channel = (SocketChannel) invoke(OPEN_CHANNEL, null, UNIX_FAMILY);
+		try {
+			channel.connect(address);
+			return channel;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Bind a new server socket channel to the Unix domain socket with the given path. The socket file
+	 * is created by this operation; a stale socket file is deleted before, see
+	 * {@link #deleteStaleSocketFile(Path)}. Closing the channel does not delete the socket file.
+	 */
+	public static ServerSocketChannel bind(Path path) throws IOException {
+		SocketAddress address = getAddress(path);
+		deleteStaleSocketFile(path);
+		ServerSocketChannel channel = openServerSocketChannel(address);
+		try {
+			channel.bind(address);
+			return channel;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Delete the socket file with the given path if no server is listening on it anymore, e.g. because the
+	 * process that bound it has terminated without deleting it. Otherwise binding to the path fails as
+	 * long as the file exists. Files that are not sockets and sockets that accept connections are kept.
+	 */
+	public static void deleteStaleSocketFile(Path path) throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException e) {
+			return;
+		}
+		if (!attributes.isOther())
+			return;
+		SocketChannel channel;
+		try {
+			channel = connect(path);
+		} catch (IOException e) {
+			Files.deleteIfExists(path);
+			return;
+		}
+		// A server is still listening on the socket
+		channel.close();
+	}
+
+	/**
+	 * Connect a new socket channel to the Unix domain socket with the given path.
+	 */
+	public static SocketChannel connect(Path path) throws IOException {
+		return openSocketChannel(getAddress(path));
+	}
+
+	private static void checkSupported() {
+		if (!isSupported())
+			throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later.");
+	}
+
+	private static Object invoke(Method method, Object receiver, Object argument) throws IOException {
+		try {
+			if (method.getParameterCount() == 0)
+				return method.invoke(receiver);
+			return method.invoke(receiver, argument);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Access to virtual threads on JDKs that support them. The API is looked up reflectively, so this class
+ * can be used on any JDK; where virtual threads are not available, platform threads are used instead.
+ */
+public final class VirtualThreads {
+	private VirtualThreads() {}
+
+	private static final Logger LOG = Logger.getLogger(VirtualThreads.class.getName());
+
+	private static final ThreadFactory FACTORY = createFactory();
+
+	private static final Executor EXECUTOR = FACTORY != null ? runnable -> FACTORY.newThread(runnable).start() : null;
+
+	/**
+	 * Holder of the shared fallback executor for blocking tasks, created on first use.
+	 */
+	private static class PlatformThreads {
+		static final ExecutorService INSTANCE = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "lsp4j-blocking");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Create a factory for virtual threads with {@code Thread.ofVirtual().name("lsp4j-virtual-", 0).factory()},
+	 * or return {@code null} if virtual threads are not supported.
+	 */
+	private static ThreadFactory createFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			Method factory = builderClass.getMethod("factory");
+			Object builder = ofVirtual.invoke(null);
+			builder = name.invoke(builder, "lsp4j-virtual-", 0L);
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (NoSuchMethodException | ClassNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			// e.g. virtual threads are a preview feature that is not enabled
+			LOG.log(Level.FINE, "Virtual threads are not available.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Whether the running JDK supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		return FACTORY != null;
+	}
+
+	/**
+	 * Create an executor service that runs each task on a new virtual thread. If virtual threads are not
+	 * supported, a cached thread pool is returned, which is the default executor service of a {@link Launcher}.
+	 */
+	public static ExecutorService newExecutorService() {
+		if (FACTORY == null)
+			return Executors.newCachedThreadPool();
+		try {
+			Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, FACTORY);
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to create a virtual thread executor.", e);
+		}
+	}
+
+	/**
+	 * An executor that runs each task on a new virtual thread, e.g. for
+	 * {@link CompletableFutures#computeAsync(Executor, java.util.function.Function)} with a computation that
+	 * blocks. If virtual threads are not supported, a shared cached pool of daemon platform threads is
+	 * returned; unlike the common fork join pool it does not limit the number of blocked tasks.
+	 */
+	public static Executor getExecutor() {
+		return EXECUTOR != null ? EXECUTOR : PlatformThreads.INSTANCE;
+	}
+
+}
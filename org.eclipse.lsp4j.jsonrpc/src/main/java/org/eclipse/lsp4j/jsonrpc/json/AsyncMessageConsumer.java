@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+
+/**
+ * A message consumer that puts messages into a bounded queue and forwards them to a delegate consumer
+ * on a dedicated writer thread. Threads that send messages are thus decoupled from a slow remote side.
+ * The writer thread forwards all queued messages in a batch; if the delegate is a
+ * {@link StreamMessageConsumer}, the output is flushed only once per batch.
+ *
+ * <p>The behavior when the queue is full is determined by an {@link OverflowPolicy}. The writer thread
+ * must be started with {@link #start(ExecutorService)}.</p>
+ */
+public class AsyncMessageConsumer implements MessageConsumer, Closeable {
+
+	/**
+	 * The behavior of {@link AsyncMessageConsumer#consume(Message)} when the queue is full.
+	 */
+	public static enum OverflowPolicy {
+		/**
+		 * Block the sending thread until the writer has made space in the queue.
+		 */
+		BLOCK,
+		/**
+		 * Drop the message and log a warning. Note that dropping a request or a response leaves the
+		 * corresponding future of the remote side uncompleted.
+		 */
+		DROP,
+		/**
+		 * Throw a {@link RejectedExecutionException}.
+		 */
+		FAIL
+	}
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final int MAX_BATCH_SIZE = 256;
+
+	/**
+	 * Interval in milliseconds in which blocked senders check whether the consumer has been closed.
+	 */
+	private static final long CLOSED_CHECK_INTERVAL = 100;
+
+	private static final Logger LOG = Logger.getLogger(AsyncMessageConsumer.class.getName());
+
+	private final MessageConsumer delegate;
+	private final BlockingQueue<Message> queue;
+	private final int capacity;
+	private final OverflowPolicy overflowPolicy;
+
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private volatile boolean keepRunning;
+	private volatile boolean closed;
+	private Future<?> writerFuture;
+
+	public AsyncMessageConsumer(MessageConsumer delegate) {
+		this(delegate, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	public AsyncMessageConsumer(MessageConsumer delegate, int capacity, OverflowPolicy overflowPolicy) {
+		if (delegate == null)
+			throw new NullPointerException("delegate");
+		if (overflowPolicy == null)
+			throw new NullPointerException("overflowPolicy");
+		this.delegate = delegate;
+		this.capacity = capacity;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Start the writer on a thread of the given executor service.
+	 */
+	public synchronized Future<?> start(ExecutorService executorService) {
+		if (closed)
+			throw new IllegalStateException("The message consumer is closed.");
+		if (writerFuture != null)
+			throw new IllegalStateException("The writer is already running.");
+		keepRunning = true;
+		writerFuture = executorService.submit(this::run);
+		return writerFuture;
+	}
+
+	/**
+	 * Put the given message into the queue.
+	 * 
+	 * @throws RejectedExecutionException if this consumer has been closed, or if the queue is full and
+	 *     the overflow policy is {@link OverflowPolicy#FAIL}
+	 */
+	@Override
+	public void consume(Message message) {
+		checkNotClosed();
+		boolean added;
+		switch (overflowPolicy) {
+		case BLOCK:
+			try {
+				// Wait in intervals, so a sender blocked by a full queue is released when the consumer is closed
+				do {
+					added = queue.offer(message, CLOSED_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+					checkNotClosed();
+				} while (!added);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for space in the outgoing message queue.", e);
+			}
+			break;
+		case DROP:
+			added = queue.offer(message);
+			if (!added) {
+				droppedCount.incrementAndGet();
+				LOG.warning("Outgoing message queue is full, dropping message: " + message);
+			}
+			break;
+		default:
+			added = queue.offer(message);
+			if (!added) {
+				rejectedCount.incrementAndGet();
+				throw new RejectedExecutionException("Outgoing message queue is full.");
+			}
+		}
+		if (added) {
+			int depth = queue.size();
+			maxQueueDepth.accumulateAndGet(depth, Math::max);
+		}
+	}
+
+	private void checkNotClosed() {
+		if (closed)
+			throw new RejectedExecutionException("The outgoing message queue is closed.");
+	}
+
+	protected void run() {
+		List<Message> batch = new ArrayList<>(MAX_BATCH_SIZE);
+		while (keepRunning) {
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+				writeBatch(batch);
+			} catch (InterruptedException e) {
+				keepRunning = false;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Forward the given messages to the delegate. A message that cannot be written is logged, and the
+	 * remaining messages of the batch are written nevertheless.
+	 */
+	protected void writeBatch(List<Message> batch) {
+		batchCount.incrementAndGet();
+		if (delegate instanceof StreamMessageConsumer) {
+			StreamMessageConsumer streamConsumer = (StreamMessageConsumer) delegate;
+			for (Message message : batch) {
+				try {
+					streamConsumer.write(message);
+				} catch (RuntimeException e) {
+					LOG.log(Level.SEVERE, "Failed to write outgoing message: " + message, e);
+				}
+			}
+			try {
+				streamConsumer.flush();
+			} catch (RuntimeException e) {
+				LOG.log(Level.SEVERE, "Failed to flush outgoing messages.", e);
+			}
+		} else {
+			for (Message message : batch) {
+				try {
+					delegate.consume(message);
+				} catch (RuntimeException e) {
+					LOG.log(Level.SEVERE, "Failed to write outgoing message: " + message, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop the writer thread. Messages that are still queued are discarded, and subsequent calls of
+	 * {@link #consume(Message)} as well as senders blocked by a full queue fail with a
+	 * {@link RejectedExecutionException}.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		keepRunning = false;
+		if (writerFuture != null) {
+			writerFuture.cancel(true);
+			writerFuture = null;
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * The number of messages currently waiting in the queue.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * The largest number of messages that were waiting in the queue at the same time.
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * The number of messages dropped with {@link OverflowPolicy#DROP}.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * The number of messages rejected with {@link OverflowPolicy#FAIL}.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * The number of batches forwarded to the delegate consumer so far.
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of byte arrays used to receive message contents. Arrays are handed out in size classes
+ * of powers of two, so an array obtained with {@link #acquire(int)} may be longer than requested, unless
+ * its size class exceeds the maximal pool size.
+ * Released arrays are retained only as long as the total size of all retained arrays does not exceed
+ * the configured maximum. Instances are thread-safe and may be shared between message producers.
+ */
+public class ByteArrayPool {
+
+	public static final long DEFAULT_MAX_POOLED_BYTES = 16 * 1024 * 1024;
+
+	/**
+	 * The smallest size class; smaller requests are served with arrays of this size.
+	 */
+	private static final int MIN_SIZE_CLASS = 10;
+
+	/**
+	 * The largest size class; larger requests are served with new arrays of exactly the requested size.
+	 */
+	private static final int MAX_SIZE_CLASS = 30;
+
+	private final long maxPooledBytes;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final Queue<byte[]>[] sizeClasses = new Queue[MAX_SIZE_CLASS + 1];
+
+	private final AtomicLong pooledBytes = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	public ByteArrayPool() {
+		this(DEFAULT_MAX_POOLED_BYTES);
+	}
+
+	/**
+	 * @param maxPooledBytes - the maximal total size of the arrays retained by this pool
+	 */
+	public ByteArrayPool(long maxPooledBytes) {
+		if (maxPooledBytes < 0)
+			throw new IllegalArgumentException("maxPooledBytes must not be negative.");
+		this.maxPooledBytes = maxPooledBytes;
+		for (int i = MIN_SIZE_CLASS; i <= MAX_SIZE_CLASS; i++) {
+			sizeClasses[i] = new ConcurrentLinkedQueue<>();
+		}
+	}
+
+	/**
+	 * Obtain an array with at least the given length, preferably a pooled one.
+	 */
+	public byte[] acquire(int minLength) {
+		int sizeClass = getSizeClass(minLength);
+		if (sizeClass > MAX_SIZE_CLASS || 1L << sizeClass > maxPooledBytes) {
+			// The array could never be pooled, so rounding up its size would only waste memory
+			missCount.incrementAndGet();
+			return new byte[minLength];
+		}
+		byte[] result = sizeClasses[sizeClass].poll();
+		if (result != null) {
+			pooledBytes.addAndGet(-result.length);
+			hitCount.incrementAndGet();
+			return result;
+		}
+		missCount.incrementAndGet();
+		return new byte[1 << sizeClass];
+	}
+
+	/**
+	 * Return an array to this pool. The array must not be used by the caller afterwards. Arrays that
+	 * were not obtained from a pool or that would exceed the maximal pool size are dropped.
+	 */
+	public void release(byte[] array) {
+		int length = array.length;
+		if (length == 0 || Integer.bitCount(length) != 1)
+			return;
+		int sizeClass = Integer.numberOfTrailingZeros(length);
+		if (sizeClass < MIN_SIZE_CLASS || sizeClass > MAX_SIZE_CLASS)
+			return;
+		long newSize = pooledBytes.addAndGet(length);
+		if (newSize > maxPooledBytes) {
+			pooledBytes.addAndGet(-length);
+			return;
+		}
+		sizeClasses[sizeClass].offer(array);
+	}
+
+	private static int getSizeClass(int length) {
+		if (length <= 1 << MIN_SIZE_CLASS)
+			return MIN_SIZE_CLASS;
+		return 32 - Integer.numberOfLeadingZeros(length - 1);
+	}
+
+	public long getMaxPooledBytes() {
+		return maxPooledBytes;
+	}
+
+	/**
+	 * The total size of the arrays currently retained by this pool.
+	 */
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	/**
+	 * The number of requests that were served with a pooled array.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * The number of requests for which a new array had to be allocated.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+}
@@ -0,0 +1,471 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.MessageProducer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+
+/**
+ * A socket channel registered with a {@link ChannelEventLoop}. Incoming data is framed incrementally by
+ * the selector thread; each complete message is parsed and forwarded on the dispatch executor of the
+ * event loop, one message after another. Outgoing messages are sent with the consumer obtained from
+ * {@link #getMessageConsumer()}.
+ *
+ * <p>Both directions are bounded: reading from the channel is suspended while the parsed but not yet
+ * consumed input exceeds {@link #setMaxQueuedReadBytes(long)}, and writers are blocked while the
+ * output that the channel has not accepted yet exceeds {@link #setMaxPendingWriteBytes(long)}.</p>
+ */
+public class ChannelConnection implements MessageProducer, Closeable, MessageConstants {
+
+	private static final Logger LOG = Logger.getLogger(ChannelConnection.class.getName());
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	/**
+	 * Maximal number of bytes accepted for the header block of a single message.
+	 */
+	private static final int MAX_HEADER_SIZE = 65536;
+
+	/**
+	 * Maximal number of messages forwarded in one task of the dispatch executor, so a busy connection
+	 * does not starve the others.
+	 */
+	private static final int MAX_DISPATCH_BATCH = 64;
+
+	public static final long DEFAULT_MAX_QUEUED_READ_BYTES = 8 * 1024 * 1024;
+
+	public static final long DEFAULT_MAX_PENDING_WRITE_BYTES = 16 * 1024 * 1024;
+
+	private final ChannelEventLoop eventLoop;
+	private final SocketChannel channel;
+	private final MessageJsonHandler jsonHandler;
+	private final ByteArrayPool bufferPool;
+	private final CompletableFuture<Void> closedFuture = new CompletableFuture<>();
+
+	private volatile SelectionKey selectionKey;
+	private volatile MessageConsumer callback;
+	private StreamMessageConsumer messageConsumer;
+
+	// Read state, accessed only by the selector thread
+	private final MessageHeaders headers = new MessageHeaders();
+	private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	private int position;
+	private byte[] pendingContent;
+	private int pendingFilled;
+	private int pendingLength;
+	private String pendingCharset;
+
+	// Messages waiting to be forwarded to the callback
+	private final Queue<Runnable> dispatchQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean dispatching = new AtomicBoolean();
+	private final AtomicLong queuedReadBytes = new AtomicLong();
+	private volatile long maxQueuedReadBytes = DEFAULT_MAX_QUEUED_READ_BYTES;
+	private volatile boolean readSuspended;
+
+	// Write state, guarded by writeLock; not a monitor, so virtual threads waiting for the output queue
+	// do not pin their carrier thread
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final Condition writeQueueDrained = writeLock.newCondition();
+	private final Queue<ByteBuffer> writeQueue = new ArrayDeque<>();
+	private long pendingWriteBytes;
+	private volatile long maxPendingWriteBytes = DEFAULT_MAX_PENDING_WRITE_BYTES;
+	private volatile boolean writeInterest;
+
+	private volatile boolean closed;
+
+	ChannelConnection(ChannelEventLoop eventLoop, SocketChannel channel, MessageJsonHandler jsonHandler) {
+		this.eventLoop = eventLoop;
+		this.channel = channel;
+		this.jsonHandler = jsonHandler;
+		this.bufferPool = eventLoop.getBufferPool();
+	}
+
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Start reading incoming messages and forward them to the given consumer. In contrast to other
+	 * message producers this method does not block; use {@link #getClosedFuture()} to wait until the
+	 * connection is closed.
+	 */
+	@Override
+	public void listen(MessageConsumer callback) {
+		this.callback = callback;
+		eventLoop.execute(this::updateInterestOps);
+	}
+
+	/**
+	 * The consumer for messages sent through this connection. Messages are written directly by the
+	 * calling thread as far as the channel accepts them without blocking, and the remainder is written
+	 * by the selector thread.
+	 */
+	public synchronized StreamMessageConsumer getMessageConsumer() {
+		if (messageConsumer == null)
+			messageConsumer = new StreamMessageConsumer(new ChannelOutputStream(), jsonHandler);
+		return messageConsumer;
+	}
+
+	/**
+	 * Set the number of bytes of received messages that may wait for the consumer. When this limit is
+	 * exceeded, no more input is read from the channel until half of the waiting messages have been
+	 * consumed. The default is {@value #DEFAULT_MAX_QUEUED_READ_BYTES}.
+	 */
+	public void setMaxQueuedReadBytes(long maxQueuedReadBytes) {
+		if (maxQueuedReadBytes <= 0)
+			throw new IllegalArgumentException("The maximal number of queued bytes must be positive.");
+		this.maxQueuedReadBytes = maxQueuedReadBytes;
+	}
+
+	/**
+	 * Set the number of bytes of sent messages that may wait for the channel to become writable. When
+	 * this limit is exceeded, sending threads are blocked until the queued output has been written or
+	 * the connection is closed. A single message larger than the limit is accepted as soon as the queue
+	 * is empty. The default is {@value #DEFAULT_MAX_PENDING_WRITE_BYTES}.
+	 */
+	public void setMaxPendingWriteBytes(long maxPendingWriteBytes) {
+		if (maxPendingWriteBytes <= 0)
+			throw new IllegalArgumentException("The maximal number of pending bytes must be positive.");
+		this.maxPendingWriteBytes = maxPendingWriteBytes;
+	}
+
+	/**
+	 * A future that is completed when this connection is closed, either locally or by the remote side.
+	 */
+	public CompletableFuture<Void> getClosedFuture() {
+		return closedFuture;
+	}
+
+	void setSelectionKey(SelectionKey selectionKey) {
+		this.selectionKey = selectionKey;
+		if (closed)
+			selectionKey.cancel();
+		else
+			updateInterestOps();
+	}
+
+	private void updateInterestOps() {
+		SelectionKey key = selectionKey;
+		if (key == null || !key.isValid())
+			return;
+		int ops = 0;
+		if (callback != null && !readSuspended)
+			ops |= SelectionKey.OP_READ;
+		if (writeInterest)
+			ops |= SelectionKey.OP_WRITE;
+		key.interestOps(ops);
+	}
+
+	/**
+	 * Read the available input and frame complete messages. Called by the selector thread.
+	 */
+	void handleReadable() {
+		try {
+			if (pendingContent != null) {
+				// Read the rest of a message content that did not fit into the read buffer
+				int readResult = channel.read(ByteBuffer.wrap(pendingContent, pendingFilled, pendingLength - pendingFilled));
+				if (readResult == -1) {
+					close();
+					return;
+				}
+				pendingFilled += readResult;
+				if (pendingFilled == pendingLength) {
+					dispatch(pendingContent, pendingLength, pendingCharset);
+					pendingContent = null;
+				}
+				return;
+			}
+			if (!readBuffer.hasRemaining()) {
+				// Only an incomplete header block can fill the buffer, which is limited by MAX_HEADER_SIZE
+				ByteBuffer largerBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+				readBuffer.flip();
+				readBuffer = largerBuffer.put(readBuffer);
+			}
+			int readResult = channel.read(readBuffer);
+			if (readResult == -1) {
+				close();
+				return;
+			}
+			frameMessages();
+		} catch (IOException e) {
+			if (!closed)
+				LOG.log(Level.FINE, e.getMessage(), e);
+			close();
+		}
+	}
+
+	private void frameMessages() {
+		byte[] buffer = readBuffer.array();
+		int limit = readBuffer.position();
+		while (true) {
+			int contentStart = headers.parse(buffer, position, limit);
+			if (contentStart < 0) {
+				if (limit - position >= MAX_HEADER_SIZE) {
+					fireError(new IllegalStateException(
+						"Header block exceeds " + MAX_HEADER_SIZE + " bytes in input \"" + getDebugString(buffer, position, limit) + "\""
+					));
+					position = limit;
+				}
+				break;
+			}
+			int contentLength = headers.getContentLength();
+			if (contentLength < 0) {
+				fireError(new IllegalStateException(
+					"Missing header " + CONTENT_LENGTH_HEADER + " in input \"" + getDebugString(buffer, position, contentStart) + "\""
+				));
+				position = contentStart;
+				continue;
+			}
+			byte[] content = bufferPool.acquire(contentLength);
+			int available = Math.min(contentLength, limit - contentStart);
+			System.arraycopy(buffer, contentStart, content, 0, available);
+			position = contentStart + available;
+			if (available < contentLength) {
+				// Receive the rest of the content directly into the content array
+				pendingContent = content;
+				pendingFilled = available;
+				pendingLength = contentLength;
+				pendingCharset = headers.getCharset();
+				position = 0;
+				if (readBuffer.capacity() > INITIAL_BUFFER_SIZE)
+					readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+				else
+					readBuffer.clear();
+				return;
+			}
+			dispatch(content, contentLength, headers.getCharset());
+		}
+		// Move the remaining input to the start of the read buffer
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			readBuffer.position(limit - position);
+			position = 0;
+		}
+	}
+
+	private String getDebugString(byte[] buffer, int start, int end) {
+		return new String(buffer, start, end - start, StandardCharsets.US_ASCII);
+	}
+
+	protected void fireError(Throwable exception) {
+		LOG.log(Level.SEVERE, exception.getMessage(), exception);
+	}
+
+	private void dispatch(byte[] content, int length, String charset) {
+		dispatchQueue.add(() -> {
+			try {
+				Message message = parseMessage(content, length, charset);
+				if (message != null)
+					callback.consume(message);
+			} finally {
+				bufferPool.release(content);
+				if (queuedReadBytes.addAndGet(-length) <= maxQueuedReadBytes / 2 && readSuspended)
+					eventLoop.execute(this::resumeReading);
+			}
+		});
+		if (queuedReadBytes.addAndGet(length) > maxQueuedReadBytes && !readSuspended) {
+			readSuspended = true;
+			updateInterestOps();
+			// The queue may have been drained before the flag was set
+			resumeReading();
+		}
+		scheduleDispatch();
+	}
+
+	/**
+	 * Read from the channel again if enough of the queued messages have been consumed. Called by the
+	 * selector thread.
+	 */
+	private void resumeReading() {
+		if (readSuspended && queuedReadBytes.get() <= maxQueuedReadBytes / 2) {
+			readSuspended = false;
+			updateInterestOps();
+		}
+	}
+
+	private void scheduleDispatch() {
+		if (dispatching.compareAndSet(false, true)) {
+			try {
+				eventLoop.getDispatchExecutor().execute(this::runDispatch);
+			} catch (RejectedExecutionException e) {
+				dispatching.set(false);
+				LOG.log(Level.WARNING, "Dispatch executor rejected incoming messages.", e);
+				close();
+			}
+		}
+	}
+
+	private void runDispatch() {
+		try {
+			Runnable task;
+			int count = 0;
+			while (count++ < MAX_DISPATCH_BATCH && (task = dispatchQueue.poll()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					LOG.log(Level.SEVERE, e.getMessage(), e);
+				}
+			}
+		} finally {
+			dispatching.set(false);
+		}
+		if (!dispatchQueue.isEmpty())
+			scheduleDispatch();
+	}
+
+	protected Message parseMessage(byte[] content, int length, String charset) {
+		try {
+			return jsonHandler.parseMessage(content, 0, length, charset);
+		} catch (UnsupportedEncodingException | InvalidMessageException e) {
+			fireError(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the given bytes to the channel as far as possible without blocking and queue the rest.
+	 * Blocks while the queue exceeds the maximal number of pending bytes.
+	 */
+	private void write(byte[] bytes, int offset, int length) throws IOException {
+		writeLock.lock();
+		try {
+			while (pendingWriteBytes > 0 && pendingWriteBytes + length > maxPendingWriteBytes && !closed) {
+				if (eventLoop.isEventLoopThread())
+					throw new IOException("The output queue is full, " + pendingWriteBytes + " bytes are pending.");
+				try {
+					writeQueueDrained.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the output queue.");
+				}
+			}
+			if (closed)
+				throw new ClosedChannelException();
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+			if (writeQueue.isEmpty()) {
+				channel.write(buffer);
+				if (!buffer.hasRemaining())
+					return;
+			}
+			// The bytes may belong to a reused array, so the remainder must be copied
+			ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+			copy.put(buffer).flip();
+			writeQueue.add(copy);
+			pendingWriteBytes += copy.remaining();
+			if (!writeInterest) {
+				writeInterest = true;
+				eventLoop.execute(this::updateInterestOps);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Write queued output. Called by the selector thread.
+	 */
+	void handleWritable() {
+		try {
+			writeLock.lock();
+			try {
+				ByteBuffer buffer;
+				try {
+					while ((buffer = writeQueue.peek()) != null) {
+						pendingWriteBytes -= channel.write(buffer);
+						if (buffer.hasRemaining())
+							return;
+						writeQueue.poll();
+					}
+				} finally {
+					writeQueueDrained.signalAll();
+				}
+				writeInterest = false;
+			} finally {
+				writeLock.unlock();
+			}
+			updateInterestOps();
+		} catch (IOException e) {
+			LOG.log(Level.FINE, e.getMessage(), e);
+			close();
+		}
+	}
+
+	/**
+	 * The number of bytes of outgoing messages that have not been written to the channel yet.
+	 */
+	public long getPendingWriteBytes() {
+		writeLock.lock();
+		try {
+			return pendingWriteBytes;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		writeLock.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+			writeQueue.clear();
+			pendingWriteBytes = 0;
+			writeQueueDrained.signalAll();
+		} finally {
+			writeLock.unlock();
+		}
+		SelectionKey key = selectionKey;
+		if (key != null)
+			key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOG.log(Level.FINE, e.getMessage(), e);
+		}
+		closedFuture.complete(null);
+	}
+
+	private class ChannelOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			ChannelConnection.this.write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			ChannelConnection.this.write(b, off, len);
+		}
+
+	}
+
+}
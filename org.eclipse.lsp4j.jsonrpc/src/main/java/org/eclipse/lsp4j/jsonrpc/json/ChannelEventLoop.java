@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Multiplexes any number of non-blocking socket channels on a single selector thread. The selector
+ * thread reads incoming data and frames complete messages; parsing and consuming the messages is done
+ * on a shared dispatch executor, preserving the order of messages per channel. Outgoing messages are
+ * written directly by the sending thread as far as the channel accepts them, and the remainder is
+ * written by the selector thread once the channel becomes writable again.
+ *
+ * <p>Thus the number of threads no longer grows with the number of connections, in contrast to
+ * {@link StreamMessageProducer}, which needs a blocking reader thread per connection.</p>
+ */
+public class ChannelEventLoop implements Runnable, Closeable {
+
+	private static final Logger LOG = Logger.getLogger(ChannelEventLoop.class.getName());
+
+	private final Selector selector;
+	private final ExecutorService dispatchExecutor;
+	private final ByteArrayPool bufferPool;
+
+	private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+	private volatile Thread thread;
+	private volatile boolean keepRunning;
+
+	/**
+	 * @param dispatchExecutor - the executor on which incoming messages are parsed and consumed
+	 */
+	public ChannelEventLoop(ExecutorService dispatchExecutor) throws IOException {
+		this(dispatchExecutor, new ByteArrayPool());
+	}
+
+	/**
+	 * @param dispatchExecutor - the executor on which incoming messages are parsed and consumed
+	 * @param bufferPool - the pool that provides arrays for the contents of incoming messages
+	 */
+	public ChannelEventLoop(ExecutorService dispatchExecutor, ByteArrayPool bufferPool) throws IOException {
+		this.selector = Selector.open();
+		this.dispatchExecutor = dispatchExecutor;
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Start the selector thread.
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("The event loop is already running.");
+		keepRunning = true;
+		thread = new Thread(this, "lsp4j-selector");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Add a connected channel to this event loop. Incoming messages are read only after
+	 * {@link ChannelConnection#listen(org.eclipse.lsp4j.jsonrpc.MessageConsumer)} has been called.
+	 */
+	public ChannelConnection connect(SocketChannel channel, MessageJsonHandler jsonHandler) throws IOException {
+		channel.configureBlocking(false);
+		ChannelConnection connection = new ChannelConnection(this, channel, jsonHandler);
+		execute(() -> {
+			try {
+				connection.setSelectionKey(channel.register(selector, 0, connection));
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Failed to register channel.", e);
+				connection.close();
+			}
+		});
+		return connection;
+	}
+
+	/**
+	 * The number of channels currently registered with this event loop.
+	 */
+	public int getConnectionCount() {
+		try {
+			return selector.keys().size();
+		} catch (ClosedSelectorException e) {
+			return 0;
+		}
+	}
+
+	ExecutorService getDispatchExecutor() {
+		return dispatchExecutor;
+	}
+
+	ByteArrayPool getBufferPool() {
+		return bufferPool;
+	}
+
+	boolean isEventLoopThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Run the given task on the selector thread.
+	 */
+	void execute(Runnable task) {
+		pendingTasks.add(task);
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (keepRunning) {
+			try {
+				Runnable task;
+				while ((task = pendingTasks.poll()) != null) {
+					task.run();
+				}
+				if (!keepRunning)
+					break;
+				selector.select();
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				// The event loop may be closed while a key is handled
+				while (keepRunning && selectedKeys.hasNext()) {
+					SelectionKey key = selectedKeys.next();
+					ChannelConnection connection = (ChannelConnection) key.attachment();
+					if (!key.isValid()) {
+						connection.close();
+						continue;
+					}
+					if (key.isWritable())
+						connection.handleWritable();
+					if (key.isValid() && key.isReadable())
+						connection.handleReadable();
+				}
+				selector.selectedKeys().clear();
+			} catch (ClosedSelectorException e) {
+				keepRunning = false;
+			} catch (IOException | RuntimeException e) {
+				LOG.log(Level.SEVERE, e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Stop the selector thread and close all registered channels. The channels are closed by the
+	 * selector thread, and this method waits until it has terminated.
+	 */
+	@Override
+	public void close() {
+		Thread loopThread;
+		synchronized (this) {
+			loopThread = thread;
+			thread = null;
+		}
+		if (loopThread == null || loopThread == Thread.currentThread()) {
+			shutdown();
+			return;
+		}
+		execute(this::shutdown);
+		try {
+			loopThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// The selector thread may have terminated before running the task
+		if (selector.isOpen() && !loopThread.isAlive())
+			shutdown();
+	}
+
+	private void shutdown() {
+		keepRunning = false;
+		try {
+			for (SelectionKey key : new ArrayList<>(selector.keys())) {
+				((ChannelConnection) key.attachment()).close();
+			}
+		} catch (ClosedSelectorException e) {
+			// Already closed
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, e.getMessage(), e);
+		}
+	}
+
+}
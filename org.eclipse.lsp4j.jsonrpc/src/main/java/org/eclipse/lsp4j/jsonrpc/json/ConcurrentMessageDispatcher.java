@@ -0,0 +1,461 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.lsp4j.jsonrpc.KeyedSerialExecutor;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.messages.BatchMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+
+/**
+ * A message consumer that hands incoming messages to an executor, so the thread that reads messages
+ * only frames and parses them and is never stalled by a local service method. The messages are
+ * forwarded to the delegate consumer, usually a {@link org.eclipse.lsp4j.jsonrpc.RemoteEndpoint},
+ * according to these rules:
+ * <ul>
+ *   <li>Notifications are forwarded one after another in the order they were received.</li>
+ *   <li>A request is forwarded only after all notifications received before it have been forwarded,
+ *       so it observes their effects.</li>
+ *   <li>Requests are forwarded concurrently with each other and with the notifications received after
+ *       them.</li>
+ *   <li>Responses and {@code $/cancelRequest} notifications are forwarded right away on the calling
+ *       thread, so they are never delayed by queued work. A request that is cancelled before it is forwarded
+ *       is answered with a {@link ResponseErrorCode#RequestCancelled} error by the
+ *       {@linkplain #setResponseConsumer(MessageConsumer) response consumer} and never forwarded; without a
+ *       response consumer, the cancellation is forwarded right after the request.</li>
+ *   <li>A batch of requests and notifications is forwarded as a whole like a notification, so the
+ *       delegate can collect the responses to its requests. A batch of responses is forwarded right away.</li>
+ * </ul>
+ * If an ordering key function is given, requests and notifications for which it returns a key, e.g. the
+ * URI of the document they refer to, are instead forwarded one after another per key in the order they
+ * were received, and concurrently with the messages of other keys. A request with a key is forwarded only
+ * after all notifications without a key received before it have been forwarded; until then, the later
+ * messages of its key are held back as well. Messages without a key are still forwarded according to the
+ * rules above.
+ * <p>
+ * If a {@linkplain #setNotificationCoalescer(BiFunction) notification coalescer} is set, a notification that
+ * is received while the previous message of the same key, or of the messages without a key, is a notification
+ * that has not been forwarded yet, may be merged into that notification.
+ * {@link #consume(Message)} must be called by a single thread, the one that reads the messages.
+ */
+public class ConcurrentMessageDispatcher implements MessageConsumer {
+
+	private static final Logger LOG = Logger.getLogger(ConcurrentMessageDispatcher.class.getName());
+
+	private final MessageConsumer delegate;
+	private final Executor executor;
+	private final Function<Message, Object> orderingKey;
+	private final KeyedSerialExecutor keyedExecutor;
+
+	/**
+	 * Notifications and requests that wait for earlier notifications, processed in order.
+	 */
+	private final Queue<Runnable> serialQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean serialRunning = new AtomicBoolean();
+
+	/**
+	 * Messages with an ordering key that are held back until the serial queue has reached a barrier, by key.
+	 * A queue consists of segments, each released by one barrier task of the serial queue; all segments but
+	 * the first start with {@link #BARRIER}.
+	 */
+	private final Map<Object, Queue<Runnable>> heldBackMessages = new ConcurrentHashMap<>();
+
+	private static final Runnable BARRIER = () -> {};
+
+	/**
+	 * Requests that have been received but not yet forwarded completely, by request id.
+	 */
+	private final Map<String, RequestTask> pendingRequests = new ConcurrentHashMap<>();
+
+	/**
+	 * The lane of the messages without an ordering key in {@link #queuedNotifications}.
+	 */
+	private static final Object SERIAL_LANE = new Object();
+
+	private BiFunction<NotificationMessage, NotificationMessage, NotificationMessage> notificationCoalescer;
+
+	/**
+	 * Notifications that are the last message queued for their ordering key or for the serial lane, so later
+	 * notifications may be merged into them.
+	 */
+	private final Map<Object, QueuedNotification> queuedNotifications = new ConcurrentHashMap<>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	private MessageConsumer responseConsumer;
+
+	public ConcurrentMessageDispatcher(MessageConsumer delegate, Executor executor) {
+		this(delegate, executor, null);
+	}
+
+	/**
+	 * @param orderingKey - a function that returns the key of a request or notification whose messages
+	 * 		must be forwarded in order, or {@code null} if the message is not ordered by key
+	 */
+	public ConcurrentMessageDispatcher(MessageConsumer delegate, Executor executor, Function<Message, Object> orderingKey) {
+		if (delegate == null)
+			throw new NullPointerException("delegate");
+		if (executor == null)
+			throw new NullPointerException("executor");
+		this.delegate = delegate;
+		this.executor = executor;
+		this.orderingKey = orderingKey;
+		this.keyedExecutor = orderingKey != null ? new KeyedSerialExecutor(executor) : null;
+	}
+
+	/**
+	 * Set a function that merges two notifications into one that has the same effect, or returns {@code null}
+	 * if they cannot be merged. It is applied to a queued notification and a notification received right
+	 * after it with the same ordering key. Must be set before the first message is consumed.
+	 */
+	public void setNotificationCoalescer(BiFunction<NotificationMessage, NotificationMessage, NotificationMessage> notificationCoalescer) {
+		this.notificationCoalescer = notificationCoalescer;
+	}
+
+	/**
+	 * Set the consumer of outgoing messages, which is used to answer requests that are cancelled before they
+	 * are forwarded or that are rejected by the executor, so the delegate never handles them. Must be set
+	 * before the first message is consumed.
+	 */
+	public void setResponseConsumer(MessageConsumer responseConsumer) {
+		this.responseConsumer = responseConsumer;
+	}
+
+	/**
+	 * The number of notifications that have been merged into a queued notification.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	@Override
+	public void consume(Message message) {
+		if (message instanceof RequestMessage) {
+			RequestTask task = new RequestTask((RequestMessage) message);
+			if (task.id != null)
+				pendingRequests.put(task.id, task);
+			Object key = getOrderingKey(message);
+			if (notificationCoalescer != null)
+				// Later notifications must not be merged across this request
+				queuedNotifications.remove(key != null ? key : SERIAL_LANE);
+			if (key != null && serialQueue.isEmpty() && !serialRunning.get())
+				executeKeyed(key, task);
+			else if (key != null)
+				// Earlier notifications without a key must be forwarded first
+				holdBack(key, task);
+			else if (serialQueue.isEmpty() && !serialRunning.get())
+				// All earlier notifications have been forwarded
+				execute(task);
+			else
+				enqueue(() -> execute(task));
+		} else if (message instanceof NotificationMessage) {
+			NotificationMessage notification = (NotificationMessage) message;
+			if (MessageJsonHandler.CANCEL_METHOD.getMethodName().equals(notification.getMethod()))
+				handleCancellation(notification);
+			else
+				dispatchNotification(notification);
+		} else if (message instanceof BatchMessage && !isResponseBatch((BatchMessage) message)) {
+			if (notificationCoalescer != null)
+				// Later notifications must not be merged across this batch
+				queuedNotifications.remove(SERIAL_LANE);
+			enqueue(() -> delegate.consume(message));
+		} else {
+			delegate.consume(message);
+		}
+	}
+
+	private static boolean isResponseBatch(BatchMessage batch) {
+		for (Message member : batch.getMessages()) {
+			if (!(member instanceof ResponseMessage))
+				return false;
+		}
+		return true;
+	}
+
+	private void dispatchNotification(NotificationMessage notification) {
+		Object key = getOrderingKey(notification);
+		Runnable runnable;
+		if (notificationCoalescer != null) {
+			Object lane = key != null ? key : SERIAL_LANE;
+			QueuedNotification previous = queuedNotifications.get(lane);
+			if (previous != null && previous.merge(notification)) {
+				coalescedCount.incrementAndGet();
+				return;
+			}
+			QueuedNotification queued = new QueuedNotification(lane, notification);
+			queuedNotifications.put(lane, queued);
+			runnable = queued;
+		} else {
+			runnable = () -> delegate.consume(notification);
+		}
+		if (key != null)
+			executeKeyed(key, runnable);
+		else
+			enqueue(runnable);
+	}
+
+	protected void handleCancellation(NotificationMessage notification) {
+		if (notification.getParams() instanceof CancelParams) {
+			RequestTask task = pendingRequests.get(((CancelParams) notification.getParams()).getId());
+			if (task != null && task.deferCancellation(notification))
+				return;
+		}
+		delegate.consume(notification);
+	}
+
+	protected Object getOrderingKey(Message message) {
+		if (orderingKey == null)
+			return null;
+		try {
+			return orderingKey.apply(message);
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Failed to compute the ordering key of an incoming message.", e);
+			return null;
+		}
+	}
+
+	private void executeKeyed(Object key, Runnable runnable) {
+		boolean[] heldBack = new boolean[1];
+		heldBackMessages.computeIfPresent(key, (k, queue) -> {
+			queue.add(runnable);
+			heldBack[0] = true;
+			return queue;
+		});
+		if (!heldBack[0])
+			submitKeyed(key, runnable);
+	}
+
+	private void submitKeyed(Object key, Runnable runnable) {
+		try {
+			keyedExecutor.execute(key, runnable);
+		} catch (RejectedExecutionException e) {
+			rejected(runnable, e);
+		}
+	}
+
+	/**
+	 * Hold back the given runnable and all later messages of its key until the runnables currently in the
+	 * serial queue have been run.
+	 */
+	private void holdBack(Object key, Runnable runnable) {
+		heldBackMessages.compute(key, (k, queue) -> {
+			if (queue == null)
+				queue = new ConcurrentLinkedQueue<>();
+			else
+				queue.add(BARRIER);
+			queue.add(runnable);
+			return queue;
+		});
+		enqueue(() -> release(key));
+	}
+
+	/**
+	 * Submit the first segment of held back messages of the given key to the keyed executor.
+	 */
+	private void release(Object key) {
+		heldBackMessages.computeIfPresent(key, (k, queue) -> {
+			if (queue.peek() == BARRIER)
+				queue.poll();
+			Runnable runnable;
+			while ((runnable = queue.peek()) != null && runnable != BARRIER) {
+				submitKeyed(k, queue.poll());
+			}
+			return queue.isEmpty() ? null : queue;
+		});
+	}
+
+	private void enqueue(Runnable runnable) {
+		serialQueue.add(runnable);
+		if (serialRunning.compareAndSet(false, true))
+			execute(this::processSerialQueue);
+	}
+
+	private void processSerialQueue() {
+		do {
+			Runnable runnable;
+			while ((runnable = serialQueue.poll()) != null) {
+				run(runnable);
+			}
+			serialRunning.set(false);
+			// Continue if a runnable has been enqueued after the queue was found empty
+		} while (!serialQueue.isEmpty() && serialRunning.compareAndSet(false, true));
+	}
+
+	private void execute(Runnable runnable) {
+		try {
+			executor.execute(runnable);
+		} catch (RejectedExecutionException e) {
+			rejected(runnable, e);
+		}
+	}
+
+	private void rejected(Runnable runnable, RejectedExecutionException e) {
+		if (runnable instanceof RequestTask) {
+			RequestTask task = (RequestTask) runnable;
+			if (task.id != null)
+				pendingRequests.remove(task.id, task);
+			if (responseConsumer != null) {
+				LOG.log(Level.WARNING, "Failed request " + task.id + " because the executor rejected it.", e);
+				respondWithError(task.request, ResponseErrorCode.RequestFailed, "The request could not be scheduled.");
+				return;
+			}
+		}
+		LOG.log(Level.WARNING, "Dropped an incoming message because the executor rejected it.", e);
+	}
+
+	/**
+	 * Answer a request that is not forwarded to the delegate with an error.
+	 */
+	protected void respondWithError(RequestMessage request, ResponseErrorCode code, String message) {
+		ResponseMessage response = new ResponseMessage();
+		response.setJsonrpc(MessageConstants.JSONRPC_VERSION);
+		response.setId(request.getId());
+		response.setError(new ResponseError(code, message, null));
+		try {
+			responseConsumer.consume(response);
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Failed to answer request " + request.getId() + ".", e);
+		}
+	}
+
+	private static void run(Runnable runnable) {
+		try {
+			runnable.run();
+		} catch (RuntimeException e) {
+			LOG.log(Level.SEVERE, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Forwards a request and any cancellation of it that was received while it was forwarded. A request
+	 * that has been cancelled before is answered directly if there is a response consumer.
+	 */
+	private class RequestTask implements Runnable {
+
+		final RequestMessage request;
+		final String id;
+		private boolean done;
+		private NotificationMessage cancellation;
+
+		RequestTask(RequestMessage request) {
+			this.request = request;
+			this.id = request.getId();
+		}
+
+		/**
+		 * @return {@code true} if the cancellation will be forwarded after the request
+		 */
+		synchronized boolean deferCancellation(NotificationMessage cancellation) {
+			if (done)
+				return false;
+			this.cancellation = cancellation;
+			return true;
+		}
+
+		/**
+		 * @return {@code true} if the request has been cancelled before it is forwarded, in which case the
+		 * 		cancellation is discarded
+		 */
+		private synchronized boolean cancelBeforeForwarding() {
+			if (cancellation == null)
+				return false;
+			done = true;
+			cancellation = null;
+			return true;
+		}
+
+		@Override
+		public void run() {
+			if (responseConsumer != null && cancelBeforeForwarding()) {
+				if (id != null)
+					pendingRequests.remove(id, this);
+				respondWithError(request, ResponseErrorCode.RequestCancelled, "The request has been cancelled.");
+				return;
+			}
+			try {
+				ConcurrentMessageDispatcher.run(() -> delegate.consume(request));
+			} finally {
+				NotificationMessage cancellation;
+				synchronized (this) {
+					done = true;
+					cancellation = this.cancellation;
+				}
+				if (id != null)
+					pendingRequests.remove(id, this);
+				if (cancellation != null)
+					ConcurrentMessageDispatcher.run(() -> delegate.consume(cancellation));
+			}
+		}
+
+	}
+
+	/**
+	 * A notification that may absorb later notifications until it is forwarded.
+	 */
+	private class QueuedNotification implements Runnable {
+
+		final Object lane;
+		private NotificationMessage notification;
+		private boolean started;
+
+		QueuedNotification(Object lane, NotificationMessage notification) {
+			this.lane = lane;
+			this.notification = notification;
+		}
+
+		/**
+		 * @return {@code true} if the given notification has been merged into this one
+		 */
+		synchronized boolean merge(NotificationMessage later) {
+			if (started)
+				return false;
+			NotificationMessage merged;
+			try {
+				merged = notificationCoalescer.apply(notification, later);
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "Failed to coalesce notifications.", e);
+				return false;
+			}
+			if (merged == null)
+				return false;
+			notification = merged;
+			return true;
+		}
+
+		@Override
+		public void run() {
+			NotificationMessage notification;
+			synchronized (this) {
+				started = true;
+				notification = this.notification;
+			}
+			queuedNotifications.remove(lane, this);
+			delegate.consume(notification);
+		}
+
+	}
+
+}
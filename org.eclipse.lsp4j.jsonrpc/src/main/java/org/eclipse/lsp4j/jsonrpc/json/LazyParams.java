@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The parameters of a request or notification that are kept as raw JSON until they are first accessed
+ * with {@link #get()}, which converts them to the parameter type of the method once.
+ * 
+ * @see MessageJsonHandler#setLazyParams(boolean)
+ */
+public final class LazyParams {
+	
+	private final Gson gson;
+	private final Type type;
+	private final Object json;
+	
+	private volatile Object value;
+	private volatile boolean converted;
+	
+	/**
+	 * @param json - the parameters as JSON text or as {@link JsonElement}
+	 */
+	public LazyParams(Gson gson, Object json, Type type) {
+		if (!(json instanceof String || json instanceof JsonElement))
+			throw new IllegalArgumentException("Expected JSON text or a JSON element.");
+		this.gson = gson;
+		this.json = json;
+		this.type = type;
+	}
+	
+	/**
+	 * The type the parameters are converted to.
+	 */
+	public Type getType() {
+		return type;
+	}
+	
+	/**
+	 * The parameters as JSON text.
+	 */
+	public String getJson() {
+		return json.toString();
+	}
+	
+	/**
+	 * The parameters as JSON tree. The JSON text is parsed on each call, but not converted.
+	 * 
+	 * @throws JsonParseException if the JSON text is malformed
+	 */
+	public JsonElement getJsonTree() {
+		if (json instanceof JsonElement)
+			return (JsonElement) json;
+		return new JsonParser().parse((String) json);
+	}
+	
+	/**
+	 * Read the string property at the given path of nested objects, e.g. {@code "textDocument", "uri"}, from
+	 * the raw JSON without converting the parameters. The other properties are skipped.
+	 * 
+	 * @return the string value, or {@code null} if there is no string at the given path or the JSON is malformed
+	 */
+	public String getStringProperty(String... path) {
+		if (json instanceof JsonElement) {
+			JsonElement element = (JsonElement) json;
+			for (String name : path) {
+				if (!element.isJsonObject())
+					return null;
+				element = ((JsonObject) element).get(name);
+				if (element == null)
+					return null;
+			}
+			return element.isJsonPrimitive() && element.getAsJsonPrimitive().isString() ? element.getAsString() : null;
+		}
+		try (JsonReader in = new JsonReader(new StringReader((String) json))) {
+			for (String name : path) {
+				if (in.peek() != JsonToken.BEGIN_OBJECT)
+					return null;
+				in.beginObject();
+				while (true) {
+					if (!in.hasNext())
+						return null;
+					if (in.nextName().equals(name))
+						break;
+					in.skipValue();
+				}
+			}
+			return in.peek() == JsonToken.STRING ? in.nextString() : null;
+		} catch (IOException | RuntimeException e) {
+			// Malformed parameters are reported when they are converted
+			return null;
+		}
+	}
+	
+	/**
+	 * Create lazy parameters of the same type from the given JSON.
+	 * 
+	 * @param json - the parameters as JSON text or as {@link JsonElement}
+	 */
+	public LazyParams withJson(Object json) {
+		return new LazyParams(gson, json, type);
+	}
+	
+	/**
+	 * Whether the parameters have already been converted.
+	 */
+	public boolean isConverted() {
+		return converted;
+	}
+	
+	/**
+	 * Convert the parameters to their type on the first call. Later calls return the same object.
+	 * 
+	 * @throws JsonParseException if the JSON does not match the type
+	 */
+	public Object get() {
+		if (!converted) {
+			synchronized (this) {
+				if (!converted) {
+					if (json instanceof JsonElement)
+						value = gson.fromJson((JsonElement) json, type);
+					else
+						value = gson.fromJson((String) json, type);
+					converted = true;
+				}
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns the converted parameters if the given parameters are {@link LazyParams}, and the given
+	 * parameters otherwise.
+	 */
+	public static Object resolve(Object params) {
+		if (params instanceof LazyParams)
+			return ((LazyParams) params).get();
+		return params;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof LazyParams))
+			return false;
+		LazyParams other = (LazyParams) obj;
+		return type.equals(other.type) && getJson().equals(other.getJson());
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * type.hashCode() + getJson().hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return getJson();
+	}
+	
+}
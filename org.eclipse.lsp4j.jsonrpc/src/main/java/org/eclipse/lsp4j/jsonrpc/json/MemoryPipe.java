@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A one-way pipe between an output stream and an input stream in the same JVM. Bytes are passed
+ * through a ring buffer without locking between the writing and the reading side: the reading side only
+ * advances the read count and the writing side only advances the write count. A side that has to wait
+ * for data or for free space is parked and unparked by the other side as soon as it makes progress.
+ *
+ * <p>Any number of threads may write to the output stream and read from the input stream, but writes
+ * and reads are serialized on each side. A single write that is larger than the buffer is passed in
+ * several chunks, but it is never interleaved with another write. The sides are serialized with locks
+ * rather than monitors, so virtual threads waiting in the pipe do not pin their carrier thread.</p>
+ *
+ * <p>Closing the output stream signals the end of the stream to the reading side after all written
+ * bytes have been read. Closing the input stream makes subsequent writes fail.</p>
+ */
+public class MemoryPipe implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final byte[] buffer;
+	private final int mask;
+
+	/**
+	 * The total number of bytes read, only modified by the reading side.
+	 */
+	private volatile long readCount;
+
+	/**
+	 * The total number of bytes written, only modified by the writing side.
+	 */
+	private volatile long writeCount;
+
+	private volatile boolean inputClosed;
+	private volatile boolean outputClosed;
+
+	private volatile Thread waitingReader;
+	private volatile Thread waitingWriter;
+
+	private final Input input = new Input();
+	private final Output output = new Output();
+
+	public MemoryPipe() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize - the minimal size of the ring buffer; it is rounded up to a power of two
+	 */
+	public MemoryPipe(int bufferSize) {
+		if (bufferSize <= 0 || bufferSize > 1 << 30)
+			throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+		int capacity = Integer.highestOneBit(bufferSize);
+		if (capacity < bufferSize)
+			capacity <<= 1;
+		this.buffer = new byte[capacity];
+		this.mask = capacity - 1;
+	}
+
+	public InputStream getInputStream() {
+		return input;
+	}
+
+	public OutputStream getOutputStream() {
+		return output;
+	}
+
+	public int getBufferSize() {
+		return buffer.length;
+	}
+
+	/**
+	 * Close the output stream of this pipe. The input stream reports the end of the stream as soon as
+	 * the bytes written before have been read.
+	 */
+	@Override
+	public void close() {
+		output.close();
+	}
+
+	private static void unpark(Thread thread) {
+		if (thread != null)
+			LockSupport.unpark(thread);
+	}
+
+	private static void checkInterrupted() throws InterruptedIOException {
+		if (Thread.interrupted()) {
+			// Keep the interrupted state for the caller
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private class Input extends InputStream {
+
+		private final byte[] singleByte = new byte[1];
+		private final ReentrantLock lock = new ReentrantLock();
+
+		@Override
+		public int read() throws IOException {
+			lock.lock();
+			try {
+				int result = read(singleByte, 0, 1);
+				return result < 0 ? -1 : singleByte[0] & 0xff;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || len > b.length - off)
+				throw new IndexOutOfBoundsException();
+			if (len == 0)
+				return 0;
+			lock.lock();
+			try {
+				return readLocked(b, off, len);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private int readLocked(byte[] b, int off, int len) throws IOException {
+			long start = readCount;
+			while (true) {
+				if (inputClosed)
+					throw new IOException("Pipe closed");
+				// Check the closed state before the write count: all writes happen before closing the output
+				boolean endOfStream = outputClosed;
+				int available = (int) (writeCount - start);
+				if (available > 0) {
+					int count = Math.min(available, len);
+					int index = (int) start & mask;
+					int firstPart = Math.min(count, buffer.length - index);
+					System.arraycopy(buffer, index, b, off, firstPart);
+					if (firstPart < count)
+						System.arraycopy(buffer, 0, b, off + firstPart, count - firstPart);
+					readCount = start + count;
+					unpark(waitingWriter);
+					return count;
+				}
+				if (endOfStream)
+					return -1;
+				waitingReader = Thread.currentThread();
+				// Check again after announcing the waiting thread, otherwise the writer might miss it
+				if (writeCount == start && !outputClosed && !inputClosed)
+					LockSupport.park(this);
+				waitingReader = null;
+				checkInterrupted();
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (n <= 0)
+				return 0;
+			byte[] skipBuffer = new byte[(int) Math.min(n, 8192)];
+			int result = read(skipBuffer, 0, skipBuffer.length);
+			return result < 0 ? 0 : result;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (inputClosed)
+				throw new IOException("Pipe closed");
+			return (int) (writeCount - readCount);
+		}
+
+		@Override
+		public void close() {
+			inputClosed = true;
+			unpark(waitingWriter);
+			unpark(waitingReader);
+		}
+
+	}
+
+	private class Output extends OutputStream {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || len > b.length - off)
+				throw new IndexOutOfBoundsException();
+			lock.lock();
+			try {
+				writeLocked(b, off, len);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void writeLocked(byte[] b, int off, int len) throws IOException {
+			long position = writeCount;
+			while (len > 0) {
+				if (outputClosed || inputClosed)
+					throw new IOException("Pipe closed");
+				int free = buffer.length - (int) (position - readCount);
+				if (free > 0) {
+					int count = Math.min(free, len);
+					int index = (int) position & mask;
+					int firstPart = Math.min(count, buffer.length - index);
+					System.arraycopy(b, off, buffer, index, firstPart);
+					if (firstPart < count)
+						System.arraycopy(b, off + firstPart, buffer, 0, count - firstPart);
+					position += count;
+					// Publish the written bytes to the reading side
+					writeCount = position;
+					unpark(waitingReader);
+					off += count;
+					len -= count;
+				} else {
+					waitingWriter = Thread.currentThread();
+					// Check again after announcing the waiting thread, otherwise the reader might miss it
+					if (position - readCount == buffer.length && !inputClosed && !outputClosed)
+						LockSupport.park(this);
+					waitingWriter = null;
+					checkInterrupted();
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			outputClosed = true;
+			unpark(waitingReader);
+			unpark(waitingWriter);
+		}
+
+	}
+
+}
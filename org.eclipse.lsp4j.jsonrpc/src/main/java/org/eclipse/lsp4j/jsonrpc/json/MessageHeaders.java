@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The header block of a message in the base protocol. The headers are parsed directly from a byte
+ * buffer, so an instance can be reused for every message read from the same source without
+ * creating intermediate strings for each header line.
+ */
+public class MessageHeaders implements MessageConstants {
+
+	private static final byte[] CONTENT_LENGTH_BYTES = CONTENT_LENGTH_HEADER.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CONTENT_TYPE_BYTES = CONTENT_TYPE_HEADER.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CHARSET_BYTES = "charset=".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] UTF_8_BYTES = StandardCharsets.UTF_8.name().getBytes(StandardCharsets.US_ASCII);
+
+	private int contentLength;
+	private String charset;
+	private boolean invalidContentLength;
+
+	public MessageHeaders() {
+		reset();
+	}
+
+	/**
+	 * The value of the {@code Content-Length} header, or -1 if it is missing or invalid.
+	 */
+	public int getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * The charset given in the {@code Content-Type} header, or UTF-8 if none is given.
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Whether a {@code Content-Length} header was present but its value could not be parsed.
+	 */
+	public boolean hasInvalidContentLength() {
+		return invalidContentLength;
+	}
+
+	public void reset() {
+		contentLength = -1;
+		charset = StandardCharsets.UTF_8.name();
+		invalidContentLength = false;
+	}
+
+	/**
+	 * Parse a header block from the given range of bytes. Header lines are terminated by a newline
+	 * with an optional preceding carriage return, and an empty line terminates the header block.
+	 * Empty lines preceding the first header line are skipped.
+	 *
+	 * @return the index of the first byte after the header block, or -1 if the given range does not
+	 *     contain a complete header block yet
+	 */
+	public int parse(byte[] buffer, int offset, int limit) {
+		reset();
+		int lineStart = offset;
+		boolean headerSeen = false;
+		for (int i = offset; i < limit; i++) {
+			if (buffer[i] == '\n') {
+				int lineEnd = i;
+				if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r')
+					lineEnd--;
+				if (lineEnd > lineStart) {
+					parseHeaderLine(buffer, lineStart, lineEnd);
+					headerSeen = true;
+				} else if (headerSeen) {
+					// An empty line after the header lines signals the start of the message content
+					return i + 1;
+				}
+				lineStart = i + 1;
+			}
+		}
+		return -1;
+	}
+
+	protected void parseHeaderLine(byte[] buffer, int start, int end) {
+		int sepIndex = indexOf(buffer, start, end, (byte) ':');
+		if (sepIndex < 0)
+			return;
+		int keyStart = skipWhitespace(buffer, start, sepIndex);
+		int keyEnd = trimWhitespace(buffer, keyStart, sepIndex);
+		int valueStart = skipWhitespace(buffer, sepIndex + 1, end);
+		int valueEnd = trimWhitespace(buffer, valueStart, end);
+		if (regionEquals(buffer, keyStart, keyEnd, CONTENT_LENGTH_BYTES, true)) {
+			contentLength = parseInt(buffer, valueStart, valueEnd);
+			invalidContentLength = contentLength < 0;
+		} else if (regionEquals(buffer, keyStart, keyEnd, CONTENT_TYPE_BYTES, true)) {
+			int charsetIndex = indexOf(buffer, valueStart, valueEnd, CHARSET_BYTES);
+			if (charsetIndex >= 0) {
+				int charsetStart = skipWhitespace(buffer, charsetIndex + CHARSET_BYTES.length, valueEnd);
+				if (!regionEquals(buffer, charsetStart, valueEnd, UTF_8_BYTES, true))
+					charset = new String(buffer, charsetStart, valueEnd - charsetStart, StandardCharsets.US_ASCII);
+			}
+		}
+	}
+
+	private static int parseInt(byte[] buffer, int start, int end) {
+		if (start >= end || end - start > 10)
+			return -1;
+		long result = 0;
+		for (int i = start; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			result = result * 10 + digit;
+		}
+		if (result > Integer.MAX_VALUE)
+			return -1;
+		return (int) result;
+	}
+
+	private static int indexOf(byte[] buffer, int start, int end, byte b) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] buffer, int start, int end, byte[] pattern) {
+		for (int i = start; i <= end - pattern.length; i++) {
+			if (regionEquals(buffer, i, i + pattern.length, pattern, false))
+				return i;
+		}
+		return -1;
+	}
+
+	private static boolean regionEquals(byte[] buffer, int start, int end, byte[] expected, boolean ignoreCase) {
+		if (end - start != expected.length)
+			return false;
+		for (int i = 0; i < expected.length; i++) {
+			byte b = buffer[start + i];
+			if (b != expected[i] && !(ignoreCase && Character.toLowerCase(b) == Character.toLowerCase(expected[i])))
+				return false;
+		}
+		return true;
+	}
+
+	private static int skipWhitespace(byte[] buffer, int start, int end) {
+		while (start < end && (buffer[start] == ' ' || buffer[start] == '\t'))
+			start++;
+		return start;
+	}
+
+	private static int trimWhitespace(byte[] buffer, int start, int end) {
+		while (end > start && (buffer[end - 1] == ' ' || buffer[end - 1] == '\t'))
+			end--;
+		return end;
+	}
+
+}
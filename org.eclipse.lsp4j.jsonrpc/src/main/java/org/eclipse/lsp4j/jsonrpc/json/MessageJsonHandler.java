@@ -7,8 +7,14 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.json;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Map;
 
@@ -36,9 +42,41 @@ public class MessageJsonHandler {
 	
 	private MethodProvider methodProvider;
 	
+	private boolean lazyParams;
+	
+	/**
+	 * The handler whose Gson instance is used, or {@code null} if this handler has its own.
+	 */
+	private final MessageJsonHandler sharedHandler;
+	
+	/**
+	 * The derived handler that is currently parsing a message on this thread.
+	 */
+	private final ThreadLocal<MessageJsonHandler> parsingHandler = new ThreadLocal<>();
+	
+	/**
+	 * The JSON text of the message that is currently parsed on this thread with the Gson instance of this
+	 * handler, if it is available.
+	 */
+	private final ThreadLocal<CharSequence> parsingInput = new ThreadLocal<>();
+	
 	public MessageJsonHandler(Map<String, JsonRpcMethod> supportedMethods) {
 		this.supportedMethods = supportedMethods;
 		this.gson = getDefaultGsonBuilder().create();
+		this.sharedHandler = null;
+	}
+	
+	/**
+	 * Create a handler that shares the Gson instance and the supported methods of the given handler,
+	 * but has its own method provider. Thus many connections with the same services can use a single
+	 * Gson configuration.
+	 */
+	public MessageJsonHandler(MessageJsonHandler sharedHandler) {
+		if (sharedHandler.sharedHandler != null)
+			sharedHandler = sharedHandler.sharedHandler;
+		this.supportedMethods = sharedHandler.supportedMethods;
+		this.gson = sharedHandler.gson;
+		this.sharedHandler = sharedHandler;
 	}
     
 	public GsonBuilder getDefaultGsonBuilder() {
@@ -59,6 +97,9 @@ public class MessageJsonHandler {
 	}
 	
 	public MethodProvider getMethodProvider() {
+		MessageJsonHandler parsing = parsingHandler.get();
+		if (parsing != null)
+			return parsing.methodProvider;
 		return methodProvider;
 	}
 	
@@ -66,12 +107,126 @@ public class MessageJsonHandler {
 		this.methodProvider = methodProvider;
 	}
 	
+	/**
+	 * Whether the parameters of parsed requests and notifications are kept as {@link LazyParams}.
+	 */
+	public boolean isLazyParams() {
+		MessageJsonHandler parsing = parsingHandler.get();
+		if (parsing != null)
+			return parsing.lazyParams;
+		return lazyParams;
+	}
+	
+	/**
+	 * Keep the parameters of parsed requests and notifications as {@link LazyParams} that retain the raw JSON
+	 * and are only converted to the parameter type of the method when they are first accessed, usually by a
+	 * {@link org.eclipse.lsp4j.jsonrpc.services.GenericEndpoint}. Thus the conversion is done by the thread that
+	 * dispatches the message instead of the one that reads it, and not at all for requests that are rejected or
+	 * cancelled before they are dispatched. Parameters of {@code $/cancelRequest} notifications and of methods
+	 * that are not supported are converted right away. Disabled by default.
+	 */
+	public void setLazyParams(boolean lazyParams) {
+		this.lazyParams = lazyParams;
+	}
+	
+	/**
+	 * Returns the JSON text of the message that is currently parsed on this thread, if it is available,
+	 * and clears it, so it is only used for the top-level value. The type adapter for messages scans it
+	 * when {@code params} or {@code result} precede the properties that determine their types.
+	 */
+	public CharSequence pollParsingInput() {
+		CharSequence result = parsingInput.get();
+		if (result != null)
+			parsingInput.remove();
+		return result;
+	}
+	
 	public Message parseMessage(CharSequence input) {
-		return gson.fromJson(input.toString(), Message.class);
+		return parseMessage(new StringReader(input.toString()), input);
 	}
 	
 	public Message parseMessage(Reader input) {
-		return gson.fromJson(input, Message.class);
+		return parseMessage(input, null);
+	}
+	
+	/**
+	 * Parse a message from encoded content. The content is decoded while it is parsed, so no intermediate
+	 * string holding the whole content is created.
+	 */
+	public Message parseMessage(byte[] content, int offset, int length, String charset) throws UnsupportedEncodingException {
+		Reader reader = new InputStreamReader(new ByteArrayInputStream(content, offset, length), charset);
+		// The charset is supported, otherwise the reader could not have been created
+		Charset decoding = Charset.forName(charset);
+		CharSequence input = ByteSequence.isAsciiCompatible(decoding) ? new ByteSequence(content, offset, length, decoding) : null;
+		return parseMessage(reader, input);
+	}
+	
+	private Message parseMessage(Reader reader, CharSequence input) {
+		MessageJsonHandler gsonOwner = sharedHandler != null ? sharedHandler : this;
+		gsonOwner.parsingInput.set(input);
+		if (sharedHandler == null) {
+			try {
+				return gson.fromJson(reader, Message.class);
+			} finally {
+				parsingInput.remove();
+			}
+		}
+		// The type adapters of the shared Gson instance query the configuration of the shared handler
+		MessageJsonHandler previous = sharedHandler.parsingHandler.get();
+		sharedHandler.parsingHandler.set(this);
+		try {
+			return gson.fromJson(reader, Message.class);
+		} finally {
+			sharedHandler.parsingInput.remove();
+			if (previous == null)
+				sharedHandler.parsingHandler.remove();
+			else
+				sharedHandler.parsingHandler.set(previous);
+		}
+	}
+	
+	/**
+	 * A view of encoded JSON text as characters for scanning. Each byte is one character, which is correct
+	 * for the structural characters of JSON in the supported charsets. Subsequences are decoded.
+	 */
+	private static class ByteSequence implements CharSequence {
+		
+		static boolean isAsciiCompatible(Charset charset) {
+			return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+					|| charset.equals(StandardCharsets.ISO_8859_1);
+		}
+		
+		private final byte[] content;
+		private final int offset;
+		private final int length;
+		private final Charset charset;
+		
+		ByteSequence(byte[] content, int offset, int length, Charset charset) {
+			this.content = content;
+			this.offset = offset;
+			this.length = length;
+			this.charset = charset;
+		}
+		
+		@Override
+		public int length() {
+			return length;
+		}
+		
+		@Override
+		public char charAt(int index) {
+			return (char) (content[offset + index] & 0xff);
+		}
+		
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(content, offset + start, end - start, charset);
+		}
+		
+		@Override
+		public String toString() {
+			return new String(content, offset, length, charset);
+		}
 	}
 	
 	public String serialize(Message message) {
@@ -7,22 +7,100 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.json;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.VirtualThreads;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 
-public class StreamMessageConsumer implements MessageConsumer, MessageConstants {
+public class StreamMessageConsumer implements MessageConsumer, Flushable, MessageConstants {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_RETAINED_BUFFERS = 4;
+
+    private static final Logger LOG = Logger.getLogger(StreamMessageConsumer.class.getName());
+
+    private static class MessageBuffer extends ByteArrayOutputStream {
+        final int headerSpace;
+        final Writer writer;
+        
+        MessageBuffer(int headerSpace, String encoding) throws UnsupportedEncodingException {
+            super(INITIAL_BUFFER_SIZE);
+            this.headerSpace = headerSpace;
+            this.writer = new OutputStreamWriter(this, encoding);
+        }
+        
+        MessageBuffer(int size) {
+            super(size);
+            this.headerSpace = 0;
+            this.writer = null;
+        }
+        
+        @Override
+        public void reset() {
+            count = headerSpace;
+        }
+        
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Holder of the shared scheduler that times delayed flushes, created on first use. It never writes
+     * itself, since a blocked output stream would delay the flushes of all other consumers.
+     */
+    private static class FlushScheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lsp4j-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     private final String encoding;
     private final MessageJsonHandler jsonHandler;
 
-    private final Object outputLock = new Object();
+    /**
+     * Guards the output stream. This is not a monitor, so virtual threads that block while writing do not
+     * pin their carrier thread.
+     */
+    private final ReentrantLock outputLock = new ReentrantLock();
     
     private OutputStream output;
     
+    /**
+     * Buffers for the serialized content of a message with reserved space for the header in front of it.
+     * Messages are serialized concurrently by the sending threads, each into a buffer taken from here.
+     */
+    private final BlockingQueue<MessageBuffer> messageBuffers = new ArrayBlockingQueue<>(MAX_RETAINED_BUFFERS);
+    
+    // Flush coalescing state, guarded by outputLock
+    private MessageBuffer pendingOutput;
+    private long maxFlushDelay;
+    private int flushThreshold;
+    private ScheduledExecutorService flushScheduler;
+    private boolean flushScheduled;
+    private long lastFlushTime = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+    private long unflushedBytes;
+    private long flushCount;
+    
     public StreamMessageConsumer(MessageJsonHandler jsonHandler) {
     	this(null, StandardCharsets.UTF_8.name(), jsonHandler);
     }
@@ -47,28 +125,196 @@ public class StreamMessageConsumer implements MessageConsumer, MessageConstants
     
     @Override
     public void consume(Message message) {
+        write(message, true);
+    }
+    
+    /**
+     * Write the given message without flushing the output stream. This allows to send a batch of messages
+     * with a single {@link #flush()} at the end.
+     */
+    public void write(Message message) {
+        write(message, false);
+    }
+    
+    @Override
+    public void flush() {
+        try {
+            outputLock.lock();
+            try {
+                if (pendingOutput != null)
+                    flushPending();
+                else
+                    output.flush();
+            } finally {
+                outputLock.unlock();
+            }
+        } catch (IOException e) {
+        	throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Coalesce the output of messages that are sent in quick succession, so they are written and flushed
+     * together. A message sent after the output has been idle for at least {@code maxDelay} is flushed
+     * immediately. Messages following it within that period are collected until their size reaches
+     * {@code flushThreshold} or until {@code maxDelay} has passed since the first of them was collected,
+     * so no message is held back longer than {@code maxDelay}.
+     * 
+     * @param maxDelay - the maximal time a message is held back; 0 disables coalescing
+     * @param unit - the time unit of {@code maxDelay}
+     * @param flushThreshold - the number of collected bytes that causes an immediate flush
+     * @param scheduler - the executor that times delayed flushes, or {@code null} to use a shared daemon
+     *     thread; the flushes themselves run on a thread of their own, a virtual one if supported
+     */
+    public void setFlushCoalescing(long maxDelay, TimeUnit unit, int flushThreshold, ScheduledExecutorService scheduler) {
+        outputLock.lock();
+        try {
+            if (pendingOutput != null && output != null)
+                flush();
+            if (maxDelay <= 0) {
+                pendingOutput = null;
+                return;
+            }
+            this.maxFlushDelay = unit.toNanos(maxDelay);
+            this.flushThreshold = flushThreshold;
+            this.flushScheduler = scheduler != null ? scheduler : FlushScheduler.INSTANCE;
+            this.pendingOutput = new MessageBuffer(flushThreshold);
+        } finally {
+            outputLock.unlock();
+        }
+    }
+    
+    /**
+     * The number of times the output stream has been flushed while coalescing is enabled.
+     */
+    public long getFlushCount() {
+        outputLock.lock();
+        try {
+            return flushCount;
+        } finally {
+            outputLock.unlock();
+        }
+    }
+    
+    private void writeOutput(byte[] bytes, int offset, int length) throws IOException {
+        if (pendingOutput == null) {
+            output.write(bytes, offset, length);
+            return;
+        }
+        unflushedBytes += length;
+        if (pendingOutput.size() > 0 && pendingOutput.size() + length > flushThreshold) {
+            // Make room without flushing, since the caller decides when to flush
+            output.write(pendingOutput.buffer(), 0, pendingOutput.size());
+            pendingOutput.reset();
+        }
+        if (length >= flushThreshold)
+            output.write(bytes, offset, length);
+        else
+            pendingOutput.write(bytes, offset, length);
+    }
+    
+    private void commit() throws IOException {
+        if (pendingOutput == null) {
+            output.flush();
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastFlushTime >= maxFlushDelay && !flushScheduled || unflushedBytes >= flushThreshold) {
+            flushPending();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            flushScheduler.schedule(() -> VirtualThreads.getExecutor().execute(this::scheduledFlush),
+                    maxFlushDelay, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private void scheduledFlush() {
+        outputLock.lock();
+        try {
+            flushScheduled = false;
+            if (pendingOutput == null)
+                return;
+            try {
+                flushPending();
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to flush outgoing messages.", e);
+            }
+        } finally {
+            outputLock.unlock();
+        }
+    }
+    
+    private void flushPending() throws IOException {
+        if (pendingOutput.size() > 0) {
+            output.write(pendingOutput.buffer(), 0, pendingOutput.size());
+            pendingOutput.reset();
+        }
+        output.flush();
+        unflushedBytes = 0;
+        lastFlushTime = System.nanoTime();
+        flushCount++;
+    }
+    
+    protected void write(Message message, boolean flush) {
         if (message.getJsonrpc() == null) {
             message.setJsonrpc(JSONRPC_VERSION);
         }
         
         try {
-	        String content = jsonHandler.serialize(message);
-	        byte[] contentBytes = content.getBytes(encoding);
-	        int contentLength = contentBytes.length;
-	        
-	        String header = getHeader(contentLength);
-	        byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
-	        
-	        synchronized (outputLock) {
-	            output.write(headerBytes);
-	            output.write(contentBytes);
-	            output.flush();
-	        }
+            // Serialize without holding the lock, so only the actual output is serialized between threads.
+            // The writer may still hold parts of a message that fails to serialize, so the buffer is dropped then.
+            MessageBuffer buffer = acquireMessageBuffer();
+            jsonHandler.serialize(message, buffer.writer);
+            buffer.writer.flush();
+            int contentLength = buffer.size() - buffer.headerSpace;
+            
+            byte[] headerBytes = getHeader(contentLength).getBytes(StandardCharsets.US_ASCII);
+            int start = buffer.headerSpace - headerBytes.length;
+            if (start >= 0)
+                System.arraycopy(headerBytes, 0, buffer.buffer(), start, headerBytes.length);
+            try {
+                outputLock.lock();
+                try {
+                    if (start >= 0) {
+                        // Write header and content with a single call
+                        writeOutput(buffer.buffer(), start, buffer.size() - start);
+                    } else {
+                        writeOutput(headerBytes, 0, headerBytes.length);
+                        writeOutput(buffer.buffer(), buffer.headerSpace, contentLength);
+                    }
+                    if (flush)
+                        commit();
+                } finally {
+                    outputLock.unlock();
+                }
+            } finally {
+                releaseMessageBuffer(buffer);
+            }
         } catch (IOException e) {
         	throw new RuntimeException(e);
         }
     }
     
+    private MessageBuffer acquireMessageBuffer() throws IOException {
+        MessageBuffer buffer = messageBuffers.poll();
+        if (buffer == null) {
+            int headerSpace = getHeader(Integer.MAX_VALUE).length();
+            buffer = new MessageBuffer(headerSpace, encoding);
+        }
+        buffer.reset();
+        return buffer;
+    }
+    
+    /**
+     * Return a serialization buffer for reuse. A buffer that has grown beyond {@link #MAX_RETAINED_BUFFER_SIZE}
+     * is discarded so that a single large message does not keep its memory allocated, and so are buffers in
+     * excess of {@link #MAX_RETAINED_BUFFERS}.
+     */
+    private void releaseMessageBuffer(MessageBuffer buffer) {
+        if (buffer.buffer().length <= MAX_RETAINED_BUFFER_SIZE)
+            messageBuffers.offer(buffer);
+    }
+    
     protected String getHeader(int contentLength) {
         StringBuilder headerBuilder = new StringBuilder();
         appendHeader(headerBuilder, CONTENT_LENGTH_HEADER, contentLength).append(CRLF);
@@ -14,6 +14,7 @@ import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,77 +24,85 @@ import org.eclipse.lsp4j.jsonrpc.messages.Message;
 
 public class StreamMessageProducer implements MessageProducer, Closeable, MessageConstants {
 
-    private static class Headers {
-        int contentLength = -1;
-        String charset = StandardCharsets.UTF_8.name();
-    }
+    /**
+     * Initial size of the read buffer, which holds the header block and typically the whole content of
+     * small messages.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * Maximal number of bytes accepted for the header block of a single message.
+     */
+    private static final int MAX_HEADER_SIZE = 65536;
     
     private final MessageJsonHandler jsonHandler;
+    private final ByteArrayPool bufferPool;
+    private final MessageHeaders headers = new MessageHeaders();
     
     private InputStream input;
     
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int position;
+    private int limit;
+    
     private MessageConsumer callback;
     private boolean keepRunning;
     
     public StreamMessageProducer(InputStream input, MessageJsonHandler jsonHandler) {
+    	this(input, jsonHandler, new ByteArrayPool());
+    }
+    
+    /**
+     * @param bufferPool - the pool that provides arrays for message contents that do not fit into the
+     *     read buffer; it may be shared with other producers
+     */
+    public StreamMessageProducer(InputStream input, MessageJsonHandler jsonHandler, ByteArrayPool bufferPool) {
     	this.input = input;
     	this.jsonHandler = jsonHandler;
+    	this.bufferPool = bufferPool;
     }
     
     public InputStream getInput() {
     	return input;
     }
     
+    public ByteArrayPool getBufferPool() {
+    	return bufferPool;
+    }
+    
     public void setInput(InputStream input) {
     	this.input = input;
+    	this.position = 0;
+    	this.limit = 0;
     }
     
     @Override
     public void listen(MessageConsumer callback) {
         this.callback = callback;
         keepRunning = true;
-        StringBuilder headerBuilder = null;
-        StringBuilder debugBuilder = null;
-        boolean newLine = false;
-        Headers headers = new Headers();
         while (keepRunning) {
             try {
-                int c = input.read();
-                if (c == -1)
-                    // End of input stream has been reached
-                    keepRunning = false;
-                else {
-                    if (debugBuilder == null)
-                        debugBuilder = new StringBuilder();
-                    debugBuilder.append((char) c);
-                    if (c == '\n') {
-                        if (newLine) {
-                            // Two consecutive newlines have been read, which signals the start of the message content
-                            if (headers.contentLength < 0) {
-                                fireError(new IllegalStateException(
-                                    "Missing header " + CONTENT_LENGTH_HEADER + " in input \"" + debugBuilder + "\""
-                                ));
-                            } else {
-                            	boolean result = handleMessage(input, headers);
-                                if (!result)
-                                    keepRunning = false;
-                                newLine = false;
-                            }
-                            headers = new Headers();
-                            debugBuilder = null;
-                        } else if (headerBuilder != null) {
-                            // A single newline ends a header line
-                            parseHeader(headerBuilder.toString(), headers);
-                            headerBuilder = null;
-                        }
-                        newLine = true;
-                    } else if (c != '\r') {
-                        // Add the input to the current header line
-                        if (headerBuilder == null)
-                            headerBuilder = new StringBuilder();
-                        headerBuilder.append((char) c);
-                        newLine = false;
+                int contentStart = headers.parse(buffer, position, limit);
+                if (contentStart < 0) {
+                    if (limit - position >= MAX_HEADER_SIZE) {
+                        fireError(new IllegalStateException(
+                            "Header block exceeds " + MAX_HEADER_SIZE + " bytes in input \"" + getDebugString(position, limit) + "\""
+                        ));
+                        position = limit;
                     }
+                    if (!fill())
+                        // End of input stream has been reached
+                        keepRunning = false;
+                } else if (headers.getContentLength() < 0) {
+                    fireError(new IllegalStateException(
+                        "Missing header " + CONTENT_LENGTH_HEADER + " in input \"" + getDebugString(position, contentStart) + "\""
+                    ));
+                    position = contentStart;
+                } else {
+                    position = contentStart;
+                    boolean result = handleMessage(headers);
+                    if (!result)
+                        keepRunning = false;
                 }
             } catch (InterruptedIOException e) {
                 // The read operation has been interrupted
@@ -104,53 +113,84 @@ public class StreamMessageProducer implements MessageProducer, Closeable, Messag
             }
         }
     }
+    
+    /**
+     * Read more input into the buffer, compacting or growing it as necessary.
+     * 
+     * @return {@code false} if the end of the input stream has been reached
+     */
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        int readResult = input.read(buffer, limit, buffer.length - limit);
+        if (readResult == -1)
+            return false;
+        limit += readResult;
+        return true;
+    }
+    
+    private String getDebugString(int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.US_ASCII);
+    }
 	
 	protected void fireError(Throwable exception) {
 		Logger.getLogger(getClass().getName()).log(Level.SEVERE, exception.getMessage(), exception);
 	}
 	
-    protected void parseHeader(String line, Headers headers) {
-        int sepIndex = line.indexOf(':');
-        if (sepIndex >= 0) {
-            String key = line.substring(0, sepIndex).trim();
-            switch (key) {
-                case CONTENT_LENGTH_HEADER:
-                    try {
-                        headers.contentLength = Integer.parseInt(line.substring(sepIndex + 1).trim());
-                    } catch (NumberFormatException e) {
-                        fireError(e);
-                    }
-                    break;
-                case CONTENT_TYPE_HEADER: {
-                    int charsetIndex = line.indexOf("charset=");
-                    if (charsetIndex >= 0)
-                        headers.charset = line.substring(charsetIndex + 8).trim();
-                    break;
+    /**
+     * Read the content of a message with the given headers and forward it to the callback. If the whole
+     * content is already in the read buffer, it is parsed as a slice of that buffer. Otherwise the content
+     * is read into an array obtained from the buffer pool, which is released as soon as it is parsed.
+     * 
+     * @return {@code false} if the end of the input stream has been reached
+     */
+    protected boolean handleMessage(MessageHeaders headers) throws IOException {
+        int contentLength = headers.getContentLength();
+        Message message;
+        if (limit - position >= contentLength) {
+            int offset = position;
+            position += contentLength;
+            message = parseMessage(buffer, offset, contentLength, headers.getCharset());
+        } else {
+            byte[] content = bufferPool.acquire(contentLength);
+            try {
+                int bytesRead = limit - position;
+                System.arraycopy(buffer, position, content, 0, bytesRead);
+                position = limit = 0;
+                while (bytesRead < contentLength) {
+                    int readResult = input.read(content, bytesRead, contentLength - bytesRead);
+                    if (readResult == -1)
+                        return false;
+                    bytesRead += readResult;
                 }
+                message = parseMessage(content, 0, contentLength, headers.getCharset());
+            } finally {
+                bufferPool.release(content);
             }
         }
+        if (message != null)
+            callback.consume(message);
+        return true;
     }
-
-    protected boolean handleMessage(InputStream input, Headers headers) throws IOException {
+    
+    /**
+     * Parse the given content. The content is decoded while it is parsed, so no intermediate string
+     * holding the whole content is created.
+     * 
+     * @return the parsed message, or {@code null} if the content is not a valid message
+     */
+    protected Message parseMessage(byte[] content, int offset, int length, String charset) {
         try {
-            int contentLength = headers.contentLength;
-            byte[] buffer = new byte[contentLength];
-            int bytesRead = 0;
-            
-            while (bytesRead < contentLength) {
-                int readResult = input.read(buffer, bytesRead, contentLength - bytesRead);
-                if (readResult == -1)
-                    return false;
-                bytesRead += readResult;
-            }
-            
-            String content = new String(buffer, headers.charset);
-            Message message = jsonHandler.parseMessage(content);
-            callback.consume(message);
+            return jsonHandler.parseMessage(content, offset, length, charset);
         } catch (UnsupportedEncodingException | InvalidMessageException e) {
             fireError(e);
+            return null;
         }
-        return true;
     }
     
     @Override
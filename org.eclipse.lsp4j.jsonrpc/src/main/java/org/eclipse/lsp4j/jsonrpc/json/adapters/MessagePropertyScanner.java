@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.json.adapters;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Finds the {@code id} and {@code method} properties of a message, or of the messages of a batch, in its JSON
+ * text without parsing the other properties. This allows to convert {@code params} and {@code result} to their
+ * types in a single pass when they precede the properties that determine their types. The range of the
+ * {@code params} value is recorded as well, so lazy parameters can be taken from the JSON text as they are.
+ */
+class MessagePropertyScanner {
+	
+	static class MessageProperties {
+		String id;
+		String method;
+		/**
+		 * The range of the {@code params} value in the JSON text, or -1 if there is no such property.
+		 */
+		int paramsStart = -1;
+		int paramsEnd = -1;
+	}
+	
+	private final CharSequence json;
+	private final int length;
+	private int pos;
+	
+	/**
+	 * The index of the batch member at the current position.
+	 */
+	private int nextMember;
+	private boolean failed;
+	
+	MessagePropertyScanner(CharSequence json) {
+		this.json = json;
+		this.length = json.length();
+	}
+	
+	/**
+	 * Scan the properties of a message. The members of a batch must be scanned in ascending order,
+	 * so the text of each member is only scanned once.
+	 * 
+	 * @param memberIndex - the index of the message in a batch, or -1 if the JSON text is a single message
+	 * @return the properties, or {@code null} if the JSON text is malformed
+	 */
+	MessageProperties scan(int memberIndex) {
+		if (failed)
+			return null;
+		try {
+			MessageProperties result = null;
+			if (memberIndex < 0) {
+				pos = 0;
+				result = scanObject();
+			} else if (memberIndex >= nextMember && (nextMember > 0 || consume('['))) {
+				while (nextMember <= memberIndex && (nextMember == 0 || consume(','))) {
+					if (nextMember++ == memberIndex)
+						result = scanObject();
+					else if (!skipValue())
+						break;
+				}
+			}
+			failed = result == null;
+			return result;
+		} catch (IOException | RuntimeException e) {
+			failed = true;
+			return null;
+		}
+	}
+	
+	private MessageProperties scanObject() throws IOException {
+		if (!consume('{'))
+			return null;
+		MessageProperties properties = new MessageProperties();
+		if (consume('}'))
+			return properties;
+		do {
+			skipWhitespace();
+			int nameStart = pos;
+			if (!skipString())
+				return null;
+			String name = readString(nameStart, pos);
+			if (!consume(':'))
+				return null;
+			skipWhitespace();
+			int valueStart = pos;
+			if (!skipValue())
+				return null;
+			if ("id".equals(name))
+				properties.id = readString(valueStart, pos);
+			else if ("method".equals(name))
+				properties.method = readString(valueStart, pos);
+			else if ("params".equals(name)) {
+				properties.paramsStart = valueStart;
+				properties.paramsEnd = pos;
+			}
+		} while (consume(','));
+		return consume('}') ? properties : null;
+	}
+	
+	/**
+	 * The JSON text of the {@code params} value of the given properties, or {@code null} if there is none.
+	 */
+	String getParamsJson(MessageProperties properties) {
+		if (properties.paramsStart < 0)
+			return null;
+		return json.subSequence(properties.paramsStart, properties.paramsEnd).toString();
+	}
+	
+	private void skipWhitespace() {
+		while (pos < length) {
+			char c = json.charAt(pos);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+				return;
+			pos++;
+		}
+	}
+	
+	private boolean consume(char expected) {
+		skipWhitespace();
+		if (pos < length && json.charAt(pos) == expected) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+	
+	private boolean skipString() {
+		if (pos >= length || json.charAt(pos) != '"')
+			return false;
+		pos++;
+		while (pos < length) {
+			char c = json.charAt(pos++);
+			if (c == '\\')
+				pos++;
+			else if (c == '"')
+				return true;
+		}
+		return false;
+	}
+	
+	private boolean skipValue() {
+		skipWhitespace();
+		if (pos >= length)
+			return false;
+		char c = json.charAt(pos);
+		if (c == '"')
+			return skipString();
+		if (c == '{' || c == '[') {
+			int depth = 0;
+			while (pos < length) {
+				c = json.charAt(pos);
+				if (c == '"') {
+					if (!skipString())
+						return false;
+					continue;
+				}
+				pos++;
+				if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					if (--depth == 0)
+						return true;
+				}
+			}
+			return false;
+		}
+		int start = pos;
+		while (pos < length) {
+			c = json.charAt(pos);
+			if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r')
+				break;
+			pos++;
+		}
+		return pos > start;
+	}
+	
+	/**
+	 * Read a string or number value the same way the adapter reads it.
+	 */
+	private String readString(int start, int end) throws IOException {
+		if (end - start >= 2 && json.charAt(start) == '"') {
+			boolean escaped = false;
+			for (int i = start + 1; i < end - 1 && !escaped; i++) {
+				escaped = json.charAt(i) == '\\';
+			}
+			if (!escaped)
+				return json.subSequence(start + 1, end - 1).toString();
+		}
+		JsonReader reader = new JsonReader(new StringReader(json.subSequence(start, end).toString()));
+		reader.setLenient(true);
+		return reader.nextString();
+	}
+	
+}
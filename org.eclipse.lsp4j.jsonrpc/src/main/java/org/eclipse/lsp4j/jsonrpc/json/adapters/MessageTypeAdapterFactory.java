@@ -9,11 +9,17 @@ package org.eclipse.lsp4j.jsonrpc.json.adapters;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
 import org.eclipse.lsp4j.jsonrpc.json.MessageConstants;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
 import org.eclipse.lsp4j.jsonrpc.json.MethodProvider;
+import org.eclipse.lsp4j.jsonrpc.json.adapters.MessagePropertyScanner.MessageProperties;
+import org.eclipse.lsp4j.jsonrpc.messages.BatchMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.InvalidMessage;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
 import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
@@ -33,7 +39,9 @@ import com.google.gson.stream.JsonWriter;
 
 /**
  * The type adapter for messages dispatches between the different message types: {@link RequestMessage},
- * {@link ResponseMessage}, and {@link NotificationMessage}.
+ * {@link ResponseMessage}, and {@link NotificationMessage}. A JSON array is read as a {@link BatchMessage}.
+ * An empty array and members of an array that cannot be identified as messages are read as
+ * {@link InvalidMessage}s.
  */
 public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 	
@@ -63,15 +71,28 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 
 		@Override
 		public Message read(JsonReader in) throws IOException {
+			CharSequence input = handler.pollParsingInput();
 			if (in.peek() == JsonToken.NULL) {
 				in.nextNull();
 				return null;
 			}
-			
+			MessagePropertyScanner scanner = input != null ? new MessagePropertyScanner(input) : null;
+			if (in.peek() == JsonToken.BEGIN_ARRAY)
+				return readBatch(in, scanner);
+			return readMessage(in, scanner, -1);
+		}
+		
+		/**
+		 * @param scanner - scans the JSON text of the message if {@code params} or {@code result} precede the
+		 * 		properties that determine their types, or {@code null} if the JSON text is not available
+		 * @param memberIndex - the index of the message in a batch, or -1
+		 */
+		private Message readMessage(JsonReader in, MessagePropertyScanner scanner, int memberIndex) throws IOException {
 			in.beginObject();
 			String jsonrpc = null, id = null, method = null;
 			Object params = null, result = null;
 			ResponseError error = null;
+			MessageProperties scannedProperties = null;
 			while (in.hasNext()) {
 				String name = in.nextName();
 				switch (name) {
@@ -80,7 +101,11 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 					break;
 				}
 				case "id": {
-					id = in.nextString();
+					if (in.peek() == JsonToken.NULL)
+						// The id of an error response to a message whose id could not be determined
+						in.nextNull();
+					else
+						id = in.nextString();
 					break;
 				}
 				case "method": {
@@ -88,23 +113,50 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 					break;
 				}
 				case "params": {
+					String paramsMethod = method;
+					if (paramsMethod == null && scanner != null) {
+						// Look ahead for the method, so the params can be converted right away
+						if (scannedProperties == null)
+							scannedProperties = scanner.scan(memberIndex);
+						if (scannedProperties != null)
+							paramsMethod = scannedProperties.method;
+					}
 					Type type = null;
-					if (method != null) {
-						JsonRpcMethod jsonRpcMethod = handler.getJsonRpcMethod(method);
+					if (paramsMethod != null) {
+						JsonRpcMethod jsonRpcMethod = handler.getJsonRpcMethod(paramsMethod);
 						if (jsonRpcMethod != null)
 							type = jsonRpcMethod.getParameterType();
 					}
-					if (type == null)
+					if (type == null) {
 						params = new JsonParser().parse(in);
-					else
+					} else if (isLazy(paramsMethod)) {
+						// Take the params from the JSON text as they are instead of copying them token by token
+						if (scannedProperties == null && scanner != null)
+							scannedProperties = scanner.scan(memberIndex);
+						String paramsJson = scannedProperties != null ? scanner.getParamsJson(scannedProperties) : null;
+						if (paramsJson != null) {
+							in.skipValue();
+							params = new LazyParams(gson, paramsJson, type);
+						} else {
+							params = new LazyParams(gson, new JsonParser().parse(in), type);
+						}
+					} else
 						params = gson.fromJson(in, type);
 					break;
 				}
 				case "result": {
 					Type type = null;
 					MethodProvider methodProvider = handler.getMethodProvider();
-					if (methodProvider != null && id != null) {
-						String resolvedMethod = methodProvider.resolveMethod(id);
+					String resultId = id;
+					if (resultId == null && methodProvider != null && scanner != null) {
+						// Look ahead for the request id, so the result can be converted right away
+						if (scannedProperties == null)
+							scannedProperties = scanner.scan(memberIndex);
+						if (scannedProperties != null)
+							resultId = scannedProperties.id;
+					}
+					if (methodProvider != null && resultId != null) {
+						String resolvedMethod = methodProvider.resolveMethod(resultId);
 						if (resolvedMethod != null) {
 							JsonRpcMethod jsonRpcMethod = handler.getJsonRpcMethod(resolvedMethod);
 							if (jsonRpcMethod != null)
@@ -127,9 +179,33 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 			}
 			in.endObject();
 			
+			if (memberIndex >= 0 && id == null && method == null && error == null)
+				// Answered with an error response, while the other members of the batch are still processed
+				return new InvalidMessage("Unable to identify the input message.");
 			return createMessage(jsonrpc, id, method, params, result, error);
 		}
 		
+		private boolean isLazy(String method) {
+			return handler.isLazyParams() && !MessageJsonHandler.CANCEL_METHOD.getMethodName().equals(method);
+		}
+		
+		private Message readBatch(JsonReader in, MessagePropertyScanner scanner) throws IOException {
+			List<Message> messages = new ArrayList<>();
+			in.beginArray();
+			while (in.hasNext()) {
+				if (in.peek() != JsonToken.BEGIN_OBJECT) {
+					in.skipValue();
+					messages.add(new InvalidMessage("A batch must only contain message objects."));
+				} else {
+					messages.add(readMessage(in, scanner, messages.size()));
+				}
+			}
+			in.endArray();
+			if (messages.isEmpty())
+				return new InvalidMessage("A batch must not be empty.");
+			return new BatchMessage(messages);
+		}
+		
 		private Message createMessage(String jsonrpc, String id, String method, Object params, Object result, ResponseError error) {
 			if (id != null && method != null) {
 				RequestMessage message = new RequestMessage();
@@ -139,12 +215,17 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 				if (params instanceof JsonElement) {
 					// Type of params could not be resolved - try again with the parsed JSON tree
 					JsonRpcMethod jsonRpcMethod = handler.getJsonRpcMethod(method);
-					if (jsonRpcMethod != null)
-						params = gson.fromJson((JsonElement) params, jsonRpcMethod.getParameterType());
+					if (jsonRpcMethod != null) {
+						if (isLazy(method))
+							params = new LazyParams(gson, params, jsonRpcMethod.getParameterType());
+						else
+							params = gson.fromJson((JsonElement) params, jsonRpcMethod.getParameterType());
+					}
 				}
 				message.setParams(params);
 				return message;
-			} else if (id != null) {
+			} else if (id != null || error != null) {
+				// An error response without id answers a message whose id could not be determined
 				ResponseMessage message = new ResponseMessage();
 				message.setJsonrpc(jsonrpc);
 				message.setId(id);
@@ -173,8 +254,12 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 				if (params instanceof JsonElement) {
 					// Type of params could not be resolved - try again with the parsed JSON tree
 					JsonRpcMethod jsonRpcMethod = handler.getJsonRpcMethod(method);
-					if (jsonRpcMethod != null)
-						params = gson.fromJson((JsonElement) params, jsonRpcMethod.getParameterType());
+					if (jsonRpcMethod != null) {
+						if (isLazy(method))
+							params = new LazyParams(gson, params, jsonRpcMethod.getParameterType());
+						else
+							params = gson.fromJson((JsonElement) params, jsonRpcMethod.getParameterType());
+					}
 				}
 				message.setParams(params);
 				return message;
@@ -185,6 +270,15 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 	
 		@Override
 		public void write(JsonWriter out, Message message) throws IOException {
+			if (message instanceof BatchMessage) {
+				out.beginArray();
+				for (Message member : ((BatchMessage) message).getMessages()) {
+					write(out, member);
+				}
+				out.endArray();
+				return;
+			}
+			
 			out.beginObject();
 			out.name("jsonrpc");
 			out.value(message.getJsonrpc() == null ? MessageConstants.JSONRPC_VERSION : message.getJsonrpc());
@@ -196,15 +290,19 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 				out.name("method");
 				out.value(requestMessage.getMethod());
 				out.name("params");
-				Object params = requestMessage.getParams();
-				if (params == null)
-					out.nullValue();
-				else
-					gson.toJson(params, params.getClass(), out);
+				writeParams(out, requestMessage.getParams());
 			} else if (message instanceof ResponseMessage) {
 				ResponseMessage responseMessage = (ResponseMessage) message;
 				out.name("id");
-				out.value(responseMessage.getId());
+				if (responseMessage.getId() == null) {
+					// The id is required, so it must be written even if null values are omitted
+					boolean serializeNulls = out.getSerializeNulls();
+					out.setSerializeNulls(true);
+					out.nullValue();
+					out.setSerializeNulls(serializeNulls);
+				} else {
+					out.value(responseMessage.getId());
+				}
 				if (responseMessage.getError() != null) {
 					out.name("error");
 					gson.toJson(responseMessage.getError(), ResponseError.class, out);
@@ -221,15 +319,26 @@ public class MessageTypeAdapterFactory implements TypeAdapterFactory {
 				out.name("method");
 				out.value(notificationMessage.getMethod());
 				out.name("params");
-				Object params = notificationMessage.getParams();
-				if (params == null)
-					out.nullValue();
-				else
-					gson.toJson(params, params.getClass(), out);
+				writeParams(out, notificationMessage.getParams());
 			}
 			
 			out.endObject();
 		}
 		
+		private void writeParams(JsonWriter out, Object params) throws IOException {
+			if (params instanceof LazyParams) {
+				LazyParams lazyParams = (LazyParams) params;
+				if (!lazyParams.isConverted()) {
+					out.jsonValue(lazyParams.getJson());
+					return;
+				}
+				params = lazyParams.get();
+			}
+			if (params == null)
+				out.nullValue();
+			else
+				gson.toJson(params, params.getClass(), out);
+		}
+		
 	}
 }
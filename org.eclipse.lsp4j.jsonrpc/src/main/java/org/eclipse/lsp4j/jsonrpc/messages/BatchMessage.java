@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.lsp4j.jsonrpc.validation.NonNull;
+
+/**
+ * A batch of requests and notifications, or of the responses to a batch, that is sent as one JSON array.
+ */
+public class BatchMessage extends Message {
+
+	public BatchMessage() {
+		this(new ArrayList<>());
+	}
+
+	public BatchMessage(List<Message> messages) {
+		this.messages = messages;
+	}
+
+	/**
+	 * The members of the batch. A batch does not contain other batches.
+	 */
+	@NonNull
+	private List<Message> messages;
+
+	public List<Message> getMessages() {
+		return this.messages;
+	}
+
+	public void setMessages(List<Message> messages) {
+		this.messages = messages;
+	}
+
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.messages;
+
+/**
+ * An empty batch or a member of a batch that is neither a request, a notification nor a response. As
+ * required by JSON-RPC 2.0, it is answered with an {@link ResponseErrorCode#InvalidRequest} error whose
+ * id is {@code null}, while the valid members of the same batch are still processed.
+ */
+public class InvalidMessage extends Message {
+
+	public InvalidMessage() {
+	}
+
+	public InvalidMessage(String issue) {
+		this.issue = issue;
+	}
+
+	/**
+	 * A description of what makes the message invalid.
+	 */
+	private String issue;
+
+	public String getIssue() {
+		return this.issue;
+	}
+
+	public void setIssue(String issue) {
+		this.issue = issue;
+	}
+
+}
@@ -68,6 +68,7 @@ public final class AnnotationUtil {
 					String name = Strings.isNullOrEmpty(jsonRequest.value()) ? method.getName() : jsonRequest.value();
 					methodInfo.name = jsonRequest.useSegment() ? prefix + name : name;
 					methodInfo.isNotification = false;
+					methodInfo.supersedable = jsonRequest.supersedable();
 					acceptor.accept(methodInfo);
 				} else {
 					JsonNotification jsonNotification = method.getAnnotation(JsonNotification.class);
@@ -76,6 +77,7 @@ public final class AnnotationUtil {
 								: jsonNotification.value();
 						methodInfo.name = jsonNotification.useSegment() ? prefix + name : name;
 						methodInfo.isNotification = true;
+						methodInfo.supersedesRequests = jsonNotification.supersedesRequests();
 						acceptor.accept(methodInfo);
 					}
 				}
@@ -88,6 +90,8 @@ public final class AnnotationUtil {
 		public Method method;
 		public Type parameterType = Void.class;
 		public boolean isNotification = false;
+		public boolean supersedable = false;
+		public boolean supersedesRequests = false;
 	}
 
 	static class DelegateInfo {
@@ -18,12 +18,16 @@ import java.util.logging.Logger;
 
 import org.eclipse.lsp4j.jsonrpc.Endpoint;
 import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
 import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
 import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
 
+import com.google.gson.JsonParseException;
+
 /**
  * An endpoint that reflectively delegates to {@link JsonNotification} and
- * {@link JsonRequest} methods of a given delegate object.
+ * {@link JsonRequest} methods of a given delegate object. Parameters that are
+ * passed as {@link LazyParams} are converted right before the method is invoked.
  */
 public class GenericEndpoint implements Endpoint {
 	
@@ -40,7 +44,8 @@ public class GenericEndpoint implements Endpoint {
 	protected void recursiveFindRpcMethods(Object current, Set<Class<?>> visited, Set<Class<?>> visitedForDelegate) {
 		AnnotationUtil.findRpcMethods(current.getClass(), visited, (methodInfo) -> {
 			@SuppressWarnings("unchecked")
-			Function<Object, CompletableFuture<Object>> handler = (arg) -> {
+			Function<Object, CompletableFuture<Object>> handler = (lazyArg) -> {
+				Object arg = resolveParams(lazyArg);
 				try {
 					Object[] argument = arg == null ? new Object[0] : new Object[] { arg };
 					return (CompletableFuture<Object>) methodInfo.method.invoke(current, argument);
@@ -63,6 +68,19 @@ public class GenericEndpoint implements Endpoint {
 		});
 	}
 
+	/**
+	 * Convert parameters that have been kept as raw JSON. If they do not match the parameter type,
+	 * a {@link ResponseErrorException} with the code {@link ResponseErrorCode#InvalidParams} is thrown.
+	 */
+	protected Object resolveParams(Object parameter) {
+		try {
+			return LazyParams.resolve(parameter);
+		} catch (JsonParseException e) {
+			ResponseError error = new ResponseError(ResponseErrorCode.InvalidParams, e.getMessage(), null);
+			throw new ResponseErrorException(error);
+		}
+	}
+
 	@Override
 	public CompletableFuture<?> request(String method, Object parameter) {
 		Function<Object, CompletableFuture<Object>> handler = methodHandlers.get(method);
@@ -70,7 +88,7 @@ public class GenericEndpoint implements Endpoint {
 			return handler.apply(parameter);
 		}
 		if (delegate instanceof Endpoint) {
-			return ((Endpoint) delegate).request(method, parameter);
+			return ((Endpoint) delegate).request(method, resolveParams(parameter));
 		}
 		String message = "Unsupported request method: " + method;
 		LOG.log(Level.WARNING, message);
@@ -88,7 +106,7 @@ public class GenericEndpoint implements Endpoint {
 			return;
 		}
 		if (delegate instanceof Endpoint) {
-			((Endpoint) delegate).notify(method, parameter);
+			((Endpoint) delegate).notify(method, resolveParams(parameter));
 			return;
 		}
 		LOG.log(Level.WARNING, "Unsupported notification method: " + method);
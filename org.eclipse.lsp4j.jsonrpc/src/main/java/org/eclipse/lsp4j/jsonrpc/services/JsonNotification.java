@@ -22,4 +22,10 @@ import java.lang.annotation.Target;
 public @interface JsonNotification {
 	String value() default "";
 	boolean useSegment() default true;
+	
+	/**
+	 * Whether this notification cancels the pending {@linkplain JsonRequest#supersedable() supersedable}
+	 * requests for the same document, e.g. because it changes the document.
+	 */
+	boolean supersedesRequests() default false;
 }
@@ -23,4 +23,12 @@ import java.util.concurrent.CompletableFuture;
 public @interface JsonRequest {
 	String value() default "";
 	boolean useSegment() default true;
+	
+	/**
+	 * Whether a pending invocation of this request may be cancelled when it is superseded, i.e. when a
+	 * newer request of the same method or a notification marked with {@link JsonNotification#supersedesRequests()}
+	 * is received for the same document. This only takes effect if superseded requests are cancelled by
+	 * the {@link org.eclipse.lsp4j.jsonrpc.RemoteEndpoint}.
+	 */
+	boolean supersedable() default false;
 }
@@ -12,11 +12,14 @@ import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import org.eclipse.lsp4j.jsonrpc.Endpoint;
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.services.AnnotationUtil.MethodInfo;
 
 public final class ServiceEndpoints {
 	private ServiceEndpoints() {}
@@ -88,4 +91,32 @@ public final class ServiceEndpoints {
 		return result;
 	}
 	
+	/**
+	 * Finds the names of the request methods on a given class that are marked as
+	 * {@linkplain JsonRequest#supersedable() supersedable}.
+	 */
+	public static Set<String> getSupersedableRequests(Class<?> type) {
+		return getMethodNames(type, new HashSet<>(), methodInfo -> methodInfo.supersedable);
+	}
+	
+	/**
+	 * Finds the names of the notification methods on a given class that
+	 * {@linkplain JsonNotification#supersedesRequests() supersede requests}.
+	 */
+	public static Set<String> getSupersedingNotifications(Class<?> type) {
+		return getMethodNames(type, new HashSet<>(), methodInfo -> methodInfo.supersedesRequests);
+	}
+	
+	private static Set<String> getMethodNames(Class<?> type, Set<Class<?>> visitedTypes, Predicate<MethodInfo> filter) {
+		Set<String> result = new LinkedHashSet<>();
+		AnnotationUtil.findRpcMethods(type, visitedTypes, (methodInfo) -> {
+			if (filter.test(methodInfo))
+				result.add(methodInfo.name);
+		});
+		AnnotationUtil.findDelegateSegments(type, new HashSet<>(), (method) -> {
+			result.addAll(getMethodNames(method.getReturnType(), visitedTypes, filter));
+		});
+		return result;
+	}
+	
 }
@@ -16,6 +16,7 @@ import java.util.stream.Collectors;
 
 import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
 import org.eclipse.lsp4j.jsonrpc.json.InvalidMessageException;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
 import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
@@ -57,6 +58,11 @@ public class ReflectiveMessageValidator implements MessageConsumer {
 			issues.add("An element of the message has a direct or indirect reference to itself.");
 			return;
 		}
+		if (object instanceof LazyParams) {
+			// Parameters kept as raw JSON must be converted to be validated
+			validate(((LazyParams) object).get(), issues, objectStack);
+			return;
+		}
 		objectStack.push(object);
 		if (object instanceof List<?>) {
 			for (Object obj : (List<?>) object) {
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompletableFuturesTest {
+
+	@Test
+	public void testComputeAsync() throws Exception {
+		assertEquals("result", CompletableFutures.computeAsync(cancelChecker -> "result").get(5, TimeUnit.SECONDS));
+		try {
+			CompletableFutures.computeAsync(cancelChecker -> {
+				throw new IllegalStateException("failed");
+			}).get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals("failed", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testCancelledBeforeStart() {
+		List<Runnable> queue = new ArrayList<>();
+		AtomicInteger calls = new AtomicInteger();
+		CompletableFuture<String> future = CompletableFutures.computeAsync(queue::add, cancelChecker -> {
+			calls.incrementAndGet();
+			return "result";
+		});
+		future.cancel(true);
+		queue.forEach(Runnable::run);
+		assertEquals(0, calls.get());
+		assertTrue(future.isCancelled());
+	}
+
+	@Test
+	public void testCancelChecker() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch cancelled = new CountDownLatch(1);
+			CompletableFuture<Boolean> checked = new CompletableFuture<>();
+			CompletableFuture<String> future = CompletableFutures.computeAsync(executor, cancelChecker -> {
+				started.countDown();
+				try {
+					cancelled.await();
+					cancelChecker.checkCanceled();
+					checked.complete(false);
+				} catch (RuntimeException e) {
+					checked.complete(true);
+					throw e;
+				} catch (InterruptedException e) {
+					checked.complete(false);
+				}
+				return "result";
+			});
+			started.await();
+			future.cancel(true);
+			cancelled.countDown();
+			assertTrue(checked.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testInterruptOnCancel() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+			CompletableFuture<String> future = CompletableFutures.computeAsync(executor, cancelChecker -> {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+					interrupted.complete(false);
+				} catch (InterruptedException e) {
+					interrupted.complete(true);
+				}
+				return "result";
+			}, true);
+			started.await();
+			future.cancel(true);
+			assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+
+			// The interrupt does not leak into the next task of the thread
+			assertFalse(CompletableFutures.computeAsync(executor, cancelChecker -> Thread.currentThread().isInterrupted())
+					.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRejectedExecution() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		CompletableFuture<String> future = CompletableFutures.computeAsync(executor, cancelChecker -> "result");
+		assertTrue(future.isCompletedExceptionally());
+	}
+
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.lsp4j.jsonrpc.DeduplicatingEndpoint;
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeduplicatingEndpointTest {
+
+	static class Position {
+		final int line;
+		final int character;
+
+		Position(int line, int character) {
+			this.line = line;
+			this.character = character;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Position && ((Position) obj).line == line && ((Position) obj).character == character;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * line + character;
+		}
+	}
+
+	static class TestEndpoint implements Endpoint {
+
+		final List<String> requests = new ArrayList<>();
+		final List<CompletableFuture<Object>> futures = new ArrayList<>();
+		final List<String> notifications = new ArrayList<>();
+
+		@Override
+		public CompletableFuture<?> request(String method, Object parameter) {
+			requests.add(method);
+			CompletableFuture<Object> future = new CompletableFuture<>();
+			futures.add(future);
+			return future;
+		}
+
+		@Override
+		public void notify(String method, Object parameter) {
+			notifications.add(method);
+		}
+
+	}
+
+	@Test
+	public void testSharedComputation() throws Exception {
+		TestEndpoint delegate = new TestEndpoint();
+		DeduplicatingEndpoint endpoint = new DeduplicatingEndpoint(delegate, Arrays.asList("hover"));
+
+		CompletableFuture<?> first = endpoint.request("hover", new Position(1, 2));
+		CompletableFuture<?> second = endpoint.request("hover", new Position(1, 2));
+		assertNotSame(first, second);
+		assertEquals(1, delegate.requests.size());
+		assertEquals(1, endpoint.getDeduplicatedCount());
+		assertEquals(1, endpoint.getInFlightCount());
+
+		delegate.futures.get(0).complete("result");
+		assertEquals("result", first.get());
+		assertEquals("result", second.get());
+		assertEquals(0, endpoint.getInFlightCount());
+
+		// An answered request is not shared anymore
+		endpoint.request("hover", new Position(1, 2));
+		assertEquals(2, delegate.requests.size());
+	}
+
+	@Test
+	public void testDifferentRequests() {
+		TestEndpoint delegate = new TestEndpoint();
+		DeduplicatingEndpoint endpoint = new DeduplicatingEndpoint(delegate, Arrays.asList("hover", "highlight"));
+
+		endpoint.request("hover", new Position(1, 2));
+		endpoint.request("hover", new Position(1, 3));
+		endpoint.request("highlight", new Position(1, 2));
+		endpoint.request("rename", new Position(1, 2));
+		endpoint.request("rename", new Position(1, 2));
+		endpoint.notify("didChange", null);
+		endpoint.notify("didChange", null);
+		assertEquals(5, delegate.requests.size());
+		assertEquals(2, delegate.notifications.size());
+		assertEquals(0, endpoint.getDeduplicatedCount());
+	}
+
+	@Test
+	public void testCancellation() {
+		TestEndpoint delegate = new TestEndpoint();
+		DeduplicatingEndpoint endpoint = new DeduplicatingEndpoint(delegate, Arrays.asList("hover"));
+
+		CompletableFuture<?> first = endpoint.request("hover", new Position(1, 2));
+		CompletableFuture<?> second = endpoint.request("hover", new Position(1, 2));
+		first.cancel(true);
+		assertFalse(delegate.futures.get(0).isCancelled());
+		second.cancel(true);
+		assertTrue(delegate.futures.get(0).isCancelled());
+		assertEquals(0, endpoint.getInFlightCount());
+
+		// A cancelled computation is not shared with new requests
+		CompletableFuture<?> third = endpoint.request("hover", new Position(1, 2));
+		assertEquals(2, delegate.requests.size());
+		assertFalse(third.isDone());
+	}
+
+	@Test
+	public void testPartialCancellation() throws Exception {
+		TestEndpoint delegate = new TestEndpoint();
+		DeduplicatingEndpoint endpoint = new DeduplicatingEndpoint(delegate, Arrays.asList("hover"));
+
+		CompletableFuture<?> first = endpoint.request("hover", new Position(1, 2));
+		CompletableFuture<?> second = endpoint.request("hover", new Position(1, 2));
+		first.cancel(true);
+		delegate.futures.get(0).complete("result");
+		assertTrue(first.isCancelled());
+		assertEquals("result", second.get());
+	}
+
+	@Test
+	public void testException() throws Exception {
+		TestEndpoint delegate = new TestEndpoint();
+		DeduplicatingEndpoint endpoint = new DeduplicatingEndpoint(delegate, Arrays.asList("hover"));
+
+		CompletableFuture<?> first = endpoint.request("hover", new Position(1, 2));
+		CompletableFuture<?> second = endpoint.request("hover", new Position(1, 2));
+		delegate.futures.get(0).completeExceptionally(new IllegalStateException("failed"));
+		for (CompletableFuture<?> future : Arrays.asList(first, second)) {
+			try {
+				future.get();
+				fail();
+			} catch (ExecutionException e) {
+				assertEquals("failed", e.getCause().getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void testSynchronousException() {
+		DeduplicatingEndpoint endpoint = new DeduplicatingEndpoint(new TestEndpoint() {
+			@Override
+			public CompletableFuture<?> request(String method, Object parameter) {
+				throw new IllegalStateException("failed");
+			}
+		}, Arrays.asList("hover"));
+		try {
+			endpoint.request("hover", new Position(1, 2));
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		assertEquals(0, endpoint.getInFlightCount());
+	}
+
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.HashedWheelTimer;
+import org.eclipse.lsp4j.jsonrpc.HashedWheelTimer.Timeout;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+	private HashedWheelTimer timer;
+
+	@Before
+	public void setup() {
+		timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8);
+	}
+
+	@After
+	public void teardown() {
+		timer.close();
+	}
+
+	@Test
+	public void testExpiration() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		Timeout timeout = timer.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+		Assert.assertEquals(1, timer.getPendingCount());
+		Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		Assert.assertTrue(timeout.isExpired());
+		Assert.assertFalse(timeout.cancel());
+		Assert.assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test
+	public void testMoreThanOneRound() throws Exception {
+		// The wheel covers 80 ms, so this timeout has to wait for several rounds
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		timer.schedule(latch::countDown, 250, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+	}
+
+	@Test
+	public void testVeryLongDelay() throws Exception {
+		AtomicInteger runCount = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		Timeout timeout = timer.schedule(runCount::incrementAndGet, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		timer.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+		Assert.assertEquals(0, runCount.get());
+		Assert.assertFalse(timeout.isExpired());
+		Assert.assertTrue(timeout.cancel());
+	}
+
+	@Test
+	public void testCancellation() throws Exception {
+		AtomicInteger runCount = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		Timeout timeout = timer.schedule(runCount::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+		timer.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(timeout.cancel());
+		Assert.assertTrue(timeout.isCancelled());
+		Assert.assertFalse(timeout.cancel());
+		Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+		Assert.assertEquals(0, runCount.get());
+		Assert.assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test
+	public void testManyTimeouts() throws Exception {
+		int count = 10000;
+		CountDownLatch latch = new CountDownLatch(count / 2);
+		Timeout[] timeouts = new Timeout[count];
+		for (int i = 0; i < count; i++) {
+			timeouts[i] = timer.schedule(latch::countDown, 50 + i % 200, TimeUnit.MILLISECONDS);
+			if (i % 2 == 1)
+				Assert.assertTrue(timeouts[i].cancel());
+		}
+		Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(i % 2 == 0, timeouts[i].isExpired());
+		}
+	}
+
+	@Test
+	public void testClose() {
+		AtomicInteger runCount = new AtomicInteger();
+		timer.schedule(runCount::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+		timer.close();
+		Assert.assertEquals(0, timer.getPendingCount());
+		try {
+			timer.schedule(runCount::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+
+}
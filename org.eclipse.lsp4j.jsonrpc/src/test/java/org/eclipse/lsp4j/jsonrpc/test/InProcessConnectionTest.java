@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
+import org.eclipse.lsp4j.jsonrpc.InProcessConnection;
+import org.eclipse.lsp4j.jsonrpc.InProcessConnection.CopyPolicy;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.json.InvalidMessageException;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.eclipse.lsp4j.jsonrpc.validation.NonNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InProcessConnectionTest {
+
+	private static final long TIMEOUT = 2000;
+
+	public static class MyParam {
+		@NonNull
+		private String value;
+
+		public MyParam(String value) {
+			this.value = value;
+		}
+
+		@NonNull
+		public String getValue() {
+			return value;
+		}
+
+		public void setValue(String value) {
+			this.value = value;
+		}
+	}
+
+	public static interface MyServer {
+		@JsonRequest
+		CompletableFuture<MyParam> askServer(MyParam param);
+
+		@JsonNotification
+		void notifyServer(MyParam param);
+	}
+
+	public static interface MyClient {
+		@JsonRequest
+		CompletableFuture<MyParam> askClient(MyParam param);
+	}
+
+	private static class Server implements MyServer {
+		final List<MyParam> received = new ArrayList<>();
+
+		@Override
+		public CompletableFuture<MyParam> askServer(MyParam param) {
+			received.add(param);
+			return CompletableFuture.completedFuture(param);
+		}
+
+		@Override
+		public synchronized void notifyServer(MyParam param) {
+			received.add(param);
+		}
+	}
+
+	private static final MyClient ECHO_CLIENT = param -> CompletableFuture.completedFuture(param);
+
+	@Test
+	public void testBothDirectionRequests() throws Exception {
+		InProcessConnection connection = new InProcessConnection();
+		Server server = new Server();
+		Launcher<MyServer> clientLauncher = Launcher.createInProcessLauncher(ECHO_CLIENT, MyServer.class, connection.getClientEnd(), null, null);
+		Launcher<MyClient> serverLauncher = Launcher.createInProcessLauncher(server, MyClient.class, connection.getServerEnd(), null, null);
+		clientLauncher.startListening();
+		serverLauncher.startListening();
+
+		MyParam param = new MyParam("FOO");
+		MyParam result = clientLauncher.getRemoteProxy().askServer(param).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertEquals("FOO", result.getValue());
+		// Without copying both sides see the same objects
+		Assert.assertSame(param, server.received.get(0));
+		Assert.assertSame(param, result);
+
+		result = serverLauncher.getRemoteProxy().askClient(new MyParam("BAR")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertEquals("BAR", result.getValue());
+		connection.close();
+	}
+
+	@Test
+	public void testSerializingCopy() throws Exception {
+		InProcessConnection connection = new InProcessConnection(CopyPolicy.SERIALIZE);
+		Server server = new Server();
+		Launcher<MyServer> clientLauncher = Launcher.createInProcessLauncher(ECHO_CLIENT, MyServer.class, connection.getClientEnd(), null, null);
+		Launcher<MyClient> serverLauncher = Launcher.createInProcessLauncher(server, MyClient.class, connection.getServerEnd(), null, null);
+		clientLauncher.startListening();
+		serverLauncher.startListening();
+
+		MyParam param = new MyParam("FOO");
+		MyParam result = clientLauncher.getRemoteProxy().askServer(param).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertEquals("FOO", result.getValue());
+		Assert.assertNotSame(param, server.received.get(0));
+		Assert.assertNotSame(param, result);
+		Assert.assertNotSame(server.received.get(0), result);
+		connection.close();
+	}
+
+	@Test
+	public void testNotificationOrder() throws Exception {
+		InProcessConnection connection = new InProcessConnection();
+		Server server = new Server();
+		Launcher<MyServer> clientLauncher = Launcher.createInProcessLauncher(ECHO_CLIENT, MyServer.class, connection.getClientEnd(), null, null);
+		Launcher<MyClient> serverLauncher = Launcher.createInProcessLauncher(server, MyClient.class, connection.getServerEnd(), null, null);
+		clientLauncher.startListening();
+		serverLauncher.startListening();
+
+		for (int i = 0; i < 1000; i++) {
+			clientLauncher.getRemoteProxy().notifyServer(new MyParam("foo" + i));
+		}
+		clientLauncher.getRemoteProxy().askServer(new MyParam("done")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		synchronized (server) {
+			Assert.assertEquals(1001, server.received.size());
+			for (int i = 0; i < 1000; i++) {
+				Assert.assertEquals("foo" + i, server.received.get(i).getValue());
+			}
+		}
+		connection.close();
+	}
+
+	@Test
+	public void testCancellation() throws Exception {
+		InProcessConnection connection = new InProcessConnection();
+		boolean[] cancellationHappened = new boolean[1];
+		CompletableFuture<Void> started = new CompletableFuture<>();
+		MyClient client = param -> CompletableFutures.computeAsync(cancelToken -> {
+			started.complete(null);
+			try {
+				long startTime = System.currentTimeMillis();
+				do {
+					cancelToken.checkCanceled();
+					Thread.sleep(50);
+				} while (System.currentTimeMillis() - startTime < TIMEOUT);
+			} catch (CancellationException e) {
+				cancellationHappened[0] = true;
+			} catch (InterruptedException e) {
+				Assert.fail("Thread was interrupted unexpectedly.");
+			}
+			return param;
+		});
+		Launcher<MyServer> clientLauncher = Launcher.createInProcessLauncher(client, MyServer.class, connection.getClientEnd(), null, null);
+		Launcher<MyClient> serverLauncher = Launcher.createInProcessLauncher(new Server(), MyClient.class, connection.getServerEnd(), null, null);
+		clientLauncher.startListening();
+		serverLauncher.startListening();
+
+		CompletableFuture<MyParam> future = serverLauncher.getRemoteProxy().askClient(new MyParam("FOO"));
+		// Messages are delivered so fast that the request could be cancelled before it is started
+		started.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		future.cancel(true);
+		long startTime = System.currentTimeMillis();
+		while (!cancellationHappened[0]) {
+			Thread.sleep(50);
+			if (System.currentTimeMillis() - startTime > TIMEOUT)
+				Assert.fail("Timeout waiting for cancellation.");
+		}
+		connection.close();
+	}
+
+	@Test
+	public void testValidation() throws Exception {
+		InProcessConnection connection = new InProcessConnection();
+		Launcher<MyServer> clientLauncher = new Launcher.Builder<MyServer>()
+				.setLocalService(ECHO_CLIENT)
+				.setRemoteInterface(MyServer.class)
+				.setInProcessEnd(connection.getClientEnd())
+				.validateMessages(true)
+				.create();
+		Launcher<MyClient> serverLauncher = Launcher.createInProcessLauncher(new Server(), MyClient.class, connection.getServerEnd(), null, null);
+		clientLauncher.startListening();
+		serverLauncher.startListening();
+
+		try {
+			clientLauncher.getRemoteProxy().askServer(new MyParam(null)).get(TIMEOUT, TimeUnit.MILLISECONDS);
+			Assert.fail("Expected a validation error.");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof InvalidMessageException);
+			Assert.assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("value"));
+		}
+		MyParam result = clientLauncher.getRemoteProxy().askServer(new MyParam("FOO")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertEquals("FOO", result.getValue());
+		connection.close();
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		InProcessConnection connection = new InProcessConnection();
+		Launcher<MyServer> clientLauncher = Launcher.createInProcessLauncher(ECHO_CLIENT, MyServer.class, connection.getClientEnd(), null, null);
+		Launcher<MyClient> serverLauncher = Launcher.createInProcessLauncher(new Server(), MyClient.class, connection.getServerEnd(), null, null);
+		Future<?> clientFuture = clientLauncher.startListening();
+		Future<?> serverFuture = serverLauncher.startListening();
+		connection.getClientEnd().close();
+		clientFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		serverFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+}
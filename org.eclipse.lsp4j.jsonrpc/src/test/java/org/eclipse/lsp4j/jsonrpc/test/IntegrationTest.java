@@ -12,17 +12,20 @@ import static org.eclipse.lsp4j.jsonrpc.json.MessageConstants.CRLF;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
+import org.eclipse.lsp4j.jsonrpc.DuplexPipe;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
 import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.json.AsyncMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.ByteArrayPool;
 import org.eclipse.lsp4j.jsonrpc.services.GenericEndpoint;
 import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
 import org.junit.Assert;
@@ -53,13 +56,7 @@ public class IntegrationTest {
 	@Test
 	public void testBothDirectionRequests() throws Exception {
 		// create client side
-		PipedInputStream in = new PipedInputStream();
-		PipedOutputStream out = new PipedOutputStream();
-		PipedInputStream in2 = new PipedInputStream();
-		PipedOutputStream out2 = new PipedOutputStream();
-		
-		in.connect(out2);
-		out.connect(in2);
+		DuplexPipe pipe = new DuplexPipe();
 		
 		MyClient client = new MyClient() {
 			@Override
@@ -67,7 +64,7 @@ public class IntegrationTest {
 				return CompletableFuture.completedFuture(param);
 			}
 		};
-		Launcher<MyServer> clientSideLauncher = Launcher.createLauncher(client, MyServer.class, in, out);
+		Launcher<MyServer> clientSideLauncher = Launcher.createLauncher(client, MyServer.class, pipe.getClientInput(), pipe.getClientOutput());
 		
 		// create server side
 		MyServer server = new MyServer() {
@@ -76,7 +73,7 @@ public class IntegrationTest {
 				return CompletableFuture.completedFuture(param);
 			}
 		};
-		Launcher<MyClient> serverSideLauncher = Launcher.createLauncher(server, MyClient.class, in2, out2);
+		Launcher<MyClient> serverSideLauncher = Launcher.createLauncher(server, MyClient.class, pipe.getServerInput(), pipe.getServerOutput());
 		
 		clientSideLauncher.startListening();
 		serverSideLauncher.startListening();
@@ -91,20 +88,16 @@ public class IntegrationTest {
 	@Test
 	public void testCancellation() throws Exception {
 		// create client side
-		PipedInputStream in = new PipedInputStream();
-		PipedOutputStream out = new PipedOutputStream();
-		PipedInputStream in2 = new PipedInputStream();
-		PipedOutputStream out2 = new PipedOutputStream();
-		
-		in.connect(out2);
-		out.connect(in2);
+		DuplexPipe pipe = new DuplexPipe();
 		
 		boolean[] cancellationHappened = new boolean[1];
+		CompletableFuture<Void> started = new CompletableFuture<>();
 		
 		MyClient client = new MyClient() {
 			@Override
 			public CompletableFuture<MyParam> askClient(MyParam param) {
 				return CompletableFutures.computeAsync(cancelToken -> {
+					started.complete(null);
 					try {
 						long startTime = System.currentTimeMillis();
 						do {
@@ -120,7 +113,7 @@ public class IntegrationTest {
 				});
 			}
 		};
-		Launcher<MyServer> clientSideLauncher = Launcher.createLauncher(client, MyServer.class, in, out);
+		Launcher<MyServer> clientSideLauncher = Launcher.createLauncher(client, MyServer.class, pipe.getClientInput(), pipe.getClientOutput());
 		
 		// create server side
 		MyServer server = new MyServer() {
@@ -129,12 +122,14 @@ public class IntegrationTest {
 				return CompletableFuture.completedFuture(param);
 			}
 		};
-		Launcher<MyClient> serverSideLauncher = Launcher.createLauncher(server, MyClient.class, in2, out2);
+		Launcher<MyClient> serverSideLauncher = Launcher.createLauncher(server, MyClient.class, pipe.getServerInput(), pipe.getServerOutput());
 		
 		clientSideLauncher.startListening();
 		serverSideLauncher.startListening();
 		
 		CompletableFuture<MyParam> future = serverSideLauncher.getRemoteProxy().askClient(new MyParam("FOO"));
+		// a request that is cancelled before its computation has started is never run
+		started.get(TIMEOUT, TimeUnit.MILLISECONDS);
 		future.cancel(true);
 		long startTime = System.currentTimeMillis();
 		while (!cancellationHappened[0]) {
@@ -151,15 +146,121 @@ public class IntegrationTest {
 	
 	
 	@Test
-	public void testVersatility() throws Exception {
+	public void testConcurrentDispatch() throws Exception {
+		DuplexPipe pipe = new DuplexPipe();
+		CountDownLatch release = new CountDownLatch(1);
+		
 		// create client side
-		PipedInputStream in = new PipedInputStream();
-		PipedOutputStream out = new PipedOutputStream();
-		PipedInputStream in2 = new PipedInputStream();
-		PipedOutputStream out2 = new PipedOutputStream();
+		MyClient client = new MyClient() {
+			@Override
+			public CompletableFuture<MyParam> askClient(MyParam param) {
+				return CompletableFuture.completedFuture(param);
+			}
+		};
+		Launcher<MyServer> clientSideLauncher = Launcher.createLauncher(client, MyServer.class, pipe.getClientInput(), pipe.getClientOutput());
+		
+		// create server side, whose first request blocks before returning its future
+		MyServer server = new MyServer() {
+			@Override
+			public CompletableFuture<MyParam> askServer(MyParam param) {
+				if (param.value.equals("SLOW")) {
+					try {
+						release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				return CompletableFuture.completedFuture(param);
+			}
+		};
+		Launcher<MyClient> serverSideLauncher = new Launcher.Builder<MyClient>()
+				.setLocalService(server)
+				.setRemoteInterface(MyClient.class)
+				.setInput(pipe.getServerInput())
+				.setOutput(pipe.getServerOutput())
+				.setConcurrentDispatch(true)
+				.create();
+		
+		clientSideLauncher.startListening();
+		serverSideLauncher.startListening();
+		
+		CompletableFuture<MyParam> slowFuture = clientSideLauncher.getRemoteProxy().askServer(new MyParam("SLOW"));
+		CompletableFuture<MyParam> fastFuture = clientSideLauncher.getRemoteProxy().askServer(new MyParam("FAST"));
+		Assert.assertEquals("FAST", fastFuture.get(TIMEOUT, TimeUnit.MILLISECONDS).value);
+		Assert.assertFalse(slowFuture.isDone());
+		release.countDown();
+		Assert.assertEquals("SLOW", slowFuture.get(TIMEOUT, TimeUnit.MILLISECONDS).value);
+	}
+	
+	@Test
+	public void testLauncherComponents() throws Exception {
+		DuplexPipe pipe = new DuplexPipe();
+		
+		MyClient client = new MyClient() {
+			@Override
+			public CompletableFuture<MyParam> askClient(MyParam param) {
+				return CompletableFuture.completedFuture(param);
+			}
+		};
+		Launcher<MyServer> clientSideLauncher = Launcher.createLauncher(client, MyServer.class, pipe.getClientInput(), pipe.getClientOutput());
+		Assert.assertNull(clientSideLauncher.getOutgoingMessageQueue());
+		Assert.assertNull(clientSideLauncher.getMessageDispatcher());
+		
+		MyServer server = new MyServer() {
+			@Override
+			public CompletableFuture<MyParam> askServer(MyParam param) {
+				return CompletableFuture.completedFuture(param);
+			}
+		};
+		ByteArrayPool bufferPool = new ByteArrayPool();
+		Launcher<MyClient> serverSideLauncher = new Launcher.Builder<MyClient>()
+				.setLocalService(server)
+				.setRemoteInterface(MyClient.class)
+				.setInput(pipe.getServerInput())
+				.setOutput(pipe.getServerOutput())
+				.setOutgoingMessageQueue(16, AsyncMessageConsumer.OverflowPolicy.BLOCK)
+				.setConcurrentDispatch(true)
+				.setBufferPool(bufferPool)
+				.create();
+		Assert.assertNotNull(serverSideLauncher.getMessageDispatcher());
+		Assert.assertNotNull(serverSideLauncher.getRemoteEndpoint());
+		
+		clientSideLauncher.startListening();
+		serverSideLauncher.startListening();
 		
-		in.connect(out2);
-		out.connect(in2);
+		// A message that does not fit into the read buffer is received into a pooled array
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			value.append('x');
+		}
+		MyParam result = clientSideLauncher.getRemoteProxy().askServer(new MyParam(value.toString())).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertEquals(value.toString(), result.value);
+		Assert.assertEquals(1, bufferPool.getHitCount() + bufferPool.getMissCount());
+		Assert.assertEquals(16, serverSideLauncher.getOutgoingMessageQueue().getCapacity());
+	}
+	
+	@Test
+	public void testCustomLauncherComponents() throws Exception {
+		Launcher<MyServer> launcher = new Launcher<MyServer>() {
+			@Override
+			public Future<?> startListening() {
+				return CompletableFuture.completedFuture(null);
+			}
+			@Override
+			public MyServer getRemoteProxy() {
+				return null;
+			}
+		};
+		// A launcher that does not provide its components returns null
+		Assert.assertNull(launcher.getRemoteEndpoint());
+		Assert.assertNull(launcher.getOutgoingMessageQueue());
+		Assert.assertNull(launcher.getMessageDispatcher());
+	}
+	
+	@Test
+	public void testVersatility() throws Exception {
+		// create client side
+		DuplexPipe pipe = new DuplexPipe();
 		
 		MyClient client = new MyClient() {
 			private int tries = 0;
@@ -177,7 +278,7 @@ public class IntegrationTest {
 				});
 			}
 		};
-		Launcher<MyServer> clientSideLauncher = Launcher.createLauncher(client, MyServer.class, in, out);
+		Launcher<MyServer> clientSideLauncher = Launcher.createLauncher(client, MyServer.class, pipe.getClientInput(), pipe.getClientOutput());
 		
 		// create server side
 		MyServer server = new MyServer() {
@@ -186,7 +287,7 @@ public class IntegrationTest {
 				return CompletableFuture.completedFuture(param);
 			}
 		};
-		Launcher<MyClient> serverSideLauncher = Launcher.createLauncher(server, MyClient.class, in2, out2);
+		Launcher<MyClient> serverSideLauncher = Launcher.createLauncher(server, MyClient.class, pipe.getServerInput(), pipe.getServerOutput());
 		
 		clientSideLauncher.startListening();
 		serverSideLauncher.startListening();
@@ -243,6 +344,11 @@ public class IntegrationTest {
 			
 			logMessages.await(Level.WARNING, "Unsupported notification method: foo1");
 			logMessages.await(Level.WARNING, "Unsupported request method: foo2");
+			// the error response is written after the warning has been logged
+			long startTime = System.currentTimeMillis();
+			while (out.size() == 0 && System.currentTimeMillis() - startTime < TIMEOUT) {
+				Thread.sleep(10);
+			}
 			
 			Assert.assertEquals("Content-Length: 95" + CRLF + CRLF
 					+ "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"error\":{\"code\":-32600,\"message\":\"Unsupported request method: foo2\"}}",
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.KeyedSerialExecutor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyedSerialExecutorTest {
+
+	private static final long TIMEOUT = 2000;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setup() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void teardown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testOrderPerKey() throws Exception {
+		int keyCount = 10;
+		int taskCount = 1000;
+		KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor, 8);
+		List<List<Integer>> results = new ArrayList<>();
+		AtomicInteger[] running = new AtomicInteger[keyCount];
+		AtomicInteger maxRunning = new AtomicInteger();
+		for (int k = 0; k < keyCount; k++) {
+			results.add(Collections.synchronizedList(new ArrayList<>()));
+			running[k] = new AtomicInteger();
+		}
+		CountDownLatch done = new CountDownLatch(keyCount * taskCount);
+		for (int i = 0; i < taskCount; i++) {
+			for (int k = 0; k < keyCount; k++) {
+				int key = k;
+				int value = i;
+				keyedExecutor.execute("key" + key, () -> {
+					maxRunning.accumulateAndGet(running[key].incrementAndGet(), Math::max);
+					results.get(key).add(value);
+					running[key].decrementAndGet();
+					done.countDown();
+				});
+			}
+		}
+		Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, maxRunning.get());
+		for (List<Integer> result : results) {
+			Assert.assertEquals(taskCount, result.size());
+			for (int i = 0; i < taskCount; i++) {
+				Assert.assertEquals(i, result.get(i).intValue());
+			}
+		}
+	}
+
+	@Test
+	public void testKeysRunInParallel() throws Exception {
+		KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch otherKeyRun = new CountDownLatch(1);
+		CountDownLatch sameKeyRun = new CountDownLatch(1);
+		keyedExecutor.execute("a", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+		});
+		keyedExecutor.execute("a", sameKeyRun::countDown);
+		keyedExecutor.execute("b", otherKeyRun::countDown);
+		Assert.assertTrue(otherKeyRun.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertFalse(sameKeyRun.await(50, TimeUnit.MILLISECONDS));
+		release.countDown();
+		Assert.assertTrue(sameKeyRun.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testIdleKeysAreRemoved() throws Exception {
+		KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor);
+		CountDownLatch done = new CountDownLatch(100);
+		for (int i = 0; i < 100; i++) {
+			keyedExecutor.execute(i, done::countDown);
+		}
+		Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (keyedExecutor.getActiveKeyCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(0, keyedExecutor.getActiveKeyCount());
+	}
+
+	@Test
+	public void testExceptionDoesNotStopKey() throws Exception {
+		KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor);
+		CountDownLatch done = new CountDownLatch(1);
+		keyedExecutor.execute("a", () -> {
+			throw new IllegalStateException("expected");
+		});
+		keyedExecutor.execute("a", done::countDown);
+		Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+}
@@ -4,12 +4,18 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.lsp4j.jsonrpc.DuplexPipe;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
 import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -25,6 +31,10 @@ public class LauncherTest {
 		@JsonNotification public void say(Param p);
 	}
 
+	public static interface B {
+		@JsonRequest public CompletableFuture<String> await(Param p);
+	}
+
 	@Test public void testDone() throws Exception {
 		A a = new A() {
 			@Override
@@ -60,4 +70,82 @@ public class LauncherTest {
 		Assert.assertTrue(startListening.isDone());
 		Assert.assertTrue(startListening.isCancelled());
 	}
+	
+	@Test public void testVirtualThreads() throws Exception {
+		// Every request blocks until all requests have arrived, so they must be dispatched concurrently
+		int requestCount = 100;
+		CountDownLatch arrived = new CountDownLatch(requestCount);
+		B server = new B() {
+			@Override
+			public CompletableFuture<String> await(Param p) {
+				arrived.countDown();
+				try {
+					arrived.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return CompletableFuture.completedFuture(p.message);
+			}
+		};
+		try (DuplexPipe pipe = new DuplexPipe()) {
+			Launcher<A> serverLauncher = new Launcher.Builder<A>()
+					.setLocalService(server)
+					.setRemoteInterface(A.class)
+					.setInput(pipe.getServerInput())
+					.setOutput(pipe.getServerOutput())
+					.setVirtualThreads(true)
+					.setConcurrentDispatch(true)
+					.create();
+			Launcher<B> clientLauncher = new Launcher.Builder<B>()
+					.setLocalService((A) p -> {})
+					.setRemoteInterface(B.class)
+					.setInput(pipe.getClientInput())
+					.setOutput(pipe.getClientOutput())
+					.setVirtualThreads(true)
+					.create();
+			Future<?> serverListening = serverLauncher.startListening();
+			Future<?> clientListening = clientLauncher.startListening();
+			
+			List<CompletableFuture<String>> results = new ArrayList<>();
+			for (int i = 0; i < requestCount; i++) {
+				Param param = new Param();
+				param.message = "request " + i;
+				results.add(clientLauncher.getRemoteProxy().await(param));
+			}
+			for (int i = 0; i < requestCount; i++) {
+				Assert.assertEquals("request " + i, results.get(i).get(TIMEOUT * 5, TimeUnit.MILLISECONDS));
+			}
+			serverListening.cancel(true);
+			clientListening.cancel(true);
+		}
+	}
+	
+	@Test public void testLazyParams() throws Exception {
+		B server = p -> CompletableFuture.completedFuture(p.message);
+		try (DuplexPipe pipe = new DuplexPipe()) {
+			Launcher<A> serverLauncher = new Launcher.Builder<A>()
+					.setLocalService(server)
+					.setRemoteInterface(A.class)
+					.setInput(pipe.getServerInput())
+					.setOutput(pipe.getServerOutput())
+					.setLazyParams(true)
+					.setConcurrentDispatch(true)
+					.create();
+			Launcher<B> clientLauncher = new Launcher.Builder<B>()
+					.setLocalService((A) p -> {})
+					.setRemoteInterface(B.class)
+					.setInput(pipe.getClientInput())
+					.setOutput(pipe.getClientOutput())
+					.create();
+			Future<?> serverListening = serverLauncher.startListening();
+			Future<?> clientListening = clientLauncher.startListening();
+			
+			Param param = new Param();
+			param.message = "lazy";
+			Assert.assertEquals("lazy", clientLauncher.getRemoteProxy().await(param).get(TIMEOUT, TimeUnit.MILLISECONDS));
+			serverListening.cancel(true);
+			clientListening.cancel(true);
+		}
+	}
+	
 }
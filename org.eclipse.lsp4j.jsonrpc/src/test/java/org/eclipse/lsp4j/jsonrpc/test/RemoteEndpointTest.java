@@ -8,18 +8,29 @@
 package org.eclipse.lsp4j.jsonrpc.test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.HashedWheelTimer;
 import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
 import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.jsonrpc.messages.BatchMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
+import org.eclipse.lsp4j.jsonrpc.messages.InvalidMessage;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
 import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
 import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
 import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
 import org.junit.Test;
 
@@ -57,7 +68,9 @@ public class RemoteEndpointTest {
 
 		@Override
 		public void consume(Message message) {
-			messages.add(message);
+			synchronized (messages) {
+				messages.add(message);
+			}
 		}
 		
 	}
@@ -96,4 +109,525 @@ public class RemoteEndpointTest {
 		assertEquals("success", ((ResponseMessage)consumer.messages.get(0)).getResult());
 	}
 	
-}
\ No newline at end of file
+	@Test public void testResponse() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		
+		CompletableFuture<Object> future = endpoint.request("foo", "myparam");
+		RequestMessage requestMessage = (RequestMessage) consumer.messages.get(0);
+		assertEquals("foo", endpoint.resolveMethod(requestMessage.getId()));
+		assertNull(endpoint.resolveMethod("0" + requestMessage.getId()));
+		assertNull(endpoint.resolveMethod("foo"));
+		assertNull(endpoint.resolveMethod(null));
+		
+		endpoint.consume(new ResponseMessage() {{
+			setId(requestMessage.getId());
+			setResult("success");
+		}});
+		assertEquals("success", future.get());
+		assertNull(endpoint.resolveMethod(requestMessage.getId()));
+	}
+	
+	@Test public void testFailedResponse() {
+		TestEndpoint endp = new TestEndpoint();
+		class FailingEndpoint extends RemoteEndpoint {
+			FailingEndpoint() {
+				super(message -> {
+					throw new IllegalStateException("The outgoing message queue is full.");
+				}, endp);
+			}
+			boolean isProcessing(String id) {
+				return cancelReceivedRequest(id);
+			}
+		}
+		FailingEndpoint endpoint = new FailingEndpoint();
+		
+		endpoint.consume(new RequestMessage() {{
+			setId("1");
+			setMethod("foo");
+		}});
+		endpoint.consume(new RequestMessage() {{
+			setId("2");
+			setMethod("foo");
+		}});
+		List<CompletableFuture<Object>> futures = new ArrayList<>(endp.requests.values());
+		futures.get(0).complete("success");
+		futures.get(1).completeExceptionally(new IllegalArgumentException());
+		// The requests are no longer tracked even though their responses could not be sent
+		assertFalse(endpoint.isProcessing("1"));
+		assertFalse(endpoint.isProcessing("2"));
+	}
+	
+	@Test public void testCancelReceivedRequest() {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		
+		endpoint.consume(new RequestMessage() {{
+			setId("abc");
+			setMethod("foo");
+			setParams("myparam");
+		}});
+		endpoint.consume(new NotificationMessage() {{
+			setMethod("$/cancelRequest");
+			setParams(new CancelParams() {{
+				setId("abc");
+			}});
+		}});
+		
+		assertTrue(endp.requests.values().iterator().next().isCancelled());
+		assertTrue(endp.notifications.isEmpty());
+	}
+	
+	@Test public void testSupersededRequest() {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		endpoint.setSupersedingPolicy(message -> ((RequestMessage) message).getParams(),
+				Collections.singleton("completion"), Collections.emptySet());
+		
+		endpoint.consume(new RequestMessage() {{
+			setId("1");
+			setMethod("completion");
+			setParams("a.txt");
+		}});
+		endpoint.consume(new RequestMessage() {{
+			setId("2");
+			setMethod("completion");
+			setParams("b.txt");
+		}});
+		endpoint.consume(new RequestMessage() {{
+			setId("3");
+			setMethod("hover");
+			setParams("a.txt");
+		}});
+		endpoint.consume(new RequestMessage() {{
+			setId("4");
+			setMethod("completion");
+			setParams("a.txt");
+		}});
+		
+		List<CompletableFuture<Object>> futures = new ArrayList<>(endp.requests.values());
+		assertTrue(futures.get(0).isCancelled());
+		assertFalse(futures.get(1).isCancelled());
+		assertFalse(futures.get(2).isCancelled());
+		assertFalse(futures.get(3).isCancelled());
+		assertEquals(1, endpoint.getSupersededRequestCount());
+		// The superseded request is answered like a request cancelled by the remote endpoint
+		assertEquals("1", ((ResponseMessage) consumer.messages.get(0)).getId());
+		assertEquals(ResponseErrorCode.RequestCancelled, ((ResponseMessage) consumer.messages.get(0)).getError().getCode());
+		
+		// A completed request is not superseded
+		futures.get(3).complete("done");
+		endpoint.consume(new RequestMessage() {{
+			setId("5");
+			setMethod("completion");
+			setParams("a.txt");
+		}});
+		assertEquals(1, endpoint.getSupersededRequestCount());
+	}
+	
+	@Test public void testSupersededRequestArrivalOrder() {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		endpoint.setSupersedingPolicy(message -> ((RequestMessage) message).getParams(),
+				Collections.singleton("completion"), Collections.emptySet());
+		
+		RequestMessage first = new RequestMessage() {{
+			setId("1");
+			setMethod("completion");
+			setParams("a.txt");
+		}};
+		RequestMessage second = new RequestMessage() {{
+			setId("2");
+			setMethod("completion");
+			setParams("a.txt");
+		}};
+		endpoint.recordArrival(first);
+		endpoint.recordArrival(second);
+		// Dispatched in the opposite order, e.g. by different threads
+		endpoint.consume(second);
+		endpoint.consume(first);
+		
+		List<CompletableFuture<Object>> futures = new ArrayList<>(endp.requests.values());
+		assertFalse(futures.get(0).isCancelled());
+		assertTrue(futures.get(1).isCancelled());
+		assertEquals(1, endpoint.getSupersededRequestCount());
+		assertEquals(1, consumer.messages.size());
+		assertEquals("1", ((ResponseMessage) consumer.messages.get(0)).getId());
+		assertEquals(ResponseErrorCode.RequestCancelled, ((ResponseMessage) consumer.messages.get(0)).getError().getCode());
+	}
+	
+	@Test public void testSupersedingNotification() {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		endpoint.setSupersedingPolicy(message -> message instanceof RequestMessage
+				? ((RequestMessage) message).getParams() : ((NotificationMessage) message).getParams(),
+				new HashSet<>(Arrays.asList("completion", "signatureHelp")), Collections.singleton("didChange"));
+		
+		endpoint.consume(new RequestMessage() {{
+			setId("1");
+			setMethod("completion");
+			setParams("a.txt");
+		}});
+		endpoint.consume(new RequestMessage() {{
+			setId("2");
+			setMethod("signatureHelp");
+			setParams("a.txt");
+		}});
+		endpoint.consume(new RequestMessage() {{
+			setId("3");
+			setMethod("completion");
+			setParams("b.txt");
+		}});
+		endpoint.consume(new NotificationMessage() {{
+			setMethod("didSave");
+			setParams("a.txt");
+		}});
+		assertEquals(0, endpoint.getSupersededRequestCount());
+		endpoint.consume(new NotificationMessage() {{
+			setMethod("didChange");
+			setParams("a.txt");
+		}});
+		
+		List<CompletableFuture<Object>> futures = new ArrayList<>(endp.requests.values());
+		assertTrue(futures.get(0).isCancelled());
+		assertTrue(futures.get(1).isCancelled());
+		assertFalse(futures.get(2).isCancelled());
+		assertEquals(2, endpoint.getSupersededRequestCount());
+		assertEquals(2, endp.notifications.size());
+	}
+	
+	@Test public void testConcurrentRequests() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		List<RequestMessage> sent = new ArrayList<>();
+		RemoteEndpoint endpoint = new RemoteEndpoint(message -> {
+			synchronized (sent) {
+				sent.add((RequestMessage) message);
+			}
+		}, endp);
+		int threadCount = 8;
+		int requestCount = 1000;
+		List<CompletableFuture<Object>> futures = new ArrayList<>();
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < requestCount; i++) {
+					CompletableFuture<Object> future = endpoint.request("foo", "myparam");
+					synchronized (futures) {
+						futures.add(future);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(threadCount * requestCount, sent.size());
+		for (RequestMessage requestMessage : sent) {
+			endpoint.consume(new ResponseMessage() {{
+				setId(requestMessage.getId());
+				setResult(requestMessage.getId());
+			}});
+		}
+		for (CompletableFuture<Object> future : futures) {
+			assertTrue(future.isDone());
+		}
+	}
+	
+	@Test public void testRequestTimeout() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64);
+		try {
+			endpoint.setTimer(timer);
+			endpoint.setRequestTimeout(50, TimeUnit.MILLISECONDS);
+			endpoint.setRequestTimeout("slow", 0, TimeUnit.MILLISECONDS);
+			endpoint.setCancelOnRequestTimeout(true);
+			
+			CompletableFuture<Object> future = endpoint.request("foo", "myparam");
+			CompletableFuture<Object> slowFuture = endpoint.request("slow", "myparam");
+			RequestMessage requestMessage = (RequestMessage) consumer.messages.get(0);
+			try {
+				future.get(2, TimeUnit.SECONDS);
+				fail("Expected a timeout.");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			assertEquals(1, endpoint.getRequestTimeoutCount());
+			assertNull(endpoint.resolveMethod(requestMessage.getId()));
+			assertFalse(slowFuture.isDone());
+			
+			// The cancel notification is sent by another thread than the timer thread
+			long startTime = System.currentTimeMillis();
+			while (consumer.messages.size() < 3 && System.currentTimeMillis() - startTime < 2000) {
+				Thread.sleep(10);
+			}
+			synchronized (consumer.messages) {
+				NotificationMessage cancelMessage = (NotificationMessage) consumer.messages.get(2);
+				assertEquals("$/cancelRequest", cancelMessage.getMethod());
+				assertEquals(requestMessage.getId(), ((CancelParams) cancelMessage.getParams()).getId());
+			}
+			
+			// A late response is ignored
+			endpoint.consume(new ResponseMessage() {{
+				setId(requestMessage.getId());
+				setResult("success");
+			}});
+		} finally {
+			timer.close();
+		}
+	}
+	
+	@Test public void testResponseBeforeTimeout() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64);
+		try {
+			endpoint.setTimer(timer);
+			CompletableFuture<Object> future = endpoint.request("foo", "myparam", 1, TimeUnit.MINUTES);
+			assertEquals(1, timer.getPendingCount());
+			RequestMessage requestMessage = (RequestMessage) consumer.messages.get(0);
+			endpoint.consume(new ResponseMessage() {{
+				setId(requestMessage.getId());
+				setResult("success");
+			}});
+			assertEquals("success", future.get());
+			assertEquals(0, endpoint.getRequestTimeoutCount());
+			// the timeout is discarded by the next tick of the timer
+			long startTime = System.currentTimeMillis();
+			while (timer.getPendingCount() > 0 && System.currentTimeMillis() - startTime < 2000) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, timer.getPendingCount());
+		} finally {
+			timer.close();
+		}
+	}
+	
+	@Test public void testCancelSentRequest() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64);
+		try {
+			endpoint.setTimer(timer);
+			CompletableFuture<Object> future = endpoint.request("foo", "myparam", 50, TimeUnit.MILLISECONDS);
+			RequestMessage requestMessage = (RequestMessage) consumer.messages.get(0);
+			future.cancel(true);
+			assertNull(endpoint.resolveMethod(requestMessage.getId()));
+			NotificationMessage cancelMessage = (NotificationMessage) consumer.messages.get(1);
+			assertEquals("$/cancelRequest", cancelMessage.getMethod());
+			// The timeout of the cancelled request does not expire
+			Thread.sleep(150);
+			assertEquals(0, endpoint.getRequestTimeoutCount());
+			assertEquals(2, consumer.messages.size());
+		} finally {
+			timer.close();
+		}
+	}
+	
+	@Test public void testFailedRequest() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		List<RequestMessage> sentMessages = new ArrayList<>();
+		RemoteEndpoint endpoint = new RemoteEndpoint(message -> {
+			sentMessages.add((RequestMessage) message);
+			throw new IllegalStateException("closed");
+		}, endp);
+		HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64);
+		try {
+			endpoint.setTimer(timer);
+			CompletableFuture<Object> future = endpoint.request("foo", "myparam", 1, TimeUnit.MINUTES);
+			try {
+				future.get();
+				fail("Expected an exception.");
+			} catch (ExecutionException e) {
+				assertEquals("closed", e.getCause().getMessage());
+			}
+			assertNull(endpoint.resolveMethod(sentMessages.get(0).getId()));
+			long startTime = System.currentTimeMillis();
+			while (timer.getPendingCount() > 0 && System.currentTimeMillis() - startTime < 2000) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, timer.getPendingCount());
+		} finally {
+			timer.close();
+		}
+	}
+	
+	@Test public void testBatch() {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		
+		endpoint.consume(new BatchMessage(Arrays.asList(
+			new RequestMessage() {{
+				setId("1");
+				setMethod("foo");
+				setParams("a");
+			}},
+			new NotificationMessage() {{
+				setMethod("bar");
+				setParams("b");
+			}},
+			new RequestMessage() {{
+				setId("2");
+				setMethod("foo");
+				setParams("c");
+			}},
+			new RequestMessage() {{
+				setId("3");
+				setMethod("foo");
+				setParams("d");
+			}}
+		)));
+		assertEquals(1, endp.notifications.size());
+		List<CompletableFuture<Object>> futures = new ArrayList<>(endp.requests.values());
+		assertEquals(3, futures.size());
+		
+		// The responses are sent together once all requests have been answered
+		futures.get(2).complete("result3");
+		futures.get(1).completeExceptionally(new IllegalStateException("failed"));
+		assertTrue(consumer.messages.isEmpty());
+		futures.get(0).complete("result1");
+		assertEquals(1, consumer.messages.size());
+		List<Message> responses = ((BatchMessage) consumer.messages.get(0)).getMessages();
+		assertEquals(3, responses.size());
+		assertEquals("1", ((ResponseMessage) responses.get(0)).getId());
+		assertEquals("result1", ((ResponseMessage) responses.get(0)).getResult());
+		assertEquals("2", ((ResponseMessage) responses.get(1)).getId());
+		assertTrue(((ResponseMessage) responses.get(1)).getError().getMessage().endsWith("failed"));
+		assertEquals("3", ((ResponseMessage) responses.get(2)).getId());
+		assertEquals("result3", ((ResponseMessage) responses.get(2)).getResult());
+	}
+	
+	@Test public void testInvalidBatchMembers() {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		
+		endpoint.consume(new BatchMessage(Arrays.asList(
+			new InvalidMessage("invalid"),
+			new RequestMessage() {{
+				setId("1");
+				setMethod("foo");
+				setParams("a");
+			}},
+			new NotificationMessage() {{
+				setMethod("bar");
+				setParams("b");
+			}}
+		)));
+		assertEquals(1, endp.notifications.size());
+		assertTrue(consumer.messages.isEmpty());
+		endp.requests.values().iterator().next().complete("result1");
+		List<Message> responses = ((BatchMessage) consumer.messages.get(0)).getMessages();
+		assertEquals(2, responses.size());
+		assertNull(((ResponseMessage) responses.get(0)).getId());
+		assertEquals(ResponseErrorCode.InvalidRequest, ((ResponseMessage) responses.get(0)).getError().getCode());
+		assertEquals("1", ((ResponseMessage) responses.get(1)).getId());
+		
+		// An empty batch is answered with a single error response
+		endpoint.consume(new InvalidMessage("empty"));
+		assertEquals(2, consumer.messages.size());
+		assertEquals(ResponseErrorCode.InvalidRequest, ((ResponseMessage) consumer.messages.get(1)).getError().getCode());
+	}
+	
+	@Test public void testNotificationBatch() {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		
+		endpoint.consume(new BatchMessage(Arrays.asList(
+			new NotificationMessage() {{
+				setMethod("foo");
+			}},
+			new NotificationMessage() {{
+				setMethod("bar");
+			}}
+		)));
+		assertEquals(2, endp.notifications.size());
+		assertEquals("foo", endp.notifications.get(0).getMethod());
+		assertEquals("bar", endp.notifications.get(1).getMethod());
+		assertTrue(consumer.messages.isEmpty());
+	}
+	
+	@Test public void testSendBatch() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		TestMessageConsumer consumer = new TestMessageConsumer();
+		RemoteEndpoint endpoint = new RemoteEndpoint(consumer, endp);
+		
+		RemoteEndpoint.Batch batch = endpoint.createBatch();
+		CompletableFuture<Object> future1 = batch.request("foo", "a");
+		batch.notify("bar", "b");
+		CompletableFuture<Object> future2 = batch.request("foo", "c");
+		assertEquals(3, batch.size());
+		assertTrue(consumer.messages.isEmpty());
+		batch.send();
+		assertEquals(0, batch.size());
+		assertEquals(1, consumer.messages.size());
+		List<Message> members = ((BatchMessage) consumer.messages.get(0)).getMessages();
+		assertEquals(3, members.size());
+		RequestMessage request1 = (RequestMessage) members.get(0);
+		assertEquals("foo", request1.getMethod());
+		assertEquals("bar", ((NotificationMessage) members.get(1)).getMethod());
+		RequestMessage request2 = (RequestMessage) members.get(2);
+		assertEquals("foo", endpoint.resolveMethod(request2.getId()));
+		
+		// The responses may arrive in a batch in any order
+		endpoint.consume(new BatchMessage(Arrays.asList(
+			new ResponseMessage() {{
+				setId(request2.getId());
+				setResult("result2");
+			}},
+			new ResponseMessage() {{
+				setId(request1.getId());
+				setResult("result1");
+			}}
+		)));
+		assertEquals("result1", future1.get());
+		assertEquals("result2", future2.get());
+		
+		// An empty batch is not sent
+		batch.send();
+		assertEquals(1, consumer.messages.size());
+	}
+	
+	@Test public void testFailedBatch() throws Exception {
+		TestEndpoint endp = new TestEndpoint();
+		List<BatchMessage> sentMessages = new ArrayList<>();
+		RemoteEndpoint endpoint = new RemoteEndpoint(message -> {
+			sentMessages.add((BatchMessage) message);
+			throw new IllegalStateException("closed");
+		}, endp);
+		
+		RemoteEndpoint.Batch batch = endpoint.createBatch();
+		CompletableFuture<Object> cancelled = batch.request("foo", "a");
+		CompletableFuture<Object> future = batch.request("foo", "b");
+		// A request that is cancelled before the batch is sent is left out
+		cancelled.cancel(true);
+		try {
+			batch.send();
+			fail("Expected an exception.");
+		} catch (IllegalStateException e) {
+			assertEquals("closed", e.getMessage());
+		}
+		List<Message> members = sentMessages.get(0).getMessages();
+		assertEquals(1, members.size());
+		assertNull(endpoint.resolveMethod(((RequestMessage) members.get(0)).getId()));
+		try {
+			future.get();
+			fail("Expected an exception.");
+		} catch (ExecutionException e) {
+			assertEquals("closed", e.getCause().getMessage());
+		}
+		assertEquals(0, batch.size());
+	}
+	
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.RequestAdmissionControl;
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RequestAdmissionControlTest {
+
+	static class TestEndpoint implements Endpoint {
+
+		final List<String> requests = new ArrayList<>();
+		final List<CompletableFuture<Object>> futures = new ArrayList<>();
+		final List<String> notifications = new ArrayList<>();
+
+		@Override
+		public CompletableFuture<?> request(String method, Object parameter) {
+			requests.add(method);
+			CompletableFuture<Object> future = new CompletableFuture<>();
+			futures.add(future);
+			return future;
+		}
+
+		@Override
+		public void notify(String method, Object parameter) {
+			notifications.add(method);
+		}
+
+	}
+
+	private static void assertRejected(CompletableFuture<?> future, ResponseErrorCode code) throws Exception {
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ResponseErrorException);
+			assertEquals(code, ((ResponseErrorException) e.getCause()).getResponseError().getCode());
+		}
+	}
+
+	@Test
+	public void testGlobalLimit() throws Exception {
+		TestEndpoint delegate = new TestEndpoint();
+		RequestAdmissionControl admission = new RequestAdmissionControl(2);
+		Endpoint endpoint = admission.wrap(delegate);
+
+		endpoint.request("foo", null);
+		endpoint.request("bar", null);
+		assertRejected(endpoint.request("baz", null), ResponseErrorCode.RequestFailed);
+		endpoint.notify("qux", null);
+		assertEquals(2, delegate.requests.size());
+		assertEquals(1, delegate.notifications.size());
+		assertEquals(1, admission.getRejectedCount());
+		assertEquals(2, admission.getInFlightCount());
+
+		delegate.futures.get(0).complete("result");
+		endpoint.request("baz", null);
+		assertEquals(3, delegate.requests.size());
+	}
+
+	@Test
+	public void testMethodLimit() throws Exception {
+		TestEndpoint delegate = new TestEndpoint();
+		RequestAdmissionControl admission = new RequestAdmissionControl(100)
+				.setMethodLimit("references", 1, 1);
+		Endpoint endpoint = admission.wrap(delegate);
+
+		CompletableFuture<?> first = endpoint.request("references", 1);
+		CompletableFuture<?> second = endpoint.request("references", 2);
+		assertRejected(endpoint.request("references", 3), ResponseErrorCode.RequestFailed);
+		// Other methods are not affected
+		endpoint.request("completion", null);
+		assertEquals(2, delegate.requests.size());
+		assertEquals(1, admission.getQueueLength());
+		assertEquals(1, admission.getQueuedCount());
+
+		delegate.futures.get(0).complete("first");
+		assertEquals("first", first.get());
+		assertEquals(3, delegate.requests.size());
+		assertEquals(0, admission.getQueueLength());
+		assertFalse(second.isDone());
+
+		delegate.futures.get(2).complete("second");
+		assertEquals("second", second.get());
+		assertEquals(1, admission.getInFlightCount());
+		assertTrue(admission.getQueueWaitNanos() >= 0);
+	}
+
+	@Test
+	public void testCancelQueuedRequest() {
+		TestEndpoint delegate = new TestEndpoint();
+		RequestAdmissionControl admission = new RequestAdmissionControl(100)
+				.setMethodLimit("references", 1, 5);
+		Endpoint endpoint = admission.wrap(delegate);
+
+		endpoint.request("references", 1);
+		CompletableFuture<?> queued = endpoint.request("references", 2);
+		CompletableFuture<?> third = endpoint.request("references", 3);
+		queued.cancel(true);
+		assertEquals(2, admission.getInFlightCount());
+
+		// The cancelled request is never started
+		delegate.futures.get(0).complete(null);
+		assertEquals(2, delegate.requests.size());
+		assertFalse(third.isDone());
+	}
+
+	@Test
+	public void testCancelStartedQueuedRequest() {
+		TestEndpoint delegate = new TestEndpoint();
+		RequestAdmissionControl admission = new RequestAdmissionControl(100)
+				.setMethodLimit("references", 1, 5);
+		Endpoint endpoint = admission.wrap(delegate);
+
+		endpoint.request("references", 1);
+		CompletableFuture<?> queued = endpoint.request("references", 2);
+		delegate.futures.get(0).complete(null);
+		queued.cancel(true);
+		assertTrue(delegate.futures.get(1).isCancelled());
+		assertEquals(0, admission.getInFlightCount());
+	}
+
+	@Test
+	public void testRejectionErrorCode() throws Exception {
+		RequestAdmissionControl admission = new RequestAdmissionControl(1)
+				.setRejectionErrorCode(ResponseErrorCode.serverNotInitialized);
+		Endpoint endpoint = admission.wrap(new TestEndpoint());
+		endpoint.request("foo", null);
+		assertRejected(endpoint.request("foo", null), ResponseErrorCode.serverNotInitialized);
+	}
+
+	@Test
+	public void testSynchronousException() {
+		RequestAdmissionControl admission = new RequestAdmissionControl(1);
+		Endpoint endpoint = admission.wrap(new TestEndpoint() {
+			@Override
+			public CompletableFuture<?> request(String method, Object parameter) {
+				throw new IllegalStateException("failed");
+			}
+		});
+		try {
+			endpoint.request("foo", null);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		assertEquals(0, admission.getInFlightCount());
+	}
+
+}
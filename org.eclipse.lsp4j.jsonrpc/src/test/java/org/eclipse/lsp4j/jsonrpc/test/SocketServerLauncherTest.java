@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.SocketServerLauncher;
+import org.eclipse.lsp4j.jsonrpc.SocketServerLauncher.Session;
+import org.eclipse.lsp4j.jsonrpc.SocketServerLauncher.SessionListener;
+import org.eclipse.lsp4j.jsonrpc.json.AsyncMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SocketServerLauncherTest {
+
+	private static final long TIMEOUT = 2000;
+
+	public static interface Server {
+		@JsonRequest
+		CompletableFuture<String> askServer(String param);
+	}
+
+	public static interface Client {
+		@JsonRequest
+		CompletableFuture<String> askClient(String param);
+	}
+
+	/**
+	 * A server service that asks its client before answering.
+	 */
+	public static class ServerImpl implements Server {
+		final int index;
+		Client client;
+
+		ServerImpl(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public CompletableFuture<String> askServer(String param) {
+			return client.askClient(param).thenApply(answer -> answer + " server" + index);
+		}
+	}
+
+	private ExecutorService executor;
+	private SocketServerLauncher<Client> server;
+	private final List<Socket> sockets = new ArrayList<>();
+	private final List<Future<?>> clientFutures = new ArrayList<>();
+	private final AtomicInteger serviceCount = new AtomicInteger();
+	private final AtomicInteger closedCount = new AtomicInteger();
+	private final AtomicInteger rejectedCount = new AtomicInteger();
+
+	@Before
+	public void setup() throws Exception {
+		executor = Executors.newFixedThreadPool(4);
+		server = new SocketServerLauncher.Builder<Client>()
+				.setLocalServiceFactory(() -> new ServerImpl(serviceCount.incrementAndGet()))
+				.setRemoteInterface(Client.class)
+				.setSocketAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+				.setExecutorService(executor)
+				.setMaxSessions(3)
+				.setSessionListener(new SessionListener<Client>() {
+					@Override
+					public void sessionStarted(Session<Client> session) {
+						((ServerImpl) session.getLocalService()).client = session.getRemoteProxy();
+					}
+					@Override
+					public void sessionClosed(Session<Client> session) {
+						closedCount.incrementAndGet();
+					}
+					@Override
+					public void connectionRejected(SocketChannel channel) {
+						rejectedCount.incrementAndGet();
+					}
+				})
+				.create();
+		server.start();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		server.close();
+		// Closing the server closes all sessions, so the clients reach the end of their input
+		for (Future<?> future : clientFutures) {
+			future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		executor.shutdownNow();
+	}
+
+	private Server connect(String name) throws Exception {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) server.getLocalAddress()).getPort());
+		sockets.add(socket);
+		Client client = param -> CompletableFuture.completedFuture(param + " " + name);
+		Launcher<Server> launcher = Launcher.createLauncher(client, Server.class, socket.getInputStream(), socket.getOutputStream());
+		clientFutures.add(launcher.startListening());
+		return launcher.getRemoteProxy();
+	}
+
+	private static void waitFor(AtomicInteger counter, int value) throws InterruptedException {
+		long startTime = System.currentTimeMillis();
+		while (counter.get() < value) {
+			Thread.sleep(10);
+			if (System.currentTimeMillis() - startTime > TIMEOUT)
+				Assert.fail("Timeout waiting for " + value + ", got " + counter.get());
+		}
+	}
+
+	@Test
+	public void testMultipleClients() throws Exception {
+		Server remote1 = connect("client1");
+		Server remote2 = connect("client2");
+		Server remote3 = connect("client3");
+		String answer1 = remote1.askServer("foo").get(TIMEOUT, TimeUnit.MILLISECONDS);
+		String answer2 = remote2.askServer("foo").get(TIMEOUT, TimeUnit.MILLISECONDS);
+		String answer3 = remote3.askServer("foo").get(TIMEOUT, TimeUnit.MILLISECONDS);
+		// Each connection has its own local service, which talks to its own client
+		Assert.assertTrue(answer1, answer1.startsWith("foo client1 server"));
+		Assert.assertTrue(answer2, answer2.startsWith("foo client2 server"));
+		Assert.assertTrue(answer3, answer3.startsWith("foo client3 server"));
+		Assert.assertNotEquals(answer1.substring(12), answer2.substring(12));
+		Assert.assertEquals(3, server.getSessionCount());
+	}
+
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		List<Server> remotes = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			remotes.add(connect("client" + i));
+		}
+		List<CompletableFuture<String>> answers = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Server remote = remotes.get(i);
+			for (int j = 0; j < 100; j++) {
+				answers.add(remote.askServer("foo" + j));
+			}
+		}
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 100; j++) {
+				String answer = answers.get(i * 100 + j).get(TIMEOUT, TimeUnit.MILLISECONDS);
+				Assert.assertTrue(answer, answer.startsWith("foo" + j + " client" + i + " server"));
+			}
+		}
+	}
+
+	@Test
+	public void testMaxSessions() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			connect("client" + i);
+		}
+		waitFor(rejectedCount, 1);
+		Assert.assertEquals(3, server.getSessionCount());
+
+		// Closing a session makes room for a new connection
+		sockets.get(0).close();
+		waitFor(closedCount, 1);
+		Assert.assertEquals(2, server.getSessionCount());
+		Server remote = connect("client5");
+		String answer = remote.askServer("foo").get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(answer, answer.startsWith("foo client5 server"));
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		Server remote = connect("client1");
+		remote.askServer("foo").get(TIMEOUT, TimeUnit.MILLISECONDS);
+		server.close();
+		waitFor(closedCount, 1);
+		Assert.assertEquals(0, server.getSessionCount());
+	}
+
+	@Test
+	public void testOutgoingMessageQueues() throws Exception {
+		ExecutorService smallExecutor = Executors.newFixedThreadPool(2);
+		try (SocketServerLauncher<Client> queueServer = new SocketServerLauncher.Builder<Client>()
+				.setLocalServiceFactory(() -> new ServerImpl(0))
+				.setRemoteInterface(Client.class)
+				.setSocketAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+				.setExecutorService(smallExecutor)
+				.setSessionListener(new SessionListener<Client>() {
+					@Override
+					public void sessionStarted(Session<Client> session) {
+						((ServerImpl) session.getLocalService()).client = session.getRemoteProxy();
+					}
+				})
+				.configureLaunchers(builder -> builder.setOutgoingMessageQueue(16, AsyncMessageConsumer.OverflowPolicy.BLOCK))
+				.create()) {
+			queueServer.start();
+			// The writers of more sessions than executor threads do not occupy the executor
+			List<Server> remotes = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) queueServer.getLocalAddress()).getPort());
+				sockets.add(socket);
+				String name = "client" + i;
+				Client client = param -> CompletableFuture.completedFuture(param + " " + name);
+				Launcher<Server> launcher = Launcher.createLauncher(client, Server.class, socket.getInputStream(), socket.getOutputStream());
+				launcher.startListening();
+				remotes.add(launcher.getRemoteProxy());
+			}
+			for (int i = 0; i < 4; i++) {
+				String answer = remotes.get(i).askServer("foo").get(TIMEOUT, TimeUnit.MILLISECONDS);
+				Assert.assertEquals("foo client" + i + " server0", answer);
+			}
+		} finally {
+			smallExecutor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSessionStartFailure() throws Exception {
+		try (SocketServerLauncher<Client> failingServer = new SocketServerLauncher.Builder<Client>()
+				.setLocalServiceFactory(() -> { throw new IllegalStateException("failed"); })
+				.setRemoteInterface(Client.class)
+				.setSocketAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+				.setExecutorService(executor)
+				.create()) {
+			failingServer.start();
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) failingServer.getLocalAddress()).getPort())) {
+				socket.setSoTimeout((int) TIMEOUT);
+				// The server closes the connection, so the client reaches the end of its input
+				Assert.assertEquals(-1, socket.getInputStream().read());
+			}
+			Assert.assertEquals(0, failingServer.getSessionCount());
+		}
+	}
+
+	@Test
+	public void testDefaultExecutorShutdown() throws Exception {
+		Set<Thread> threadsBefore = Thread.getAllStackTraces().keySet();
+		SocketServerLauncher<Client> defaultServer = new SocketServerLauncher.Builder<Client>()
+				.setLocalServiceFactory(() -> new ServerImpl(0))
+				.setRemoteInterface(Client.class)
+				.setSocketAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+				.create();
+		defaultServer.start();
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) defaultServer.getLocalAddress()).getPort())) {
+			// A notification is dispatched on the default executor, which starts one of its threads
+			String content = "{\"jsonrpc\":\"2.0\",\"method\":\"foo\"}";
+			socket.getOutputStream().write(("Content-Length: " + content.length() + "\r\n\r\n" + content).getBytes(StandardCharsets.US_ASCII));
+			List<Thread> poolThreads = new ArrayList<>();
+			long startTime = System.currentTimeMillis();
+			while (poolThreads.isEmpty()) {
+				for (Thread thread : Thread.getAllStackTraces().keySet()) {
+					if (!threadsBefore.contains(thread) && thread.getName().startsWith("pool-"))
+						poolThreads.add(thread);
+				}
+				Thread.sleep(10);
+				if (System.currentTimeMillis() - startTime > TIMEOUT)
+					Assert.fail("Timeout waiting for the dispatch thread.");
+			}
+			defaultServer.close();
+			for (Thread thread : poolThreads) {
+				thread.join(TIMEOUT);
+				Assert.assertFalse(thread.getName(), thread.isAlive());
+			}
+		}
+		Assert.assertFalse(executor.isShutdown());
+	}
+
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.SocketServerLauncher;
+import org.eclipse.lsp4j.jsonrpc.SocketServerLauncher.Session;
+import org.eclipse.lsp4j.jsonrpc.UnixDomainSockets;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnixDomainSocketsTest {
+
+	private static final long TIMEOUT = 2000;
+
+	public static interface Echo {
+		@JsonRequest
+		CompletableFuture<String> echo(String value);
+	}
+
+	private ExecutorService executor;
+	private Path directory;
+	private Path socketPath;
+
+	@Before
+	public void setup() throws IOException {
+		Assume.assumeTrue(UnixDomainSockets.isSupported());
+		executor = Executors.newCachedThreadPool();
+		directory = Files.createTempDirectory("lsp4j");
+		socketPath = directory.resolve("test.sock");
+	}
+
+	@After
+	public void teardown() throws IOException {
+		if (executor != null)
+			executor.shutdownNow();
+		if (directory != null) {
+			Files.deleteIfExists(socketPath);
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testLaunchers() throws Exception {
+		Echo server = value -> CompletableFuture.completedFuture("server " + value);
+		Future<Launcher<Echo>> serverLauncher = executor.submit(() ->
+				Launcher.createUnixSocketLauncher(server, Echo.class, socketPath, executor, null));
+		Echo client = value -> CompletableFuture.completedFuture("client " + value);
+		Launcher<Echo> clientLauncher = null;
+		long startTime = System.currentTimeMillis();
+		while (clientLauncher == null) {
+			try {
+				clientLauncher = Launcher.createUnixSocketClientLauncher(client, Echo.class, socketPath, executor, null);
+			} catch (IOException e) {
+				// The server socket is not listening yet
+				if (System.currentTimeMillis() - startTime > TIMEOUT)
+					throw e;
+				Thread.sleep(10);
+			}
+		}
+		Future<?> clientFuture = clientLauncher.startListening();
+		Launcher<Echo> launcher = serverLauncher.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		launcher.startListening();
+		// The socket file is not needed once the connection has been accepted
+		Assert.assertFalse(Files.exists(socketPath));
+
+		Assert.assertEquals("server foo", clientLauncher.getRemoteProxy().echo("foo").get(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals("client bar", launcher.getRemoteProxy().echo("bar").get(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		clientFuture.cancel(true);
+		Assert.assertTrue(clientFuture.isDone());
+	}
+
+	@Test
+	public void testServerLauncher() throws Exception {
+		SocketServerLauncher<Echo> server = new SocketServerLauncher.Builder<Echo>()
+				.setLocalServiceFactory(() -> (Echo) value -> CompletableFuture.completedFuture("server " + value))
+				.setRemoteInterface(Echo.class)
+				.setSocketAddress(UnixDomainSockets.getAddress(socketPath))
+				.setExecutorService(executor)
+				.create();
+		try {
+			server.start();
+			Echo client = value -> CompletableFuture.completedFuture("client " + value);
+			for (int i = 0; i < 3; i++) {
+				Launcher<Echo> clientLauncher = Launcher.createUnixSocketClientLauncher(client, Echo.class, socketPath, executor, null);
+				clientLauncher.startListening();
+				Assert.assertEquals("server foo" + i, clientLauncher.getRemoteProxy().echo("foo" + i).get(TIMEOUT, TimeUnit.MILLISECONDS));
+			}
+			Assert.assertEquals(3, server.getSessionCount());
+			for (Session<Echo> session : server.getSessions()) {
+				Assert.assertEquals("client baz", session.getRemoteProxy().echo("baz").get(TIMEOUT, TimeUnit.MILLISECONDS));
+			}
+		} finally {
+			server.close();
+		}
+		Assert.assertFalse(Files.exists(socketPath));
+	}
+
+	@Test
+	public void testStaleSocketFile() throws Exception {
+		// Closing a bound channel leaves its socket file behind, as if its process had terminated
+		UnixDomainSockets.bind(socketPath).close();
+		Assert.assertTrue(Files.exists(socketPath));
+		SocketServerLauncher<Echo> server = new SocketServerLauncher.Builder<Echo>()
+				.setLocalServiceFactory(() -> (Echo) value -> CompletableFuture.completedFuture("server " + value))
+				.setRemoteInterface(Echo.class)
+				.setSocketAddress(UnixDomainSockets.getAddress(socketPath))
+				.setExecutorService(executor)
+				.create();
+		try {
+			// A socket that a server is listening on is not replaced
+			try {
+				UnixDomainSockets.bind(socketPath).close();
+				Assert.fail();
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			server.close();
+		}
+		Assert.assertFalse(Files.exists(socketPath));
+	}
+
+}
@@ -11,6 +11,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +46,21 @@ public class EndpointsTest {
 		@JsonNotification("hubba")
 		public void myNotification(String someArg);
 	}
+	
+	@JsonSegment("doc")
+	public static interface Supersedable {
+		@JsonRequest(supersedable = true)
+		public CompletableFuture<String> complete(String arg);
+		
+		@JsonRequest
+		public CompletableFuture<String> format(String arg);
+		
+		@JsonNotification(supersedesRequests = true)
+		public void change(String arg);
+		
+		@JsonDelegate
+		public Delegated getDelegate();
+	}
 
 	@Test public void testProxy() throws Exception {
 		Endpoint endpoint = new Endpoint() {
@@ -105,4 +121,10 @@ public class EndpointsTest {
 		assertEquals(String.class, methods.get("hubba").getParameterType());
 		assertTrue(methods.get("hubba").isNotification());
 	}
+	
+	@Test public void testSupersedingMethods() {
+		assertEquals(Collections.singleton("doc/complete"), ServiceEndpoints.getSupersedableRequests(Supersedable.class));
+		assertEquals(Collections.singleton("doc/change"), ServiceEndpoints.getSupersedingNotifications(Supersedable.class));
+		assertTrue(ServiceEndpoints.getSupersedableRequests(Foo.class).isEmpty());
+	}
 }
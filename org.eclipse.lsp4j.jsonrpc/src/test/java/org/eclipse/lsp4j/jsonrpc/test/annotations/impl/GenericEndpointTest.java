@@ -7,13 +7,21 @@
  *******************************************************************************/
 package org.eclipse.lsp4j.jsonrpc.test.annotations.impl;
 
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
 import org.eclipse.lsp4j.jsonrpc.services.GenericEndpoint;
 import org.eclipse.lsp4j.jsonrpc.services.JsonDelegate;
 import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
 import org.eclipse.lsp4j.jsonrpc.services.JsonSegment;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.gson.Gson;
+
 public class GenericEndpointTest {
 	
 	public static class Foo implements MyIf, OtherThing {
@@ -57,4 +65,31 @@ public class GenericEndpointTest {
 		
 		Assert.assertEquals(2, foo.calls);
 	}
+	
+	public static class Param {
+		public String value;
+	}
+	
+	public static class Bar {
+		
+		@JsonRequest
+		public CompletableFuture<String> echo(Param param) {
+			return CompletableFuture.completedFuture(param.value);
+		}
+	}
+
+	@Test public void testLazyParams() throws Exception {
+		GenericEndpoint endpoint = new GenericEndpoint(new Bar());
+		LazyParams params = new LazyParams(new Gson(), "{\"value\":\"foo\"}", Param.class);
+		Assert.assertFalse(params.isConverted());
+		Assert.assertEquals("foo", endpoint.request("echo", params).get());
+		Assert.assertTrue(params.isConverted());
+		
+		try {
+			endpoint.request("echo", new LazyParams(new Gson(), "{\"value\":{}}", Param.class));
+			Assert.fail();
+		} catch (ResponseErrorException e) {
+			Assert.assertEquals(ResponseErrorCode.InvalidParams, e.getResponseError().getCode());
+		}
+	}
 }
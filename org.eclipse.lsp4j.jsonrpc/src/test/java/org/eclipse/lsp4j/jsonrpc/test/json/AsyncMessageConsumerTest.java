@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.json.AsyncMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.AsyncMessageConsumer.OverflowPolicy;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsyncMessageConsumerTest {
+
+	private static final long TIMEOUT = 2000;
+
+	/**
+	 * An output stream whose first write blocks until it is released.
+	 */
+	static class SlowOutputStream extends ByteArrayOutputStream {
+		final CountDownLatch release = new CountDownLatch(1);
+		int flushCount;
+		@Override
+		public void write(byte[] b, int off, int len) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			synchronized (this) {
+				super.write(b, off, len);
+			}
+		}
+		@Override
+		public synchronized void flush() {
+			flushCount++;
+		}
+	}
+
+	private static NotificationMessage notification(int index) {
+		NotificationMessage message = new NotificationMessage();
+		message.setMethod("foo" + index);
+		return message;
+	}
+
+	@Test
+	public void testBatching() throws Exception {
+		SlowOutputStream output = new SlowOutputStream();
+		StreamMessageConsumer streamConsumer = new StreamMessageConsumer(output, new MessageJsonHandler(Collections.emptyMap()));
+		AsyncMessageConsumer consumer = new AsyncMessageConsumer(streamConsumer, 100, OverflowPolicy.BLOCK);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			consumer.start(executor);
+			for (int i = 0; i < 50; i++) {
+				consumer.consume(notification(i));
+			}
+			Assert.assertTrue(consumer.getMaxQueueDepth() > 1);
+			output.release.countDown();
+			long startTime = System.currentTimeMillis();
+			while (consumer.getQueueDepth() > 0 || !output.toString().contains("foo49")) {
+				Thread.sleep(10);
+				if (System.currentTimeMillis() - startTime > TIMEOUT)
+					Assert.fail("Timeout waiting for the writer.");
+			}
+			String written = output.toString();
+			for (int i = 0; i < 50; i++) {
+				Assert.assertTrue(written.contains("\"foo" + i + "\""));
+			}
+			Assert.assertTrue(written.indexOf("\"foo1\"") < written.indexOf("\"foo2\""));
+			Assert.assertTrue("Expected batched flushes, but got " + output.flushCount, output.flushCount < 50);
+		} finally {
+			consumer.close();
+			executor.shutdownNow();
+			executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Test
+	public void testDropPolicy() {
+		AsyncMessageConsumer consumer = new AsyncMessageConsumer(message -> {}, 2, OverflowPolicy.DROP);
+		consumer.consume(notification(1));
+		consumer.consume(notification(2));
+		consumer.consume(notification(3));
+		Assert.assertEquals(2, consumer.getQueueDepth());
+		Assert.assertEquals(1, consumer.getDroppedCount());
+	}
+
+	@Test
+	public void testFailPolicy() {
+		AsyncMessageConsumer consumer = new AsyncMessageConsumer(message -> {}, 2, OverflowPolicy.FAIL);
+		consumer.consume(notification(1));
+		consumer.consume(notification(2));
+		try {
+			consumer.consume(notification(3));
+			Assert.fail("Expected a RejectedExecutionException.");
+		} catch (RejectedExecutionException e) {
+		}
+		Assert.assertEquals(1, consumer.getRejectedCount());
+		Assert.assertEquals(2, consumer.getMaxQueueDepth());
+	}
+
+	@Test
+	public void testFailingMessage() throws Exception {
+		List<Message> written = Collections.synchronizedList(new ArrayList<>());
+		AsyncMessageConsumer consumer = new AsyncMessageConsumer(message -> {
+			if (((NotificationMessage) message).getMethod().equals("foo1"))
+				throw new IllegalStateException("failed");
+			written.add(message);
+		}, 10, OverflowPolicy.BLOCK);
+		consumer.consume(notification(0));
+		consumer.consume(notification(1));
+		consumer.consume(notification(2));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			consumer.start(executor);
+			long startTime = System.currentTimeMillis();
+			while (written.size() < 2) {
+				Thread.sleep(10);
+				if (System.currentTimeMillis() - startTime > TIMEOUT)
+					Assert.fail("Timeout waiting for the writer.");
+			}
+			Assert.assertEquals("foo0", ((NotificationMessage) written.get(0)).getMethod());
+			Assert.assertEquals("foo2", ((NotificationMessage) written.get(1)).getMethod());
+		} finally {
+			consumer.close();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		AsyncMessageConsumer consumer = new AsyncMessageConsumer(message -> {}, 1, OverflowPolicy.BLOCK);
+		consumer.consume(notification(1));
+		// The writer is not started, so the next sender is blocked until the consumer is closed
+		CompletableFuture<Void> blockedSender = CompletableFuture.runAsync(() -> consumer.consume(notification(2)));
+		Thread.sleep(50);
+		Assert.assertFalse(blockedSender.isDone());
+		consumer.close();
+		try {
+			blockedSender.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			Assert.fail("Expected a RejectedExecutionException.");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		try {
+			consumer.consume(notification(3));
+			Assert.fail("Expected a RejectedExecutionException.");
+		} catch (RejectedExecutionException e) {
+		}
+		Assert.assertTrue(consumer.isClosed());
+	}
+
+}
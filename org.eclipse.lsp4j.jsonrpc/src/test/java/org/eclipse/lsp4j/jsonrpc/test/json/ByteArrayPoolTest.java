@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.lsp4j.jsonrpc.json.ByteArrayPool;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteArrayPoolTest {
+
+	@Test
+	public void testSizeClasses() {
+		ByteArrayPool pool = new ByteArrayPool();
+		Assert.assertEquals(1024, pool.acquire(1).length);
+		Assert.assertEquals(1024, pool.acquire(1024).length);
+		Assert.assertEquals(2048, pool.acquire(1025).length);
+		Assert.assertEquals(1 << 20, pool.acquire((1 << 20) - 1).length);
+		Assert.assertEquals(0, pool.getHitCount());
+		Assert.assertEquals(4, pool.getMissCount());
+	}
+
+	@Test
+	public void testReuse() {
+		ByteArrayPool pool = new ByteArrayPool();
+		byte[] array = pool.acquire(3000);
+		pool.release(array);
+		Assert.assertEquals(4096, pool.getPooledBytes());
+		Assert.assertSame(array, pool.acquire(2049));
+		Assert.assertEquals(0, pool.getPooledBytes());
+		Assert.assertNotSame(array, pool.acquire(2049));
+		Assert.assertEquals(1, pool.getHitCount());
+		Assert.assertEquals(2, pool.getMissCount());
+	}
+
+	@Test
+	public void testMaxPooledBytes() {
+		ByteArrayPool pool = new ByteArrayPool(6000);
+		byte[] array1 = pool.acquire(4096);
+		byte[] array2 = pool.acquire(4096);
+		byte[] array3 = pool.acquire(1024);
+		pool.release(array1);
+		pool.release(array2);
+		pool.release(array3);
+		pool.release(new byte[1000]);
+		Assert.assertEquals(5120, pool.getPooledBytes());
+		// Arrays that could never be pooled are not rounded up
+		Assert.assertEquals(5000, pool.acquire(5000).length);
+		Assert.assertEquals(4096, pool.acquire(4000).length);
+	}
+
+	@Test
+	public void testProducerReleasesBuffers() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			value.append('x');
+		}
+		String content = "{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":\"" + value + "\"}";
+		String frame = "Content-Length: " + content.length() + "\r\n\r\n" + content;
+		ByteArrayPool pool = new ByteArrayPool();
+		List<Message> messages = new ArrayList<>();
+		StreamMessageProducer producer = new StreamMessageProducer(
+				new ByteArrayInputStream((frame + frame + frame).getBytes(StandardCharsets.UTF_8)),
+				new MessageJsonHandler(Collections.emptyMap()), pool);
+		producer.listen(messages::add);
+		Assert.assertEquals(3, messages.size());
+		Assert.assertEquals(1, pool.getMissCount());
+		Assert.assertEquals(2, pool.getHitCount());
+		Assert.assertEquals(32768, pool.getPooledBytes());
+	}
+
+}
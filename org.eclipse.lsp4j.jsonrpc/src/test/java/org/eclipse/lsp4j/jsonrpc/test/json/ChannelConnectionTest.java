@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.json.ChannelConnection;
+import org.eclipse.lsp4j.jsonrpc.json.ChannelEventLoop;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelConnectionTest {
+
+	private static final long TIMEOUT = 2000;
+
+	public static interface EchoService {
+		@JsonRequest
+		CompletableFuture<String> echo(String value);
+	}
+
+	private ExecutorService dispatchExecutor;
+	private ChannelEventLoop eventLoop;
+	private ServerSocketChannel serverSocket;
+	private final List<SocketChannel> channels = new ArrayList<>();
+
+	@Before
+	public void setup() throws IOException {
+		dispatchExecutor = Executors.newFixedThreadPool(2);
+		eventLoop = new ChannelEventLoop(dispatchExecutor);
+		eventLoop.start();
+		serverSocket = ServerSocketChannel.open();
+		serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	@After
+	public void teardown() throws IOException {
+		eventLoop.close();
+		dispatchExecutor.shutdownNow();
+		serverSocket.close();
+		for (SocketChannel channel : channels) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Connect a new channel to the server socket and return both ends; the client end is in blocking mode.
+	 */
+	private SocketChannel[] connect() throws IOException {
+		SocketChannel client = SocketChannel.open(serverSocket.getLocalAddress());
+		SocketChannel server = serverSocket.accept();
+		channels.add(client);
+		channels.add(server);
+		return new SocketChannel[] { client, server };
+	}
+
+	private static class MessageCollector {
+		final List<Message> messages = Collections.synchronizedList(new ArrayList<>());
+
+		void await(int count) throws InterruptedException {
+			long startTime = System.currentTimeMillis();
+			while (messages.size() < count) {
+				Thread.sleep(10);
+				if (System.currentTimeMillis() - startTime > TIMEOUT)
+					Assert.fail("Timeout waiting for messages, received " + messages.size() + " of " + count);
+			}
+		}
+	}
+
+	private static void writeRaw(SocketChannel channel, String input) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	@Test
+	public void testFraming() throws Exception {
+		SocketChannel[] ends = connect();
+		ChannelConnection connection = eventLoop.connect(ends[1], new MessageJsonHandler(Collections.emptyMap()));
+		MessageCollector collector = new MessageCollector();
+		connection.listen(collector.messages::add);
+
+		String content1 = "{\"jsonrpc\":\"2.0\",\"method\":\"foo1\"}";
+		String content2 = "{\"jsonrpc\":\"2.0\",\"method\":\"foo2\"}";
+		String input = "Content-Length: " + content1.length() + "\r\n\r\n" + content1
+				+ "Content-Length: " + content2.length() + "\r\n\r\n" + content2;
+		// Send the input in small chunks, so messages and headers are split between reads
+		for (int i = 0; i < input.length(); i += 7) {
+			writeRaw(ends[0], input.substring(i, Math.min(i + 7, input.length())));
+			Thread.sleep(1);
+		}
+		collector.await(2);
+		Assert.assertEquals("foo1", ((NotificationMessage) collector.messages.get(0)).getMethod());
+		Assert.assertEquals("foo2", ((NotificationMessage) collector.messages.get(1)).getMethod());
+	}
+
+	@Test
+	public void testLargeMessage() throws Exception {
+		SocketChannel[] ends = connect();
+		ChannelConnection connection = eventLoop.connect(ends[1], new MessageJsonHandler(Collections.emptyMap()));
+		MessageCollector collector = new MessageCollector();
+		connection.listen(collector.messages::add);
+
+		StringBuilder params = new StringBuilder();
+		while (params.length() < 1024 * 1024) {
+			params.append("0123456789abcdef");
+		}
+		String content = "{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":\"" + params + "\"}";
+		String small = "{\"jsonrpc\":\"2.0\",\"method\":\"bar\"}";
+		writeRaw(ends[0], "Content-Length: " + content.length() + "\r\n\r\n" + content
+				+ "Content-Length: " + small.length() + "\r\n\r\n" + small);
+		collector.await(2);
+		NotificationMessage message = (NotificationMessage) collector.messages.get(0);
+		Assert.assertEquals("foo", message.getMethod());
+		Assert.assertEquals(params.toString(), message.getParams().toString().replace("\"", ""));
+		Assert.assertEquals("bar", ((NotificationMessage) collector.messages.get(1)).getMethod());
+	}
+
+	@Test
+	public void testMessageOrder() throws Exception {
+		SocketChannel[] ends = connect();
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		ChannelConnection receiver = eventLoop.connect(ends[1], jsonHandler);
+		ChannelConnection sender = eventLoop.connect(ends[0], jsonHandler);
+		MessageCollector collector = new MessageCollector();
+		receiver.listen(collector.messages::add);
+
+		int count = 5000;
+		for (int i = 0; i < count; i++) {
+			NotificationMessage message = new NotificationMessage();
+			message.setMethod("foo" + i);
+			sender.getMessageConsumer().consume(message);
+		}
+		collector.await(count);
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals("foo" + i, ((NotificationMessage) collector.messages.get(i)).getMethod());
+		}
+	}
+
+	@Test
+	public void testReadSuspension() throws Exception {
+		SocketChannel[] ends = connect();
+		ChannelConnection connection = eventLoop.connect(ends[1], new MessageJsonHandler(Collections.emptyMap()));
+		connection.setMaxQueuedReadBytes(100);
+		CountDownLatch consumerBlocked = new CountDownLatch(1);
+		MessageCollector collector = new MessageCollector();
+		connection.listen(message -> {
+			try {
+				consumerBlocked.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			collector.messages.add(message);
+		});
+
+		int count = 200;
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			String content = "{\"jsonrpc\":\"2.0\",\"method\":\"foo" + i + "\"}";
+			input.append("Content-Length: ").append(content.length()).append("\r\n\r\n").append(content);
+		}
+		writeRaw(ends[0], input.toString());
+		Thread.sleep(100);
+		consumerBlocked.countDown();
+		collector.await(count);
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals("foo" + i, ((NotificationMessage) collector.messages.get(i)).getMethod());
+		}
+	}
+
+	@Test
+	public void testWriteBackpressure() throws Exception {
+		SocketChannel[] ends = connect();
+		ChannelConnection connection = eventLoop.connect(ends[1], new MessageJsonHandler(Collections.emptyMap()));
+		connection.setMaxPendingWriteBytes(1024);
+		byte[] chunk = new byte[64 * 1024];
+		OutputStream output = connection.getMessageConsumer().getOutput();
+		CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+			try {
+				// Fill the socket buffers, as the remote end does not read yet
+				for (int i = 0; i < 256; i++) {
+					output.write(chunk);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		Thread.sleep(200);
+		Assert.assertFalse(writer.isDone());
+		Assert.assertTrue(connection.getPendingWriteBytes() <= 64 * 1024);
+
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		long received = 0;
+		while (received < 256 * chunk.length) {
+			buffer.clear();
+			received += ends[0].read(buffer);
+		}
+		writer.get(TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void testCloseBlockedWriter() throws Exception {
+		SocketChannel[] ends = connect();
+		ChannelConnection connection = eventLoop.connect(ends[1], new MessageJsonHandler(Collections.emptyMap()));
+		connection.setMaxPendingWriteBytes(1024);
+		byte[] chunk = new byte[64 * 1024];
+		OutputStream output = connection.getMessageConsumer().getOutput();
+		CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+			try {
+				while (true) {
+					output.write(chunk);
+				}
+			} catch (IOException e) {
+				// Expected when the connection is closed
+			}
+		});
+		Thread.sleep(200);
+		Assert.assertFalse(writer.isDone());
+		connection.close();
+		writer.get(TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void testRemoteClose() throws Exception {
+		SocketChannel[] ends = connect();
+		ChannelConnection connection = eventLoop.connect(ends[1], new MessageJsonHandler(Collections.emptyMap()));
+		connection.listen(message -> {});
+		ends[0].close();
+		connection.getClosedFuture().get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertFalse(connection.getChannel().isOpen());
+	}
+
+	@Test
+	public void testManyLaunchers() throws Exception {
+		int connectionCount = 50;
+		EchoService service = value -> CompletableFuture.completedFuture(value);
+		List<EchoService> remoteProxies = new ArrayList<>();
+		for (int i = 0; i < connectionCount; i++) {
+			SocketChannel[] ends = connect();
+			Launcher<EchoService> clientLauncher = new Launcher.Builder<EchoService>()
+					.setLocalService(service)
+					.setRemoteInterface(EchoService.class)
+					.setChannel(ends[0], eventLoop)
+					.create();
+			Launcher<EchoService> serverLauncher = new Launcher.Builder<EchoService>()
+					.setLocalService(service)
+					.setRemoteInterface(EchoService.class)
+					.setChannel(ends[1], eventLoop)
+					.create();
+			clientLauncher.startListening();
+			serverLauncher.startListening();
+			remoteProxies.add(clientLauncher.getRemoteProxy());
+		}
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (int i = 0; i < connectionCount; i++) {
+			for (int j = 0; j < 10; j++) {
+				results.add(remoteProxies.get(i).echo("value" + i + "." + j));
+			}
+		}
+		for (int i = 0; i < connectionCount; i++) {
+			for (int j = 0; j < 10; j++) {
+				Assert.assertEquals("value" + i + "." + j, results.get(i * 10 + j).get(TIMEOUT, TimeUnit.MILLISECONDS));
+			}
+		}
+		Assert.assertEquals(2 * connectionCount, eventLoop.getConnectionCount());
+	}
+
+}
@@ -0,0 +1,484 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.lsp4j.jsonrpc.json.ConcurrentMessageDispatcher;
+import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentMessageDispatcherTest {
+
+	private static final long TIMEOUT = 2000;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setup() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void teardown() {
+		executor.shutdownNow();
+	}
+
+	private static RequestMessage request(String id, String method) {
+		RequestMessage message = new RequestMessage();
+		message.setId(id);
+		message.setMethod(method);
+		return message;
+	}
+
+	private static NotificationMessage notification(String method) {
+		NotificationMessage message = new NotificationMessage();
+		message.setMethod(method);
+		return message;
+	}
+
+	private static RequestMessage request(String id, String method, String uri) {
+		RequestMessage message = request(id, method);
+		message.setParams(uri);
+		return message;
+	}
+
+	private static NotificationMessage notification(String method, String uri) {
+		NotificationMessage message = notification(method);
+		message.setParams(uri);
+		return message;
+	}
+
+	private static Object uriKey(Message message) {
+		Object params = message instanceof RequestMessage ? ((RequestMessage) message).getParams() : ((NotificationMessage) message).getParams();
+		return params instanceof String ? params : null;
+	}
+
+	private static NotificationMessage cancellation(String id) {
+		NotificationMessage message = new NotificationMessage();
+		message.setMethod("$/cancelRequest");
+		CancelParams params = new CancelParams();
+		params.setId(id);
+		message.setParams(params);
+		return message;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			if (!latch.await(TIMEOUT, TimeUnit.MILLISECONDS))
+				throw new IllegalStateException("Timeout");
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void testRequestsRunConcurrently() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch secondForwarded = new CountDownLatch(1);
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			RequestMessage request = (RequestMessage) message;
+			if (request.getId().equals("1"))
+				await(release);
+			else
+				secondForwarded.countDown();
+		}, executor);
+		// The calling thread is not blocked by the first request
+		dispatcher.consume(request("1", "slow"));
+		dispatcher.consume(request("2", "fast"));
+		Assert.assertTrue(secondForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		release.countDown();
+	}
+
+	@Test
+	public void testNotificationOrder() throws Exception {
+		int count = 1000;
+		List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger concurrent = new AtomicInteger();
+		AtomicInteger maxConcurrent = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(count);
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			int current = concurrent.incrementAndGet();
+			maxConcurrent.accumulateAndGet(current, Math::max);
+			forwarded.add(((NotificationMessage) message).getMethod());
+			concurrent.decrementAndGet();
+			done.countDown();
+		}, executor);
+		for (int i = 0; i < count; i++) {
+			dispatcher.consume(notification("n" + i));
+			if (i % 100 == 0)
+				Thread.sleep(1);
+		}
+		Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, maxConcurrent.get());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals("n" + i, forwarded.get(i));
+		}
+	}
+
+	@Test
+	public void testRequestWaitsForEarlierNotifications() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch requestForwarded = new CountDownLatch(1);
+		List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage) {
+				String method = ((NotificationMessage) message).getMethod();
+				if (method.equals("didChange"))
+					await(release);
+				forwarded.add(method);
+			} else {
+				forwarded.add(((RequestMessage) message).getMethod());
+				requestForwarded.countDown();
+			}
+		}, executor);
+		dispatcher.consume(notification("didChange"));
+		dispatcher.consume(request("1", "hover"));
+		Assert.assertFalse(requestForwarded.await(100, TimeUnit.MILLISECONDS));
+		release.countDown();
+		Assert.assertTrue(requestForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals("didChange", forwarded.get(0));
+		Assert.assertEquals("hover", forwarded.get(1));
+	}
+
+	@Test
+	public void testNotificationDoesNotWaitForEarlierRequest() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch notificationForwarded = new CountDownLatch(1);
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof RequestMessage)
+				await(release);
+			else
+				notificationForwarded.countDown();
+		}, executor);
+		dispatcher.consume(request("1", "references"));
+		dispatcher.consume(notification("didChange"));
+		Assert.assertTrue(notificationForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		release.countDown();
+	}
+
+	@Test
+	public void testCancellationOfQueuedRequest() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch cancelForwarded = new CountDownLatch(1);
+		List<Message> forwarded = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage && ((NotificationMessage) message).getMethod().equals("didChange"))
+				await(release);
+			forwarded.add(message);
+			if (message instanceof NotificationMessage && ((NotificationMessage) message).getMethod().equals("$/cancelRequest"))
+				cancelForwarded.countDown();
+		}, executor);
+		dispatcher.consume(notification("didChange"));
+		dispatcher.consume(request("1", "hover"));
+		// The request is still queued, so the cancellation has to wait for it
+		dispatcher.consume(cancellation("1"));
+		Assert.assertEquals(0, forwarded.size());
+		release.countDown();
+		Assert.assertTrue(cancelForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(3, forwarded.size());
+		Assert.assertTrue(forwarded.get(1) instanceof RequestMessage);
+		Assert.assertTrue(forwarded.get(2) instanceof NotificationMessage);
+	}
+
+	@Test
+	public void testCancelledQueuedRequestIsAnswered() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch answered = new CountDownLatch(1);
+		CountDownLatch laterForwarded = new CountDownLatch(1);
+		List<Message> forwarded = Collections.synchronizedList(new ArrayList<>());
+		List<ResponseMessage> responses = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage && ((NotificationMessage) message).getMethod().equals("didChange"))
+				await(release);
+			forwarded.add(message);
+			if (message instanceof RequestMessage && ((RequestMessage) message).getId().equals("2"))
+				laterForwarded.countDown();
+		}, executor);
+		dispatcher.setResponseConsumer(message -> {
+			responses.add((ResponseMessage) message);
+			answered.countDown();
+		});
+		dispatcher.consume(notification("didChange"));
+		dispatcher.consume(request("1", "hover"));
+		dispatcher.consume(cancellation("1"));
+		dispatcher.consume(request("2", "hover"));
+		release.countDown();
+		Assert.assertTrue(answered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(laterForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		// Neither the request nor its cancellation reach the delegate
+		Assert.assertEquals(2, forwarded.size());
+		Assert.assertTrue(forwarded.get(0) instanceof NotificationMessage);
+		Assert.assertEquals("2", ((RequestMessage) forwarded.get(1)).getId());
+		Assert.assertEquals(1, responses.size());
+		Assert.assertEquals("1", responses.get(0).getId());
+		Assert.assertEquals(ResponseErrorCode.RequestCancelled, responses.get(0).getError().getCode());
+	}
+
+	@Test
+	public void testRejectedRequestIsAnswered() throws Exception {
+		List<Message> forwarded = new ArrayList<>();
+		List<ResponseMessage> responses = new ArrayList<>();
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(forwarded::add, runnable -> {
+			throw new RejectedExecutionException();
+		});
+		dispatcher.setResponseConsumer(message -> responses.add((ResponseMessage) message));
+		dispatcher.consume(request("1", "hover"));
+		Assert.assertEquals(1, responses.size());
+		Assert.assertEquals("1", responses.get(0).getId());
+		Assert.assertEquals(ResponseErrorCode.RequestFailed, responses.get(0).getError().getCode());
+		// The request is no longer pending, so its cancellation is forwarded right away
+		dispatcher.consume(cancellation("1"));
+		Assert.assertEquals(1, forwarded.size());
+		Assert.assertTrue(forwarded.get(0) instanceof NotificationMessage);
+	}
+
+	@Test
+	public void testResponsesAndCancellationsAreForwardedDirectly() throws Exception {
+		Thread caller = Thread.currentThread();
+		List<Thread> threads = new ArrayList<>();
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> threads.add(Thread.currentThread()), executor);
+		ResponseMessage response = new ResponseMessage();
+		response.setId("1");
+		dispatcher.consume(response);
+		dispatcher.consume(cancellation("42"));
+		Assert.assertEquals(2, threads.size());
+		Assert.assertSame(caller, threads.get(0));
+		Assert.assertSame(caller, threads.get(1));
+	}
+
+	@Test
+	public void testOrderingKey() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch otherDocumentForwarded = new CountDownLatch(1);
+		CountDownLatch hoverForwarded = new CountDownLatch(1);
+		List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage) {
+				NotificationMessage notification = (NotificationMessage) message;
+				if (notification.getParams().equals("a"))
+					await(release);
+				forwarded.add(notification.getMethod() + " " + notification.getParams());
+				if (notification.getParams().equals("b"))
+					otherDocumentForwarded.countDown();
+			} else {
+				RequestMessage request = (RequestMessage) message;
+				forwarded.add(request.getMethod() + " " + request.getParams());
+				hoverForwarded.countDown();
+			}
+		}, executor, ConcurrentMessageDispatcherTest::uriKey);
+		dispatcher.consume(notification("didChange", "a"));
+		dispatcher.consume(request("1", "hover", "a"));
+		dispatcher.consume(notification("didChange", "b"));
+		// The second document is not blocked by the first one
+		Assert.assertTrue(otherDocumentForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertFalse(hoverForwarded.await(50, TimeUnit.MILLISECONDS));
+		release.countDown();
+		Assert.assertTrue(hoverForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals("didChange b", forwarded.get(0));
+		Assert.assertEquals("didChange a", forwarded.get(1));
+		Assert.assertEquals("hover a", forwarded.get(2));
+	}
+
+	@Test
+	public void testOrderPerKey() throws Exception {
+		int documentCount = 20;
+		int changeCount = 200;
+		Map<Object, List<String>> forwarded = new ConcurrentHashMap<>();
+		CountDownLatch done = new CountDownLatch(documentCount * changeCount);
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			NotificationMessage notification = (NotificationMessage) message;
+			forwarded.computeIfAbsent(notification.getParams(), k -> Collections.synchronizedList(new ArrayList<>())).add(notification.getMethod());
+			done.countDown();
+		}, executor, ConcurrentMessageDispatcherTest::uriKey);
+		for (int i = 0; i < changeCount; i++) {
+			for (int d = 0; d < documentCount; d++) {
+				dispatcher.consume(notification("change" + i, "doc" + d));
+			}
+		}
+		Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(documentCount, forwarded.size());
+		for (List<String> changes : forwarded.values()) {
+			for (int i = 0; i < changeCount; i++) {
+				Assert.assertEquals("change" + i, changes.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testCancellationOfKeyedRequest() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch cancelForwarded = new CountDownLatch(1);
+		List<Message> forwarded = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage && ((NotificationMessage) message).getMethod().equals("didChange"))
+				await(release);
+			forwarded.add(message);
+			if (message instanceof NotificationMessage && ((NotificationMessage) message).getMethod().equals("$/cancelRequest"))
+				cancelForwarded.countDown();
+		}, executor, ConcurrentMessageDispatcherTest::uriKey);
+		dispatcher.consume(notification("didChange", "a"));
+		dispatcher.consume(request("1", "hover", "a"));
+		dispatcher.consume(cancellation("1"));
+		Assert.assertEquals(0, forwarded.size());
+		release.countDown();
+		Assert.assertTrue(cancelForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(3, forwarded.size());
+		Assert.assertTrue(forwarded.get(1) instanceof RequestMessage);
+		Assert.assertTrue(forwarded.get(2) instanceof NotificationMessage);
+	}
+
+	@Test
+	public void testKeyedRequestWaitsForEarlierNotifications() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch changeForwarded = new CountDownLatch(1);
+		CountDownLatch hoverForwarded = new CountDownLatch(1);
+		List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage) {
+				NotificationMessage notification = (NotificationMessage) message;
+				if (notification.getMethod().equals("didChangeConfiguration"))
+					await(release);
+				forwarded.add(notification.getMethod());
+				if (notification.getMethod().equals("didChange"))
+					changeForwarded.countDown();
+			} else {
+				forwarded.add(((RequestMessage) message).getMethod());
+				hoverForwarded.countDown();
+			}
+		}, executor, ConcurrentMessageDispatcherTest::uriKey);
+		dispatcher.consume(notification("didChangeConfiguration"));
+		dispatcher.consume(request("1", "hover", "a"));
+		dispatcher.consume(notification("didChange", "a"));
+		// Both the request and the later notification of its document wait for the slow notification
+		Assert.assertFalse(hoverForwarded.await(100, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, changeForwarded.getCount());
+		release.countDown();
+		Assert.assertTrue(changeForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(Arrays.asList("didChangeConfiguration", "hover", "didChange"), forwarded);
+	}
+
+	@Test
+	public void testKeyedRequestsWaitForTheirOwnBarrier() throws Exception {
+		CountDownLatch releaseFirst = new CountDownLatch(1);
+		CountDownLatch releaseSecond = new CountDownLatch(1);
+		CountDownLatch firstHoverForwarded = new CountDownLatch(1);
+		CountDownLatch secondHoverForwarded = new CountDownLatch(1);
+		List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage) {
+				NotificationMessage notification = (NotificationMessage) message;
+				await(notification.getMethod().equals("first") ? releaseFirst : releaseSecond);
+				forwarded.add(notification.getMethod());
+			} else {
+				RequestMessage request = (RequestMessage) message;
+				forwarded.add(request.getMethod() + request.getId());
+				(request.getId().equals("1") ? firstHoverForwarded : secondHoverForwarded).countDown();
+			}
+		}, executor, ConcurrentMessageDispatcherTest::uriKey);
+		dispatcher.consume(notification("first"));
+		dispatcher.consume(request("1", "hover", "a"));
+		dispatcher.consume(notification("second"));
+		dispatcher.consume(request("2", "hover", "a"));
+		releaseFirst.countDown();
+		Assert.assertTrue(firstHoverForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertFalse(secondHoverForwarded.await(100, TimeUnit.MILLISECONDS));
+		releaseSecond.countDown();
+		Assert.assertTrue(secondHoverForwarded.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(Arrays.asList("first", "hover1", "second", "hover2"), forwarded);
+	}
+
+	/**
+	 * Merges notifications of the same method by concatenating their string parameters.
+	 */
+	private static NotificationMessage concatenate(NotificationMessage earlier, NotificationMessage later) {
+		if (!earlier.getMethod().equals(later.getMethod()))
+			return null;
+		return notification(earlier.getMethod(), (String) earlier.getParams() + later.getParams());
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(6);
+		List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			if (message instanceof NotificationMessage) {
+				NotificationMessage notification = (NotificationMessage) message;
+				if (notification.getMethod().equals("block"))
+					await(release);
+				forwarded.add(notification.getMethod() + " " + notification.getParams());
+			} else {
+				forwarded.add(((RequestMessage) message).getMethod());
+			}
+			done.countDown();
+		}, executor);
+		dispatcher.setNotificationCoalescer(ConcurrentMessageDispatcherTest::concatenate);
+		dispatcher.consume(notification("block", "-"));
+		dispatcher.consume(notification("change", "a"));
+		dispatcher.consume(notification("change", "b"));
+		dispatcher.consume(notification("change", "c"));
+		dispatcher.consume(notification("save", "x"));
+		dispatcher.consume(notification("change", "d"));
+		dispatcher.consume(request("1", "hover"));
+		dispatcher.consume(notification("change", "e"));
+		Assert.assertEquals(2, dispatcher.getCoalescedCount());
+		release.countDown();
+		Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		// The request may be forwarded concurrently with the notification after it
+		Assert.assertTrue(forwarded.remove("hover"));
+		Assert.assertEquals(Arrays.asList("block -", "change abc", "save x", "change d", "change e"), forwarded);
+	}
+
+	@Test
+	public void testCoalescingPerKey() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(4);
+		Map<Object, List<String>> forwarded = new ConcurrentHashMap<>();
+		ConcurrentMessageDispatcher dispatcher = new ConcurrentMessageDispatcher(message -> {
+			NotificationMessage notification = (NotificationMessage) message;
+			String params = (String) notification.getParams();
+			if (notification.getMethod().equals("block"))
+				await(release);
+			forwarded.computeIfAbsent(params.substring(0, 1), k -> Collections.synchronizedList(new ArrayList<>())).add(params);
+			done.countDown();
+		}, executor, message -> ((String) ((NotificationMessage) message).getParams()).substring(0, 1));
+		dispatcher.setNotificationCoalescer(ConcurrentMessageDispatcherTest::concatenate);
+		dispatcher.consume(notification("block", "a0"));
+		dispatcher.consume(notification("block", "b0"));
+		dispatcher.consume(notification("change", "a1"));
+		dispatcher.consume(notification("change", "b1"));
+		dispatcher.consume(notification("change", "a2"));
+		dispatcher.consume(notification("change", "b2"));
+		Assert.assertEquals(2, dispatcher.getCoalescedCount());
+		release.countDown();
+		Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(Arrays.asList("a0", "a1a2"), forwarded.get("a"));
+		Assert.assertEquals(Arrays.asList("b0", "b1b2"), forwarded.get("b"));
+	}
+
+}
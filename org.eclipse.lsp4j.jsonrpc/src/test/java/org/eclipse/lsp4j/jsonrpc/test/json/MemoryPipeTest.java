@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.json.MemoryPipe;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryPipeTest {
+
+	private static final long TIMEOUT = 2000;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setup() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void teardown() {
+		executor.shutdownNow();
+	}
+
+	private byte[] readFully(InputStream input) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int count;
+		while ((count = input.read(buffer)) >= 0) {
+			result.write(buffer, 0, count);
+		}
+		return result.toByteArray();
+	}
+
+	@Test
+	public void testBufferSize() {
+		Assert.assertEquals(64 * 1024, new MemoryPipe().getBufferSize());
+		Assert.assertEquals(1024, new MemoryPipe(1000).getBufferSize());
+		Assert.assertEquals(1024, new MemoryPipe(1024).getBufferSize());
+	}
+
+	@Test
+	public void testTransferLargerThanBuffer() throws Exception {
+		MemoryPipe pipe = new MemoryPipe(1024);
+		byte[] data = new byte[100000];
+		new Random(0).nextBytes(data);
+		Future<byte[]> result = executor.submit(() -> readFully(pipe.getInputStream()));
+		OutputStream output = pipe.getOutputStream();
+		for (int offset = 0; offset < data.length; offset += 3000) {
+			output.write(data, offset, Math.min(3000, data.length - offset));
+		}
+		pipe.close();
+		Assert.assertArrayEquals(data, result.get(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testSingleBytes() throws Exception {
+		MemoryPipe pipe = new MemoryPipe(16);
+		OutputStream output = pipe.getOutputStream();
+		for (int i = 0; i < 10; i++) {
+			output.write(250 + i);
+		}
+		pipe.close();
+		InputStream input = pipe.getInputStream();
+		Assert.assertEquals(10, input.available());
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals((250 + i) & 0xff, input.read());
+		}
+		Assert.assertEquals(-1, input.read());
+	}
+
+	@Test
+	public void testConcurrentWritesAreNotInterleaved() throws Exception {
+		MemoryPipe pipe = new MemoryPipe(256);
+		int writers = 4;
+		int writes = 200;
+		int length = 1000;
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[writers];
+		for (int w = 0; w < writers; w++) {
+			byte[] chunk = new byte[length];
+			Arrays.fill(chunk, (byte) w);
+			futures[w] = CompletableFuture.runAsync(() -> {
+				try {
+					for (int i = 0; i < writes; i++) {
+						pipe.getOutputStream().write(chunk);
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}, executor);
+		}
+		Future<byte[]> result = executor.submit(() -> readFully(pipe.getInputStream()));
+		CompletableFuture.allOf(futures).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		pipe.close();
+		byte[] data = result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertEquals(writers * writes * length, data.length);
+		for (int offset = 0; offset < data.length; offset += length) {
+			for (int i = 1; i < length; i++) {
+				Assert.assertEquals(data[offset], data[offset + i]);
+			}
+		}
+	}
+
+	@Test
+	public void testReadWaitsForWrite() throws Exception {
+		MemoryPipe pipe = new MemoryPipe();
+		Future<Integer> result = executor.submit(() -> pipe.getInputStream().read());
+		Thread.sleep(50);
+		Assert.assertFalse(result.isDone());
+		pipe.getOutputStream().write(42);
+		Assert.assertEquals(42, result.get(TIMEOUT, TimeUnit.MILLISECONDS).intValue());
+	}
+
+	@Test
+	public void testEndOfStreamWakesReader() throws Exception {
+		MemoryPipe pipe = new MemoryPipe();
+		Future<Integer> result = executor.submit(() -> pipe.getInputStream().read());
+		Thread.sleep(50);
+		pipe.close();
+		Assert.assertEquals(-1, result.get(TIMEOUT, TimeUnit.MILLISECONDS).intValue());
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterInputClosed() throws Exception {
+		MemoryPipe pipe = new MemoryPipe();
+		pipe.getInputStream().close();
+		pipe.getOutputStream().write(42);
+	}
+
+	@Test
+	public void testInputClosedWakesWriter() throws Exception {
+		MemoryPipe pipe = new MemoryPipe(16);
+		Future<?> result = executor.submit(() -> {
+			pipe.getOutputStream().write(new byte[100]);
+			return null;
+		});
+		Thread.sleep(50);
+		Assert.assertFalse(result.isDone());
+		pipe.getInputStream().close();
+		try {
+			result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void testInterruptedRead() throws Exception {
+		MemoryPipe pipe = new MemoryPipe();
+		Future<?> result = executor.submit(() -> pipe.getInputStream().read());
+		Thread.sleep(50);
+		result.cancel(true);
+		// The reader must not block anymore, so the executor terminates
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testInterruptedExceptionType() throws Exception {
+		MemoryPipe pipe = new MemoryPipe();
+		Thread.currentThread().interrupt();
+		try {
+			pipe.getInputStream().read();
+			Assert.fail();
+		} catch (InterruptedIOException e) {
+			Assert.assertTrue(Thread.interrupted());
+		}
+	}
+
+}
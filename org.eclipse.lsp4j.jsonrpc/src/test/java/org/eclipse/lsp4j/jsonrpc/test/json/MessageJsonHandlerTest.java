@@ -1,19 +1,36 @@
 package org.eclipse.lsp4j.jsonrpc.test.json;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
 import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.BatchMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.CancelParams;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.jsonrpc.messages.InvalidMessage;
 import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
 import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.google.common.reflect.TypeToken;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 public class MessageJsonHandlerTest {
 
@@ -27,6 +44,30 @@ public class MessageJsonHandlerTest {
 		public String uri;
 	}
 
+	/**
+	 * Records whether it has been read from the JSON text or from a parsed JSON tree.
+	 */
+	@JsonAdapter(StreamedValueAdapter.class)
+	public static class StreamedValue {
+		public String value;
+		public boolean streamed;
+	}
+
+	public static class StreamedValueAdapter extends TypeAdapter<StreamedValue> {
+		@Override
+		public void write(JsonWriter out, StreamedValue value) throws IOException {
+			out.value(value.value);
+		}
+
+		@Override
+		public StreamedValue read(JsonReader in) throws IOException {
+			StreamedValue result = new StreamedValue();
+			result.streamed = in.getClass() == JsonReader.class;
+			result.value = in.nextString();
+			return result;
+		}
+	}
+
 	@SuppressWarnings({ "serial", "unchecked" })
 	@Test
 	public void testParseList() {
@@ -105,4 +146,168 @@ public class MessageJsonHandlerTest {
 		Assert.assertFalse(result.isRight());
 		Assert.assertEquals("name",result.getLeft());
 	}
+	
+	@Test
+	public void testSharedHandler() {
+		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<>();
+		supportedMethods.put("foo", JsonRpcMethod.request("foo", Location.class, Location.class));
+		supportedMethods.put("bar", JsonRpcMethod.request("bar", Location.class, Entry.class));
+		MessageJsonHandler sharedHandler = new MessageJsonHandler(supportedMethods);
+		MessageJsonHandler handler1 = new MessageJsonHandler(sharedHandler);
+		handler1.setMethodProvider((id) -> "foo");
+		MessageJsonHandler handler2 = new MessageJsonHandler(sharedHandler);
+		handler2.setMethodProvider((id) -> "bar");
+		String input = "{\"jsonrpc\":\"2.0\",\"id\":\"2\",\"result\":{\"uri\":\"dummy\",\"name\":\"foo\"}}";
+		// Each derived handler resolves the response type with its own method provider
+		Assert.assertTrue(((ResponseMessage) handler1.parseMessage(input)).getResult() instanceof Location);
+		Assert.assertTrue(((ResponseMessage) handler2.parseMessage(input)).getResult() instanceof Entry);
+		Assert.assertNull(sharedHandler.getMethodProvider());
+	}
+	
+	@Test
+	public void testParseBatch() {
+		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<>();
+		supportedMethods.put("foo", JsonRpcMethod.request("foo", Location.class, Entry.class));
+		supportedMethods.put("bar", JsonRpcMethod.notification("bar", Location.class));
+		MessageJsonHandler handler = new MessageJsonHandler(supportedMethods);
+		Message message = handler.parseMessage("[{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"foo\",\"params\":{\"uri\":\"a\"}},"
+				+ "{\"jsonrpc\":\"2.0\",\"method\":\"bar\",\"params\":{\"uri\":\"b\"}}]");
+		List<Message> members = ((BatchMessage) message).getMessages();
+		Assert.assertEquals(2, members.size());
+		RequestMessage request = (RequestMessage) members.get(0);
+		Assert.assertEquals("1", request.getId());
+		Assert.assertEquals("a", ((Location) request.getParams()).uri);
+		NotificationMessage notification = (NotificationMessage) members.get(1);
+		Assert.assertEquals("b", ((Location) notification.getParams()).uri);
+	}
+	
+	@Test
+	public void testParseInvalidBatch() {
+		MessageJsonHandler handler = new MessageJsonHandler(new LinkedHashMap<>());
+		Assert.assertTrue(handler.parseMessage("[]") instanceof InvalidMessage);
+		
+		// Invalid members are answered individually, so the valid members are kept
+		List<Message> members = ((BatchMessage) handler.parseMessage("[1,{\"jsonrpc\":\"2.0\",\"method\":\"bar\"},{\"foo\":2},"
+				+ "[{\"jsonrpc\":\"2.0\",\"method\":\"bar\"}]]")).getMessages();
+		Assert.assertEquals(4, members.size());
+		Assert.assertTrue(members.get(0) instanceof InvalidMessage);
+		Assert.assertEquals("bar", ((NotificationMessage) members.get(1)).getMethod());
+		Assert.assertTrue(members.get(2) instanceof InvalidMessage);
+		Assert.assertTrue(members.get(3) instanceof InvalidMessage);
+	}
+	
+	@Test
+	public void testErrorResponseWithoutId() {
+		MessageJsonHandler handler = new MessageJsonHandler(new LinkedHashMap<>());
+		ResponseMessage response = new ResponseMessage();
+		response.setError(new ResponseError(ResponseErrorCode.InvalidRequest, "Invalid", null));
+		String json = handler.serialize(response);
+		Assert.assertEquals("{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32600,\"message\":\"Invalid\"}}", json);
+		ResponseMessage parsed = (ResponseMessage) handler.parseMessage(json);
+		Assert.assertNull(parsed.getId());
+		Assert.assertEquals(ResponseErrorCode.InvalidRequest, parsed.getError().getCode());
+	}
+	
+	@Test
+	public void testSerializeBatch() {
+		MessageJsonHandler handler = new MessageJsonHandler(new LinkedHashMap<>());
+		ResponseMessage response1 = new ResponseMessage();
+		response1.setId("1");
+		response1.setResult("a");
+		ResponseMessage response2 = new ResponseMessage();
+		response2.setId("2");
+		response2.setResult("b");
+		Assert.assertEquals("[{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":\"a\"},{\"jsonrpc\":\"2.0\",\"id\":\"2\",\"result\":\"b\"}]",
+				handler.serialize(new BatchMessage(Arrays.asList(response1, response2))));
+	}
+	
+	@Test
+	public void testLazyParams() throws Exception {
+		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<>();
+		supportedMethods.put("foo", JsonRpcMethod.request("foo", Location.class, Entry.class));
+		MessageJsonHandler handler = new MessageJsonHandler(supportedMethods);
+		handler.setLazyParams(true);
+		String input = "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"foo\",\"params\":{\"uri\":\"dummy\",\"size\":[1,2.5,true,null]}}";
+		RequestMessage message = (RequestMessage) handler.parseMessage(input);
+		LazyParams params = (LazyParams) message.getParams();
+		Assert.assertFalse(params.isConverted());
+		Assert.assertEquals("{\"uri\":\"dummy\",\"size\":[1,2.5,true,null]}", params.getJson());
+		// Unconverted parameters are serialized as they were received
+		Assert.assertEquals(input, handler.serialize(message));
+		Assert.assertEquals("dummy", ((Location) params.get()).uri);
+		Assert.assertTrue(params.isConverted());
+		
+		// Parameters that precede the method
+		message = (RequestMessage) handler.parseMessage("{\"jsonrpc\":\"2.0\",\"params\":{\"uri\":\"dummy\"},\"id\":\"1\",\"method\":\"foo\"}");
+		Assert.assertEquals("dummy", ((Location) LazyParams.resolve(message.getParams())).uri);
+		
+		// The parameters are taken from the input as they are, also from encoded input
+		byte[] content = "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"foo\",\"params\": { \"uri\" : \"d\u00fcmmy\" } }".getBytes(StandardCharsets.UTF_8);
+		message = (RequestMessage) handler.parseMessage(content, 0, content.length, "UTF-8");
+		Assert.assertEquals("{ \"uri\" : \"d\u00fcmmy\" }", ((LazyParams) message.getParams()).getJson());
+		Assert.assertEquals("d\u00fcmmy", ((LazyParams) message.getParams()).getStringProperty("uri"));
+		
+		// Without the JSON text the parameters are kept as JSON tree
+		message = (RequestMessage) handler.parseMessage(new StringReader(input));
+		Assert.assertEquals("{\"uri\":\"dummy\",\"size\":[1,2.5,true,null]}", ((LazyParams) message.getParams()).getJson());
+		
+		// Cancellation parameters are converted right away
+		NotificationMessage notification = (NotificationMessage) handler.parseMessage("{\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\",\"params\":{\"id\":\"1\"}}");
+		Assert.assertEquals("1", ((CancelParams) notification.getParams()).getId());
+	}
+	
+	@Test
+	public void testParamsBeforeMethod() throws Exception {
+		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<>();
+		supportedMethods.put("foo", JsonRpcMethod.request("foo", StreamedValue.class, StreamedValue.class));
+		MessageJsonHandler handler = new MessageJsonHandler(supportedMethods);
+		String input = "{\"params\":\"a\",\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"f\\u006fo\"}";
+		RequestMessage message = (RequestMessage) handler.parseMessage(input);
+		Assert.assertEquals("foo", message.getMethod());
+		Assert.assertEquals("a", ((StreamedValue) message.getParams()).value);
+		Assert.assertTrue(((StreamedValue) message.getParams()).streamed);
+		
+		byte[] content = input.getBytes(StandardCharsets.UTF_8);
+		message = (RequestMessage) handler.parseMessage(content, 0, content.length, "UTF-8");
+		Assert.assertTrue(((StreamedValue) message.getParams()).streamed);
+		
+		// Without the JSON text the params are parsed into a tree first
+		message = (RequestMessage) handler.parseMessage(new StringReader(input));
+		Assert.assertEquals("a", ((StreamedValue) message.getParams()).value);
+		Assert.assertFalse(((StreamedValue) message.getParams()).streamed);
+		
+		// The params of unsupported methods are kept as tree
+		message = (RequestMessage) handler.parseMessage("{\"params\":{\"a\":[1]},\"method\":\"bar\",\"id\":\"1\"}");
+		Assert.assertTrue(message.getParams() instanceof JsonElement);
+	}
+	
+	@Test
+	public void testResultBeforeId() {
+		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<>();
+		supportedMethods.put("foo", JsonRpcMethod.request("foo", StreamedValue.class, StreamedValue.class));
+		MessageJsonHandler handler = new MessageJsonHandler(supportedMethods);
+		handler.setMethodProvider((id) -> "2".equals(id) ? "foo" : null);
+		ResponseMessage message = (ResponseMessage) handler.parseMessage("{\"result\":\"a\",\"jsonrpc\":\"2.0\",\"id\":\"2\"}");
+		Assert.assertEquals("2", message.getId());
+		Assert.assertTrue(((StreamedValue) message.getResult()).streamed);
+	}
+	
+	@Test
+	public void testBatchParamsBeforeMethod() {
+		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<>();
+		supportedMethods.put("foo", JsonRpcMethod.request("foo", StreamedValue.class, StreamedValue.class));
+		supportedMethods.put("bar", JsonRpcMethod.notification("bar", StreamedValue.class));
+		MessageJsonHandler handler = new MessageJsonHandler(supportedMethods);
+		BatchMessage batch = (BatchMessage) handler.parseMessage("[{\"params\":\"a\",\"method\":\"foo\",\"id\":\"1\"},"
+				+ " {\"jsonrpc\":\"2.0\",\"method\":\"bar\",\"params\":\"b\"},"
+				+ " {\"params\":\"c\",\"nested\":{\"method\":\"foo\",\"x\":[\"]}\"]},\"method\":\"bar\"}]");
+		List<Message> members = batch.getMessages();
+		Assert.assertEquals(3, members.size());
+		StreamedValue params = (StreamedValue) ((RequestMessage) members.get(0)).getParams();
+		Assert.assertEquals("a", params.value);
+		Assert.assertTrue(params.streamed);
+		params = (StreamedValue) ((NotificationMessage) members.get(2)).getParams();
+		Assert.assertEquals("c", params.value);
+		Assert.assertTrue(params.streamed);
+	}
 }
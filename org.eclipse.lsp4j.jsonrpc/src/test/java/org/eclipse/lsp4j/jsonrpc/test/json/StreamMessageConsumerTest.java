@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamMessageConsumerTest {
+
+	static class RecordingOutputStream extends ByteArrayOutputStream {
+		int writeCount;
+		int flushCount;
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			writeCount++;
+			super.write(b, off, len);
+		}
+		@Override
+		public synchronized void flush() {
+			flushCount++;
+		}
+	}
+
+	private static NotificationMessage notification(String method, Object params) {
+		NotificationMessage message = new NotificationMessage();
+		message.setMethod(method);
+		message.setParams(params);
+		return message;
+	}
+
+	@Test
+	public void testSingleWrite() {
+		RecordingOutputStream output = new RecordingOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, new MessageJsonHandler(Collections.emptyMap()));
+		consumer.consume(notification("foo", "\u00e4"));
+		consumer.consume(notification("bar", null));
+		Assert.assertEquals(2, output.writeCount);
+		Assert.assertEquals("Content-Length: 46\r\n\r\n{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":\"\u00e4\"}"
+				+ "Content-Length: 32\r\n\r\n{\"jsonrpc\":\"2.0\",\"method\":\"bar\"}",
+				new String(output.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testLargeMessages() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 2000000; i++) {
+			value.append('x');
+		}
+		RecordingOutputStream output = new RecordingOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, new MessageJsonHandler(Collections.emptyMap()));
+		consumer.consume(notification("foo", value.toString()));
+		consumer.consume(notification("bar", "baz"));
+		String result = output.toString();
+		Assert.assertTrue(result.startsWith("Content-Length: 2000044\r\n\r\n{\"jsonrpc\":\"2.0\",\"method\":\"foo\""));
+		Assert.assertTrue(result.endsWith("Content-Length: 47\r\n\r\n{\"jsonrpc\":\"2.0\",\"method\":\"bar\",\"params\":\"baz\"}"));
+	}
+
+	@Test
+	public void testEncoding() throws UnsupportedEncodingException {
+		RecordingOutputStream output = new RecordingOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, "UTF-16BE", new MessageJsonHandler(Collections.emptyMap()));
+		consumer.consume(notification("foo", "bar"));
+		String content = "{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":\"bar\"}";
+		String header = "Content-Length: " + (content.length() * 2) + "\r\n"
+				+ "Content-Type: application/json; charset=UTF-16BE\r\n\r\n";
+		byte[] bytes = output.toByteArray();
+		Assert.assertEquals(header, new String(bytes, 0, header.length(), "US-ASCII"));
+		Assert.assertEquals(content, new String(bytes, header.length(), bytes.length - header.length(), "UTF-16BE"));
+	}
+
+	@Test
+	public void testSerializationDoesNotBlockOtherWriters() throws Exception {
+		CountDownLatch serializing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingOutputStream output = new RecordingOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, new MessageJsonHandler(Collections.emptyMap()) {
+			@Override
+			public void serialize(Message message, Writer writer) {
+				if (((NotificationMessage) message).getMethod().equals("slow")) {
+					serializing.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				super.serialize(message, writer);
+			}
+		});
+		Thread slowWriter = new Thread(() -> consumer.consume(notification("slow", null)));
+		slowWriter.start();
+		Assert.assertTrue(serializing.await(2, TimeUnit.SECONDS));
+		// The message is written while the other one is still being serialized
+		consumer.consume(notification("fast", null));
+		Assert.assertTrue(output.toString().contains("\"method\":\"fast\""));
+		Assert.assertFalse(output.toString().contains("\"method\":\"slow\""));
+		release.countDown();
+		slowWriter.join(2000);
+		Assert.assertTrue(output.toString().endsWith("{\"jsonrpc\":\"2.0\",\"method\":\"slow\"}"));
+	}
+
+	@Test
+	public void testFlushCoalescing() throws Exception {
+		RecordingOutputStream output = new RecordingOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, new MessageJsonHandler(Collections.emptyMap()));
+		consumer.setFlushCoalescing(200, TimeUnit.MILLISECONDS, 1000, null);
+		// The first message after an idle period is flushed immediately
+		consumer.consume(notification("foo", "1"));
+		Assert.assertEquals(1, output.writeCount);
+		Assert.assertEquals(1, output.flushCount);
+		// Following messages are collected until the delay has passed
+		consumer.consume(notification("foo", "2"));
+		consumer.consume(notification("foo", "3"));
+		Assert.assertEquals(1, output.writeCount);
+		long startTime = System.currentTimeMillis();
+		while (consumer.getFlushCount() < 2) {
+			Thread.sleep(10);
+			if (System.currentTimeMillis() - startTime > 2000)
+				Assert.fail("Timeout waiting for the delayed flush.");
+		}
+		synchronized (output) {
+			Assert.assertEquals(2, output.writeCount);
+			Assert.assertEquals(2, output.flushCount);
+			Assert.assertTrue(output.toString().endsWith("\"params\":\"3\"}"));
+		}
+	}
+
+	@Test
+	public void testBlockedDelayedFlush() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingOutputStream blockingOutput = new RecordingOutputStream() {
+			@Override
+			public void flush() {
+				super.flush();
+				if (flushCount > 1) {
+					blocked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}
+		};
+		StreamMessageConsumer blockingConsumer = new StreamMessageConsumer(blockingOutput, new MessageJsonHandler(Collections.emptyMap()));
+		blockingConsumer.setFlushCoalescing(50, TimeUnit.MILLISECONDS, 1000, null);
+		RecordingOutputStream output = new RecordingOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, new MessageJsonHandler(Collections.emptyMap()));
+		consumer.setFlushCoalescing(50, TimeUnit.MILLISECONDS, 1000, null);
+		try {
+			blockingConsumer.consume(notification("foo", "1"));
+			blockingConsumer.consume(notification("foo", "2"));
+			Assert.assertTrue(blocked.await(2, TimeUnit.SECONDS));
+			// The delayed flush of another consumer is not held up by the blocked one
+			consumer.consume(notification("foo", "1"));
+			consumer.consume(notification("foo", "2"));
+			long startTime = System.currentTimeMillis();
+			while (consumer.getFlushCount() < 2) {
+				Thread.sleep(10);
+				if (System.currentTimeMillis() - startTime > 2000)
+					Assert.fail("Timeout waiting for the delayed flush.");
+			}
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testFlushThreshold() {
+		RecordingOutputStream output = new RecordingOutputStream();
+		StreamMessageConsumer consumer = new StreamMessageConsumer(output, new MessageJsonHandler(Collections.emptyMap()));
+		consumer.setFlushCoalescing(1, TimeUnit.HOURS, 250, null);
+		consumer.consume(notification("foo", "1"));
+		for (int i = 0; i < 3; i++) {
+			consumer.consume(notification("foo", "x"));
+		}
+		// Three messages of 67 bytes have not reached the threshold yet
+		Assert.assertEquals(1, consumer.getFlushCount());
+		consumer.consume(notification("foo", "x"));
+		Assert.assertEquals(2, consumer.getFlushCount());
+		Assert.assertEquals(5, output.toString().split("Content-Length").length - 1);
+	}
+
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.eclipse.lsp4j.jsonrpc.json.MessageHeaders;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.test.LogMessageAccumulator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonPrimitive;
+
+public class StreamMessageProducerTest {
+
+	private static final String MESSAGE_1 = "{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":\"bar\"}";
+	private static final String MESSAGE_2 = "{\"jsonrpc\":\"2.0\",\"method\":\"baz\",\"params\":\"\u00e4\u00f6\u00fc\"}";
+
+	private static String frame(String content) {
+		return "Content-Length: " + content.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + content;
+	}
+
+	private List<Message> listen(InputStream input) {
+		List<Message> messages = new ArrayList<>();
+		StreamMessageProducer producer = new StreamMessageProducer(input, new MessageJsonHandler(Collections.emptyMap()));
+		producer.listen(messages::add);
+		return messages;
+	}
+
+	/**
+	 * An input stream that delivers at most the given number of bytes per read operation.
+	 */
+	private static InputStream chunked(String input, int chunkSize) {
+		return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, chunkSize));
+			}
+		};
+	}
+
+	@Test
+	public void testMultipleMessagesInOneChunk() {
+		List<Message> messages = listen(chunked(frame(MESSAGE_1) + frame(MESSAGE_2), Integer.MAX_VALUE));
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals("foo", ((NotificationMessage) messages.get(0)).getMethod());
+		Assert.assertEquals("\u00e4\u00f6\u00fc", ((JsonPrimitive) ((NotificationMessage) messages.get(1)).getParams()).getAsString());
+	}
+
+	@Test
+	public void testSingleByteChunks() {
+		List<Message> messages = listen(chunked(frame(MESSAGE_1) + frame(MESSAGE_2), 1));
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals("baz", ((NotificationMessage) messages.get(1)).getMethod());
+	}
+
+	@Test
+	public void testContentLargerThanBuffer() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			value.append((char) ('a' + i % 26));
+		}
+		String content = "{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":\"" + value + "\"}";
+		List<Message> messages = listen(chunked(frame(content) + frame(MESSAGE_1), 1000));
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals(value.toString(), ((JsonPrimitive) ((NotificationMessage) messages.get(0)).getParams()).getAsString());
+		Assert.assertEquals("foo", ((NotificationMessage) messages.get(1)).getMethod());
+	}
+
+	@Test
+	public void testMultiByteCharactersAcrossDecoderChunks() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			value.append(i % 2 == 0 ? "\u00e4" : "\u20ac");
+		}
+		String content = "{\"jsonrpc\":\"2.0\",\"method\":\"foo\",\"params\":\"" + value + "\"}";
+		List<Message> messages = listen(chunked(frame(content), 1000));
+		Assert.assertEquals(1, messages.size());
+		Assert.assertEquals(value.toString(), ((JsonPrimitive) ((NotificationMessage) messages.get(0)).getParams()).getAsString());
+	}
+
+	@Test
+	public void testContentTypeCharset() {
+		byte[] content = MESSAGE_2.getBytes(StandardCharsets.ISO_8859_1);
+		byte[] header = ("Content-Length: " + content.length + "\r\n"
+				+ "Content-Type: application/json; charset=ISO-8859-1\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+		byte[] input = new byte[header.length + content.length];
+		System.arraycopy(header, 0, input, 0, header.length);
+		System.arraycopy(content, 0, input, header.length, content.length);
+		List<Message> messages = listen(new ByteArrayInputStream(input));
+		Assert.assertEquals(1, messages.size());
+		Assert.assertEquals("\u00e4\u00f6\u00fc", ((JsonPrimitive) ((NotificationMessage) messages.get(0)).getParams()).getAsString());
+	}
+
+	@Test
+	public void testMissingContentLength() throws Exception {
+		LogMessageAccumulator logMessages = new LogMessageAccumulator();
+		try {
+			logMessages.registerTo(StreamMessageProducer.class.getName());
+			List<Message> messages = listen(chunked("Foo: bar\r\n\r\n" + frame(MESSAGE_1), 7));
+			Assert.assertEquals(1, messages.size());
+			logMessages.await(Level.SEVERE, "Missing header Content-Length in input \"Foo: bar\r\n\r\n\"");
+		} finally {
+			logMessages.unregister();
+		}
+	}
+
+	@Test
+	public void testParseHeaders() {
+		MessageHeaders headers = new MessageHeaders();
+		byte[] input = ("\r\ncontent-type : application/json; charset=ISO-8859-1 \n"
+				+ "Content-Length:\t42\n\nrest").getBytes(StandardCharsets.US_ASCII);
+		int contentStart = headers.parse(input, 0, input.length);
+		Assert.assertEquals(input.length - 4, contentStart);
+		Assert.assertEquals(42, headers.getContentLength());
+		Assert.assertEquals("ISO-8859-1", headers.getCharset());
+
+		Assert.assertEquals(-1, headers.parse(input, 0, contentStart - 1));
+
+		input = "Content-Length: x12\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+		Assert.assertEquals(input.length, headers.parse(input, 0, input.length));
+		Assert.assertEquals(-1, headers.getContentLength());
+		Assert.assertTrue(headers.hasInvalidContentLength());
+	}
+
+	@Test
+	public void testReadOperations() throws IOException {
+		int[] readCount = new int[1];
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			input.append(frame(MESSAGE_1));
+		}
+		InputStream stream = new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int read() {
+				readCount[0]++;
+				return super.read();
+			}
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				readCount[0]++;
+				return super.read(b, off, len);
+			}
+		};
+		Assert.assertEquals(100, listen(stream).size());
+		Assert.assertTrue("Too many read operations: " + readCount[0], readCount[0] < 10);
+	}
+
+}
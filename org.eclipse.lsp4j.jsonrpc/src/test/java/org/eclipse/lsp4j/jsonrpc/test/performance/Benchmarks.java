@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for the micro benchmarks in this package. The benchmarks are plain main classes, so they
+ * are not executed as part of the test suite.
+ */
+public final class Benchmarks {
+	private Benchmarks() {}
+	
+	/**
+	 * The number of bytes allocated by the current thread so far, or -1 if the JVM does not support
+	 * allocation measurement.
+	 */
+	public static long allocatedBytes() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+			return sunThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+	
+	public static String frame(String content) {
+		return "Content-Length: " + content.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + content;
+	}
+	
+	public static String notification(String method, int payloadSize) {
+		StringBuilder payload = new StringBuilder(payloadSize);
+		for (int i = 0; i < payloadSize; i++) {
+			payload.append((char) ('a' + i % 26));
+		}
+		return "{\"jsonrpc\":\"2.0\",\"method\":\"" + method + "\",\"params\":{\"value\":\"" + payload + "\"}}";
+	}
+	
+	public static void report(String name, int count, long nanos, String... details) {
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("%-40s %10.1f msg/s %8.2f us/msg", name, count * 1e9 / nanos, nanos / 1e3 / count));
+		for (String detail : details) {
+			result.append("  ").append(detail);
+		}
+		System.out.println(result);
+	}
+	
+}
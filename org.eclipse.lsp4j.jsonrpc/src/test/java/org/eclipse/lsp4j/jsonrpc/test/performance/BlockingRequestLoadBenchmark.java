@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
+import org.eclipse.lsp4j.jsonrpc.DuplexPipe;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.VirtualThreads;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+
+/**
+ * A load test that sends thousands of concurrent requests whose handlers block, e.g. on file I/O or on
+ * the locks of a compiler, and compares the default cached thread pool to virtual threads. The handlers
+ * either block in the service method, which requires concurrent dispatch, or in a computation started
+ * with {@link CompletableFutures#computeAsync(java.util.concurrent.Executor, java.util.function.Function)}
+ * on a cached thread pool or on {@link VirtualThreads#getExecutor()}.
+ * Reports the time until all requests are answered and the peak number of additional platform threads.
+ */
+public class BlockingRequestLoadBenchmark {
+
+	private static final int REQUESTS = 5000;
+	private static final long BLOCKING_MILLIS = 200;
+
+	public static class Param {
+		public int value;
+	}
+
+	public static interface Server {
+		@JsonRequest CompletableFuture<Integer> blockInHandler(Param param);
+		@JsonRequest CompletableFuture<Integer> blockInComputation(Param param);
+	}
+
+	public static interface Client {
+		@JsonNotification void log(Param param);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (!VirtualThreads.isSupported())
+			System.out.println("Virtual threads are not supported by this JDK, platform threads are used instead.");
+		for (int round = 0; round < 2; round++) {
+			run("cached thread pool, handler", false, false);
+			run("virtual threads, handler", true, false);
+			run("cached thread pool, computeAsync", false, true);
+			run("virtual threads, computeAsync", true, true);
+		}
+	}
+
+	private static void run(String name, boolean virtualThreads, boolean computeAsync) throws Exception {
+		ExecutorService computeExecutor = Executors.newCachedThreadPool();
+		Server server = new Server() {
+			@Override
+			public CompletableFuture<Integer> blockInHandler(Param param) {
+				block();
+				return CompletableFuture.completedFuture(param.value);
+			}
+
+			@Override
+			public CompletableFuture<Integer> blockInComputation(Param param) {
+				if (virtualThreads) {
+					return CompletableFutures.computeAsync(VirtualThreads.getExecutor(), cancelChecker -> {
+						block();
+						return param.value;
+					});
+				}
+				return CompletableFutures.computeAsync(computeExecutor, cancelChecker -> {
+					block();
+					return param.value;
+				});
+			}
+		};
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		threadBean.resetPeakThreadCount();
+		// Idle threads of earlier runs are still alive, so only the increase is reported
+		int baseline = threadBean.getThreadCount();
+		try (DuplexPipe pipe = new DuplexPipe()) {
+			Launcher<Client> serverLauncher = new Launcher.Builder<Client>()
+					.setLocalService(server)
+					.setRemoteInterface(Client.class)
+					.setInput(pipe.getServerInput())
+					.setOutput(pipe.getServerOutput())
+					.setVirtualThreads(virtualThreads)
+					.setConcurrentDispatch(true)
+					.create();
+			Launcher<Server> clientLauncher = new Launcher.Builder<Server>()
+					.setLocalService((Client) param -> {})
+					.setRemoteInterface(Server.class)
+					.setInput(pipe.getClientInput())
+					.setOutput(pipe.getClientOutput())
+					.create();
+			Future<?> serverListening = serverLauncher.startListening();
+			Future<?> clientListening = clientLauncher.startListening();
+
+			long start = System.nanoTime();
+			List<CompletableFuture<Integer>> results = new ArrayList<>(REQUESTS);
+			for (int i = 0; i < REQUESTS; i++) {
+				Param param = new Param();
+				param.value = i;
+				Server remote = clientLauncher.getRemoteProxy();
+				results.add(computeAsync ? remote.blockInComputation(param) : remote.blockInHandler(param));
+			}
+			for (int i = 0; i < REQUESTS; i++) {
+				if (results.get(i).get(5, TimeUnit.MINUTES) != i)
+					throw new IllegalStateException("Wrong result for request " + i);
+			}
+			long nanos = System.nanoTime() - start;
+			Benchmarks.report(name, REQUESTS, nanos, (threadBean.getPeakThreadCount() - baseline) + " additional platform threads");
+			serverListening.cancel(true);
+			clientListening.cancel(true);
+		} finally {
+			computeExecutor.shutdown();
+		}
+	}
+
+	private static void block() {
+		try {
+			Thread.sleep(BLOCKING_MILLIS);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
+
+/**
+ * Floods an executor with requests computed with {@code computeAsync} and cancels most of them, as a
+ * client does while the user is typing. Compares the former implementation of {@code computeAsync}, which
+ * scheduled the computation as a dependent stage of a completed future, to the current one, with and
+ * without interrupting cancelled computations.
+ *
+ * <p>In the first scenario the requests are cancelled while they are queued, and the computations check
+ * for cancellation only after some setup work. In the second scenario each request is superseded by the
+ * next one while it blocks, e.g. on file I/O, so only an interrupt frees its thread early for the request
+ * the user waits for.</p>
+ */
+public class CancellationBenchmark {
+
+	private static final int FLOOD_REQUESTS = 20000;
+	private static final int KEPT_EVERY = 10;
+	private static final long SETUP_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	private static final long WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private static final int TYPING_BURSTS = 20;
+	private static final int BURST_REQUESTS = 5;
+	private static final long BLOCKING_MILLIS = 20;
+	private static final long TYPING_INTERVAL_MILLIS = 5;
+
+	private interface ComputeAsync {
+		CompletableFuture<Object> compute(ExecutorService executor, Function<CancelChecker, Object> code);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int round = 0; round < 3; round++) {
+				flood("flood, former computeAsync", executor, CancellationBenchmark::formerComputeAsync);
+				flood("flood, computeAsync", executor, CompletableFutures::computeAsync);
+				typing("typing, former computeAsync", executor, CancellationBenchmark::formerComputeAsync);
+				typing("typing, computeAsync", executor, CompletableFutures::computeAsync);
+				typing("typing, interrupting computeAsync", executor, (e, code) -> CompletableFutures.computeAsync(e, code, true));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The implementation of {@code computeAsync} before cancellation-aware computations were introduced.
+	 */
+	private static <R> CompletableFuture<R> formerComputeAsync(ExecutorService executor, Function<CancelChecker, R> code) {
+		CompletableFuture<CancelChecker> start = new CompletableFuture<>();
+		CompletableFuture<R> result = start.thenApplyAsync(code, executor);
+		CancelChecker cancelIndicator = () -> {
+			if (result.isCancelled())
+				throw new CancellationException();
+		};
+		start.complete(cancelIndicator);
+		return result;
+	}
+
+	private static void flood(String name, ExecutorService executor, ComputeAsync computeAsync) throws Exception {
+		AtomicInteger started = new AtomicInteger();
+		Function<CancelChecker, Object> code = cancelChecker -> {
+			started.incrementAndGet();
+			busy(SETUP_NANOS);
+			cancelChecker.checkCanceled();
+			busy(WORK_NANOS);
+			return "result";
+		};
+		List<CompletableFuture<Object>> kept = new ArrayList<>();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < FLOOD_REQUESTS; i++) {
+			CompletableFuture<Object> future = computeAsync.compute(executor, code);
+			if (i % KEPT_EVERY == 0)
+				kept.add(future);
+			else
+				future.cancel(true);
+		}
+		for (CompletableFuture<Object> future : kept) {
+			future.get(5, TimeUnit.MINUTES);
+		}
+		long nanos = System.nanoTime() - start;
+		drain(executor);
+		Benchmarks.report(name, FLOOD_REQUESTS, nanos, started.get() + " computations started");
+	}
+
+	private static void typing(String name, ExecutorService executor, ComputeAsync computeAsync) throws Exception {
+		AtomicInteger completed = new AtomicInteger();
+		Function<CancelChecker, Object> code = cancelChecker -> {
+			try {
+				Thread.sleep(BLOCKING_MILLIS);
+			} catch (InterruptedException e) {
+				throw new CancellationException();
+			}
+			cancelChecker.checkCanceled();
+			completed.incrementAndGet();
+			return "result";
+		};
+
+		long latencyNanos = 0;
+		long start = System.nanoTime();
+		for (int burst = 0; burst < TYPING_BURSTS; burst++) {
+			CompletableFuture<Object> previous = null;
+			for (int i = 0; i < BURST_REQUESTS; i++) {
+				if (previous != null)
+					previous.cancel(true);
+				previous = computeAsync.compute(executor, code);
+				if (i < BURST_REQUESTS - 1)
+					Thread.sleep(TYPING_INTERVAL_MILLIS);
+			}
+			// The answer to the last request of a burst is the one the user waits for
+			long burstEnd = System.nanoTime();
+			previous.get(5, TimeUnit.MINUTES);
+			latencyNanos += System.nanoTime() - burstEnd;
+			drain(executor);
+		}
+		long nanos = System.nanoTime() - start;
+		Benchmarks.report(name, TYPING_BURSTS * BURST_REQUESTS, nanos,
+				String.format("%.1f ms latency of the last request", latencyNanos / 1e6 / TYPING_BURSTS),
+				completed.get() + " computations completed");
+	}
+
+	/**
+	 * Wait until all tasks submitted to the executor so far have run.
+	 */
+	private static void drain(ExecutorService executor) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<CompletableFuture<Void>> markers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			markers.add(CompletableFuture.runAsync(() -> {}, executor));
+		}
+		for (CompletableFuture<Void> marker : markers) {
+			marker.get(5, TimeUnit.MINUTES);
+		}
+		Thread.sleep(BLOCKING_MILLIS);
+	}
+
+	private static void busy(long nanos) {
+		long end = System.nanoTime() + nanos;
+		while (System.nanoTime() < end) {
+			// busy
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.ConcurrentMessageDispatcher;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+
+/**
+ * Dispatches a stream of {@code didChange} notifications and {@code hover} requests for many open
+ * documents, each of which keeps a core busy for a while, and compares the throughput of dispatching
+ * on the reading thread, of {@link ConcurrentMessageDispatcher} without ordering keys, where all
+ * notifications are applied one after another, and of ordering by document URI. The consumer checks
+ * that the changes of each document are applied in order.
+ */
+public class DocumentDispatchBenchmark {
+
+	private static final int DOCUMENTS = 1000;
+	private static final int MESSAGES = 100000;
+	private static final long WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+	/**
+	 * The parameters of a message: the document and the version of the document after a change.
+	 */
+	private static class DocumentParams {
+		final String uri;
+		final int version;
+
+		DocumentParams(String uri, int version) {
+			this.uri = uri;
+			this.version = version;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int round = 0; round < 3; round++) {
+				run("reading thread", null, null);
+				run("concurrent, " + threads + " threads", executor, null);
+				run("per document, " + threads + " threads", executor, DocumentDispatchBenchmark::getUri);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static Object getUri(Message message) {
+		Object params = message instanceof RequestMessage ? ((RequestMessage) message).getParams() : ((NotificationMessage) message).getParams();
+		return ((DocumentParams) params).uri;
+	}
+
+	private static void run(String name, ExecutorService executor, Function<Message, Object> orderingKey) throws Exception {
+		ConcurrentHashMap<String, Integer> versions = new ConcurrentHashMap<>();
+		CountDownLatch done = new CountDownLatch(MESSAGES);
+		MessageConsumer service = message -> {
+			if (message instanceof NotificationMessage) {
+				DocumentParams params = (DocumentParams) ((NotificationMessage) message).getParams();
+				Integer previous = versions.put(params.uri, params.version);
+				if (previous != null && previous >= params.version)
+					throw new IllegalStateException("Changes of " + params.uri + " applied out of order");
+			}
+			work();
+			done.countDown();
+		};
+		MessageConsumer consumer = executor == null ? service : new ConcurrentMessageDispatcher(service, executor, orderingKey);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < MESSAGES; i++) {
+			String uri = "file:///project/src/File" + (i % DOCUMENTS) + ".java";
+			DocumentParams params = new DocumentParams(uri, i);
+			if (i % 3 == 2) {
+				RequestMessage request = new RequestMessage();
+				request.setId(Integer.toString(i));
+				request.setMethod("textDocument/hover");
+				request.setParams(params);
+				consumer.consume(request);
+			} else {
+				NotificationMessage notification = new NotificationMessage();
+				notification.setMethod("textDocument/didChange");
+				notification.setParams(params);
+				consumer.consume(notification);
+			}
+		}
+		if (!done.await(5, TimeUnit.MINUTES))
+			throw new IllegalStateException("Timeout");
+		long nanos = System.nanoTime() - start;
+		Benchmarks.report(name, MESSAGES, nanos, DOCUMENTS + " documents");
+	}
+
+	private static void work() {
+		long end = System.nanoTime() + WORK_NANOS;
+		while (System.nanoTime() < end) {
+			// busy
+		}
+	}
+
+}
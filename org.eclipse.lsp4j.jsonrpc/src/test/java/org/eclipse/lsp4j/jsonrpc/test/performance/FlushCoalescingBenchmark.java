@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Sends bursts of notifications over a loopback socket, similar to publishing diagnostics for many
+ * files, and compares throughput and latency percentiles with and without flush coalescing in
+ * {@link StreamMessageConsumer}.
+ */
+public class FlushCoalescingBenchmark {
+
+	private static final int BURSTS = 200;
+	private static final int BURST_SIZE = 500;
+
+	public static void main(String[] args) throws Exception {
+		for (int round = 0; round < 3; round++) {
+			run("immediate flush", 0);
+			run("coalescing 1ms / 64KB", 1);
+		}
+	}
+
+	private static void run(String name, long maxDelayMillis) throws Exception {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		int count = BURSTS * BURST_SIZE;
+		long[] latencies = new long[count];
+		CountDownLatch received = new CountDownLatch(count);
+		try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+				Socket sender = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+				Socket receiver = serverSocket.accept()) {
+			sender.setTcpNoDelay(true);
+			StreamMessageProducer producer = new StreamMessageProducer(receiver.getInputStream(), jsonHandler);
+			Thread readerThread = new Thread(() -> producer.listen(message -> {
+				long sendTime = ((JsonPrimitive) ((NotificationMessage) message).getParams()).getAsLong();
+				latencies[count - (int) received.getCount()] = System.nanoTime() - sendTime;
+				received.countDown();
+			}));
+			readerThread.setDaemon(true);
+			readerThread.start();
+
+			StreamMessageConsumer consumer = new StreamMessageConsumer(sender.getOutputStream(), jsonHandler);
+			if (maxDelayMillis > 0)
+				consumer.setFlushCoalescing(maxDelayMillis, TimeUnit.MILLISECONDS, 65536, null);
+			long start = System.nanoTime();
+			for (int burst = 0; burst < BURSTS; burst++) {
+				for (int i = 0; i < BURST_SIZE; i++) {
+					NotificationMessage message = new NotificationMessage();
+					message.setMethod("textDocument/publishDiagnostics");
+					message.setParams(System.nanoTime());
+					consumer.consume(message);
+				}
+				// Pause between bursts so the lone-message path is exercised as well
+				Thread.sleep(2);
+			}
+			received.await(1, TimeUnit.MINUTES);
+			long nanos = System.nanoTime() - start;
+			sender.shutdownOutput();
+			readerThread.join();
+
+			Arrays.sort(latencies);
+			Benchmarks.report(name, count, nanos,
+					String.format("p50 %7.1f us", latencies[count / 2] / 1e3),
+					String.format("p99 %7.1f us", latencies[count * 99 / 100] / 1e3),
+					String.format("max %7.1f us", latencies[count - 1] / 1e3),
+					maxDelayMillis > 0 ? consumer.getFlushCount() + " flushes" : count + " flushes");
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+
+/**
+ * Parses large requests and responses whose {@code params} or {@code result} come before or after the
+ * {@code method} and {@code id} properties. Some JSON serializers write the properties in an order in which
+ * the type of the payload is not yet known when it is read. The messages are parsed from UTF-8 encoded content
+ * like the message producers do. Reports the throughput and the number of bytes allocated per message.
+ */
+public class KeyOrderParsingBenchmark {
+
+	private static final int ENTRIES = 2000;
+	private static final int MESSAGES = 200;
+
+	public static class Position {
+		public int line;
+		public int character;
+	}
+
+	public static class Range {
+		public Position start;
+		public Position end;
+	}
+
+	public static class Location {
+		public String uri;
+		public Range range;
+	}
+
+	public static class Entry {
+		public String name;
+		public int kind;
+		public Location location;
+	}
+
+	public static class Entries {
+		public List<Entry> entries;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, JsonRpcMethod> supportedMethods = new LinkedHashMap<>();
+		supportedMethods.put("foo", JsonRpcMethod.request("foo", Entries.class, Entries.class));
+		MessageJsonHandler handler = new MessageJsonHandler(supportedMethods);
+		handler.setMethodProvider(id -> "foo");
+
+		String payload = createPayload();
+		String paramsLast = "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"foo\",\"params\":" + payload + "}";
+		String paramsFirst = "{\"params\":" + payload + ",\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"foo\"}";
+		String resultLast = "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":" + payload + "}";
+		String resultFirst = "{\"result\":" + payload + ",\"jsonrpc\":\"2.0\",\"id\":\"1\"}";
+		System.out.println("Payload size: " + payload.length() / 1024 + " KiB");
+
+		for (int round = 0; round < 5; round++) {
+			run("request, params last", handler, paramsLast);
+			run("request, params first", handler, paramsFirst);
+			run("response, result last", handler, resultLast);
+			run("response, result first", handler, resultFirst);
+		}
+	}
+
+	private static String createPayload() {
+		StringBuilder result = new StringBuilder("{\"entries\":[");
+		for (int i = 0; i < ENTRIES; i++) {
+			if (i > 0)
+				result.append(',');
+			result.append("{\"name\":\"symbol").append(i).append("\",\"kind\":").append(i % 26)
+					.append(",\"location\":{\"uri\":\"file:///workspace/project/src/main/java/File").append(i % 50)
+					.append(".java\",\"range\":{\"start\":{\"line\":").append(i).append(",\"character\":4},")
+					.append("\"end\":{\"line\":").append(i).append(",\"character\":24}}}}");
+		}
+		return result.append("]}").toString();
+	}
+
+	private static void run(String name, MessageJsonHandler handler, String json) throws UnsupportedEncodingException {
+		byte[] input = json.getBytes(StandardCharsets.UTF_8);
+		long allocatedBefore = Benchmarks.allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < MESSAGES; i++) {
+			Message message = handler.parseMessage(input, 0, input.length, "UTF-8");
+			Object payload = message instanceof RequestMessage ? ((RequestMessage) message).getParams()
+					: ((ResponseMessage) message).getResult();
+			if (((Entries) payload).entries.size() != ENTRIES)
+				throw new IllegalStateException("Unexpected payload");
+		}
+		long nanos = System.nanoTime() - start;
+		long allocated = Benchmarks.allocatedBytes() - allocatedBefore;
+		Benchmarks.report(name, MESSAGES, nanos, allocated / MESSAGES / 1024 + " KiB allocated/msg");
+	}
+
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.DuplexPipe;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+
+/**
+ * Compares {@link PipedInputStream} / {@link PipedOutputStream} with {@link DuplexPipe}: the raw
+ * throughput of framed messages written by one thread and read by another, and the round-trip time of
+ * requests between two launchers connected by each kind of pipe.
+ */
+public class PipeBenchmark {
+
+	private static final int MESSAGES = 200000;
+	private static final int WARMUP_REQUESTS = 5000;
+	private static final int REQUESTS = 20000;
+
+	public static interface Echo {
+		@JsonRequest
+		CompletableFuture<String> echo(String value);
+	}
+
+	private static final Echo ECHO = value -> CompletableFuture.completedFuture(value);
+
+	/**
+	 * The input and output streams of both sides of a connection.
+	 */
+	private static class Streams {
+		InputStream clientInput;
+		OutputStream clientOutput;
+		InputStream serverInput;
+		OutputStream serverOutput;
+	}
+
+	public static void main(String[] args) throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			for (int round = 0; round < 3; round++) {
+				throughput("piped streams", piped());
+				throughput("duplex pipe", duplex());
+				latency("piped streams (requests)", piped(), executor);
+				latency("duplex pipe (requests)", duplex(), executor);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Streams piped() throws IOException {
+		Streams streams = new Streams();
+		PipedInputStream clientInput = new PipedInputStream();
+		PipedInputStream serverInput = new PipedInputStream();
+		streams.clientInput = clientInput;
+		streams.serverInput = serverInput;
+		streams.clientOutput = new PipedOutputStream(serverInput);
+		streams.serverOutput = new PipedOutputStream(clientInput);
+		return streams;
+	}
+
+	private static Streams duplex() {
+		Streams streams = new Streams();
+		DuplexPipe pipe = new DuplexPipe();
+		streams.clientInput = pipe.getClientInput();
+		streams.clientOutput = pipe.getClientOutput();
+		streams.serverInput = pipe.getServerInput();
+		streams.serverOutput = pipe.getServerOutput();
+		return streams;
+	}
+
+	private static void throughput(String name, Streams streams) throws Exception {
+		byte[] message = Benchmarks.frame(Benchmarks.notification("textDocument/didChange", 1024)).getBytes(StandardCharsets.UTF_8);
+		long total = (long) message.length * MESSAGES;
+		Thread writer = new Thread(() -> {
+			try {
+				for (int i = 0; i < MESSAGES; i++) {
+					streams.clientOutput.write(message);
+				}
+				streams.clientOutput.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		long start = System.nanoTime();
+		writer.start();
+		byte[] buffer = new byte[8192];
+		long received = 0;
+		int count;
+		while (received < total && (count = streams.serverInput.read(buffer)) >= 0) {
+			received += count;
+		}
+		long nanos = System.nanoTime() - start;
+		writer.join();
+		Benchmarks.report(name, MESSAGES, nanos, String.format("%7.1f MB/s", received * 1e3 / nanos));
+	}
+
+	private static void latency(String name, Streams streams, ExecutorService executor) throws Exception {
+		Launcher<Echo> client = Launcher.createIoLauncher(ECHO, Echo.class, streams.clientInput, streams.clientOutput, executor, null);
+		Launcher<Echo> server = Launcher.createIoLauncher(ECHO, Echo.class, streams.serverInput, streams.serverOutput, executor, null);
+		Future<?> clientFuture = client.startListening();
+		Future<?> serverFuture = server.startListening();
+		Echo remote = client.getRemoteProxy();
+		for (int i = 0; i < WARMUP_REQUESTS; i++) {
+			remote.echo("warmup").get(10, TimeUnit.SECONDS);
+		}
+		long[] latencies = new long[REQUESTS];
+		long start = System.nanoTime();
+		for (int i = 0; i < REQUESTS; i++) {
+			long requestStart = System.nanoTime();
+			remote.echo("value" + i).get(10, TimeUnit.SECONDS);
+			latencies[i] = System.nanoTime() - requestStart;
+		}
+		long nanos = System.nanoTime() - start;
+		clientFuture.cancel(true);
+		serverFuture.cancel(true);
+		Arrays.sort(latencies);
+		Benchmarks.report(name, REQUESTS, nanos,
+				String.format("p50 %7.1f us", latencies[REQUESTS / 2] / 1e3),
+				String.format("p99 %7.1f us", latencies[REQUESTS * 99 / 100] / 1e3),
+				String.format("max %7.1f us", latencies[REQUESTS - 1] / 1e3));
+	}
+
+}
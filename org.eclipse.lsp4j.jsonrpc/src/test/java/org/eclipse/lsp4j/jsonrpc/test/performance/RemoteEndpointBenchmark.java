@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+
+/**
+ * Issues requests from a growing number of threads against a {@link RemoteEndpoint} whose outgoing
+ * messages are answered right away by a loopback consumer. Each request is registered in the table of
+ * pending requests, its method is resolved as when the response is parsed, and the response is
+ * matched again, so the benchmark shows how these tables scale with concurrent access.
+ */
+public class RemoteEndpointBenchmark {
+
+	private static final int REQUESTS_PER_THREAD = 500000;
+
+	private static final Endpoint NO_LOCAL_ENDPOINT = new Endpoint() {
+		@Override
+		public CompletableFuture<?> request(String method, Object parameter) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void notify(String method, Object parameter) {
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+		for (int round = 0; round < 2; round++) {
+			for (int threads = 1; threads <= maxThreads; threads *= 2) {
+				run(threads);
+			}
+		}
+	}
+
+	private static void run(int threadCount) throws Exception {
+		RemoteEndpoint[] endpoint = new RemoteEndpoint[1];
+		endpoint[0] = new RemoteEndpoint(message -> {
+			RequestMessage request = (RequestMessage) message;
+			// The method is resolved by the JSON handler when the response is parsed
+			if (endpoint[0].resolveMethod(request.getId()) == null)
+				throw new IllegalStateException("Unknown request " + request.getId());
+			ResponseMessage response = new ResponseMessage();
+			response.setId(request.getId());
+			response.setResult(request.getParams());
+			endpoint[0].consume(response);
+		}, NO_LOCAL_ENDPOINT);
+
+		CountDownLatch startSignal = new CountDownLatch(1);
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			threads[t] = new Thread(() -> {
+				try {
+					startSignal.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+					if (!endpoint[0].request("foo", "bar").isDone())
+						throw new IllegalStateException("Request has not been answered");
+				}
+			});
+			threads[t].start();
+		}
+		long start = System.nanoTime();
+		startSignal.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long nanos = System.nanoTime() - start;
+		Benchmarks.report(threadCount + " threads", threadCount * REQUESTS_PER_THREAD, nanos);
+	}
+
+}
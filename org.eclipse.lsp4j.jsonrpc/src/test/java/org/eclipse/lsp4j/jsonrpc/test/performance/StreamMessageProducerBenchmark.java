@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+
+/**
+ * Compares the buffered framing of {@link StreamMessageProducer} with reading the header block byte
+ * by byte, as done by previous versions. Reports the number of read operations on the underlying
+ * stream, which correspond to system calls on socket and pipe transports, and the allocated bytes
+ * per message.
+ */
+public class StreamMessageProducerBenchmark {
+	
+	private static final int MESSAGES = 20000;
+	
+	static class CountingInputStream extends ByteArrayInputStream {
+		int reads;
+		CountingInputStream(byte[] buf) {
+			super(buf);
+		}
+		@Override
+		public synchronized int read() {
+			reads++;
+			return super.read();
+		}
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			reads++;
+			return super.read(b, off, len);
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		MessageJsonHandler jsonHandler = new MessageJsonHandler(Collections.emptyMap());
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < MESSAGES; i++) {
+			input.append(Benchmarks.frame(Benchmarks.notification("textDocument/didChange", 200)));
+		}
+		byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+		MessageConsumer consumer = message -> {};
+		for (int round = 0; round < 5; round++) {
+			CountingInputStream byteWise = new CountingInputStream(bytes);
+			long allocated = Benchmarks.allocatedBytes();
+			long start = System.nanoTime();
+			listenByteWise(byteWise, jsonHandler, consumer);
+			report("byte-wise header reading", System.nanoTime() - start, byteWise.reads, Benchmarks.allocatedBytes() - allocated);
+			
+			CountingInputStream buffered = new CountingInputStream(bytes);
+			allocated = Benchmarks.allocatedBytes();
+			start = System.nanoTime();
+			new StreamMessageProducer(buffered, jsonHandler).listen(consumer);
+			report("StreamMessageProducer", System.nanoTime() - start, buffered.reads, Benchmarks.allocatedBytes() - allocated);
+		}
+	}
+	
+	private static void report(String name, long nanos, int reads, long allocated) {
+		Benchmarks.report(name, MESSAGES, nanos,
+				String.format("%7.2f reads/msg", (double) reads / MESSAGES),
+				String.format("%8d bytes/msg", allocated / MESSAGES));
+	}
+	
+	/**
+	 * The framing algorithm of previous versions: every header byte is read with a separate call and
+	 * collected in string builders.
+	 */
+	private static void listenByteWise(InputStream input, MessageJsonHandler jsonHandler, MessageConsumer callback) throws IOException {
+		StringBuilder headerBuilder = null;
+		StringBuilder debugBuilder = null;
+		boolean newLine = false;
+		int contentLength = -1;
+		int c;
+		while ((c = input.read()) != -1) {
+			if (debugBuilder == null)
+				debugBuilder = new StringBuilder();
+			debugBuilder.append((char) c);
+			if (c == '\n') {
+				if (newLine) {
+					byte[] buffer = new byte[contentLength];
+					int bytesRead = 0;
+					while (bytesRead < contentLength) {
+						bytesRead += input.read(buffer, bytesRead, contentLength - bytesRead);
+					}
+					callback.consume(jsonHandler.parseMessage(new String(buffer, StandardCharsets.UTF_8)));
+					newLine = false;
+					contentLength = -1;
+					debugBuilder = null;
+				} else if (headerBuilder != null) {
+					String line = headerBuilder.toString();
+					int sepIndex = line.indexOf(':');
+					if (line.substring(0, sepIndex).trim().equals("Content-Length"))
+						contentLength = Integer.parseInt(line.substring(sepIndex + 1).trim());
+					headerBuilder = null;
+				}
+				newLine = true;
+			} else if (c != '\r') {
+				if (headerBuilder == null)
+					headerBuilder = new StringBuilder();
+				headerBuilder.append((char) c);
+				newLine = false;
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.lsp4j.jsonrpc.test.performance;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.UnixDomainSockets;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+
+/**
+ * Measures request round-trip times between two processes connected through standard input and
+ * output, a TCP loopback socket and a Unix domain socket. The server side runs in a child JVM that is
+ * started with the same class path.
+ */
+public class TransportLatencyBenchmark {
+
+	private static final int WARMUP = 5000;
+	private static final int COUNT = 20000;
+
+	public static interface Echo {
+		@JsonRequest
+		CompletableFuture<String> echo(String value);
+	}
+
+	private static final Echo ECHO = value -> CompletableFuture.completedFuture(value);
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			runServer(args);
+			return;
+		}
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			for (int round = 0; round < 2; round++) {
+				benchmarkStdio(executor);
+				benchmarkTcp(executor, false);
+				benchmarkTcp(executor, true);
+				if (UnixDomainSockets.isSupported())
+					benchmarkUnix(executor);
+				else
+					System.out.println("Unix domain sockets are not supported by this JVM");
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Process startServer(String... args) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String[] command = new String[args.length + 4];
+		command[0] = java;
+		command[1] = "-cp";
+		command[2] = System.getProperty("java.class.path");
+		command[3] = TransportLatencyBenchmark.class.getName();
+		System.arraycopy(args, 0, command, 4, args.length);
+		return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+	}
+
+	private static String awaitReady(Process process) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String line = reader.readLine();
+		if (line == null || !line.startsWith("ready"))
+			throw new IllegalStateException("Server failed to start: " + line);
+		return line.substring("ready".length()).trim();
+	}
+
+	private static void benchmarkStdio(ExecutorService executor) throws Exception {
+		Process process = startServer("stdio");
+		try {
+			Launcher<Echo> launcher = Launcher.createIoLauncher(ECHO, Echo.class, process.getInputStream(),
+					process.getOutputStream(), executor, null);
+			launcher.startListening();
+			measure("stdio", launcher.getRemoteProxy());
+		} finally {
+			process.destroy();
+		}
+	}
+
+	private static void benchmarkTcp(ExecutorService executor, boolean channel) throws Exception {
+		Process process = startServer(channel ? "tcp-channel" : "tcp");
+		try {
+			InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(awaitReady(process)));
+			Launcher<Echo> launcher;
+			if (channel) {
+				SocketChannel socketChannel = SocketChannel.open(address);
+				socketChannel.socket().setTcpNoDelay(true);
+				launcher = Launcher.createChannelLauncher(ECHO, Echo.class, socketChannel, executor, null);
+			} else {
+				Socket socket = new Socket(address.getAddress(), address.getPort());
+				socket.setTcpNoDelay(true);
+				launcher = Launcher.createIoLauncher(ECHO, Echo.class, socket.getInputStream(), socket.getOutputStream(), executor, null);
+			}
+			Future<?> future = launcher.startListening();
+			measure(channel ? "tcp loopback (channel)" : "tcp loopback (stream)", launcher.getRemoteProxy());
+			future.cancel(true);
+		} finally {
+			process.destroy();
+		}
+	}
+
+	private static void benchmarkUnix(ExecutorService executor) throws Exception {
+		Path directory = Files.createTempDirectory("lsp4j");
+		Path socketPath = directory.resolve("benchmark.sock");
+		Process process = startServer("unix", socketPath.toString());
+		try {
+			awaitReady(process);
+			Launcher<Echo> launcher = Launcher.createUnixSocketClientLauncher(ECHO, Echo.class, socketPath, executor, null);
+			launcher.startListening();
+			measure("unix domain socket", launcher.getRemoteProxy());
+		} finally {
+			process.destroy();
+			process.waitFor();
+			Files.deleteIfExists(socketPath);
+			Files.delete(directory);
+		}
+	}
+
+	private static void measure(String name, Echo remote) throws Exception {
+		for (int i = 0; i < WARMUP; i++) {
+			remote.echo("warmup").get(10, TimeUnit.SECONDS);
+		}
+		long[] latencies = new long[COUNT];
+		long start = System.nanoTime();
+		for (int i = 0; i < COUNT; i++) {
+			long requestStart = System.nanoTime();
+			remote.echo("value" + i).get(10, TimeUnit.SECONDS);
+			latencies[i] = System.nanoTime() - requestStart;
+		}
+		long nanos = System.nanoTime() - start;
+		Arrays.sort(latencies);
+		Benchmarks.report(name, COUNT, nanos,
+				String.format("p50 %7.1f us", latencies[COUNT / 2] / 1e3),
+				String.format("p99 %7.1f us", latencies[COUNT * 99 / 100] / 1e3),
+				String.format("max %7.1f us", latencies[COUNT - 1] / 1e3));
+	}
+
+	/**
+	 * The server side, running in the child process until it is destroyed.
+	 */
+	private static void runServer(String[] args) throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Launcher<Echo> launcher;
+		switch (args[0]) {
+		case "stdio":
+			launcher = Launcher.createIoLauncher(ECHO, Echo.class, System.in, System.out, executor, null);
+			break;
+		case "tcp":
+			try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+				System.out.println("ready " + serverSocket.getLocalPort());
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				launcher = Launcher.createIoLauncher(ECHO, Echo.class, socket.getInputStream(), socket.getOutputStream(), executor, null);
+			}
+			break;
+		case "tcp-channel":
+			try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
+				serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+				System.out.println("ready " + serverSocket.socket().getLocalPort());
+				SocketChannel channel = serverSocket.accept();
+				channel.socket().setTcpNoDelay(true);
+				launcher = Launcher.createChannelLauncher(ECHO, Echo.class, channel, executor, null);
+			}
+			break;
+		case "unix":
+			Path socketPath = Paths.get(args[1]);
+			try (ServerSocketChannel serverSocket = UnixDomainSockets.bind(socketPath)) {
+				System.out.println("ready");
+				launcher = Launcher.createChannelLauncher(ECHO, Echo.class, serverSocket.accept(), executor, null);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException(args[0]);
+		}
+		launcher.startListening().get();
+	}
+
+}
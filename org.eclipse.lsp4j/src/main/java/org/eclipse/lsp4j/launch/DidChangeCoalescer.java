@@ -0,0 +1,178 @@
+package org.eclipse.lsp4j.launch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * Merges consecutive {@code textDocument/didChange} notifications for the same document that wait to be
+ * dispatched, so a language server that falls behind applies them at once:
+ *
+ * <pre>
+ * new Launcher.Builder&lt;LanguageClient&gt;()
+ *     ...
+ *     .setDispatchOrderingKey(TextDocumentOrdering::getDocumentUri)
+ *     .setNotificationCoalescer(DidChangeCoalescer::coalesce)
+ *     .create();
+ * </pre>
+ *
+ * The merged notification carries the content changes of both notifications in order and the text document
+ * identifier of the later one, so applying it has the same effect as applying the separate notifications.
+ *
+ * @see Launcher.Builder#setNotificationCoalescer(java.util.function.BiFunction)
+ */
+public final class DidChangeCoalescer {
+
+	public static final String DID_CHANGE_METHOD = "textDocument/didChange";
+
+	private DidChangeCoalescer() {}
+
+	/**
+	 * Merge two {@code textDocument/didChange} notifications for the same document.
+	 *
+	 * @return the merged notification, or {@code null} if the notifications cannot be merged
+	 */
+	public static NotificationMessage coalesce(NotificationMessage earlier, NotificationMessage later) {
+		if (!DID_CHANGE_METHOD.equals(earlier.getMethod()) || !DID_CHANGE_METHOD.equals(later.getMethod()))
+			return null;
+		Object params;
+		try {
+			if (isUnconverted(earlier.getParams()) && isUnconverted(later.getParams())) {
+				// Merge the JSON, so the parameters are converted only when the notification is dispatched
+				LazyParams laterParams = (LazyParams) later.getParams();
+				JsonObject json = mergeJson(((LazyParams) earlier.getParams()).getJsonTree(), laterParams.getJsonTree());
+				params = json != null ? laterParams.withJson(json) : null;
+			} else {
+				Object earlierParams = LazyParams.resolve(earlier.getParams());
+				Object laterParams = LazyParams.resolve(later.getParams());
+				if (!(earlierParams instanceof DidChangeTextDocumentParams) || !(laterParams instanceof DidChangeTextDocumentParams))
+					return null;
+				params = merge((DidChangeTextDocumentParams) earlierParams, (DidChangeTextDocumentParams) laterParams);
+			}
+		} catch (JsonParseException e) {
+			// Invalid parameters are reported when the notification is dispatched
+			return null;
+		}
+		if (params == null)
+			return null;
+		NotificationMessage result = new NotificationMessage();
+		result.setJsonrpc(later.getJsonrpc());
+		result.setMethod(DID_CHANGE_METHOD);
+		result.setParams(params);
+		return result;
+	}
+
+	private static boolean isUnconverted(Object params) {
+		return params instanceof LazyParams && !((LazyParams) params).isConverted()
+				&& DidChangeTextDocumentParams.class.equals(((LazyParams) params).getType());
+	}
+
+	/**
+	 * Merge the JSON of the parameters of two consecutive changes of the same document in the same way as
+	 * {@link #merge(DidChangeTextDocumentParams, DidChangeTextDocumentParams)}.
+	 *
+	 * @return the merged JSON, or {@code null} if the parameters refer to different documents
+	 */
+	private static JsonObject mergeJson(JsonElement earlier, JsonElement later) {
+		if (!earlier.isJsonObject() || !later.isJsonObject())
+			return null;
+		JsonObject earlierObject = earlier.getAsJsonObject();
+		JsonObject laterObject = later.getAsJsonObject();
+		String uri = getJsonUri(earlierObject);
+		if (uri == null || !uri.equals(getJsonUri(laterObject)))
+			return null;
+		List<JsonElement> contentChanges = new ArrayList<>();
+		addAll(contentChanges, earlierObject.get("contentChanges"));
+		addAll(contentChanges, laterObject.get("contentChanges"));
+		int lastFullText = -1;
+		for (int i = 0; i < contentChanges.size(); i++) {
+			JsonElement change = contentChanges.get(i);
+			if (change.isJsonObject() && isNull(change.getAsJsonObject().get("range")))
+				lastFullText = i;
+		}
+		JsonArray mergedChanges = new JsonArray();
+		for (int i = Math.max(lastFullText, 0); i < contentChanges.size(); i++) {
+			mergedChanges.add(contentChanges.get(i));
+		}
+		JsonObject result = new JsonObject();
+		addLater(result, "textDocument", earlierObject, laterObject);
+		addLater(result, "uri", earlierObject, laterObject);
+		result.add("contentChanges", mergedChanges);
+		return result;
+	}
+
+	/**
+	 * Add the given property of the later parameters, or of the earlier ones if the later parameters do not have it.
+	 */
+	private static void addLater(JsonObject result, String property, JsonObject earlier, JsonObject later) {
+		JsonElement value = later.get(property);
+		if (isNull(value))
+			value = earlier.get(property);
+		if (!isNull(value))
+			result.add(property, value);
+	}
+
+	private static String getJsonUri(JsonObject params) {
+		JsonElement textDocument = params.get("textDocument");
+		if (textDocument != null && textDocument.isJsonObject()) {
+			JsonElement uri = textDocument.getAsJsonObject().get("uri");
+			if (uri != null && uri.isJsonPrimitive())
+				return uri.getAsString();
+		}
+		JsonElement legacyUri = params.get("uri");
+		return legacyUri != null && legacyUri.isJsonPrimitive() ? legacyUri.getAsString() : null;
+	}
+
+	private static void addAll(List<JsonElement> list, JsonElement array) {
+		if (array != null && array.isJsonArray()) {
+			for (JsonElement element : array.getAsJsonArray()) {
+				list.add(element);
+			}
+		}
+	}
+
+	private static boolean isNull(JsonElement element) {
+		return element == null || element.isJsonNull();
+	}
+
+	/**
+	 * Merge the parameters of two consecutive changes of the same document. The content changes are
+	 * concatenated, where a change of the full text replaces all changes before it.
+	 *
+	 * @return the merged parameters, or {@code null} if the parameters refer to different documents
+	 */
+	@SuppressWarnings("deprecation")
+	public static DidChangeTextDocumentParams merge(DidChangeTextDocumentParams earlier, DidChangeTextDocumentParams later) {
+		String uri = TextDocumentOrdering.getParamsDocumentUri(earlier);
+		if (uri == null || !uri.equals(TextDocumentOrdering.getParamsDocumentUri(later)))
+			return null;
+		List<TextDocumentContentChangeEvent> contentChanges = new ArrayList<>();
+		if (earlier.getContentChanges() != null)
+			contentChanges.addAll(earlier.getContentChanges());
+		if (later.getContentChanges() != null)
+			contentChanges.addAll(later.getContentChanges());
+		int lastFullText = -1;
+		for (int i = 0; i < contentChanges.size(); i++) {
+			if (contentChanges.get(i).getRange() == null)
+				lastFullText = i;
+		}
+		if (lastFullText > 0)
+			contentChanges = new ArrayList<>(contentChanges.subList(lastFullText, contentChanges.size()));
+		DidChangeTextDocumentParams result = new DidChangeTextDocumentParams();
+		result.setTextDocument(later.getTextDocument() != null ? later.getTextDocument() : earlier.getTextDocument());
+		result.setUri(later.getUri() != null ? later.getUri() : earlier.getUri());
+		result.setContentChanges(contentChanges);
+		return result;
+	}
+
+}
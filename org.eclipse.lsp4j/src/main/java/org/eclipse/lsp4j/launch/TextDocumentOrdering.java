@@ -0,0 +1,135 @@
+package org.eclipse.lsp4j.launch;
+
+import org.eclipse.lsp4j.CodeActionParams;
+import org.eclipse.lsp4j.CodeLensParams;
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.DidSaveTextDocumentParams;
+import org.eclipse.lsp4j.DocumentFormattingParams;
+import org.eclipse.lsp4j.DocumentLinkParams;
+import org.eclipse.lsp4j.DocumentSymbolParams;
+import org.eclipse.lsp4j.RenameParams;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+
+/**
+ * Orders the incoming text document requests and notifications per document. Use it as ordering key of
+ * a launcher, so e.g. a {@code textDocument/hover} request is applied after a preceding
+ * {@code textDocument/didChange} notification for the same document, while the messages for different
+ * documents are dispatched in parallel:
+ *
+ * <pre>
+ * new Launcher.Builder&lt;LanguageClient&gt;()
+ *     ...
+ *     .setDispatchOrderingKey(TextDocumentOrdering::getDocumentUri)
+ *     .create();
+ * </pre>
+ *
+ * @see Launcher.Builder#setDispatchOrderingKey(java.util.function.Function)
+ */
+@SuppressWarnings("deprecation")
+public final class TextDocumentOrdering {
+
+	/**
+	 * The parameter types of the text document requests and notifications that refer to a single document.
+	 */
+	private static final Class<?>[] DOCUMENT_PARAMS_TYPES = {
+		TextDocumentPositionParams.class, DidChangeTextDocumentParams.class, DidOpenTextDocumentParams.class,
+		DidCloseTextDocumentParams.class, DidSaveTextDocumentParams.class, DocumentFormattingParams.class,
+		CodeActionParams.class, CodeLensParams.class, DocumentSymbolParams.class, DocumentLinkParams.class,
+		RenameParams.class
+	};
+
+	private TextDocumentOrdering() {}
+
+	/**
+	 * Returns the URI of the text document a request or notification refers to, or {@code null} if the
+	 * message does not refer to a single text document.
+	 */
+	public static String getDocumentUri(Message message) {
+		if (message instanceof RequestMessage)
+			return getParamsDocumentUri(((RequestMessage) message).getParams());
+		if (message instanceof NotificationMessage)
+			return getParamsDocumentUri(((NotificationMessage) message).getParams());
+		return null;
+	}
+
+	/**
+	 * Returns the URI of the text document referred to by the given parameters, or {@code null} if they
+	 * are not parameters of a text document request or notification. The URI of {@link LazyParams} that
+	 * have not been converted yet is read from their JSON, so they are not converted on the reading thread.
+	 */
+	public static String getParamsDocumentUri(Object params) {
+		if (params instanceof LazyParams) {
+			LazyParams lazyParams = (LazyParams) params;
+			if (!lazyParams.isConverted())
+				return getJsonDocumentUri(lazyParams);
+			params = lazyParams.get();
+		}
+		if (params instanceof TextDocumentPositionParams) {
+			TextDocumentPositionParams positionParams = (TextDocumentPositionParams) params;
+			return getUri(positionParams.getTextDocument(), positionParams.getUri());
+		}
+		if (params instanceof DidChangeTextDocumentParams) {
+			DidChangeTextDocumentParams changeParams = (DidChangeTextDocumentParams) params;
+			return getUri(changeParams.getTextDocument(), changeParams.getUri());
+		}
+		if (params instanceof DidOpenTextDocumentParams) {
+			TextDocumentItem textDocument = ((DidOpenTextDocumentParams) params).getTextDocument();
+			return textDocument != null ? textDocument.getUri() : null;
+		}
+		if (params instanceof DidCloseTextDocumentParams)
+			return getUri(((DidCloseTextDocumentParams) params).getTextDocument());
+		if (params instanceof DidSaveTextDocumentParams)
+			return getUri(((DidSaveTextDocumentParams) params).getTextDocument());
+		if (params instanceof DocumentFormattingParams)
+			return getUri(((DocumentFormattingParams) params).getTextDocument());
+		if (params instanceof CodeActionParams)
+			return getUri(((CodeActionParams) params).getTextDocument());
+		if (params instanceof CodeLensParams)
+			return getUri(((CodeLensParams) params).getTextDocument());
+		if (params instanceof DocumentSymbolParams)
+			return getUri(((DocumentSymbolParams) params).getTextDocument());
+		if (params instanceof DocumentLinkParams)
+			return getUri(((DocumentLinkParams) params).getTextDocument());
+		if (params instanceof RenameParams)
+			return getUri(((RenameParams) params).getTextDocument());
+		return null;
+	}
+
+	private static String getJsonDocumentUri(LazyParams params) {
+		if (!(params.getType() instanceof Class<?>))
+			return null;
+		Class<?> type = (Class<?>) params.getType();
+		for (Class<?> documentParamsType : DOCUMENT_PARAMS_TYPES) {
+			if (documentParamsType.isAssignableFrom(type)) {
+				String uri = params.getStringProperty("textDocument", "uri");
+				if (uri == null && (TextDocumentPositionParams.class.isAssignableFrom(type)
+						|| DidChangeTextDocumentParams.class.isAssignableFrom(type)))
+					uri = params.getStringProperty("uri");
+				return uri;
+			}
+		}
+		return null;
+	}
+
+	private static String getUri(TextDocumentIdentifier textDocument) {
+		return textDocument != null ? textDocument.getUri() : null;
+	}
+
+	/**
+	 * Falls back to the legacy {@code uri} property of protocol version 1.0 parameters.
+	 */
+	private static String getUri(TextDocumentIdentifier textDocument, String legacyUri) {
+		String uri = getUri(textDocument);
+		return uri != null ? uri : legacyUri;
+	}
+
+}
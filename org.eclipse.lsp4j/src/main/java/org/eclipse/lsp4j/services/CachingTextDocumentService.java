@@ -0,0 +1,524 @@
+/**
+ * Copyright (c) 2016 TypeFox GmbH (http://www.typefox.io) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.eclipse.lsp4j.services;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.eclipse.lsp4j.CodeActionParams;
+import org.eclipse.lsp4j.CodeLens;
+import org.eclipse.lsp4j.CodeLensParams;
+import org.eclipse.lsp4j.Command;
+import org.eclipse.lsp4j.CompletionItem;
+import org.eclipse.lsp4j.CompletionList;
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.DidSaveTextDocumentParams;
+import org.eclipse.lsp4j.DocumentFormattingParams;
+import org.eclipse.lsp4j.DocumentHighlight;
+import org.eclipse.lsp4j.DocumentLink;
+import org.eclipse.lsp4j.DocumentLinkParams;
+import org.eclipse.lsp4j.DocumentOnTypeFormattingParams;
+import org.eclipse.lsp4j.DocumentRangeFormattingParams;
+import org.eclipse.lsp4j.DocumentSymbolParams;
+import org.eclipse.lsp4j.Hover;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.ReferenceParams;
+import org.eclipse.lsp4j.RenameParams;
+import org.eclipse.lsp4j.SignatureHelp;
+import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+import org.eclipse.lsp4j.TextEdit;
+import org.eclipse.lsp4j.WorkspaceEdit;
+import org.eclipse.lsp4j.launch.TextDocumentOrdering;
+
+/**
+ * A text document service that caches the results of requests that only depend on the content of a
+ * document and their parameters: {@code hover}, {@code documentHighlight}, {@code documentSymbol},
+ * {@code codeLens} and {@code documentLink}. All other requests and notifications are passed to the
+ * delegate service.
+ *
+ * <p>The cache assigns a new generation to a document on each {@code didOpen} and {@code didChange}
+ * notification that passes through this service, independent of the version sent by the client. Results
+ * are cached per method, document URI, document generation and parameters, compared with their
+ * {@code equals} method. The entries of a document are dropped when it is changed or closed. Requests for
+ * documents that are not open are not cached. The cache is bounded by its number of entries and by the
+ * estimated memory size of the results; when either bound is exceeded, the least recently used entries
+ * are evicted.</p>
+ */
+public class CachingTextDocumentService implements TextDocumentService {
+
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	public static final long DEFAULT_MAX_WEIGHT = 16 * 1024 * 1024;
+
+	private final TextDocumentService delegate;
+	private final int maxEntries;
+	private final long maxWeight;
+	private final ToIntFunction<Object> weigher;
+
+	/**
+	 * The current generation of each open document. Generations are taken from a single counter, so a
+	 * document that is closed and opened again never gets a generation it had before.
+	 */
+	private final Map<String, Long> documentGenerations = new ConcurrentHashMap<>();
+	private final AtomicLong generationCounter = new AtomicLong();
+
+	// The following fields are guarded by the entries map
+	private final LinkedHashMap<CacheKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, Set<CacheKey>> keysByUri = new HashMap<>();
+	private long weight;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	public CachingTextDocumentService(TextDocumentService delegate) {
+		this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT, CachingTextDocumentService::estimateWeight);
+	}
+
+	/**
+	 * @param delegate - the service that computes the results
+	 * @param maxEntries - the maximal number of cached results
+	 * @param maxWeight - the maximal total weight of the cached results
+	 * @param weigher - estimates the memory size of a result in bytes
+	 */
+	public CachingTextDocumentService(TextDocumentService delegate, int maxEntries, long maxWeight, ToIntFunction<Object> weigher) {
+		if (delegate == null)
+			throw new NullPointerException("delegate");
+		if (weigher == null)
+			throw new NullPointerException("weigher");
+		if (maxEntries <= 0 || maxWeight <= 0)
+			throw new IllegalArgumentException("The cache bounds must be positive.");
+		this.delegate = delegate;
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	private static final int MAX_WEIGHT_DEPTH = 8;
+	private static final int MAX_WEIGHED_ELEMENTS = 16;
+
+	/**
+	 * The shallow size and the reference fields of the classes visited by {@link #estimateWeight(Object)}.
+	 */
+	private static final ClassValue<ClassLayout> CLASS_LAYOUTS = new ClassValue<ClassLayout>() {
+		@Override
+		protected ClassLayout computeValue(Class<?> type) {
+			return new ClassLayout(type);
+		}
+	};
+
+	/**
+	 * A rough estimate of the memory size of a result. The object graph is walked up to a fixed depth;
+	 * for collections, maps and arrays only the first elements are visited and their weight is
+	 * extrapolated to the remaining elements.
+	 */
+	public static int estimateWeight(Object result) {
+		return (int) Math.min(estimateWeight(result, 0), Integer.MAX_VALUE);
+	}
+
+	private static long estimateWeight(Object value, int depth) {
+		if (value == null)
+			return 0;
+		if (value instanceof String)
+			return 40 + 2L * ((String) value).length();
+		if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum)
+			return 16;
+		if (depth >= MAX_WEIGHT_DEPTH)
+			return 16;
+		if (value instanceof Collection)
+			return 32 + 8L * ((Collection<?>) value).size() + estimateElements(((Collection<?>) value).iterator(),
+					((Collection<?>) value).size(), depth);
+		if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			return 48 + 40L * map.size() + estimateElements(map.keySet().iterator(), map.size(), depth)
+					+ estimateElements(map.values().iterator(), map.size(), depth);
+		}
+		Class<?> type = value.getClass();
+		if (type.isArray()) {
+			int length = Array.getLength(value);
+			if (type.getComponentType().isPrimitive())
+				return 16 + (long) length * sizeOf(type.getComponentType());
+			return 16 + 8L * length + estimateElements(new Iterator<Object>() {
+				int index;
+				@Override
+				public boolean hasNext() {
+					return index < length;
+				}
+				@Override
+				public Object next() {
+					return Array.get(value, index++);
+				}
+			}, length, depth);
+		}
+		ClassLayout layout = CLASS_LAYOUTS.get(type);
+		long weight = layout.shallowSize;
+		for (Field field : layout.referenceFields) {
+			try {
+				weight += estimateWeight(field.get(value), depth + 1);
+			} catch (IllegalAccessException | RuntimeException e) {
+				// Count the reference only
+			}
+		}
+		return weight;
+	}
+
+	private static long estimateElements(Iterator<?> iterator, int size, int depth) {
+		long weight = 0;
+		int count = 0;
+		while (count < MAX_WEIGHED_ELEMENTS && iterator.hasNext()) {
+			weight += estimateWeight(iterator.next(), depth + 1);
+			count++;
+		}
+		if (count == 0)
+			return 0;
+		return weight * size / count;
+	}
+
+	private static int sizeOf(Class<?> primitiveType) {
+		if (primitiveType == long.class || primitiveType == double.class)
+			return 8;
+		if (primitiveType == int.class || primitiveType == float.class)
+			return 4;
+		if (primitiveType == short.class || primitiveType == char.class)
+			return 2;
+		return 1;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * The number of cached results.
+	 */
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * The estimated memory size of all cached results.
+	 */
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+	/**
+	 * Drop all cached results.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+			keysByUri.clear();
+			weight = 0;
+		}
+	}
+
+	@Override
+	public CompletableFuture<Hover> hover(TextDocumentPositionParams position) {
+		return cached("hover", position, () -> delegate.hover(position));
+	}
+
+	@Override
+	public CompletableFuture<List<? extends DocumentHighlight>> documentHighlight(TextDocumentPositionParams position) {
+		return cached("documentHighlight", position, () -> delegate.documentHighlight(position));
+	}
+
+	@Override
+	public CompletableFuture<List<? extends SymbolInformation>> documentSymbol(DocumentSymbolParams params) {
+		return cached("documentSymbol", params, () -> delegate.documentSymbol(params));
+	}
+
+	@Override
+	public CompletableFuture<List<? extends CodeLens>> codeLens(CodeLensParams params) {
+		return cached("codeLens", params, () -> delegate.codeLens(params));
+	}
+
+	@Override
+	public CompletableFuture<List<DocumentLink>> documentLink(DocumentLinkParams params) {
+		return cached("documentLink", params, () -> delegate.documentLink(params));
+	}
+
+	@Override
+	public void didOpen(DidOpenTextDocumentParams params) {
+		TextDocumentItem textDocument = params.getTextDocument();
+		if (textDocument != null && textDocument.getUri() != null) {
+			documentGenerations.put(textDocument.getUri(), generationCounter.incrementAndGet());
+			invalidate(textDocument.getUri());
+		}
+		delegate.didOpen(params);
+	}
+
+	@Override
+	public void didChange(DidChangeTextDocumentParams params) {
+		// Update the generation before the change is applied, so no result for the new content is cached
+		// with the old generation
+		String uri = TextDocumentOrdering.getParamsDocumentUri(params);
+		if (uri != null) {
+			documentGenerations.put(uri, generationCounter.incrementAndGet());
+			invalidate(uri);
+		}
+		delegate.didChange(params);
+	}
+
+	@Override
+	public void didClose(DidCloseTextDocumentParams params) {
+		String uri = TextDocumentOrdering.getParamsDocumentUri(params);
+		if (uri != null) {
+			documentGenerations.remove(uri);
+			invalidate(uri);
+		}
+		delegate.didClose(params);
+	}
+
+	@Override
+	public void didSave(DidSaveTextDocumentParams params) {
+		delegate.didSave(params);
+	}
+
+	@Override
+	public CompletableFuture<CompletionList> completion(TextDocumentPositionParams position) {
+		return delegate.completion(position);
+	}
+
+	@Override
+	public CompletableFuture<CompletionItem> resolveCompletionItem(CompletionItem unresolved) {
+		return delegate.resolveCompletionItem(unresolved);
+	}
+
+	@Override
+	public CompletableFuture<SignatureHelp> signatureHelp(TextDocumentPositionParams position) {
+		return delegate.signatureHelp(position);
+	}
+
+	@Override
+	public CompletableFuture<List<? extends Location>> definition(TextDocumentPositionParams position) {
+		return delegate.definition(position);
+	}
+
+	@Override
+	public CompletableFuture<List<? extends Location>> references(ReferenceParams params) {
+		return delegate.references(params);
+	}
+
+	@Override
+	public CompletableFuture<List<? extends Command>> codeAction(CodeActionParams params) {
+		return delegate.codeAction(params);
+	}
+
+	@Override
+	public CompletableFuture<CodeLens> resolveCodeLens(CodeLens unresolved) {
+		return delegate.resolveCodeLens(unresolved);
+	}
+
+	@Override
+	public CompletableFuture<List<? extends TextEdit>> formatting(DocumentFormattingParams params) {
+		return delegate.formatting(params);
+	}
+
+	@Override
+	public CompletableFuture<List<? extends TextEdit>> rangeFormatting(DocumentRangeFormattingParams params) {
+		return delegate.rangeFormatting(params);
+	}
+
+	@Override
+	public CompletableFuture<List<? extends TextEdit>> onTypeFormatting(DocumentOnTypeFormattingParams params) {
+		return delegate.onTypeFormatting(params);
+	}
+
+	@Override
+	public CompletableFuture<WorkspaceEdit> rename(RenameParams params) {
+		return delegate.rename(params);
+	}
+
+	@Override
+	public CompletableFuture<DocumentLink> documentLinkResolve(DocumentLink params) {
+		return delegate.documentLinkResolve(params);
+	}
+
+	@SuppressWarnings("unchecked")
+	protected <T> CompletableFuture<T> cached(String method, Object params, Supplier<CompletableFuture<T>> compute) {
+		String uri = TextDocumentOrdering.getParamsDocumentUri(params);
+		Long generation = uri != null ? documentGenerations.get(uri) : null;
+		if (generation == null)
+			return compute.get();
+		CacheKey key = new CacheKey(method, uri, generation, params);
+		CacheEntry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null) {
+			hitCount.incrementAndGet();
+			return CompletableFuture.completedFuture((T) entry.value);
+		}
+		missCount.incrementAndGet();
+		CompletableFuture<T> result = compute.get();
+		if (result != null) {
+			result.thenAccept(value -> {
+				// Discard results that have been computed while the document was changed
+				if (generation.equals(documentGenerations.get(uri)))
+					put(key, value);
+			});
+		}
+		return result;
+	}
+
+	private void put(CacheKey key, Object value) {
+		int entryWeight = weigher.applyAsInt(value);
+		if (entryWeight > maxWeight)
+			return;
+		synchronized (entries) {
+			CacheEntry previous = entries.put(key, new CacheEntry(value, entryWeight));
+			if (previous != null)
+				weight -= previous.weight;
+			else
+				keysByUri.computeIfAbsent(key.uri, uri -> new HashSet<>()).add(key);
+			weight += entryWeight;
+			Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = entries.entrySet().iterator();
+			while ((entries.size() > maxEntries || weight > maxWeight) && iterator.hasNext()) {
+				Map.Entry<CacheKey, CacheEntry> eldest = iterator.next();
+				iterator.remove();
+				weight -= eldest.getValue().weight;
+				removeFromIndex(eldest.getKey());
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	private void invalidate(String uri) {
+		synchronized (entries) {
+			Set<CacheKey> keys = keysByUri.remove(uri);
+			if (keys != null) {
+				for (CacheKey key : keys) {
+					CacheEntry entry = entries.remove(key);
+					if (entry != null)
+						weight -= entry.weight;
+				}
+			}
+		}
+	}
+
+	private void removeFromIndex(CacheKey key) {
+		Set<CacheKey> keys = keysByUri.get(key.uri);
+		if (keys != null) {
+			keys.remove(key);
+			if (keys.isEmpty())
+				keysByUri.remove(key.uri);
+		}
+	}
+
+	private static final class CacheKey {
+
+		final String method;
+		final String uri;
+		final long generation;
+		final Object params;
+		final int hashCode;
+
+		CacheKey(String method, String uri, long generation, Object params) {
+			this.method = method;
+			this.uri = uri;
+			this.generation = generation;
+			this.params = params;
+			this.hashCode = Objects.hash(method, uri, generation, params);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey))
+				return false;
+			CacheKey other = (CacheKey) obj;
+			return hashCode == other.hashCode && generation == other.generation && method.equals(other.method)
+					&& uri.equals(other.uri) && Objects.equals(params, other.params);
+		}
+
+	}
+
+	private static final class ClassLayout {
+
+		final long shallowSize;
+		final Field[] referenceFields;
+
+		ClassLayout(Class<?> type) {
+			long size = 16;
+			List<Field> fields = new ArrayList<>();
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				// The internals of platform classes are not visited
+				boolean visitFields = !c.getName().startsWith("java.");
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers()))
+						continue;
+					if (field.getType().isPrimitive()) {
+						size += sizeOf(field.getType());
+					} else {
+						size += 8;
+						if (visitFields) {
+							try {
+								field.setAccessible(true);
+								fields.add(field);
+							} catch (RuntimeException e) {
+								// Count the reference only
+							}
+						}
+					}
+				}
+			}
+			this.shallowSize = size;
+			this.referenceFields = fields.toArray(new Field[fields.size()]);
+		}
+
+	}
+
+	private static final class CacheEntry {
+
+		final Object value;
+		final int weight;
+
+		CacheEntry(Object value, int weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+
+	}
+
+}
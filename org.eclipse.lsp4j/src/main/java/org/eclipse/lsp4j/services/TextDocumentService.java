@@ -50,7 +50,7 @@ public interface TextDocumentService {
 	 * for the resolve completion item request. This request is sent when a
 	 * completion item is selected in the user interface.
 	 */
-	@JsonRequest
+	@JsonRequest(supersedable = true)
 	CompletableFuture<CompletionList> completion(TextDocumentPositionParams position);
 
 	/**
@@ -71,7 +71,7 @@ public interface TextDocumentService {
 	 * The signature help request is sent from the client to the server to
 	 * request signature information at a given cursor position.
 	 */
-	@JsonRequest
+	@JsonRequest(supersedable = true)
 	CompletableFuture<SignatureHelp> signatureHelp(TextDocumentPositionParams position);
 
 	/**
@@ -94,7 +94,7 @@ public interface TextDocumentService {
 	 * The document highlight request is sent from the client to the server to
 	 * to resolve a document highlights for a given text document position.
 	 */
-	@JsonRequest
+	@JsonRequest(supersedable = true)
 	CompletableFuture<List<? extends DocumentHighlight>> documentHighlight(TextDocumentPositionParams position);
 
 	/**
@@ -168,7 +168,7 @@ public interface TextDocumentService {
 	 * The document change notification is sent from the client to the server to
 	 * signal changes to a text document.
 	 */
-	@JsonNotification
+	@JsonNotification(supersedesRequests = true)
 	void didChange(DidChangeTextDocumentParams params);
 
 	/**
@@ -177,7 +177,7 @@ public interface TextDocumentService {
 	 * exists where the document's uri points to (e.g. if the document's uri is
 	 * a file uri the truth now exists on disk).
 	 */
-	@JsonNotification
+	@JsonNotification(supersedesRequests = true)
 	void didClose(DidCloseTextDocumentParams params);
 
 	/**
@@ -0,0 +1,186 @@
+package org.eclipse.lsp4j.test.launch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.launch.DidChangeCoalescer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+public class DidChangeCoalescerTest {
+
+	private static final String URI = "file:///a.txt";
+
+	private static VersionedTextDocumentIdentifier identifier(String uri, int version) {
+		VersionedTextDocumentIdentifier identifier = new VersionedTextDocumentIdentifier(version);
+		identifier.setUri(uri);
+		return identifier;
+	}
+
+	private static NotificationMessage didChange(String uri, int version, TextDocumentContentChangeEvent... changes) {
+		NotificationMessage message = new NotificationMessage();
+		message.setMethod("textDocument/didChange");
+		message.setParams(new DidChangeTextDocumentParams(identifier(uri, version), null, new ArrayList<>(Arrays.asList(changes))));
+		return message;
+	}
+
+	private static TextDocumentContentChangeEvent change(int startLine, int startChar, int endLine, int endChar, String text) {
+		return new TextDocumentContentChangeEvent(new Range(new Position(startLine, startChar), new Position(endLine, endChar)), null, text);
+	}
+
+	private static TextDocumentContentChangeEvent fullText(String text) {
+		return new TextDocumentContentChangeEvent(null, null, text);
+	}
+
+	/**
+	 * Apply content changes the way a language server does.
+	 */
+	private static String apply(String text, List<TextDocumentContentChangeEvent> changes) {
+		for (TextDocumentContentChangeEvent change : changes) {
+			if (change.getRange() == null) {
+				text = change.getText();
+			} else {
+				int start = offset(text, change.getRange().getStart());
+				int end = offset(text, change.getRange().getEnd());
+				text = text.substring(0, start) + change.getText() + text.substring(end);
+			}
+		}
+		return text;
+	}
+
+	private static int offset(String text, Position position) {
+		int offset = 0;
+		for (int line = 0; line < position.getLine(); line++) {
+			offset = text.indexOf('\n', offset) + 1;
+		}
+		return offset + position.getCharacter();
+	}
+
+	private static Position position(String text, int offset) {
+		int line = 0;
+		int lineStart = 0;
+		for (int i = 0; i < offset; i++) {
+			if (text.charAt(i) == '\n') {
+				line++;
+				lineStart = i + 1;
+			}
+		}
+		return new Position(line, offset - lineStart);
+	}
+
+	private static String randomText(Random random, int maxLength) {
+		String alphabet = "ab \n";
+		StringBuilder result = new StringBuilder();
+		int length = random.nextInt(maxLength + 1);
+		for (int i = 0; i < length; i++) {
+			result.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return result.toString();
+	}
+
+	private static TextDocumentContentChangeEvent randomChange(Random random, String text) {
+		if (random.nextInt(8) == 0)
+			return fullText(randomText(random, 20));
+		int start = random.nextInt(text.length() + 1);
+		int end = start + random.nextInt(text.length() - start + 1);
+		return new TextDocumentContentChangeEvent(new Range(position(text, start), position(text, end)), end - start, randomText(random, 5));
+	}
+
+	@Test public void testMergedChangesApplyIdentically() {
+		for (int seed = 0; seed < 2000; seed++) {
+			Random random = new Random(seed);
+			String initialText = randomText(random, 30);
+			String text = initialText;
+			List<NotificationMessage> notifications = new ArrayList<>();
+			int notificationCount = 1 + random.nextInt(6);
+			for (int n = 0; n < notificationCount; n++) {
+				int changeCount = random.nextInt(4);
+				List<TextDocumentContentChangeEvent> changes = new ArrayList<>();
+				for (int c = 0; c < changeCount; c++) {
+					TextDocumentContentChangeEvent change = randomChange(random, text);
+					changes.add(change);
+					text = apply(text, Arrays.asList(change));
+				}
+				notifications.add(didChange(URI, n + 1, changes.toArray(new TextDocumentContentChangeEvent[changes.size()])));
+			}
+
+			NotificationMessage merged = notifications.get(0);
+			for (int n = 1; n < notificationCount; n++) {
+				merged = DidChangeCoalescer.coalesce(merged, notifications.get(n));
+				Assert.assertNotNull("seed " + seed, merged);
+			}
+			DidChangeTextDocumentParams params = (DidChangeTextDocumentParams) merged.getParams();
+			Assert.assertEquals("seed " + seed, text, apply(initialText, params.getContentChanges()));
+			Assert.assertEquals("seed " + seed, notificationCount, params.getTextDocument().getVersion());
+			Assert.assertEquals("seed " + seed, URI, params.getTextDocument().getUri());
+			// A full-text change can only be the first change of a merged notification
+			for (int i = 1; i < params.getContentChanges().size() && notificationCount > 1; i++) {
+				Assert.assertNotNull("seed " + seed, params.getContentChanges().get(i).getRange());
+			}
+
+			// Lazy parameters are merged on their JSON without being converted
+			NotificationMessage lazyMerged = lazy(notifications.get(0));
+			for (int n = 1; n < notificationCount; n++) {
+				NotificationMessage later = lazy(notifications.get(n));
+				lazyMerged = DidChangeCoalescer.coalesce(lazyMerged, later);
+				Assert.assertFalse("seed " + seed, ((LazyParams) later.getParams()).isConverted());
+			}
+			LazyParams lazyParams = (LazyParams) lazyMerged.getParams();
+			Assert.assertFalse("seed " + seed, lazyParams.isConverted());
+			DidChangeTextDocumentParams converted = (DidChangeTextDocumentParams) lazyParams.get();
+			Assert.assertEquals("seed " + seed, text, apply(initialText, converted.getContentChanges()));
+			Assert.assertEquals("seed " + seed, notificationCount, converted.getTextDocument().getVersion());
+			Assert.assertEquals("seed " + seed, URI, converted.getTextDocument().getUri());
+		}
+	}
+
+	private static NotificationMessage lazy(NotificationMessage notification) {
+		Gson gson = new Gson();
+		NotificationMessage result = new NotificationMessage();
+		result.setMethod(notification.getMethod());
+		result.setParams(new LazyParams(gson, gson.toJson(notification.getParams()), DidChangeTextDocumentParams.class));
+		return result;
+	}
+
+	@Test public void testFullTextReplacesEarlierChanges() {
+		NotificationMessage first = didChange(URI, 1, change(0, 0, 0, 0, "a"), change(0, 1, 0, 1, "b"));
+		NotificationMessage second = didChange(URI, 2, fullText("xyz"), change(0, 3, 0, 3, "!"));
+		DidChangeTextDocumentParams params = (DidChangeTextDocumentParams) DidChangeCoalescer.coalesce(first, second).getParams();
+		Assert.assertEquals(2, params.getContentChanges().size());
+		Assert.assertEquals("xyz", params.getContentChanges().get(0).getText());
+		Assert.assertEquals("xyz!", apply("", params.getContentChanges()));
+	}
+
+	@Test public void testOriginalsAreNotModified() {
+		NotificationMessage first = didChange(URI, 1, change(0, 0, 0, 0, "a"));
+		NotificationMessage second = didChange(URI, 2, change(0, 1, 0, 1, "b"));
+		DidChangeCoalescer.coalesce(first, second);
+		Assert.assertEquals(1, ((DidChangeTextDocumentParams) first.getParams()).getContentChanges().size());
+		Assert.assertEquals(1, ((DidChangeTextDocumentParams) first.getParams()).getTextDocument().getVersion());
+		Assert.assertEquals(1, ((DidChangeTextDocumentParams) second.getParams()).getContentChanges().size());
+	}
+
+	@Test public void testNotMerged() {
+		NotificationMessage first = didChange(URI, 1, change(0, 0, 0, 0, "a"));
+		Assert.assertNull(DidChangeCoalescer.coalesce(first, didChange("file:///b.txt", 1, change(0, 0, 0, 0, "a"))));
+		Assert.assertNull(DidChangeCoalescer.coalesce(lazy(first), lazy(didChange("file:///b.txt", 1, change(0, 0, 0, 0, "a")))));
+
+		NotificationMessage didSave = new NotificationMessage();
+		didSave.setMethod("textDocument/didSave");
+		didSave.setParams(((DidChangeTextDocumentParams) first.getParams()).getTextDocument());
+		Assert.assertNull(DidChangeCoalescer.coalesce(first, didSave));
+		Assert.assertNull(DidChangeCoalescer.coalesce(didSave, first));
+	}
+
+}
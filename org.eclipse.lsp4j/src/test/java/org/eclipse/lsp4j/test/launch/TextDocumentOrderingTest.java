@@ -0,0 +1,104 @@
+package org.eclipse.lsp4j.test.launch;
+
+import java.util.ArrayList;
+
+import org.eclipse.lsp4j.DidChangeConfigurationParams;
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.ReferenceContext;
+import org.eclipse.lsp4j.ReferenceParams;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.jsonrpc.json.LazyParams;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+import org.eclipse.lsp4j.launch.TextDocumentOrdering;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+public class TextDocumentOrderingTest {
+
+	@Test public void testPositionParams() {
+		RequestMessage hover = new RequestMessage();
+		hover.setId("1");
+		hover.setMethod("textDocument/hover");
+		hover.setParams(new TextDocumentPositionParams(new TextDocumentIdentifier("file:///a.txt"), null, new Position(1, 1)));
+		Assert.assertEquals("file:///a.txt", TextDocumentOrdering.getDocumentUri(hover));
+
+		RequestMessage references = new RequestMessage();
+		references.setId("2");
+		references.setMethod("textDocument/references");
+		ReferenceParams referenceParams = new ReferenceParams(new ReferenceContext(true));
+		referenceParams.setTextDocument(new TextDocumentIdentifier("file:///b.txt"));
+		referenceParams.setPosition(new Position(1, 1));
+		references.setParams(referenceParams);
+		Assert.assertEquals("file:///b.txt", TextDocumentOrdering.getDocumentUri(references));
+	}
+
+	@Test public void testDocumentNotifications() {
+		NotificationMessage didOpen = new NotificationMessage();
+		didOpen.setMethod("textDocument/didOpen");
+		TextDocumentItem textDocument = new TextDocumentItem();
+		textDocument.setUri("file:///a.txt");
+		didOpen.setParams(new DidOpenTextDocumentParams(textDocument, null));
+		Assert.assertEquals("file:///a.txt", TextDocumentOrdering.getDocumentUri(didOpen));
+
+		NotificationMessage didChange = new NotificationMessage();
+		didChange.setMethod("textDocument/didChange");
+		VersionedTextDocumentIdentifier versionedIdentifier = new VersionedTextDocumentIdentifier(2);
+		versionedIdentifier.setUri("file:///a.txt");
+		didChange.setParams(new DidChangeTextDocumentParams(versionedIdentifier, null, new ArrayList<>()));
+		Assert.assertEquals("file:///a.txt", TextDocumentOrdering.getDocumentUri(didChange));
+	}
+
+	@Test public void testLegacyUri() {
+		NotificationMessage didChange = new NotificationMessage();
+		didChange.setMethod("textDocument/didChange");
+		didChange.setParams(new DidChangeTextDocumentParams(null, "file:///a.txt", new ArrayList<>()));
+		Assert.assertEquals("file:///a.txt", TextDocumentOrdering.getDocumentUri(didChange));
+	}
+
+	@Test public void testLazyParams() {
+		RequestMessage hover = new RequestMessage();
+		hover.setId("1");
+		hover.setMethod("textDocument/hover");
+		hover.setParams(new LazyParams(new Gson(), "{\"textDocument\":{\"uri\":\"file:///a.txt\"},\"position\":{\"line\":1,\"character\":1}}",
+				TextDocumentPositionParams.class));
+		Assert.assertEquals("file:///a.txt", TextDocumentOrdering.getDocumentUri(hover));
+		// The URI is read from the JSON, so the parameters are converted only when they are dispatched
+		Assert.assertFalse(((LazyParams) hover.getParams()).isConverted());
+
+		NotificationMessage didChange = new NotificationMessage();
+		didChange.setMethod("textDocument/didChange");
+		didChange.setParams(new LazyParams(new Gson(), "{\"uri\":\"file:///b.txt\",\"contentChanges\":[]}",
+				DidChangeTextDocumentParams.class));
+		Assert.assertEquals("file:///b.txt", TextDocumentOrdering.getDocumentUri(didChange));
+
+		NotificationMessage didChangeConfiguration = new NotificationMessage();
+		didChangeConfiguration.setMethod("workspace/didChangeConfiguration");
+		didChangeConfiguration.setParams(new LazyParams(new Gson(), "{\"settings\":{},\"uri\":\"file:///c.txt\"}",
+				DidChangeConfigurationParams.class));
+		Assert.assertNull(TextDocumentOrdering.getDocumentUri(didChangeConfiguration));
+	}
+
+	@Test public void testOtherMessages() {
+		NotificationMessage didChangeConfiguration = new NotificationMessage();
+		didChangeConfiguration.setMethod("workspace/didChangeConfiguration");
+		didChangeConfiguration.setParams(new DidChangeConfigurationParams(new Object()));
+		Assert.assertNull(TextDocumentOrdering.getDocumentUri(didChangeConfiguration));
+
+		NotificationMessage incomplete = new NotificationMessage();
+		incomplete.setMethod("textDocument/didChange");
+		incomplete.setParams(new DidChangeTextDocumentParams());
+		Assert.assertNull(TextDocumentOrdering.getDocumentUri(incomplete));
+
+		Assert.assertNull(TextDocumentOrdering.getDocumentUri(new ResponseMessage()));
+	}
+
+}
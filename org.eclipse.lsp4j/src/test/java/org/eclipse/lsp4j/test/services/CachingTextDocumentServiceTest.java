@@ -0,0 +1,233 @@
+package org.eclipse.lsp4j.test.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.DocumentSymbolParams;
+import org.eclipse.lsp4j.Hover;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.services.CachingTextDocumentService;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CachingTextDocumentServiceTest {
+
+	private static final String URI = "file:///a.txt";
+
+	private static class CountingServer extends MockLanguageServer {
+
+		final List<String> calls = new ArrayList<>();
+		CompletableFuture<Hover> pendingHover;
+
+		@Override
+		public CompletableFuture<Hover> hover(TextDocumentPositionParams position) {
+			calls.add("hover");
+			if (pendingHover != null)
+				return pendingHover;
+			Position p = position.getPosition();
+			return CompletableFuture.completedFuture(new Hover(Arrays.asList(p.getLine() + ":" + p.getCharacter()), null));
+		}
+
+		@Override
+		public CompletableFuture<List<? extends SymbolInformation>> documentSymbol(DocumentSymbolParams params) {
+			calls.add("documentSymbol");
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+
+		@Override
+		public void didOpen(DidOpenTextDocumentParams params) {
+			calls.add("didOpen");
+		}
+
+		@Override
+		public void didChange(DidChangeTextDocumentParams params) {
+			calls.add("didChange");
+		}
+
+		@Override
+		public void didClose(DidCloseTextDocumentParams params) {
+			calls.add("didClose");
+		}
+
+	}
+
+	private static DidOpenTextDocumentParams didOpen(String uri, int version) {
+		TextDocumentItem item = new TextDocumentItem();
+		item.setUri(uri);
+		item.setVersion(version);
+		item.setText("");
+		return new DidOpenTextDocumentParams(item, null);
+	}
+
+	private static DidChangeTextDocumentParams didChange(String uri, int version) {
+		VersionedTextDocumentIdentifier identifier = new VersionedTextDocumentIdentifier(version);
+		identifier.setUri(uri);
+		return new DidChangeTextDocumentParams(identifier, null, new ArrayList<>());
+	}
+
+	private static TextDocumentPositionParams position(String uri, int line, int character) {
+		return new TextDocumentPositionParams(new TextDocumentIdentifier(uri), null, new Position(line, character));
+	}
+
+	@Test public void testCachedUntilChanged() throws Exception {
+		CountingServer server = new CountingServer();
+		CachingTextDocumentService service = new CachingTextDocumentService(server);
+		service.didOpen(didOpen(URI, 1));
+
+		Hover first = service.hover(position(URI, 1, 2)).get();
+		Hover second = service.hover(position(URI, 1, 2)).get();
+		Assert.assertSame(first, second);
+		service.hover(position(URI, 1, 3)).get();
+		service.documentSymbol(new DocumentSymbolParams(new TextDocumentIdentifier(URI))).get();
+		service.documentSymbol(new DocumentSymbolParams(new TextDocumentIdentifier(URI))).get();
+		Assert.assertEquals(Arrays.asList("didOpen", "hover", "hover", "documentSymbol"), server.calls);
+		Assert.assertEquals(2, service.getHitCount());
+		Assert.assertEquals(3, service.getMissCount());
+		Assert.assertEquals(3, service.getSize());
+
+		service.didChange(didChange(URI, 2));
+		Assert.assertEquals(0, service.getSize());
+		Assert.assertEquals(0, service.getWeight());
+		Assert.assertNotSame(first, service.hover(position(URI, 1, 2)).get());
+		Assert.assertEquals(Arrays.asList("didOpen", "hover", "hover", "documentSymbol", "didChange", "hover"), server.calls);
+
+		service.didClose(new DidCloseTextDocumentParams(new TextDocumentIdentifier(URI)));
+		Assert.assertEquals(0, service.getSize());
+		// Closed documents are not cached
+		service.hover(position(URI, 1, 2)).get();
+		service.hover(position(URI, 1, 2)).get();
+		Assert.assertEquals(0, service.getSize());
+		Assert.assertEquals(9, server.calls.size());
+	}
+
+	@Test public void testOtherDocumentsAreKept() throws Exception {
+		CountingServer server = new CountingServer();
+		CachingTextDocumentService service = new CachingTextDocumentService(server);
+		service.didOpen(didOpen(URI, 1));
+		service.didOpen(didOpen("file:///b.txt", 1));
+		service.hover(position(URI, 1, 2)).get();
+		service.hover(position("file:///b.txt", 1, 2)).get();
+
+		service.didChange(didChange("file:///b.txt", 2));
+		Assert.assertEquals(1, service.getSize());
+		service.hover(position(URI, 1, 2)).get();
+		Assert.assertEquals(1, service.getHitCount());
+	}
+
+	@Test public void testStaleResultIsNotCached() throws Exception {
+		CountingServer server = new CountingServer();
+		CachingTextDocumentService service = new CachingTextDocumentService(server);
+		service.didOpen(didOpen(URI, 1));
+		server.pendingHover = new CompletableFuture<>();
+		CompletableFuture<Hover> result = service.hover(position(URI, 1, 2));
+		service.didChange(didChange(URI, 2));
+		server.pendingHover.complete(new Hover());
+		Assert.assertNotNull(result.get());
+		Assert.assertEquals(0, service.getSize());
+	}
+
+	@Test public void testStaleResultIsNotCachedAfterReopen() throws Exception {
+		CountingServer server = new CountingServer();
+		CachingTextDocumentService service = new CachingTextDocumentService(server);
+		service.didOpen(didOpen(URI, 1));
+		server.pendingHover = new CompletableFuture<>();
+		CompletableFuture<Hover> result = service.hover(position(URI, 1, 2));
+		// The client may reuse the version of the previous content
+		service.didClose(new DidCloseTextDocumentParams(new TextDocumentIdentifier(URI)));
+		service.didOpen(didOpen(URI, 1));
+		server.pendingHover.complete(new Hover());
+		Assert.assertNotNull(result.get());
+		Assert.assertEquals(0, service.getSize());
+	}
+
+	@Test public void testChangeWithoutVersion() throws Exception {
+		CountingServer server = new CountingServer();
+		CachingTextDocumentService service = new CachingTextDocumentService(server);
+		service.didOpen(didOpen(URI, 1));
+		service.hover(position(URI, 1, 2)).get();
+		DidChangeTextDocumentParams change = new DidChangeTextDocumentParams();
+		change.setUri(URI);
+		service.didChange(change);
+		Assert.assertEquals(0, service.getSize());
+		service.hover(position(URI, 1, 2)).get();
+		service.hover(position(URI, 1, 2)).get();
+		Assert.assertEquals(1, service.getSize());
+		Assert.assertEquals(1, service.getHitCount());
+	}
+
+	@Test public void testEstimateWeight() {
+		Hover small = new Hover(Arrays.asList("a"), null);
+		List<String> contents = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			contents.add("line " + i);
+		}
+		Hover large = new Hover(contents, null);
+		int smallWeight = CachingTextDocumentService.estimateWeight(small);
+		int largeWeight = CachingTextDocumentService.estimateWeight(large);
+		Assert.assertTrue(smallWeight > 0);
+		Assert.assertTrue(largeWeight > 20 * smallWeight);
+		Assert.assertEquals(0, CachingTextDocumentService.estimateWeight(null));
+		// Cyclic structures are weighed up to a fixed depth
+		List<Object> cyclic = new ArrayList<>();
+		cyclic.add(cyclic);
+		Assert.assertTrue(CachingTextDocumentService.estimateWeight(cyclic) > 0);
+	}
+
+	@Test public void testFailedResultIsNotCached() {
+		CountingServer server = new CountingServer();
+		CachingTextDocumentService service = new CachingTextDocumentService(server);
+		service.didOpen(didOpen(URI, 1));
+		server.pendingHover = new CompletableFuture<>();
+		service.hover(position(URI, 1, 2));
+		server.pendingHover.completeExceptionally(new IllegalStateException());
+		Assert.assertEquals(0, service.getSize());
+	}
+
+	@Test public void testEvictionByCount() throws Exception {
+		CountingServer server = new CountingServer();
+		CachingTextDocumentService service = new CachingTextDocumentService(server, 2, Long.MAX_VALUE, result -> 1);
+		service.didOpen(didOpen(URI, 1));
+		service.hover(position(URI, 1, 1)).get();
+		service.hover(position(URI, 1, 2)).get();
+		// Access the first entry, so the second one is the least recently used
+		service.hover(position(URI, 1, 1)).get();
+		service.hover(position(URI, 1, 3)).get();
+		Assert.assertEquals(2, service.getSize());
+		Assert.assertEquals(1, service.getEvictionCount());
+
+		service.hover(position(URI, 1, 1)).get();
+		Assert.assertEquals(2, service.getHitCount());
+		service.hover(position(URI, 1, 2)).get();
+		Assert.assertEquals(2, service.getHitCount());
+	}
+
+	@Test public void testEvictionByWeight() throws Exception {
+		CountingServer server = new CountingServer();
+		CachingTextDocumentService service = new CachingTextDocumentService(server, 100, 250, result -> 100);
+		service.didOpen(didOpen(URI, 1));
+		for (int i = 0; i < 5; i++) {
+			service.hover(position(URI, 1, i)).get();
+		}
+		Assert.assertEquals(2, service.getSize());
+		Assert.assertEquals(200, service.getWeight());
+		Assert.assertEquals(3, service.getEvictionCount());
+
+		// A result that exceeds the bound on its own is not cached
+		service = new CachingTextDocumentService(server, 100, 50, result -> 100);
+		service.didOpen(didOpen(URI, 1));
+		service.hover(position(URI, 1, 1)).get();
+		Assert.assertEquals(0, service.getSize());
+	}
+
+}
@@ -1,9 +1,13 @@
 package org.eclipse.lsp4j.test.services;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
 import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
+import org.eclipse.lsp4j.services.LanguageServer;
 import org.eclipse.lsp4j.services.TextDocumentService;
 import org.junit.Assert;
 import org.junit.Test;
@@ -21,4 +25,12 @@ public class RpcMethodTest {
 		Assert.assertNotNull(methods.get("codeLens/resolve"));
 		Assert.assertNotNull(methods.get("completionItem/resolve"));
 	}
+	
+	@Test public void testSupersedingMethods() {
+		Set<String> requests = ServiceEndpoints.getSupersedableRequests(LanguageServer.class);
+		Assert.assertEquals(new HashSet<>(Arrays.asList("textDocument/completion", "textDocument/signatureHelp",
+				"textDocument/documentHighlight")), requests);
+		Set<String> notifications = ServiceEndpoints.getSupersedingNotifications(LanguageServer.class);
+		Assert.assertEquals(new HashSet<>(Arrays.asList("textDocument/didChange", "textDocument/didClose")), notifications);
+	}
 }